@@ -0,0 +1,194 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.core.spi.ContextAwareBase;
+import com.stackify.api.EnvironmentDetail;
+import com.stackify.api.LogMsg;
+import com.stackify.api.common.ApiConfiguration;
+import com.stackify.api.common.mask.Masker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Static against adaptive batch size and flush interval, sending to a stub endpoint with a fixed latency
+ * per request.
+ *
+ * <p>
+ * {@code delay} is the time from queueing a message to its request being sent, with a light load of 200
+ * messages per second in the background. {@code throughput} is the number of messages queued per second
+ * by 4 producers that block while the queue is full, i.e. the rate the pipeline sends at.
+ */
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class AdaptiveFlushBenchmark {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/**
+	 * Pipeline sending to the stub endpoint
+	 */
+	@State(Scope.Benchmark)
+	public static class Pipeline {
+
+		@Param({"static", "adaptive"})
+		private String flush;
+
+		@Param({"2", "50"})
+		private long latencyMillis;
+
+		private LogPipeline pipeline;
+
+		private StubTransport transport;
+
+		@Setup
+		public void setup() {
+			BenchmarkSupport.silenceInternalLogging();
+
+			PipelineConfig config = new PipelineConfig();
+			config.setAdaptiveFlush("adaptive".equals(flush));
+			config.setBackpressure(new BackpressurePolicy(BackpressurePolicy.Mode.BLOCK, 10000, Level.WARN));
+			config.setCompressionMinBytes(Integer.MAX_VALUE);
+
+			EnvironmentDetail envDetail = EnvironmentDetail.newBuilder().deviceName("localhost").appName("benchmark").configuredAppName("benchmark").configuredEnvironmentName("benchmark").build();
+			ApiConfiguration apiConfig = ApiConfiguration.newBuilder().apiUrl(BenchmarkSupport.UNREACHABLE_API_URL).apiKey("benchmark").envDetail(envDetail).build();
+
+			pipeline = new LogPipeline("benchmark", new ILoggingEventAdapter(envDetail), new Masker(), false, config, new ContextAwareBase());
+			pipeline.activate(apiConfig);
+
+			transport = new StubTransport(TimeUnit.MILLISECONDS.toNanos(latencyMillis));
+			pipeline.setTransport(transport);
+		}
+
+		@TearDown
+		public void tearDown() {
+			pipeline.close();
+		}
+	}
+
+	/**
+	 * Background load of the delay benchmark
+	 */
+	@State(Scope.Benchmark)
+	public static class Trickle {
+
+		private static final long INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+		private Thread thread;
+
+		private volatile boolean running;
+
+		@Setup
+		public void setup(final Pipeline state) {
+			running = true;
+
+			thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (long i = 0; running; ++i) {
+						state.pipeline.enqueue(msg("trickle-" + i));
+						LockSupport.parkNanos(INTERVAL_NANOS);
+					}
+				}
+			}, "trickle");
+
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		@TearDown
+		public void tearDown() throws InterruptedException {
+			running = false;
+			thread.join();
+		}
+	}
+
+	private static final AtomicLong SEQUENCE = new AtomicLong();
+
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Threads(1)
+	public long delay(final Pipeline state, final Trickle trickle) {
+		long id = SEQUENCE.incrementAndGet();
+		state.pipeline.enqueue(msg("mark-" + id + ";"));
+
+		while (state.transport.lastMark < id) {
+			LockSupport.parkNanos(10000);
+		}
+
+		return id;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	@Threads(4)
+	public void throughput(final Pipeline state) {
+		state.pipeline.enqueue(msg("load"));
+	}
+
+	private static LogMsg msg(final String text) {
+		return new LogMsg(text, null, null, "main", System.currentTimeMillis(), "INFO", null, null, null, null, null);
+	}
+
+	/**
+	 * Endpoint that takes a fixed time per request and records the last mark it has received
+	 */
+	private static class StubTransport implements PayloadTransport {
+
+		private final long latencyNanos;
+
+		private volatile long lastMark;
+
+		private StubTransport(final long latencyNanos) {
+			this.latencyNanos = latencyNanos;
+		}
+
+		@Override
+		public void send(final BatchBuffer payload, final boolean gzip) {
+			String json = new String(payload.toByteArray(), UTF_8);
+
+			LockSupport.parkNanos(latencyNanos);
+
+			for (int i = json.indexOf("mark-"); 0 <= i; i = json.indexOf("mark-", i + 1)) {
+				lastMark = Math.max(lastMark, Long.parseLong(json.substring(i + 5, json.indexOf(';', i))));
+			}
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
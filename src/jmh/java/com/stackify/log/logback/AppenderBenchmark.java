@@ -0,0 +1,122 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import ch.qos.logback.classic.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.MDC;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Application thread cost of logging through StackifyLogAppender, from 1 to 64 producer threads.
+ *
+ * <p>
+ * The events go through a real logback logger, so caller data and MDC handling are included. The API
+ * endpoint is unreachable, which keeps the background sender out of the measurement.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AppenderBenchmark {
+
+	@Param({"false", "true"})
+	private String unsynchronized;
+
+	@Param({"PLAIN", "MDC", "EXCEPTION"})
+	private BenchmarkPayload payload;
+
+	private Logger logger;
+
+	private Throwable exception;
+
+	@Setup
+	public void setup() {
+		StackifyLogAppender appender = new StackifyLogAppender();
+		appender.setUnsynchronized(unsynchronized);
+
+		logger = BenchmarkSupport.attach(appender);
+		exception = BenchmarkSupport.deepException();
+	}
+
+	@TearDown
+	public void tearDown() {
+		BenchmarkSupport.detach(logger);
+	}
+
+	/**
+	 * Per-thread MDC
+	 */
+	@State(Scope.Thread)
+	public static class ThreadMdc {
+
+		@Setup
+		public void setup(final AppenderBenchmark benchmark) {
+			MDC.clear();
+
+			if (benchmark.payload == BenchmarkPayload.MDC) {
+				for (Map.Entry<String, String> entry : BenchmarkSupport.largeMdc().entrySet()) {
+					MDC.put(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+
+		@TearDown
+		public void tearDown() {
+			MDC.clear();
+		}
+	}
+
+	@Benchmark
+	@Threads(1)
+	public void append1(final ThreadMdc mdc) {
+		BenchmarkSupport.log(logger, payload, exception);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void append4(final ThreadMdc mdc) {
+		BenchmarkSupport.log(logger, payload, exception);
+	}
+
+	@Benchmark
+	@Threads(16)
+	public void append16(final ThreadMdc mdc) {
+		BenchmarkSupport.log(logger, payload, exception);
+	}
+
+	@Benchmark
+	@Threads(64)
+	public void append64(final ThreadMdc mdc) {
+		BenchmarkSupport.log(logger, payload, exception);
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import ch.qos.logback.classic.spi.LoggingEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stackify.api.EnvironmentDetail;
+import com.stackify.api.LogMsg;
+import com.stackify.api.LogMsgGroup;
+import com.stackify.api.StackifyError;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization cost of one full batch: databind into a new byte array, or the streaming writer into
+ * pooled buffers that are released after each batch.
+ *
+ * <p>
+ * Run with {@code -prof gc}; gc.alloc.rate.norm divided by the batch size is the bytes allocated per event.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchSerializationBenchmark {
+
+	/**
+	 * Messages per batch (the collector's maximum batch size)
+	 */
+	private static final int BATCH_SIZE = 100;
+
+	@Param({"databind", "streaming"})
+	private String serializer;
+
+	@Param({"PLAIN", "MDC", "EXCEPTION"})
+	private BenchmarkPayload payload;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private final LogMsgGroupWriter writer = new LogMsgGroupWriter();
+
+	private final BufferPool pool = new BufferPool();
+
+	private LogMsgGroup group;
+
+	@Setup
+	public void setup() {
+		EnvironmentDetail envDetail = EnvironmentDetail.newBuilder().deviceName("host").appName("benchmark").configuredAppName("benchmark").configuredEnvironmentName("test").build();
+		ILoggingEventAdapter adapter = new ILoggingEventAdapter(envDetail);
+
+		List<LogMsg> msgs = new ArrayList<LogMsg>(BATCH_SIZE);
+
+		for (int i = 0; i < BATCH_SIZE; ++i) {
+			LoggingEvent event = BenchmarkSupport.event(payload);
+			Throwable exception = adapter.getThrowable(event);
+			StackifyError error = (exception != null) ? adapter.getStackifyError(event, exception) : null;
+
+			msgs.add(adapter.getLogMsg(event, error));
+		}
+
+		group = LogMsgGroup.newBuilder().platform("java").logger("benchmark").serverName("host").env("test").appName("benchmark").msgs(msgs).build();
+	}
+
+	@Benchmark
+	public int serialize() throws Exception {
+		if ("databind".equals(serializer)) {
+			return objectMapper.writer().writeValueAsBytes(group).length;
+		}
+
+		BatchBuffer batch = pool.newBuffer();
+
+		try {
+			writer.write(group, batch);
+			return batch.size();
+		} finally {
+			batch.release();
+		}
+	}
+}
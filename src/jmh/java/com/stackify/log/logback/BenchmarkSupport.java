@@ -0,0 +1,174 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Shared benchmark fixtures
+ */
+final class BenchmarkSupport {
+
+	/**
+	 * Unreachable API endpoint, so the background sender fails fast and never slows the producers
+	 */
+	static final String UNREACHABLE_API_URL = "http://127.0.0.1:9";
+
+	/**
+	 * Number of MDC entries in the large MDC payload
+	 */
+	static final int LARGE_MDC_SIZE = 50;
+
+	/**
+	 * Number of causes in the deep exception payload
+	 */
+	static final int EXCEPTION_CAUSES = 8;
+
+	/**
+	 * Extra stack depth of each exception in the deep exception payload
+	 */
+	static final int EXCEPTION_DEPTH = 32;
+
+	private BenchmarkSupport() {
+	}
+
+	/**
+	 * @return A large MDC map
+	 */
+	static Map<String, String> largeMdc() {
+		Map<String, String> mdc = new LinkedHashMap<String, String>();
+
+		for (int i = 0; i < LARGE_MDC_SIZE; ++i) {
+			mdc.put("key" + i, "value-" + i + "-\"quoted\"");
+		}
+
+		return mdc;
+	}
+
+	/**
+	 * @return An exception with EXCEPTION_CAUSES nested causes, each thrown EXCEPTION_DEPTH frames deep
+	 */
+	static Throwable deepException() {
+		return deepException(EXCEPTION_CAUSES, EXCEPTION_DEPTH);
+	}
+
+	/**
+	 * @param causes Number of nested causes
+	 * @param depth Extra stack depth of each exception
+	 * @return An exception with the given number of nested causes, each thrown depth frames deep
+	 */
+	static Throwable deepException(final int causes, final int depth) {
+		Throwable cause = null;
+
+		for (int i = 0; i < causes; ++i) {
+			cause = throwAt(depth, "failure " + i, cause);
+		}
+
+		return cause;
+	}
+
+	private static Throwable throwAt(final int depth, final String message, final Throwable cause) {
+		if (0 < depth) {
+			return throwAt(depth - 1, message, cause);
+		}
+
+		return new IllegalStateException(message, cause);
+	}
+
+	/**
+	 * Turns off the Stackify client's own logging, so a failing background sender does not write to the console
+	 */
+	static void silenceInternalLogging() {
+		((Logger) LoggerFactory.getLogger("com.stackify")).setLevel(Level.OFF);
+	}
+
+	/**
+	 * Starts the appender in a logger context of its own
+	 * @param appender The configured (not started) appender
+	 * @return The logger the appender is attached to
+	 */
+	static Logger attach(final StackifyLogAppender appender) {
+		silenceInternalLogging();
+
+		LoggerContext context = new LoggerContext();
+
+		appender.setContext(context);
+		appender.setApiUrl(UNREACHABLE_API_URL);
+		appender.setApiKey("benchmark");
+		appender.setApplication("benchmark");
+		appender.setEnvironment("benchmark");
+		appender.start();
+
+		Logger logger = context.getLogger("com.acme.benchmark.Service");
+		logger.setLevel(Level.INFO);
+		logger.setAdditive(false);
+		logger.addAppender(appender);
+
+		return logger;
+	}
+
+	/**
+	 * Stops the appender and its logger context
+	 * @param logger The logger returned by attach
+	 */
+	static void detach(final Logger logger) {
+		logger.getLoggerContext().stop();
+	}
+
+	/**
+	 * Logs one event of the payload
+	 * @param logger The logger
+	 * @param payload The payload
+	 * @param exception Exception for the exception payload
+	 */
+	static void log(final Logger logger, final BenchmarkPayload payload, final Throwable exception) {
+		if (payload == BenchmarkPayload.EXCEPTION) {
+			logger.error("request {} failed", "abc-123", exception);
+		} else {
+			logger.info("request {} took {} ms", "abc-123", 42);
+		}
+	}
+
+	/**
+	 * Builds a standalone event of the payload with its caller data already computed
+	 * @param payload The payload
+	 * @return The event
+	 */
+	static LoggingEvent event(final BenchmarkPayload payload) {
+		Logger logger = new LoggerContext().getLogger("com.acme.benchmark.Service");
+
+		LoggingEvent event;
+
+		if (payload == BenchmarkPayload.EXCEPTION) {
+			event = new LoggingEvent(Logger.class.getName(), logger, Level.ERROR, "request {} failed", deepException(), new Object[]{"abc-123"});
+		} else {
+			event = new LoggingEvent(Logger.class.getName(), logger, Level.INFO, "request {} took {} ms", null, new Object[]{"abc-123", 42});
+		}
+
+		event.setMDCPropertyMap((payload == BenchmarkPayload.MDC) ? largeMdc() : new LinkedHashMap<String, String>());
+		event.setCallerData(new StackTraceElement[]{new StackTraceElement("com.acme.benchmark.Service", "handle", "Service.java", 42)});
+		event.prepareForDeferredProcessing();
+
+		return event;
+	}
+}
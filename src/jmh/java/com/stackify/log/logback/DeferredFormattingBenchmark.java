@@ -0,0 +1,95 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import ch.qos.logback.classic.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.MDC;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Application thread latency of unsynchronized logging, with the message formatted on the logging thread
+ * or deferred to the dispatcher thread.
+ *
+ * <p>
+ * Caller data extraction dominates when it is on, so the benchmark also runs without it.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DeferredFormattingBenchmark {
+
+	@Param({"false", "true"})
+	private String deferredFormatting;
+
+	@Param({"always", "never"})
+	private String callerData;
+
+	@Param({"PLAIN", "MDC", "EXCEPTION"})
+	private BenchmarkPayload payload;
+
+	private Logger logger;
+
+	private Throwable exception;
+
+	@Setup
+	public void setup() {
+		StackifyLogAppender appender = new StackifyLogAppender();
+		appender.setUnsynchronized("true");
+		appender.setDeferredFormatting(deferredFormatting);
+		appender.setCallerData(callerData);
+
+		logger = BenchmarkSupport.attach(appender);
+		exception = BenchmarkSupport.deepException();
+
+		MDC.clear();
+
+		if (payload == BenchmarkPayload.MDC) {
+			for (Map.Entry<String, String> entry : BenchmarkSupport.largeMdc().entrySet()) {
+				MDC.put(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		MDC.clear();
+		BenchmarkSupport.detach(logger);
+	}
+
+	@Benchmark
+	@Threads(1)
+	public void append() {
+		BenchmarkSupport.log(logger, payload, exception);
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import com.stackify.api.ErrorItem;
+import com.stackify.api.common.lang.Throwables;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converting a repeated exception shape to an error item, with and without the structural cache. The depth
+ * is the extra stack depth of each cause, so 256 stands for a framework exception with 200+ frames per cause.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ErrorItemBenchmark {
+
+	/**
+	 * Distinct exception instances of the same shape, as in an error storm
+	 */
+	private static final int INSTANCES = 16;
+
+	@Param({"throwables", "cache"})
+	private String converter;
+
+	@Param({"1", "4"})
+	private int causes;
+
+	@Param({"32", "256"})
+	private int depth;
+
+	private ErrorItemCache cache;
+
+	private Throwable[] throwables;
+
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		cache = new ErrorItemCache();
+		throwables = new Throwable[INSTANCES];
+
+		for (int i = 0; i < INSTANCES; ++i) {
+			throwables[i] = BenchmarkSupport.deepException(causes, depth);
+		}
+	}
+
+	@Benchmark
+	public ErrorItem toErrorItem() {
+		Throwable throwable = throwables[next];
+		next = (next + 1) % INSTANCES;
+
+		if ("cache".equals(converter)) {
+			return cache.toErrorItem("request abc-123 failed", throwable);
+		}
+
+		return Throwables.toErrorItem("request abc-123 failed", throwable);
+	}
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import ch.qos.logback.core.spi.ContextAwareBase;
+import com.stackify.api.EnvironmentDetail;
+import com.stackify.api.LogMsg;
+import com.stackify.api.common.ApiConfiguration;
+import com.stackify.api.common.mask.Masker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Time from queueing an error to the transport sending it, while another thread keeps the pipeline queue
+ * close to full with INFO messages and the endpoint takes 1 ms per batch.
+ *
+ * <p>
+ * With {@code errorQueueSize=0} errors share the one queue and wait behind the flood; otherwise they have
+ * a lane of their own.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ErrorLatencyBenchmark {
+
+	/**
+	 * Capacity of the INFO queue
+	 */
+	private static final int QUEUE_CAPACITY = 10000;
+
+	/**
+	 * The flood keeps the queue this full, so no error is dropped in either mode
+	 */
+	private static final int FLOOD_BACKLOG = QUEUE_CAPACITY - 100;
+
+	/**
+	 * Simulated endpoint time per batch
+	 */
+	private static final long SEND_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	@Param({"0", "1000"})
+	private int errorQueueSize;
+
+	private LogPipeline pipeline;
+
+	private SlowTransport transport;
+
+	private Thread flood;
+
+	private volatile boolean flooding;
+
+	private long sequence;
+
+	@Setup
+	public void setup() {
+		BenchmarkSupport.silenceInternalLogging();
+
+		PipelineConfig config = new PipelineConfig();
+		config.setQueueCapacity(QUEUE_CAPACITY);
+		config.setErrorQueueCapacity(errorQueueSize);
+		config.setFlushIntervalMillis(20);
+		config.setCompressionMinBytes(Integer.MAX_VALUE);
+
+		EnvironmentDetail envDetail = EnvironmentDetail.newBuilder().deviceName("localhost").appName("benchmark").configuredAppName("benchmark").configuredEnvironmentName("benchmark").build();
+		ApiConfiguration apiConfig = ApiConfiguration.newBuilder().apiUrl(BenchmarkSupport.UNREACHABLE_API_URL).apiKey("benchmark").envDetail(envDetail).build();
+
+		pipeline = new LogPipeline("benchmark", new ILoggingEventAdapter(envDetail), new Masker(), false, config, new ContextAwareBase());
+		pipeline.activate(apiConfig);
+
+		transport = new SlowTransport();
+		pipeline.setTransport(transport);
+
+		flooding = true;
+
+		flood = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for (long i = 0; flooding; ++i) {
+					if (pipeline.getQueueSize() < FLOOD_BACKLOG) {
+						pipeline.enqueue(new LogMsg("info-" + i, null, null, "flood", System.currentTimeMillis(), "INFO", null, null, null, null, null));
+					} else {
+						LockSupport.parkNanos(10000);
+					}
+				}
+			}
+		}, "flood");
+
+		flood.setDaemon(true);
+		flood.start();
+	}
+
+	@TearDown
+	public void tearDown() throws InterruptedException {
+		flooding = false;
+		flood.join();
+		pipeline.close();
+	}
+
+	@Benchmark
+	@Threads(1)
+	public long ingestError() {
+		long id = ++sequence;
+		pipeline.enqueue(new LogMsg("error-" + id + ";", null, null, "main", System.currentTimeMillis(), "ERROR", null, null, null, null, null));
+
+		while (transport.lastError < id) {
+			LockSupport.parkNanos(10000);
+		}
+
+		return id;
+	}
+
+	/**
+	 * Endpoint that takes a fixed time per batch and records the last error it has seen
+	 */
+	private static class SlowTransport implements PayloadTransport {
+
+		private volatile long lastError;
+
+		@Override
+		public void send(final BatchBuffer payload, final boolean gzip) {
+			String json = new String(payload.toByteArray(), UTF_8);
+
+			for (int i = json.indexOf("error-"); 0 <= i; i = json.indexOf("error-", i + 1)) {
+				long id = Long.parseLong(json.substring(i + 6, json.indexOf(';', i)));
+				lastError = Math.max(lastError, id);
+			}
+
+			LockSupport.parkNanos(SEND_NANOS);
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import com.stackify.api.EnvironmentDetail;
+import com.stackify.api.LogMsg;
+import com.stackify.api.StackifyError;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Event conversion cost of ILoggingEventAdapter, without the appender or transport
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EventAdapterBenchmark {
+
+	@Param({"PLAIN", "MDC", "EXCEPTION"})
+	private BenchmarkPayload payload;
+
+	private ILoggingEventAdapter adapter;
+
+	private ILoggingEvent event;
+
+	private Throwable exception;
+
+	@Setup
+	public void setup() {
+		EnvironmentDetail envDetail = EnvironmentDetail.newBuilder()
+				.deviceName("benchmark")
+				.configuredAppName("benchmark")
+				.configuredEnvironmentName("benchmark")
+				.build();
+
+		adapter = new ILoggingEventAdapter(envDetail);
+		event = BenchmarkSupport.event(payload);
+		exception = adapter.getThrowable(event);
+	}
+
+	@Benchmark
+	public LogMsg getLogMsg() {
+		return adapter.getLogMsg(event, null);
+	}
+
+	@Benchmark
+	public StackifyError getStackifyError() {
+		return adapter.getStackifyError(event, exception);
+	}
+}
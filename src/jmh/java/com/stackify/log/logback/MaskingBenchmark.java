@@ -0,0 +1,100 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import com.stackify.api.common.mask.Masker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Masking one log line with the regex-only Masker and with the prefiltering masker
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MaskingBenchmark {
+
+	/**
+	 * Typical log lines, most of which contain nothing to mask
+	 */
+	private static final String[] CLEAN = {
+		"GET /api/orders returned 200 in 12 ms",
+		"Refreshing user session for tenant acme",
+		"Connection pool stats: active=4, idle=6, waiting=0",
+		"Cache miss for key product:recommendations:eu-west",
+		"Scheduled job reindex finished"
+	};
+
+	/**
+	 * Lines with a credit card number, SSN or IP address
+	 */
+	private static final String[] SENSITIVE = {
+		"payment for card 4111111111111111 declined",
+		"customer ssn 123-45-6789 verified",
+		"login from 192.168.10.42 rejected"
+	};
+
+	@Param({"regex", "prefilter"})
+	private String masker;
+
+	@Param({"clean", "sensitive"})
+	private String lines;
+
+	@Param({"default", "all"})
+	private String masks;
+
+	private Masker target;
+
+	private String[] values;
+
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		target = "prefilter".equals(masker) ? new PrefilterMasker() : new Masker();
+		target.addMask(Masker.MASK_CREDITCARD);
+		target.addMask(Masker.MASK_SSN);
+
+		if ("all".equals(masks)) {
+			target.addMask(Masker.MASK_IP);
+			target.addMask(Masker.MASK_EMAIL);
+		}
+
+		values = "clean".equals(lines) ? CLEAN : SENSITIVE;
+	}
+
+	@Benchmark
+	public String mask() {
+		String value = values[next];
+		next = (next + 1) % values.length;
+		return target.mask(value);
+	}
+}
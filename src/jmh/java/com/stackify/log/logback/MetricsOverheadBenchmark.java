@@ -0,0 +1,84 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the per-event instrumentation: the append and adapter sections timed the way the appender times
+ * them, with and without metrics, on one thread and contended.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsOverheadBenchmark {
+
+	@Param({"false", "true"})
+	private boolean enabled;
+
+	private AppenderMetrics metrics;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		metrics = enabled ? new AppenderMetrics() : null;
+	}
+
+	@Benchmark
+	public long instrument() {
+		return record();
+	}
+
+	@Benchmark
+	@Threads(8)
+	public long instrumentContended() {
+		return record();
+	}
+
+	private long record() {
+		AppenderMetrics m = metrics;
+
+		if (m == null) {
+			return 0;
+		}
+
+		long start = System.nanoTime();
+		long adapterStart = System.nanoTime();
+		long adapterNanos = System.nanoTime() - adapterStart;
+		m.recordAdapter(adapterNanos);
+
+		long appendNanos = System.nanoTime() - start;
+		m.recordAppend(appendNanos);
+
+		return appendNanos;
+	}
+}
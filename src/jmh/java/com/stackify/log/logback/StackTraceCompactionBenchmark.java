@@ -0,0 +1,106 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stackify.api.ErrorItem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converting and serializing an exception chain with and without stack trace compaction. Each cause is thrown
+ * 8 frames deeper than its enclosing exception; the JMH harness frames below the benchmark stand in for
+ * framework frames. Converting never hits the shape cache, so it includes the compaction. The size of the
+ * serialized error item is printed at setup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StackTraceCompactionBenchmark {
+
+	@Param({"none", "compact"})
+	private String compaction;
+
+	@Param({"1", "4"})
+	private int causes;
+
+	@Param({"32", "256"})
+	private int depth;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private ErrorItemCache converter;
+
+	private Throwable throwable;
+
+	private ErrorItem errorItem;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		StackTraceCompactor compactor = "compact".equals(compaction)
+				? new StackTraceCompactor(true, StackTraceCompactor.parsePackages("org.openjdk.jmh, sun.reflect, java.lang.reflect, java.util.concurrent"), null, 64, 0)
+				: StackTraceCompactor.NONE;
+
+		converter = new ErrorItemCache(0, compactor);
+		throwable = deeperCauses(causes, depth);
+		errorItem = converter.toErrorItem("request abc-123 failed", throwable);
+
+		System.out.printf("%nPayload: %,d bytes%n", objectMapper.writeValueAsBytes(errorItem).length);
+	}
+
+	@Benchmark
+	public ErrorItem convert() {
+		return converter.toErrorItem("request abc-123 failed", throwable);
+	}
+
+	@Benchmark
+	public byte[] serialize() throws Exception {
+		return objectMapper.writeValueAsBytes(errorItem);
+	}
+
+	private static Throwable deeperCauses(final int causes, final int depth) {
+		Throwable cause = null;
+
+		for (int i = 0; i < causes; ++i) {
+			cause = throwAt(depth + 8 * (causes - 1 - i), "failure " + i, cause);
+		}
+
+		return cause;
+	}
+
+	private static Throwable throwAt(final int depth, final String message, final Throwable cause) {
+		if (0 < depth) {
+			return throwAt(depth - 1, message, cause);
+		}
+
+		return new IllegalStateException(message, cause);
+	}
+}
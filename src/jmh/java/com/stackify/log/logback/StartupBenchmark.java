@@ -0,0 +1,95 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time the configuring thread spends in a cold appender start, with the setup done inline or in the background.
+ *
+ * <p>
+ * Each fork measures a single cold start, class loading included, as at application startup. The first
+ * event captured by the appender is left out: it pays for loading the request context classes on the
+ * logging thread in either mode.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+
+	@Param({"false", "true"})
+	private String asyncStart;
+
+	private LoggerContext context;
+
+	private Logger logger;
+
+	/**
+	 * Logback itself is set up before the measurement
+	 */
+	@Setup(Level.Iteration)
+	public void setup() {
+		BenchmarkSupport.silenceInternalLogging();
+
+		context = new LoggerContext();
+		logger = context.getLogger("com.acme.benchmark.Service");
+		logger.setLevel(ch.qos.logback.classic.Level.INFO);
+		logger.setAdditive(false);
+
+		BenchmarkSupport.log(logger, BenchmarkPayload.PLAIN, null);
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() {
+		context.stop();
+	}
+
+	@Benchmark
+	public Logger start() {
+		StackifyLogAppender appender = new StackifyLogAppender();
+		appender.setContext(context);
+		appender.setApiUrl(BenchmarkSupport.UNREACHABLE_API_URL);
+		appender.setApiKey("benchmark");
+		appender.setApplication("benchmark");
+		appender.setEnvironment("benchmark");
+		appender.setMaskEnabled("true");
+		appender.setAsyncStart(asyncStart);
+		appender.start();
+
+		logger.addAppender(appender);
+
+		return logger;
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import com.stackify.api.EnvironmentDetail;
+import com.stackify.api.LogMsg;
+import com.stackify.api.LogMsgGroup;
+import com.stackify.api.common.ApiConfiguration;
+import com.stackify.api.common.proto.LogMsgGroupConverter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of sending one batch to a local endpoint: a new HTTP request over loopback TCP per batch, or a
+ * request over the persistent Unix domain socket to the agent.
+ *
+ * <p>
+ * The agent socket needs Java 16 or later; on older JVMs the {@code agent} runs fail in setup.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransportBenchmark {
+
+	@Param({"http", "agent"})
+	private String transport;
+
+	@Param({"10", "100"})
+	private int batchSize;
+
+	private PayloadTransport sender;
+
+	private BatchBuffer payload;
+
+	private HttpServer server;
+
+	private StubAgent agent;
+
+	private File directory;
+
+	@Setup
+	public void setup() throws Exception {
+		List<LogMsg> msgs = new ArrayList<LogMsg>(batchSize);
+
+		for (int i = 0; i < batchSize; ++i) {
+			msgs.add(new LogMsg("benchmark message " + i, null, null, "main", System.currentTimeMillis(), "INFO", null, null, null, null, null));
+		}
+
+		LogMsgGroup group = LogMsgGroup.newBuilder().env("benchmark").serverName("localhost").appName("benchmark").msgs(msgs).build();
+		payload = BatchBuffer.wrap(LogMsgGroupConverter.convert(group).toByteArray());
+
+		if ("agent".equals(transport)) {
+			directory = Files.createTempDirectory("stackify").toFile();
+			agent = new StubAgent(new File(directory, "agent.sock"));
+			agent.setRecording(false);
+			sender = new AgentSocketTransport(agent.getPath());
+		} else {
+			// without it the stub's split header and body writes wait for a delayed ACK
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+
+			server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+			server.createContext("/", new OkHandler());
+			server.start();
+
+			EnvironmentDetail envDetail = EnvironmentDetail.newBuilder().deviceName("localhost").appName("benchmark").build();
+			ApiConfiguration apiConfig = ApiConfiguration.newBuilder()
+					.apiUrl("http://127.0.0.1:" + server.getAddress().getPort())
+					.apiKey("benchmark")
+					.envDetail(envDetail)
+					.build();
+
+			sender = new HttpPayloadTransport(apiConfig);
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		sender.close();
+
+		if (agent != null) {
+			agent.stop();
+			directory.delete();
+		}
+
+		if (server != null) {
+			server.stop(0);
+		}
+	}
+
+	@Benchmark
+	@Threads(1)
+	public void send() throws Exception {
+		sender.send(payload, false);
+	}
+
+	/**
+	 * Accepts every request
+	 */
+	private static class OkHandler implements HttpHandler {
+
+		@Override
+		public void handle(final HttpExchange exchange) throws IOException {
+			InputStream in = exchange.getRequestBody();
+			byte[] buffer = new byte[8192];
+
+			while (in.read(buffer) != -1) {
+				// drain
+			}
+
+			byte[] body = "{}".getBytes("UTF-8");
+			exchange.sendResponseHeaders(200, body.length);
+
+			OutputStream out = exchange.getResponseBody();
+			out.write(body);
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import com.stackify.api.LogMsg;
+import com.stackify.api.LogMsgGroup;
+import com.stackify.api.common.log.LogTransportPreProcessor;
+import com.stackify.api.common.mask.Masker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of masking and skipJson tagging on a full batch before it is sent
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransportPreProcessorBenchmark {
+
+	/**
+	 * Messages per batch (the collector's maximum batch size)
+	 */
+	private static final int BATCH_SIZE = 100;
+
+	@Param({"false", "true"})
+	private String masking;
+
+	@Param({"false", "true"})
+	private String skipJson;
+
+	private LogTransportPreProcessor preProcessor;
+
+	private LogMsgGroup group;
+
+	@Setup(Level.Trial)
+	public void setupPreProcessor() {
+		Masker masker = new Masker();
+
+		if (Boolean.parseBoolean(masking)) {
+			masker.addMask(Masker.MASK_CREDITCARD);
+			masker.addMask(Masker.MASK_SSN);
+		} else {
+			masker.clearMasks();
+		}
+
+		preProcessor = new LogTransportPreProcessor(masker, Boolean.parseBoolean(skipJson));
+	}
+
+	/**
+	 * The pre-processor rewrites the batch in place, so every invocation gets a fresh one
+	 */
+	@Setup(Level.Invocation)
+	public void setupGroup() {
+		List<LogMsg> msgs = new ArrayList<LogMsg>(BATCH_SIZE);
+
+		for (int i = 0; i < BATCH_SIZE; ++i) {
+			msgs.add(LogMsg.newBuilder()
+					.msg("payment " + i + " for card 4111 1111 1111 1111 {\"amount\":" + i + "}")
+					.data("{\"customer\":\"c-" + i + "\",\"ssn\":\"123-45-6789\"}")
+					.th("main")
+					.level("info")
+					.epochMs(System.currentTimeMillis())
+					.build());
+		}
+
+		group = LogMsgGroup.newBuilder().msgs(msgs).build();
+	}
+
+	@Benchmark
+	public LogMsgGroup preProcess() {
+		preProcessor.execute(group);
+		return group;
+	}
+}
@@ -0,0 +1,461 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load and soak test: drives StackifyLogAppender from several threads against a StubIngestServer and
+ * reports throughput, append latency, heap and GC behavior and lost messages.
+ *
+ * <p>
+ * Options are given as key=value arguments (see DEFAULTS); options starting with {@code appender.} set the
+ * appender configuration parameter of the same name, e.g. {@code appender.adaptiveFlush=true}. Run it with
+ * {@code mvn -P loadtest -DskipTests verify -Dloadtest.args="threads=8 durationSeconds=600"}.
+ */
+public class LoadTest {
+
+	/**
+	 * Options and their defaults
+	 */
+	private static final Map<String, String> DEFAULTS = new LinkedHashMap<String, String>();
+
+	static {
+		// load
+		DEFAULTS.put("threads", "4");
+		DEFAULTS.put("rate", "0");
+		DEFAULTS.put("warmupSeconds", "10");
+		DEFAULTS.put("durationSeconds", "60");
+		DEFAULTS.put("reportSeconds", "10");
+		DEFAULTS.put("drainSeconds", "30");
+
+		// event mix, in percent of the events
+		DEFAULTS.put("mdcPercent", "30");
+		DEFAULTS.put("exceptionPercent", "5");
+		DEFAULTS.put("maskedPercent", "20");
+
+		// stub endpoint
+		DEFAULTS.put("latencyMillis", "20");
+		DEFAULTS.put("errorPercent", "0");
+		DEFAULTS.put("maxRequestsPerSecond", "0");
+	}
+
+	private static final long MB = 1024 * 1024;
+
+	private final Map<String, String> options;
+
+	private final Map<String, String> appenderOptions = new LinkedHashMap<String, String>();
+
+	/**
+	 * Events logged
+	 */
+	private final LongAdder events = new LongAdder();
+
+	/**
+	 * Append latency since the last report
+	 */
+	private final AtomicReference<Histogram> intervalLatency = new AtomicReference<Histogram>(new Histogram());
+
+	/**
+	 * Append latency after the warmup (null during the warmup)
+	 */
+	private volatile Histogram latency;
+
+	private volatile boolean running = true;
+
+	/**
+	 * Exceptions logged, built once so building them is not measured
+	 */
+	private final Throwable[] exceptions = new Throwable[4];
+
+	private long maxHeapUsed;
+
+	/**
+	 * @param options Options, with the defaults filled in
+	 */
+	private LoadTest(final Map<String, String> options) {
+		this.options = options;
+
+		for (Map.Entry<String, String> option : options.entrySet()) {
+			if (option.getKey().startsWith("appender.")) {
+				appenderOptions.put(option.getKey().substring("appender.".length()), option.getValue());
+			}
+		}
+
+		for (int i = 0; i < exceptions.length; ++i) {
+			exceptions[i] = nested(i, 24);
+		}
+	}
+
+	public static void main(final String[] args) throws Exception {
+		Map<String, String> options = new LinkedHashMap<String, String>(DEFAULTS);
+
+		for (String arg : args) {
+			int eq = arg.indexOf('=');
+
+			if ((eq < 1) || (!DEFAULTS.containsKey(arg.substring(0, eq)) && !arg.startsWith("appender."))) {
+				System.err.println("Unknown option " + arg + ", options (key=value) are " + DEFAULTS.keySet() + " and appender.<parameter>");
+				System.exit(2);
+			}
+
+			if (arg.startsWith("appender.") && (setter(arg.substring("appender.".length(), eq)) == null)) {
+				System.err.println("Unknown appender configuration parameter " + arg.substring(0, eq));
+				System.exit(2);
+			}
+
+			options.put(arg.substring(0, eq), arg.substring(eq + 1));
+		}
+
+		new LoadTest(options).run();
+	}
+
+	private void run() throws Exception {
+		((Logger) LoggerFactory.getLogger("com.stackify")).setLevel(Level.OFF);
+		((Logger) LoggerFactory.getLogger("org.apache")).setLevel(Level.OFF);
+
+		StubIngestServer server = new StubIngestServer(longOption("latencyMillis"), intOption("errorPercent"), longOption("maxRequestsPerSecond"));
+		server.start();
+
+		try {
+			LoggerContext context = new LoggerContext();
+			StackifyLogAppender appender = newAppender(context, server.getUrl());
+
+			Logger logger = context.getLogger("com.acme.loadtest.OrderService");
+			logger.setLevel(Level.INFO);
+			logger.setAdditive(false);
+			logger.addAppender(appender);
+
+			System.out.println("Options " + options);
+
+			int threads = intOption("threads");
+			long rate = longOption("rate");
+			Thread[] workers = new Thread[threads];
+
+			for (int i = 0; i < threads; ++i) {
+				workers[i] = new Thread(worker(logger, (rate <= 0) ? 0 : TimeUnit.SECONDS.toNanos(threads) / rate), "LoadTest-" + i);
+				workers[i].start();
+			}
+
+			long warmupSeconds = longOption("warmupSeconds");
+			long durationSeconds = longOption("durationSeconds");
+			long reportNanos = TimeUnit.SECONDS.toNanos(longOption("reportSeconds"));
+
+			long start = System.nanoTime();
+			long measureStart = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+			long end = measureStart + TimeUnit.SECONDS.toNanos(durationSeconds);
+			long measureEvents = 0;
+			long measureMessages = 0;
+			long[] gcStart = null;
+
+			Interval last = new Interval(start, 0, server.getMessageCount(), gc());
+
+			for (long next = start + reportNanos; ; next += reportNanos) {
+				long now = System.nanoTime();
+
+				if ((latency == null) && (measureStart <= now)) {
+					latency = new Histogram();
+					measureEvents = events.sum();
+					measureMessages = server.getMessageCount();
+					gcStart = gc();
+				}
+
+				if (end <= now) {
+					break;
+				}
+
+				LockSupport.parkNanos(Math.min(next, (latency == null) ? measureStart : end) - now);
+
+				if (next <= System.nanoTime()) {
+					last = report(last, start, appender, server);
+				} else {
+					next -= reportNanos;
+				}
+			}
+
+			running = false;
+
+			for (Thread worker : workers) {
+				worker.join();
+			}
+
+			maxHeapUsed = Math.max(maxHeapUsed, ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+
+			long totalEvents = events.sum();
+			long measured = totalEvents - measureEvents;
+			long receivedDuringMeasurement = server.getMessageCount() - measureMessages;
+			long[] gcEnd = gc();
+			Histogram.Snapshot appendLatency = latency.snapshot();
+
+			// stop sends what is still queued
+			long stopStart = System.nanoTime();
+			context.stop();
+			long stopMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - stopStart);
+
+			awaitQuiet(server, TimeUnit.SECONDS.toMillis(longOption("drainSeconds")));
+
+			AppenderMetrics metrics = appender.getAppenderMetrics();
+
+			System.out.println();
+			System.out.println("Summary (" + durationSeconds + " s after " + warmupSeconds + " s warmup, " + threads + " threads)");
+			System.out.printf("  sustained      %,.0f events/s logged, %,.0f messages/s received%n", measured / (double) durationSeconds, receivedDuringMeasurement / (double) durationSeconds);
+			System.out.printf("  append latency p50 %s, p99 %s, p99.9 %s, max %s%n", micros(appendLatency.getP50()), micros(appendLatency.getP99()), micros(appendLatency.getP999()), micros(appendLatency.getMax()));
+			System.out.printf("  heap           max used %,d MB of %,d MB%n", maxHeapUsed / MB, ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getMax() / MB);
+			System.out.printf("  gc             %,d collections, %,d ms (%.2f%% of the time)%n", gcEnd[0] - gcStart[0], gcEnd[1] - gcStart[1], 100.0 * (gcEnd[1] - gcStart[1]) / TimeUnit.SECONDS.toMillis(durationSeconds));
+			System.out.printf("  endpoint       %,d batches, %,d rejected (errors), %,d rejected (cap), %,d KB accepted%n", server.getRequestCount(), server.getFailedCount(), server.getCappedCount(), server.getByteCount() / 1024);
+			System.out.printf("  stop           %,d ms%n", stopMillis);
+			System.out.printf("  messages       %,d logged, %,d received%n", totalEvents, server.getMessageCount());
+
+			if (metrics != null) {
+				System.out.printf("  appender       %,d dropped, %,d rate limited, %,d aggregated%n", metrics.getDroppedCount(), metrics.getRateLimitedCount(), metrics.getAggregatedCount());
+			}
+
+			System.out.printf("  lost           %,d%n", Math.max(0, totalEvents - server.getMessageCount()));
+		} finally {
+			server.stop();
+		}
+	}
+
+	/**
+	 * @param context Logger context
+	 * @param apiUrl Stub endpoint
+	 * @return The started appender
+	 * @throws Exception If an appender option is invalid
+	 */
+	private StackifyLogAppender newAppender(final LoggerContext context, final String apiUrl) throws Exception {
+		StackifyLogAppender appender = new StackifyLogAppender();
+		appender.setContext(context);
+		appender.setApiUrl(apiUrl);
+		appender.setApiKey("loadtest");
+		appender.setApplication("loadtest");
+		appender.setEnvironment("loadtest");
+		appender.setMaskEnabled("true");
+		appender.setMetrics("true");
+
+		// the events are logged from this package
+		appender.setAllowComDotStackify("true");
+
+		for (Map.Entry<String, String> option : appenderOptions.entrySet()) {
+			setter(option.getKey()).invoke(appender, option.getValue());
+		}
+
+		appender.start();
+		return appender;
+	}
+
+	/**
+	 * @param name Appender configuration parameter
+	 * @return Its setter, or null if there is no such parameter
+	 */
+	private static Method setter(final String name) {
+		if (name.isEmpty()) {
+			return null;
+		}
+
+		try {
+			return StackifyLogAppender.class.getMethod("set" + Character.toUpperCase(name.charAt(0)) + name.substring(1), String.class);
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @param logger The logger
+	 * @param intervalNanos Time between events of one thread (0 for as fast as possible)
+	 * @return Loop logging the event mix until the test is over
+	 */
+	private Runnable worker(final Logger logger, final long intervalNanos) {
+		final int mdcPercent = intOption("mdcPercent");
+		final int exceptionPercent = intOption("exceptionPercent");
+		final int maskedPercent = intOption("maskedPercent");
+
+		return new Runnable() {
+			@Override
+			public void run() {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				long next = System.nanoTime();
+
+				for (long i = 0; running; ++i) {
+					if (0 < intervalNanos) {
+						next += intervalNanos;
+						LockSupport.parkNanos(next - System.nanoTime());
+					}
+
+					boolean mdc = random.nextInt(100) < mdcPercent;
+
+					if (mdc) {
+						MDC.put("requestId", Long.toHexString(random.nextLong()));
+						MDC.put("userId", "user-" + random.nextInt(1000));
+						MDC.put("tenant", "tenant-" + random.nextInt(10));
+					}
+
+					int kind = random.nextInt(100);
+					long start = System.nanoTime();
+
+					if (kind < exceptionPercent) {
+						logger.error("Order {} failed", i, exceptions[random.nextInt(exceptions.length)]);
+					} else if (kind < exceptionPercent + maskedPercent) {
+						logger.info("Charged card 4111-1111-1111-1111 for customer 078-05-1120 ({}), order {}", "jane.doe@example.com", i);
+					} else {
+						logger.info("Processed order {} in {} ms", i, random.nextInt(500));
+					}
+
+					long nanos = System.nanoTime() - start;
+
+					if (mdc) {
+						MDC.clear();
+					}
+
+					events.increment();
+					intervalLatency.get().record(nanos);
+
+					Histogram measured = latency;
+
+					if (measured != null) {
+						measured.record(nanos);
+					}
+				}
+			}
+		};
+	}
+
+	/**
+	 * Prints one progress line
+	 * @param last Previous interval
+	 * @param start Start of the test
+	 * @param appender The appender
+	 * @param server The stub endpoint
+	 * @return This interval
+	 */
+	private Interval report(final Interval last, final long start, final StackifyLogAppender appender, final StubIngestServer server) {
+		long now = System.nanoTime();
+		Interval current = new Interval(now, events.sum(), server.getMessageCount(), gc());
+		Histogram.Snapshot snapshot = intervalLatency.getAndSet(new Histogram()).snapshot();
+
+		double seconds = (now - last.nanos) / 1e9;
+		MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+		maxHeapUsed = Math.max(maxHeapUsed, heap.getUsed());
+
+		AppenderMetrics metrics = appender.getAppenderMetrics();
+
+		System.out.printf("[%5ds] %,10.0f events/s %,10.0f received/s | append p50 %s p99 %s p99.9 %s | heap %,d MB | gc %,d (%,d ms) | queue %,d dropped %,d%n",
+				TimeUnit.NANOSECONDS.toSeconds(now - start),
+				(current.events - last.events) / seconds,
+				(current.messages - last.messages) / seconds,
+				micros(snapshot.getP50()), micros(snapshot.getP99()), micros(snapshot.getP999()),
+				heap.getUsed() / MB,
+				current.gc[0] - last.gc[0], current.gc[1] - last.gc[1],
+				(metrics == null) ? 0 : metrics.getQueueDepth(),
+				(metrics == null) ? 0 : metrics.getDroppedCount());
+
+		return current;
+	}
+
+	/**
+	 * Waits until the endpoint received no message for a second, or the timeout
+	 * @param server The stub endpoint
+	 * @param timeoutMillis Longest wait
+	 * @throws InterruptedException If interrupted
+	 */
+	private static void awaitQuiet(final StubIngestServer server, final long timeoutMillis) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		long received = -1;
+
+		while ((received != server.getMessageCount()) && (System.currentTimeMillis() < deadline)) {
+			received = server.getMessageCount();
+			Thread.sleep(1000);
+		}
+	}
+
+	/**
+	 * @return Collection count and time of all collectors
+	 */
+	private static long[] gc() {
+		long[] totals = new long[2];
+
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			totals[0] += Math.max(0, collector.getCollectionCount());
+			totals[1] += Math.max(0, collector.getCollectionTime());
+		}
+
+		return totals;
+	}
+
+	/**
+	 * @param nanos Nanoseconds
+	 * @return Microseconds with one decimal
+	 */
+	private static String micros(final long nanos) {
+		return String.format("%.1f us", nanos / 1000.0);
+	}
+
+	private static Throwable nested(final int causes, final int depth) {
+		Throwable cause = (causes == 0) ? null : nested(causes - 1, depth);
+		return throwAt(depth, "failure " + causes, cause);
+	}
+
+	private static Throwable throwAt(final int depth, final String message, final Throwable cause) {
+		if (depth == 0) {
+			return new IllegalStateException(message, cause);
+		}
+
+		return throwAt(depth - 1, message, cause);
+	}
+
+	private int intOption(final String name) {
+		return Integer.parseInt(options.get(name));
+	}
+
+	private long longOption(final String name) {
+		return Long.parseLong(options.get(name));
+	}
+
+	/**
+	 * Counters at the end of a report interval
+	 */
+	private static class Interval {
+
+		private final long nanos;
+
+		private final long events;
+
+		private final long messages;
+
+		private final long[] gc;
+
+		private Interval(final long nanos, final long events, final long messages, final long[] gc) {
+			this.nanos = nanos;
+			this.events = events;
+			this.messages = messages;
+			this.gc = gc;
+		}
+	}
+}
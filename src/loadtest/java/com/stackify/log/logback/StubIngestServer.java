@@ -0,0 +1,219 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Local stand-in for the Stackify ingestion API with a configurable latency, error rate and request cap.
+ *
+ * <p>
+ * Every request waits for the latency first. Log batches are then rejected with a 503 beyond the request
+ * cap or with a 500 at the error rate; accepted batches are parsed and their messages counted. Any other
+ * request (e.g. the application identity lookup) gets an empty JSON object.
+ */
+class StubIngestServer implements HttpHandler {
+
+	private final long latencyNanos;
+
+	private final int errorPercent;
+
+	/**
+	 * Request cap (or null for none)
+	 */
+	private final TokenBucket cap;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private final AtomicLong requests = new AtomicLong();
+
+	private final AtomicLong failed = new AtomicLong();
+
+	private final AtomicLong capped = new AtomicLong();
+
+	private final AtomicLong messages = new AtomicLong();
+
+	private final AtomicLong bytes = new AtomicLong();
+
+	private HttpServer server;
+
+	private ExecutorService handlers;
+
+	/**
+	 * @param latencyMillis Time every request takes
+	 * @param errorPercent Percentage of log batches rejected with a 500
+	 * @param maxRequestsPerSecond Log batches per second accepted (0 for no cap)
+	 */
+	StubIngestServer(final long latencyMillis, final int errorPercent, final long maxRequestsPerSecond) {
+		this.latencyNanos = TimeUnit.MILLISECONDS.toNanos(latencyMillis);
+		this.errorPercent = errorPercent;
+		this.cap = (0 < maxRequestsPerSecond) ? new TokenBucket(maxRequestsPerSecond, maxRequestsPerSecond) : null;
+	}
+
+	/**
+	 * Starts listening on an ephemeral loopback port
+	 * @throws IOException If the server cannot be started
+	 */
+	void start() throws IOException {
+		// without it the split header and body writes wait for a delayed ACK
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+
+		handlers = Executors.newFixedThreadPool(16, new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable r) {
+				Thread thread = new Thread(r, "StubIngestServer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", this);
+		server.setExecutor(handlers);
+		server.start();
+	}
+
+	void stop() {
+		server.stop(0);
+		handlers.shutdownNow();
+	}
+
+	/**
+	 * @return Base URL to configure as the appender's apiUrl
+	 */
+	String getUrl() {
+		return "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	/**
+	 * @return Number of log batches received, accepted or not
+	 */
+	long getRequestCount() {
+		return requests.get();
+	}
+
+	/**
+	 * @return Number of log batches rejected with a 500
+	 */
+	long getFailedCount() {
+		return failed.get();
+	}
+
+	/**
+	 * @return Number of log batches rejected with a 503 for exceeding the request cap
+	 */
+	long getCappedCount() {
+		return capped.get();
+	}
+
+	/**
+	 * @return Number of messages in accepted log batches
+	 */
+	long getMessageCount() {
+		return messages.get();
+	}
+
+	/**
+	 * @return Number of bytes of accepted log batches, as sent
+	 */
+	long getByteCount() {
+		return bytes.get();
+	}
+
+	@Override
+	public void handle(final HttpExchange exchange) throws IOException {
+		try {
+			byte[] body = read(exchange.getRequestBody());
+
+			if (0 < latencyNanos) {
+				Thread.sleep(TimeUnit.NANOSECONDS.toMillis(latencyNanos), (int) (latencyNanos % 1000000));
+			}
+
+			if (!exchange.getRequestURI().getPath().equals("/Log/Save")) {
+				respond(exchange, 200);
+				return;
+			}
+
+			requests.incrementAndGet();
+
+			if ((cap != null) && !cap.tryAcquire()) {
+				capped.incrementAndGet();
+				respond(exchange, 503);
+				return;
+			}
+
+			if ((0 < errorPercent) && (ThreadLocalRandom.current().nextInt(100) < errorPercent)) {
+				failed.incrementAndGet();
+				respond(exchange, 500);
+				return;
+			}
+
+			InputStream in = new ByteArrayInputStream(body);
+			JsonNode group = objectMapper.readTree("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding")) ? new GZIPInputStream(in) : in);
+			JsonNode msgs = group.get("Msgs");
+
+			messages.addAndGet((msgs == null) ? 0 : msgs.size());
+			bytes.addAndGet(body.length);
+
+			respond(exchange, 200);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			respond(exchange, 503);
+		}
+	}
+
+	private static byte[] read(final InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+
+		for (int n = in.read(buffer); 0 <= n; n = in.read(buffer)) {
+			out.write(buffer, 0, n);
+		}
+
+		return out.toByteArray();
+	}
+
+	private static void respond(final HttpExchange exchange, final int status) throws IOException {
+		byte[] response = "{}".getBytes("UTF-8");
+		exchange.sendResponseHeaders(status, response.length);
+
+		OutputStream out = exchange.getResponseBody();
+
+		try {
+			out.write(response);
+		} finally {
+			out.close();
+		}
+	}
+}
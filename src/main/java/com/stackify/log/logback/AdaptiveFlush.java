@@ -0,0 +1,151 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batch size and linger time of the pipeline, adjusted after each send in AIMD style.
+ *
+ * <p>
+ * While sends complete within the target time, the linger time shrinks additively, so messages wait less
+ * for the timer, and the batch size grows additively as long as more than a batch is waiting. A slow or
+ * failed send halves the batch size and doubles the linger time, so the endpoint gets fewer and smaller
+ * requests. Both stay within their bounds; with equal bounds they are fixed.
+ */
+class AdaptiveFlush {
+
+	/**
+	 * Number of additive steps between the bounds
+	 */
+	private static final int STEPS = 10;
+
+	private final int minBatch;
+
+	private final int maxBatch;
+
+	private final long minLingerMillis;
+
+	private final long maxLingerMillis;
+
+	/**
+	 * Sends slower than this count as congestion
+	 */
+	private final long targetSendNanos;
+
+	private final int batchStep;
+
+	private final long lingerStep;
+
+	/**
+	 * Current batch size
+	 */
+	private volatile int batchSize;
+
+	/**
+	 * Current linger time
+	 */
+	private volatile long lingerMillis;
+
+	/**
+	 * @param minBatch Smallest batch size
+	 * @param maxBatch Largest batch size
+	 * @param minLingerMillis Shortest linger time
+	 * @param maxLingerMillis Longest linger time
+	 * @param targetSendMillis Sends slower than this count as congestion
+	 */
+	AdaptiveFlush(final int minBatch, final int maxBatch, final long minLingerMillis, final long maxLingerMillis, final long targetSendMillis) {
+		if ((minBatch < 1) || (maxBatch < minBatch) || (minLingerMillis < 1) || (maxLingerMillis < minLingerMillis) || (targetSendMillis < 1)) {
+			throw new IllegalArgumentException("Invalid adaptive flush bounds: batch " + minBatch + "-" + maxBatch
+					+ ", linger " + minLingerMillis + "-" + maxLingerMillis + " ms, target " + targetSendMillis + " ms");
+		}
+
+		this.minBatch = minBatch;
+		this.maxBatch = maxBatch;
+		this.minLingerMillis = minLingerMillis;
+		this.maxLingerMillis = maxLingerMillis;
+		this.targetSendNanos = TimeUnit.MILLISECONDS.toNanos(targetSendMillis);
+		this.batchStep = Math.max(1, (maxBatch - minBatch) / STEPS);
+		this.lingerStep = Math.max(1, (maxLingerMillis - minLingerMillis) / STEPS);
+
+		// start cautiously, like after a congestion
+		this.batchSize = minBatch;
+		this.lingerMillis = maxLingerMillis;
+	}
+
+	/**
+	 * @param batch Batch size
+	 * @param lingerMillis Linger time
+	 * @return Fixed batch size and linger time
+	 */
+	static AdaptiveFlush fixed(final int batch, final long lingerMillis) {
+		return new AdaptiveFlush(batch, batch, lingerMillis, lingerMillis, Long.MAX_VALUE);
+	}
+
+	/**
+	 * @return Maximum number of messages per batch; a flush starts as soon as that many are waiting
+	 */
+	int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * @return Longest time messages wait for a batch to fill
+	 */
+	long getLingerMillis() {
+		return lingerMillis;
+	}
+
+	/**
+	 * @return Shortest linger time, how often to check whether the linger time is over
+	 */
+	long getMinLingerMillis() {
+		return minLingerMillis;
+	}
+
+	/**
+	 * Adjusts after a successful send (flush task only)
+	 * @param sendNanos Time the send took
+	 * @param backlog Number of messages still waiting
+	 */
+	void sent(final long sendNanos, final int backlog) {
+		if (targetSendNanos < sendNanos) {
+			decrease();
+			return;
+		}
+
+		lingerMillis = Math.max(minLingerMillis, lingerMillis - lingerStep);
+
+		if (batchSize <= backlog) {
+			batchSize = Math.min(maxBatch, batchSize + batchStep);
+		}
+	}
+
+	/**
+	 * Adjusts after a failed send (flush task only)
+	 */
+	void failed() {
+		decrease();
+	}
+
+	/**
+	 * Halves the batch size and doubles the linger time
+	 */
+	private void decrease() {
+		batchSize = Math.max(minBatch, batchSize / 2);
+		lingerMillis = Math.min(maxLingerMillis, lingerMillis * 2);
+	}
+}
@@ -0,0 +1,417 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import com.stackify.api.common.http.HttpException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Posts serialized batches to the local Stackify agent over one persistent Unix domain socket connection.
+ *
+ * <p>
+ * The agent speaks HTTP/1.1 on its socket, so each batch is framed by a request header carrying its length
+ * and written together with the header in a single gathering write. The connection is kept alive between
+ * batches and reopened on the next send after any failure; a send that fails on a reused connection before
+ * a response arrives is retried once on a fresh connection, since the agent may have closed an idle
+ * connection. Reads and writes time out instead of blocking forever.
+ *
+ * <p>
+ * Unix domain socket channels need Java 16 or later and are looked up reflectively, so the library still
+ * builds and runs on Java 8. Not thread safe; the pipeline only sends from its flush task.
+ */
+class AgentSocketTransport implements PayloadTransport {
+
+	/**
+	 * Agent log endpoint
+	 */
+	static final String LOG_PATH = "/log";
+
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+
+	private static final long CONNECT_TIMEOUT_MILLIS = 5000;
+
+	private static final long READ_TIMEOUT_MILLIS = 15000;
+
+	/**
+	 * Longest response header accepted
+	 */
+	private static final int MAX_HEADER_BYTES = 8192;
+
+	/**
+	 * SocketChannel.open(ProtocolFamily) (null before Java 16)
+	 */
+	private static final Method OPEN = method(SocketChannel.class, "open", ProtocolFamily.class);
+
+	/**
+	 * UnixDomainSocketAddress.of(String) (null before Java 16)
+	 */
+	private static final Method ADDRESS = method(className("java.net.UnixDomainSocketAddress"), "of", String.class);
+
+	/**
+	 * StandardProtocolFamily.UNIX (null before Java 16)
+	 */
+	private static final ProtocolFamily UNIX = unixFamily();
+
+	/**
+	 * Agent socket address
+	 */
+	private final SocketAddress address;
+
+	/**
+	 * Response buffer
+	 */
+	private final ByteBuffer response = ByteBuffer.allocate(MAX_HEADER_BYTES);
+
+	private SocketChannel channel;
+
+	private Selector selector;
+
+	/**
+	 * Number of batches sent on the current connection
+	 */
+	private int sentOnConnection;
+
+	/**
+	 * @param socketPath Agent socket path
+	 * @throws UnsupportedOperationException If the JVM has no Unix domain socket channels
+	 */
+	AgentSocketTransport(final String socketPath) {
+		this.address = address(socketPath);
+	}
+
+	/**
+	 * @return True if the JVM has Unix domain socket channels
+	 */
+	static boolean isAvailable() {
+		return (OPEN != null) && (ADDRESS != null) && (UNIX != null);
+	}
+
+	/**
+	 * @param socketPath Socket path
+	 * @return Unix domain socket address
+	 * @throws UnsupportedOperationException If the JVM has no Unix domain socket channels
+	 */
+	static SocketAddress address(final String socketPath) {
+		if (!isAvailable()) {
+			throw new UnsupportedOperationException("Unix domain socket channels require Java 16 or later");
+		}
+
+		try {
+			return (SocketAddress) invoke(ADDRESS, socketPath);
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Invalid Stackify agent socket path: " + socketPath, e);
+		}
+	}
+
+	/**
+	 * @return Unix protocol family (or null before Java 16)
+	 */
+	static ProtocolFamily unix() {
+		return UNIX;
+	}
+
+	@Override
+	public void send(final BatchBuffer payload, final boolean gzip) throws Exception {
+		boolean reused = (channel != null);
+
+		try {
+			post(payload, gzip);
+		} catch (IOException e) {
+			disconnect();
+
+			if (!reused || (0 < response.position())) {
+				throw e;
+			}
+
+			post(payload, gzip);
+		}
+	}
+
+	@Override
+	public void close() {
+		disconnect();
+	}
+
+	/**
+	 * Sends one request and reads its response
+	 * @param payload The serialized batch
+	 * @param gzip True if the payload is gzip encoded
+	 * @throws IOException If the connection fails
+	 * @throws HttpException If the agent rejects the batch
+	 */
+	private void post(final BatchBuffer payload, final boolean gzip) throws IOException, HttpException {
+		connect();
+
+		response.clear();
+
+		String header = "POST " + LOG_PATH + " HTTP/1.1\r\n"
+				+ "Host: localhost\r\n"
+				+ "Content-Type: application/x-protobuf\r\n"
+				+ (gzip ? "Content-Encoding: gzip\r\n" : "")
+				+ "Content-Length: " + payload.size() + "\r\n"
+				+ "\r\n";
+
+		ByteBuffer[] body = payload.buffers();
+		ByteBuffer[] request = new ByteBuffer[body.length + 1];
+		request[0] = ByteBuffer.wrap(header.getBytes(ASCII));
+		System.arraycopy(body, 0, request, 1, body.length);
+
+		while (request[request.length - 1].hasRemaining()) {
+			if (channel.write(request) == 0) {
+				await(SelectionKey.OP_WRITE, READ_TIMEOUT_MILLIS);
+			}
+		}
+
+		int status = readResponse();
+		++sentOnConnection;
+
+		if ((status < 200) || (300 <= status)) {
+			throw new HttpException(status);
+		}
+	}
+
+	/**
+	 * Reads the response, leaving the connection ready for the next request
+	 * @return The response status
+	 * @throws IOException If the response is incomplete or malformed
+	 */
+	private int readResponse() throws IOException {
+		int headerEnd;
+
+		while ((headerEnd = headerEnd()) < 0) {
+			if (!response.hasRemaining()) {
+				throw new IOException("Stackify agent response header too long");
+			}
+
+			read();
+		}
+
+		String[] lines = new String(response.array(), 0, headerEnd, ASCII).split("\r\n");
+		String[] statusLine = lines[0].split(" ");
+
+		if ((statusLine.length < 2) || !statusLine[0].startsWith("HTTP/")) {
+			throw new IOException("Malformed Stackify agent response: " + lines[0]);
+		}
+
+		int status = Integer.parseInt(statusLine[1]);
+		long contentLength = -1;
+		boolean keepAlive = true;
+
+		for (int i = 1; i < lines.length; ++i) {
+			int colon = lines[i].indexOf(':');
+
+			if (colon < 0) {
+				continue;
+			}
+
+			String name = lines[i].substring(0, colon).trim();
+			String value = lines[i].substring(colon + 1).trim();
+
+			if ("Content-Length".equalsIgnoreCase(name)) {
+				contentLength = Long.parseLong(value);
+			} else if ("Connection".equalsIgnoreCase(name) && "close".equalsIgnoreCase(value)) {
+				keepAlive = false;
+			} else if ("Transfer-Encoding".equalsIgnoreCase(name)) {
+				keepAlive = false;
+			}
+		}
+
+		if (contentLength < 0) {
+			keepAlive = false;
+		} else {
+			long remaining = contentLength - (response.position() - headerEnd - 4);
+
+			while (0 < remaining) {
+				response.clear();
+				remaining -= read();
+			}
+		}
+
+		if (!keepAlive) {
+			disconnect();
+		}
+
+		return status;
+	}
+
+	/**
+	 * @return Position of the blank line ending the response header or -1 if not read yet
+	 */
+	private int headerEnd() {
+		byte[] bytes = response.array();
+
+		for (int i = 0; i + 3 < response.position(); ++i) {
+			if ((bytes[i] == '\r') && (bytes[i + 1] == '\n') && (bytes[i + 2] == '\r') && (bytes[i + 3] == '\n')) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Reads what is available, waiting up to the read timeout
+	 * @return Number of bytes read
+	 * @throws IOException If the connection is closed or times out
+	 */
+	private int read() throws IOException {
+		int n;
+
+		while ((n = channel.read(response)) == 0) {
+			await(SelectionKey.OP_READ, READ_TIMEOUT_MILLIS);
+		}
+
+		if (n < 0) {
+			throw new IOException("Stackify agent closed the connection");
+		}
+
+		return n;
+	}
+
+	/**
+	 * Opens the connection if there is none
+	 * @throws IOException If the agent socket cannot be reached
+	 */
+	private void connect() throws IOException {
+		if (channel != null) {
+			return;
+		}
+
+		SocketChannel opened = (SocketChannel) invoke(OPEN, UNIX);
+
+		try {
+			opened.configureBlocking(false);
+			selector = Selector.open();
+			channel = opened;
+			sentOnConnection = 0;
+
+			if (!channel.connect(address)) {
+				while (!channel.finishConnect()) {
+					await(SelectionKey.OP_CONNECT, CONNECT_TIMEOUT_MILLIS);
+				}
+			}
+		} catch (IOException e) {
+			disconnect();
+			opened.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Waits until the channel is ready
+	 * @param ops Interest set
+	 * @param timeoutMillis Maximum wait
+	 * @throws IOException If the wait times out
+	 */
+	private void await(final int ops, final long timeoutMillis) throws IOException {
+		SelectionKey key = channel.register(selector, ops);
+
+		try {
+			if (selector.select(timeoutMillis) == 0) {
+				throw new SocketTimeoutException("Timed out waiting for the Stackify agent");
+			}
+		} finally {
+			key.interestOps(0);
+			selector.selectedKeys().clear();
+		}
+	}
+
+	/**
+	 * Closes the connection, if any
+	 */
+	private void disconnect() {
+		closeQuietly(selector);
+		closeQuietly(channel);
+		selector = null;
+		channel = null;
+	}
+
+	/**
+	 * @return Number of batches sent on the current connection
+	 */
+	int getSentOnConnection() {
+		return sentOnConnection;
+	}
+
+	private static void closeQuietly(final Closeable closeable) {
+		if (closeable == null) {
+			return;
+		}
+
+		try {
+			closeable.close();
+		} catch (IOException e) {
+			// ignore
+		}
+	}
+
+	private static Object invoke(final Method method, final Object argument) throws IOException {
+		try {
+			return method.invoke(null, argument);
+		} catch (InvocationTargetException e) {
+			Throwable cause = e.getCause();
+
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+
+			throw new IllegalStateException(cause);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static Class<?> className(final String name) {
+		try {
+			return Class.forName(name);
+		} catch (ClassNotFoundException e) {
+			return null;
+		}
+	}
+
+	private static Method method(final Class<?> type, final String name, final Class<?> parameter) {
+		try {
+			return (type == null) ? null : type.getMethod(name, parameter);
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	private static ProtocolFamily unixFamily() {
+		try {
+			return StandardProtocolFamily.valueOf("UNIX");
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import lombok.Getter;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Summary of repeated errors that were not sent individually.
+ *
+ * @see ErrorAggregator
+ */
+class AggregatedLoggingEvent extends CapturedLoggingEvent {
+
+	/**
+	 * Number of occurrences folded into the summary
+	 */
+	@Getter
+	private final int count;
+
+	/**
+	 * First folded occurrence
+	 */
+	@Getter
+	private final long firstTimeStamp;
+
+	/**
+	 * Last folded occurrence
+	 */
+	@Getter
+	private final long lastTimeStamp;
+
+	/**
+	 * Summary message
+	 */
+	private final String message;
+
+	AggregatedLoggingEvent(final CapturedLoggingEvent sample, final int count, final long firstTimeStamp, final long lastTimeStamp) {
+		super(sample);
+		this.count = count;
+		this.firstTimeStamp = firstTimeStamp;
+		this.lastTimeStamp = lastTimeStamp;
+		this.message = sample.getFormattedMessage() + " [repeated " + count + " more times between " + format(firstTimeStamp) + " and " + format(lastTimeStamp) + "]";
+	}
+
+	@Override
+	public String getMessage() {
+		return message;
+	}
+
+	@Override
+	public Object[] getArgumentArray() {
+		return null;
+	}
+
+	@Override
+	public String getFormattedMessage() {
+		return message;
+	}
+
+	@Override
+	public long getTimeStamp() {
+		return lastTimeStamp;
+	}
+
+	private static String format(final long timestamp) {
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		return format.format(new Date(timestamp));
+	}
+}
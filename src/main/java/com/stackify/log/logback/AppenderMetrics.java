@@ -0,0 +1,299 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and histograms of one appender instance.
+ *
+ * <p>
+ * Counters are striped (LongAdder), so recording from many logging threads does not contend on a single
+ * cache line. Queue depth and drop counts are read from the dispatcher and pipeline when asked for. Batch,
+ * serialization and send metrics are only available with the pipeline; the generic LogAppender does not
+ * expose them.
+ */
+public class AppenderMetrics implements AppenderMetricsMXBean {
+
+	private final LongAdder events = new LongAdder();
+
+	private final LongAdder rateLimited = new LongAdder();
+
+	private final LongAdder aggregated = new LongAdder();
+
+	private final LongAdder sentBatches = new LongAdder();
+
+	private final LongAdder sentMessages = new LongAdder();
+
+	private final LongAdder sentBytes = new LongAdder();
+
+	private final LongAdder sendFailures = new LongAdder();
+
+	private final LongAdder compressedBatches = new LongAdder();
+
+	private final LongAdder uncompressedBatches = new LongAdder();
+
+	private final LongAdder compressionInputBytes = new LongAdder();
+
+	private final LongAdder compressionOutputBytes = new LongAdder();
+
+	private final Histogram appendLatency = new Histogram();
+
+	private final Histogram adapterLatency = new Histogram();
+
+	private final Histogram serializeLatency = new Histogram();
+
+	private final Histogram sendLatency = new Histogram();
+
+	private final Histogram batchSize = new Histogram();
+
+	private final Histogram compressionLatency = new Histogram();
+
+	/**
+	 * Background dispatcher (or null)
+	 */
+	private volatile LogEventDispatcher dispatcher;
+
+	/**
+	 * Pipeline (or null)
+	 */
+	private volatile LogPipeline pipeline;
+
+	/**
+	 * @param dispatcher Background dispatcher (or null)
+	 */
+	void setDispatcher(final LogEventDispatcher dispatcher) {
+		this.dispatcher = dispatcher;
+	}
+
+	/**
+	 * @param pipeline Pipeline (or null)
+	 */
+	void setPipeline(final LogPipeline pipeline) {
+		this.pipeline = pipeline;
+	}
+
+	/**
+	 * Records an event handled on the logging thread
+	 * @param nanos Time spent in the appender
+	 */
+	void recordAppend(final long nanos) {
+		events.increment();
+		appendLatency.record(nanos);
+	}
+
+	/**
+	 * Records an event rejected by rate limiting or sampling
+	 */
+	void recordRateLimited() {
+		rateLimited.increment();
+	}
+
+	/**
+	 * Records an error folded into a summary
+	 */
+	void recordAggregated() {
+		aggregated.increment();
+	}
+
+	/**
+	 * @param nanos Time spent converting an event
+	 */
+	void recordAdapter(final long nanos) {
+		adapterLatency.record(nanos);
+	}
+
+	/**
+	 * @param messages Number of messages in the batch
+	 * @param nanos Time spent serializing the batch
+	 */
+	void recordSerialize(final int messages, final long nanos) {
+		batchSize.record(messages);
+		serializeLatency.record(nanos);
+	}
+
+	/**
+	 * @param bytes Serialized batch size
+	 * @param nanos Time spent sending the batch
+	 */
+	void recordSend(final int bytes, final long nanos) {
+		sentBatches.increment();
+		sentBytes.add(bytes);
+		sendLatency.record(nanos);
+	}
+
+	/**
+	 * @param bytes Serialized batch size
+	 * @param encodedBytes Size on the wire
+	 * @param compressed True if the batch was compressed
+	 * @param nanos Time spent deciding and compressing
+	 */
+	void recordEncode(final int bytes, final int encodedBytes, final boolean compressed, final long nanos) {
+		if (compressed) {
+			compressedBatches.increment();
+			compressionInputBytes.add(bytes);
+			compressionOutputBytes.add(encodedBytes);
+		} else {
+			uncompressedBatches.increment();
+		}
+
+		compressionLatency.record(nanos);
+	}
+
+	/**
+	 * @param messages Number of messages sent
+	 */
+	void recordSentMessages(final int messages) {
+		sentMessages.add(messages);
+	}
+
+	/**
+	 * @param nanos Time spent on the failed send
+	 */
+	void recordSendFailure(final long nanos) {
+		sendFailures.increment();
+		sendLatency.record(nanos);
+	}
+
+	@Override
+	public long getEventCount() {
+		return events.sum();
+	}
+
+	@Override
+	public long getRateLimitedCount() {
+		return rateLimited.sum();
+	}
+
+	@Override
+	public long getAggregatedCount() {
+		return aggregated.sum();
+	}
+
+	@Override
+	public long getDroppedCount() {
+		LogEventDispatcher d = dispatcher;
+		LogPipeline p = pipeline;
+
+		return ((d == null) ? 0 : d.getDroppedCount()) + ((p == null) ? 0 : p.getDroppedCount());
+	}
+
+	@Override
+	public int getQueueDepth() {
+		LogEventDispatcher d = dispatcher;
+		LogPipeline p = pipeline;
+
+		return ((d == null) ? 0 : d.size()) + ((p == null) ? 0 : p.getQueueSize());
+	}
+
+	@Override
+	public long getQueueBytes() {
+		LogPipeline p = pipeline;
+		return (p == null) ? 0 : p.getQueueBytes();
+	}
+
+	@Override
+	public long getTruncatedCount() {
+		LogPipeline p = pipeline;
+		return (p == null) ? 0 : p.getTruncatedCount();
+	}
+
+	@Override
+	public long getSentBatchCount() {
+		return sentBatches.sum();
+	}
+
+	@Override
+	public long getSentMessageCount() {
+		return sentMessages.sum();
+	}
+
+	@Override
+	public long getSentBytes() {
+		return sentBytes.sum();
+	}
+
+	@Override
+	public long getSendFailureCount() {
+		return sendFailures.sum();
+	}
+
+	@Override
+	public long getCompressedBatchCount() {
+		return compressedBatches.sum();
+	}
+
+	@Override
+	public long getUncompressedBatchCount() {
+		return uncompressedBatches.sum();
+	}
+
+	@Override
+	public double getCompressionRatio() {
+		long input = compressionInputBytes.sum();
+		return (input == 0) ? 0 : (double) compressionOutputBytes.sum() / input;
+	}
+
+	@Override
+	public Histogram.Snapshot getAppendLatency() {
+		return appendLatency.snapshot();
+	}
+
+	@Override
+	public Histogram.Snapshot getAdapterLatency() {
+		return adapterLatency.snapshot();
+	}
+
+	@Override
+	public Histogram.Snapshot getSerializeLatency() {
+		return serializeLatency.snapshot();
+	}
+
+	@Override
+	public Histogram.Snapshot getSendLatency() {
+		return sendLatency.snapshot();
+	}
+
+	@Override
+	public Histogram.Snapshot getBatchSize() {
+		return batchSize.snapshot();
+	}
+
+	@Override
+	public Histogram.Snapshot getCompressionLatency() {
+		return compressionLatency.snapshot();
+	}
+
+	@Override
+	public String toString() {
+		return "events=" + getEventCount()
+				+ " rateLimited=" + getRateLimitedCount()
+				+ " aggregated=" + getAggregatedCount()
+				+ " dropped=" + getDroppedCount()
+				+ " queueDepth=" + getQueueDepth()
+				+ " queueBytes=" + getQueueBytes()
+				+ " truncated=" + getTruncatedCount()
+				+ " sentBatches=" + getSentBatchCount()
+				+ " sentMessages=" + getSentMessageCount()
+				+ " sentBytes=" + getSentBytes()
+				+ " sendFailures=" + getSendFailureCount()
+				+ " compressedBatches=" + getCompressedBatchCount()
+				+ " uncompressedBatches=" + getUncompressedBatchCount()
+				+ " compressionRatio=" + getCompressionRatio()
+				+ " appendNanos[" + getAppendLatency() + "]"
+				+ " adapterNanos[" + getAdapterLatency() + "]";
+	}
+}
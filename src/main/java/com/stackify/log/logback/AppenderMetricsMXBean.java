@@ -0,0 +1,122 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+/**
+ * Stackify appender health, published over JMX. Latencies are in nanoseconds.
+ */
+public interface AppenderMetricsMXBean {
+
+	/**
+	 * @return Number of events passed to the appender
+	 */
+	long getEventCount();
+
+	/**
+	 * @return Number of events rejected by rate limiting or adaptive sampling
+	 */
+	long getRateLimitedCount();
+
+	/**
+	 * @return Number of errors folded into error aggregation summaries
+	 */
+	long getAggregatedCount();
+
+	/**
+	 * @return Number of events or messages dropped because a queue was full or a batch was lost
+	 */
+	long getDroppedCount();
+
+	/**
+	 * @return Number of events and messages waiting to be sent
+	 */
+	int getQueueDepth();
+
+	/**
+	 * @return Estimated size of the messages waiting to be sent (pipeline with a queue byte limit only)
+	 */
+	long getQueueBytes();
+
+	/**
+	 * @return Number of messages truncated for exceeding the maximum length (pipeline only)
+	 */
+	long getTruncatedCount();
+
+	/**
+	 * @return Number of batches sent (pipeline only)
+	 */
+	long getSentBatchCount();
+
+	/**
+	 * @return Number of messages sent (pipeline only; batches replayed from disk only count as batches)
+	 */
+	long getSentMessageCount();
+
+	/**
+	 * @return Number of serialized bytes sent, before compression (pipeline only)
+	 */
+	long getSentBytes();
+
+	/**
+	 * @return Number of failed sends (pipeline only)
+	 */
+	long getSendFailureCount();
+
+	/**
+	 * @return Number of batches sent gzip compressed (pipeline only)
+	 */
+	long getCompressedBatchCount();
+
+	/**
+	 * @return Number of batches sent uncompressed because compression was not worthwhile (pipeline only)
+	 */
+	long getUncompressedBatchCount();
+
+	/**
+	 * @return Compressed size over serialized size of the compressed batches (pipeline only)
+	 */
+	double getCompressionRatio();
+
+	/**
+	 * @return Time spent in the appender per event, on the logging thread
+	 */
+	Histogram.Snapshot getAppendLatency();
+
+	/**
+	 * @return Time spent converting an event to a log message and error
+	 */
+	Histogram.Snapshot getAdapterLatency();
+
+	/**
+	 * @return Time spent serializing a batch (pipeline only)
+	 */
+	Histogram.Snapshot getSerializeLatency();
+
+	/**
+	 * @return Time spent sending a batch (pipeline only)
+	 */
+	Histogram.Snapshot getSendLatency();
+
+	/**
+	 * @return Number of messages per batch (pipeline only)
+	 */
+	Histogram.Snapshot getBatchSize();
+
+	/**
+	 * @return Time spent deciding whether to compress a batch and compressing it (pipeline only)
+	 */
+	Histogram.Snapshot getCompressionLatency();
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import ch.qos.logback.classic.Level;
+import com.stackify.api.LogMsg;
+import lombok.Getter;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides what happens to a message when the pipeline queue is full, and counts the outcome.
+ *
+ * <p>
+ * Blocking trades caller latency for completeness: the caller waits up to the timeout for room and the
+ * message is dropped if none frees up. The drop policies never block.
+ */
+class BackpressurePolicy {
+
+	/**
+	 * What happens when the queue is full
+	 */
+	@Getter
+	private final Mode mode;
+
+	/**
+	 * Longest time a caller waits for room (block and drop_below_level modes)
+	 */
+	@Getter
+	private final long timeoutMillis;
+
+	/**
+	 * Messages below this level are dropped first (drop_below_level mode)
+	 */
+	@Getter
+	private final Level level;
+
+	/**
+	 * New messages dropped
+	 */
+	private final AtomicLong droppedNewest = new AtomicLong();
+
+	/**
+	 * Queued messages evicted for newer ones
+	 */
+	private final AtomicLong droppedOldest = new AtomicLong();
+
+	/**
+	 * New messages dropped for being below the level
+	 */
+	private final AtomicLong droppedBelowLevel = new AtomicLong();
+
+	/**
+	 * Callers that had to wait for room
+	 */
+	private final AtomicLong blocked = new AtomicLong();
+
+	/**
+	 * Total time callers waited for room
+	 */
+	private final AtomicLong blockedNanos = new AtomicLong();
+
+	/**
+	 * Callers that gave up waiting; their messages are dropped
+	 */
+	private final AtomicLong timedOut = new AtomicLong();
+
+	/**
+	 * @param mode What happens when the queue is full
+	 * @param timeoutMillis Longest time a caller waits for room
+	 * @param level Messages below this level are dropped first
+	 */
+	BackpressurePolicy(final Mode mode, final long timeoutMillis, final Level level) {
+		if (timeoutMillis < 0) {
+			throw new IllegalArgumentException("Backpressure timeout must not be negative: " + timeoutMillis);
+		}
+
+		this.mode = mode;
+		this.timeoutMillis = timeoutMillis;
+		this.level = level;
+	}
+
+	/**
+	 * Queues the message, applying the policy if the queue is full
+	 * @param queue The queue
+	 * @param msg The message
+	 * @return True if the message was queued
+	 */
+	boolean offer(final BlockingQueue<LogMsg> queue, final LogMsg msg) {
+		if (queue.offer(msg)) {
+			return true;
+		}
+
+		switch (mode) {
+			case BLOCK:
+				return await(queue, msg);
+			case DROP_OLDEST:
+				return evict(queue, msg);
+			case DROP_BELOW_LEVEL:
+				if (!Level.toLevel(msg.getLevel(), Level.DEBUG).isGreaterOrEqual(level)) {
+					droppedBelowLevel.incrementAndGet();
+					return false;
+				}
+
+				return await(queue, msg);
+			default:
+				droppedNewest.incrementAndGet();
+				return false;
+		}
+	}
+
+	/**
+	 * Waits up to the timeout for room
+	 * @param queue The queue
+	 * @param msg The message
+	 * @return True if the message was queued
+	 */
+	private boolean await(final BlockingQueue<LogMsg> queue, final LogMsg msg) {
+		blocked.incrementAndGet();
+		long start = System.nanoTime();
+
+		try {
+			if (queue.offer(msg, timeoutMillis, TimeUnit.MILLISECONDS)) {
+				return true;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			blockedNanos.addAndGet(System.nanoTime() - start);
+		}
+
+		timedOut.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Evicts queued messages until the new one fits
+	 * @param queue The queue
+	 * @param msg The message
+	 * @return True unless the queue ran empty and the message still does not fit
+	 */
+	private boolean evict(final BlockingQueue<LogMsg> queue, final LogMsg msg) {
+		do {
+			if (queue.poll() != null) {
+				droppedOldest.incrementAndGet();
+			} else if (!queue.offer(msg)) {
+				// the memory budget is held by a higher priority lane (or the message exceeds all of it)
+				droppedNewest.incrementAndGet();
+				return false;
+			} else {
+				return true;
+			}
+		} while (!queue.offer(msg));
+
+		return true;
+	}
+
+	/**
+	 * @return Number of new messages dropped
+	 */
+	long getDroppedNewestCount() {
+		return droppedNewest.get();
+	}
+
+	/**
+	 * @return Number of queued messages evicted for newer ones
+	 */
+	long getDroppedOldestCount() {
+		return droppedOldest.get();
+	}
+
+	/**
+	 * @return Number of new messages dropped for being below the level
+	 */
+	long getDroppedBelowLevelCount() {
+		return droppedBelowLevel.get();
+	}
+
+	/**
+	 * @return Number of callers that had to wait for room
+	 */
+	long getBlockedCount() {
+		return blocked.get();
+	}
+
+	/**
+	 * @return Total time callers waited for room
+	 */
+	long getBlockedMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(blockedNanos.get());
+	}
+
+	/**
+	 * @return Number of callers that gave up waiting
+	 */
+	long getTimedOutCount() {
+		return timedOut.get();
+	}
+
+	/**
+	 * @return Number of messages lost to backpressure, however they were dropped
+	 */
+	long getDroppedCount() {
+		return droppedNewest.get() + droppedOldest.get() + droppedBelowLevel.get() + timedOut.get();
+	}
+
+	/**
+	 * What happens when the queue is full
+	 */
+	enum Mode {
+
+		/**
+		 * The caller waits up to the timeout for room, then the message is dropped
+		 */
+		BLOCK,
+
+		/**
+		 * The new message is dropped
+		 */
+		DROP_NEWEST,
+
+		/**
+		 * The oldest queued message is dropped
+		 */
+		DROP_OLDEST,
+
+		/**
+		 * Messages below the level are dropped; the others wait like in block mode
+		 */
+		DROP_BELOW_LEVEL;
+
+		/**
+		 * @param value Configuration value (case insensitive)
+		 * @return The mode
+		 */
+		static Mode fromString(final String value) {
+			return Mode.valueOf(value.trim().toUpperCase());
+		}
+	}
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Serialized batch held in a chain of pooled buffers.
+ *
+ * <p>
+ * Bytes are written as a stream and read back as buffers, without copying them into one array.
+ * {@link #release()} returns the buffers to the pool; the batch must not be used after that.
+ * Not thread safe.
+ */
+class BatchBuffer extends OutputStream {
+
+	/**
+	 * Pool the buffers come from (null for a wrapped array)
+	 */
+	private final BufferPool pool;
+
+	/**
+	 * Filled buffers; each buffer's position is the number of bytes written to it
+	 */
+	private final List<ByteBuffer> buffers = new ArrayList<ByteBuffer>(4);
+
+	/**
+	 * Buffer being written (the last one)
+	 */
+	private ByteBuffer current;
+
+	/**
+	 * Number of bytes written
+	 */
+	private int size;
+
+	/**
+	 * @param pool Pool the buffers come from
+	 */
+	BatchBuffer(final BufferPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Wraps a serialized batch, e.g. one read from the spillover store
+	 * @param payload The serialized batch
+	 * @return The batch; releasing it does nothing
+	 */
+	static BatchBuffer wrap(final byte[] payload) {
+		BatchBuffer batch = new BatchBuffer(null);
+
+		ByteBuffer buffer = ByteBuffer.wrap(payload);
+		buffer.position(payload.length);
+
+		batch.buffers.add(buffer);
+		batch.size = payload.length;
+
+		return batch;
+	}
+
+	@Override
+	public void write(final int b) {
+		if ((current == null) || !current.hasRemaining()) {
+			next();
+		}
+
+		current.put((byte) b);
+		++size;
+	}
+
+	@Override
+	public void write(final byte[] b, final int off, final int len) {
+		int offset = off;
+		int remaining = len;
+
+		while (0 < remaining) {
+			if ((current == null) || !current.hasRemaining()) {
+				next();
+			}
+
+			int n = Math.min(remaining, current.remaining());
+			current.put(b, offset, n);
+
+			offset += n;
+			remaining -= n;
+		}
+
+		size += len;
+	}
+
+	/**
+	 * @return Number of bytes written
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return Views of the bytes written, in order
+	 */
+	ByteBuffer[] buffers() {
+		ByteBuffer[] views = new ByteBuffer[buffers.size()];
+
+		for (int i = 0; i < views.length; ++i) {
+			ByteBuffer buffer = buffers.get(i);
+			views[i] = ByteBuffer.wrap(buffer.array(), buffer.arrayOffset(), buffer.position());
+		}
+
+		return views;
+	}
+
+	/**
+	 * Writes the bytes to a stream
+	 * @param out The stream
+	 * @throws IOException If the stream fails
+	 */
+	void writeTo(final OutputStream out) throws IOException {
+		for (ByteBuffer buffer : buffers) {
+			out.write(buffer.array(), buffer.arrayOffset(), buffer.position());
+		}
+	}
+
+	/**
+	 * @return A copy of the bytes written
+	 */
+	byte[] toByteArray() {
+		byte[] bytes = new byte[size];
+		int position = 0;
+
+		for (ByteBuffer buffer : buffers) {
+			System.arraycopy(buffer.array(), buffer.arrayOffset(), bytes, position, buffer.position());
+			position += buffer.position();
+		}
+
+		return bytes;
+	}
+
+	/**
+	 * Returns the buffers to the pool and empties the batch
+	 */
+	void release() {
+		if (pool != null) {
+			for (ByteBuffer buffer : buffers) {
+				pool.release(buffer);
+			}
+		}
+
+		buffers.clear();
+		current = null;
+		size = 0;
+	}
+
+	/**
+	 * Starts a new buffer
+	 */
+	private void next() {
+		if (pool == null) {
+			throw new IllegalStateException("Wrapped batches are read only");
+		}
+
+		current = pool.acquire();
+		buffers.add(current);
+	}
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import com.stackify.api.LogMsg;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Queue lane bounded by a number of messages and by a MemoryBudget shared with the other lanes.
+ *
+ * <p>
+ * A message is accepted only if there is room for one more message and its estimated size fits in the
+ * budget; taking it out releases its size. Blocking offers wait for either, so the backpressure policies work
+ * as they do on a count bounded lane. When the budget is held by lower priority lanes, the oldest messages of
+ * the lowest of them are evicted to make room, so a flood of lower level messages cannot crowd out errors.
+ */
+class BudgetedQueue extends AbstractQueue<LogMsg> implements BlockingQueue<LogMsg> {
+
+	/**
+	 * Messages, bounded by count
+	 */
+	private final BlockingQueue<LogMsg> msgs;
+
+	/**
+	 * Byte budget shared with the other lanes
+	 */
+	private final MemoryBudget budget;
+
+	/**
+	 * Lower priority lanes sharing the budget, highest priority first
+	 */
+	private final BudgetedQueue[] lower;
+
+	/**
+	 * Messages evicted from the lower lanes
+	 */
+	private final AtomicLong displaced;
+
+	/**
+	 * @param capacity Maximum number of messages
+	 * @param budget Byte budget shared with the other lanes
+	 */
+	BudgetedQueue(final int capacity, final MemoryBudget budget) {
+		this(capacity, budget, new BudgetedQueue[0], new AtomicLong());
+	}
+
+	/**
+	 * @param capacity Maximum number of messages
+	 * @param budget Byte budget shared with the other lanes
+	 * @param lower Lower priority lanes sharing the budget, highest priority first
+	 * @param displaced Counts the messages evicted from the lower lanes
+	 */
+	BudgetedQueue(final int capacity, final MemoryBudget budget, final BudgetedQueue[] lower, final AtomicLong displaced) {
+		this.msgs = new ArrayBlockingQueue<LogMsg>(capacity);
+		this.budget = budget;
+		this.lower = lower;
+		this.displaced = displaced;
+	}
+
+	@Override
+	public boolean offer(final LogMsg msg) {
+		long bytes = MemoryBudget.estimate(msg);
+
+		if (!reserve(bytes)) {
+			return false;
+		}
+
+		if (!msgs.offer(msg)) {
+			budget.release(bytes);
+			return false;
+		}
+
+		return true;
+	}
+
+	@Override
+	public boolean offer(final LogMsg msg, final long timeout, final TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+		for (;;) {
+			long seen = budget.getReleaseCount();
+
+			if (offer(msg)) {
+				return true;
+			}
+
+			long remaining = deadline - System.nanoTime();
+
+			if (remaining <= 0) {
+				return false;
+			}
+
+			// every message taken out releases bytes, so this also wakes up on room for one more message
+			budget.awaitRelease(seen, remaining);
+		}
+	}
+
+	@Override
+	public void put(final LogMsg msg) throws InterruptedException {
+		for (;;) {
+			long seen = budget.getReleaseCount();
+
+			if (offer(msg)) {
+				return;
+			}
+
+			budget.awaitRelease(seen, Long.MAX_VALUE);
+		}
+	}
+
+	@Override
+	public LogMsg poll() {
+		return released(msgs.poll());
+	}
+
+	@Override
+	public LogMsg poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+		return released(msgs.poll(timeout, unit));
+	}
+
+	@Override
+	public LogMsg take() throws InterruptedException {
+		return released(msgs.take());
+	}
+
+	@Override
+	public LogMsg peek() {
+		return msgs.peek();
+	}
+
+	@Override
+	public int size() {
+		return msgs.size();
+	}
+
+	@Override
+	public int remainingCapacity() {
+		return msgs.remainingCapacity();
+	}
+
+	@Override
+	public int drainTo(final Collection<? super LogMsg> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int drainTo(final Collection<? super LogMsg> c, final int maxElements) {
+		List<LogMsg> drained = new ArrayList<LogMsg>(Math.min(msgs.size(), maxElements));
+		int n = msgs.drainTo(drained, maxElements);
+		long bytes = 0;
+
+		for (LogMsg msg : drained) {
+			bytes += MemoryBudget.estimate(msg);
+		}
+
+		if (0 < bytes) {
+			budget.release(bytes);
+		}
+
+		c.addAll(drained);
+		return n;
+	}
+
+	/**
+	 * Read only, since removing through it would not release the budget
+	 * @see java.util.AbstractCollection#iterator()
+	 */
+	@Override
+	public Iterator<LogMsg> iterator() {
+		return Collections.unmodifiableCollection(msgs).iterator();
+	}
+
+	/**
+	 * Reserves room in the budget, evicting messages of the lower lanes, lowest first, while it is short
+	 * @param bytes Estimated size of the new message
+	 * @return True if reserved
+	 */
+	private boolean reserve(final long bytes) {
+		if (budget.tryReserve(bytes)) {
+			return true;
+		}
+
+		// evicting would not help a message that is too large or that would not fit anyway
+		if ((budget.getMaxBytes() < bytes) || (msgs.remainingCapacity() == 0)) {
+			return false;
+		}
+
+		for (int i = lower.length - 1; 0 <= i; --i) {
+			while (lower[i].poll() != null) {
+				displaced.incrementAndGet();
+
+				if (budget.tryReserve(bytes)) {
+					return true;
+				}
+			}
+		}
+
+		return budget.tryReserve(bytes);
+	}
+
+	/**
+	 * @param msg Message taken out (or null)
+	 * @return The message, its size released
+	 */
+	private LogMsg released(final LogMsg msg) {
+		if (msg != null) {
+			budget.release(MemoryBudget.estimate(msg));
+		}
+
+		return msg;
+	}
+}
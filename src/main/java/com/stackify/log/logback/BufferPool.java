@@ -0,0 +1,123 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Bounded pool of fixed-size heap buffers that batches are serialized into.
+ *
+ * <p>
+ * Buffers come back once a batch is sent, so steady state serialization allocates no buffer memory.
+ * At most maxRetained buffers are kept; any more are left to the garbage collector.
+ */
+class BufferPool {
+
+	/**
+	 * Default buffer size
+	 */
+	static final int DEFAULT_BUFFER_BYTES = 8 * 1024;
+
+	/**
+	 * Default number of idle buffers kept
+	 */
+	static final int DEFAULT_MAX_RETAINED = 128;
+
+	/**
+	 * Size of each buffer
+	 */
+	private final int bufferBytes;
+
+	/**
+	 * Number of idle buffers kept
+	 */
+	private final int maxRetained;
+
+	/**
+	 * Idle buffers, most recently used first
+	 */
+	private final Deque<ByteBuffer> idle = new ArrayDeque<ByteBuffer>();
+
+	/**
+	 * Number of buffers allocated
+	 */
+	private long allocated;
+
+	BufferPool() {
+		this(DEFAULT_BUFFER_BYTES, DEFAULT_MAX_RETAINED);
+	}
+
+	/**
+	 * @param bufferBytes Size of each buffer
+	 * @param maxRetained Number of idle buffers kept
+	 */
+	BufferPool(final int bufferBytes, final int maxRetained) {
+		if (bufferBytes <= 0) {
+			throw new IllegalArgumentException("Invalid buffer size: " + bufferBytes);
+		}
+
+		this.bufferBytes = bufferBytes;
+		this.maxRetained = maxRetained;
+	}
+
+	/**
+	 * @return A new, empty batch buffer drawing from this pool
+	 */
+	BatchBuffer newBuffer() {
+		return new BatchBuffer(this);
+	}
+
+	/**
+	 * @return An empty buffer
+	 */
+	synchronized ByteBuffer acquire() {
+		ByteBuffer buffer = idle.pollFirst();
+
+		if (buffer == null) {
+			++allocated;
+			return ByteBuffer.allocate(bufferBytes);
+		}
+
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * Returns a buffer to the pool
+	 * @param buffer The buffer
+	 */
+	synchronized void release(final ByteBuffer buffer) {
+		if ((idle.size() < maxRetained) && (buffer.capacity() == bufferBytes)) {
+			idle.addFirst(buffer);
+		}
+	}
+
+	/**
+	 * @return Number of buffers allocated
+	 */
+	synchronized long getAllocatedCount() {
+		return allocated;
+	}
+
+	/**
+	 * @return Number of idle buffers
+	 */
+	synchronized int getIdleCount() {
+		return idle.size();
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import lombok.Getter;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Bounded cache of the strings derived from a call site.
+ *
+ * <p>
+ * Applications log from a limited set of call sites, so the source method string and the boxed line number
+ * are built once per call site instead of once per event. Once the cache is full, new call sites are still
+ * resolved but no longer retained.
+ */
+class CallSiteCache {
+
+	/**
+	 * Default maximum number of call sites retained
+	 */
+	static final int DEFAULT_MAX_SIZE = 4096;
+
+	/**
+	 * Maximum number of call sites retained
+	 */
+	private final int maxSize;
+
+	/**
+	 * Call sites by stack trace element
+	 */
+	private final ConcurrentMap<StackTraceElement, CallSite> sites = new ConcurrentHashMap<StackTraceElement, CallSite>();
+
+	CallSiteCache() {
+		this(DEFAULT_MAX_SIZE);
+	}
+
+	/**
+	 * @param maxSize Maximum number of call sites retained
+	 */
+	CallSiteCache(final int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @param element The caller's stack trace element
+	 * @return The call site
+	 */
+	CallSite get(final StackTraceElement element) {
+		CallSite site = sites.get(element);
+
+		if (site == null) {
+			site = new CallSite(element.getClassName() + "." + element.getMethodName(), Integer.valueOf(element.getLineNumber()));
+
+			if (sites.size() < maxSize) {
+				CallSite existing = sites.putIfAbsent(element, site);
+
+				if (existing != null) {
+					site = existing;
+				}
+			}
+		}
+
+		return site;
+	}
+
+	/**
+	 * @return Number of call sites retained
+	 */
+	int size() {
+		return sites.size();
+	}
+
+	/**
+	 * Derived call site values
+	 */
+	static final class CallSite {
+
+		/**
+		 * Class name and method name
+		 */
+		@Getter
+		private final String method;
+
+		/**
+		 * Line number
+		 */
+		@Getter
+		private final Integer line;
+
+		private CallSite(final String method, final Integer line) {
+			this.method = method;
+			this.line = line;
+		}
+	}
+}
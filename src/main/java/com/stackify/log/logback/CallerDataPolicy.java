@@ -0,0 +1,109 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import lombok.Getter;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides which events pay for caller data extraction.
+ *
+ * <p>
+ * Logback computes caller data by capturing and walking the stack of the logging thread, which is by far
+ * the most expensive part of converting an event. Events outside the policy are sent without a source
+ * method and line.
+ */
+class CallerDataPolicy {
+
+	/**
+	 * Which events get caller data
+	 */
+	@Getter
+	private final Mode mode;
+
+	/**
+	 * One in this many non-error events get caller data (sampled mode)
+	 */
+	@Getter
+	private final int sampleRate;
+
+	/**
+	 * @param mode Which events get caller data
+	 * @param sampleRate One in this many non-error events get caller data (sampled mode)
+	 */
+	CallerDataPolicy(final Mode mode, final int sampleRate) {
+		if (sampleRate < 1) {
+			throw new IllegalArgumentException("Caller data sample rate must be positive: " + sampleRate);
+		}
+
+		this.mode = mode;
+		this.sampleRate = sampleRate;
+	}
+
+	/**
+	 * @param event The logging event
+	 * @return True if caller data should be extracted for the event
+	 */
+	boolean capture(final ILoggingEvent event) {
+		switch (mode) {
+			case ALWAYS:
+				return true;
+			case NEVER:
+				return false;
+			case ERRORS:
+				return event.getLevel().isGreaterOrEqual(Level.ERROR);
+			default:
+				return event.getLevel().isGreaterOrEqual(Level.ERROR) || (ThreadLocalRandom.current().nextInt(sampleRate) == 0);
+		}
+	}
+
+	/**
+	 * Which events get caller data
+	 */
+	enum Mode {
+
+		/**
+		 * Every event
+		 */
+		ALWAYS,
+
+		/**
+		 * Events at error level
+		 */
+		ERRORS,
+
+		/**
+		 * No event
+		 */
+		NEVER,
+
+		/**
+		 * Events at error level and a random sample of the others
+		 */
+		SAMPLED;
+
+		/**
+		 * @param value Configuration value (case insensitive)
+		 * @return The mode
+		 */
+		static Mode fromString(final String value) {
+			return Mode.valueOf(value.trim().toUpperCase());
+		}
+	}
+}
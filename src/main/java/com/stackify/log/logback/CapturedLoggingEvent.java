@@ -0,0 +1,324 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.LoggerContextVO;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import com.stackify.api.WebRequestDetail;
+import com.stackify.api.common.log.APMLogData;
+import com.stackify.api.common.log.ServletLogContext;
+import lombok.Getter;
+import org.slf4j.Marker;
+import org.slf4j.helpers.MessageFormatter;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Logging event with the state that is bound to the logging thread (caller data, APM / servlet context)
+ * captured up front, so the event can be converted on a different thread.
+ *
+ * <p>
+ * In deferred mode the message is not formatted on the logging thread. Only the thread name, the MDC and a
+ * snapshot of the arguments are captured: immutable arguments are kept as they are, anything else is
+ * rendered to the string the formatter would have produced, so later changes to the argument (or a
+ * non thread safe toString) cannot leak into the message. The message is formatted on first use.
+ *
+ * @see ILoggingEventAdapter
+ */
+class CapturedLoggingEvent implements ILoggingEvent {
+
+	/**
+	 * The original event
+	 */
+	@Getter
+	private final ILoggingEvent delegate;
+
+	/**
+	 * Caller data captured on the logging thread
+	 */
+	private final StackTraceElement[] callerData;
+
+	/**
+	 * Transaction id captured on the logging thread
+	 */
+	@Getter
+	private final String transactionId;
+
+	/**
+	 * User captured on the logging thread
+	 */
+	@Getter
+	private final String user;
+
+	/**
+	 * Web request captured on the logging thread
+	 */
+	@Getter
+	private final WebRequestDetail webRequest;
+
+	/**
+	 * True if the message is formatted on first use instead of by the delegate
+	 */
+	private final boolean deferred;
+
+	/**
+	 * Thread name captured on the logging thread (deferred mode)
+	 */
+	private final String threadName;
+
+	/**
+	 * MDC captured on the logging thread (deferred mode)
+	 */
+	private final Map<String, String> mdc;
+
+	/**
+	 * Argument snapshot (deferred mode)
+	 */
+	private final Object[] arguments;
+
+	/**
+	 * Formatted message, once formatted (deferred mode)
+	 */
+	private volatile String formattedMessage;
+
+	CapturedLoggingEvent(final ILoggingEvent delegate, final StackTraceElement[] callerData, final String transactionId, final String user, final WebRequestDetail webRequest) {
+		this.delegate = delegate;
+		this.callerData = callerData;
+		this.transactionId = transactionId;
+		this.user = user;
+		this.webRequest = webRequest;
+		this.deferred = false;
+		this.threadName = null;
+		this.mdc = null;
+		this.arguments = null;
+	}
+
+	/**
+	 * Copies a captured event, keeping the state captured on its logging thread
+	 * @param captured The captured event
+	 */
+	CapturedLoggingEvent(final CapturedLoggingEvent captured) {
+		this.delegate = captured.delegate;
+		this.callerData = captured.callerData;
+		this.transactionId = captured.transactionId;
+		this.user = captured.user;
+		this.webRequest = captured.webRequest;
+		this.deferred = captured.deferred;
+		this.threadName = captured.threadName;
+		this.mdc = captured.mdc;
+		this.arguments = captured.arguments;
+	}
+
+	private CapturedLoggingEvent(final ILoggingEvent delegate, final StackTraceElement[] callerData, final String transactionId, final String user, final WebRequestDetail webRequest,
+			final String threadName, final Map<String, String> mdc, final Object[] arguments) {
+		this.delegate = delegate;
+		this.callerData = callerData;
+		this.transactionId = transactionId;
+		this.user = user;
+		this.webRequest = webRequest;
+		this.deferred = true;
+		this.threadName = threadName;
+		this.mdc = mdc;
+		this.arguments = arguments;
+	}
+
+	/**
+	 * Captures the event on the current (logging) thread
+	 * @param event The logging event
+	 * @return The captured event
+	 */
+	static CapturedLoggingEvent capture(final ILoggingEvent event) {
+		return capture(event, true);
+	}
+
+	/**
+	 * Captures the event on the current (logging) thread
+	 * @param event The logging event
+	 * @param withCallerData False to skip the (stack walking) caller data extraction
+	 * @return The captured event
+	 */
+	static CapturedLoggingEvent capture(final ILoggingEvent event, final boolean withCallerData) {
+		return capture(event, withCallerData, false);
+	}
+
+	/**
+	 * Captures the event on the current (logging) thread
+	 * @param event The logging event
+	 * @param withCallerData False to skip the (stack walking) caller data extraction
+	 * @param deferFormatting True to leave message formatting to the thread converting the event
+	 * @return The captured event
+	 */
+	static CapturedLoggingEvent capture(final ILoggingEvent event, final boolean withCallerData, final boolean deferFormatting) {
+		// only logback's own events are known to format lazily from the pattern and arguments
+
+		boolean defer = deferFormatting && (event instanceof LoggingEvent);
+
+		if (!defer) {
+			event.prepareForDeferredProcessing();
+		}
+
+		StackTraceElement[] callerData = withCallerData ? event.getCallerData() : null;
+		boolean linked = APMLogData.isLinked();
+		String transactionId = linked ? APMLogData.getTransactionId() : ServletLogContext.getTransactionId();
+		String user = linked ? APMLogData.getUser() : ServletLogContext.getUser();
+		WebRequestDetail webRequest = linked ? APMLogData.getWebRequest() : ServletLogContext.getWebRequest();
+
+		if (!defer) {
+			return new CapturedLoggingEvent(event, callerData, transactionId, user, webRequest);
+		}
+
+		return new CapturedLoggingEvent(event, callerData, transactionId, user, webRequest,
+				event.getThreadName(), event.getMDCPropertyMap(), snapshot(event.getArgumentArray()));
+	}
+
+	/**
+	 * Copies the arguments, rendering the ones that may change after the event was logged
+	 * @param arguments The event arguments (or null)
+	 * @return The snapshot (or null)
+	 */
+	static Object[] snapshot(final Object[] arguments) {
+		if (arguments == null) {
+			return null;
+		}
+
+		Object[] snapshot = new Object[arguments.length];
+
+		for (int i = 0; i < arguments.length; ++i) {
+			Object argument = arguments[i];
+			snapshot[i] = isImmutable(argument) ? argument : MessageFormatter.arrayFormat("{}", new Object[]{argument}).getMessage();
+		}
+
+		return snapshot;
+	}
+
+	/**
+	 * @param argument The argument
+	 * @return True if the argument renders the same on any thread at any time
+	 */
+	private static boolean isImmutable(final Object argument) {
+		return (argument == null)
+				|| (argument instanceof String)
+				|| (argument instanceof Integer)
+				|| (argument instanceof Long)
+				|| (argument instanceof Boolean)
+				|| (argument instanceof Double)
+				|| (argument instanceof Float)
+				|| (argument instanceof Short)
+				|| (argument instanceof Byte)
+				|| (argument instanceof Character)
+				|| (argument instanceof BigDecimal)
+				|| (argument instanceof BigInteger)
+				|| (argument instanceof UUID)
+				|| (argument instanceof Enum)
+				// a trailing throwable is not formatted into the message
+				|| (argument instanceof Throwable);
+	}
+
+	@Override
+	public String getThreadName() {
+		return deferred ? threadName : delegate.getThreadName();
+	}
+
+	@Override
+	public Level getLevel() {
+		return delegate.getLevel();
+	}
+
+	@Override
+	public String getMessage() {
+		return delegate.getMessage();
+	}
+
+	@Override
+	public Object[] getArgumentArray() {
+		return deferred ? arguments : delegate.getArgumentArray();
+	}
+
+	@Override
+	public String getFormattedMessage() {
+		if (!deferred) {
+			return delegate.getFormattedMessage();
+		}
+
+		String message = formattedMessage;
+
+		if (message == null) {
+			message = (arguments == null) ? delegate.getMessage() : MessageFormatter.arrayFormat(delegate.getMessage(), arguments).getMessage();
+			formattedMessage = message;
+		}
+
+		return message;
+	}
+
+	@Override
+	public String getLoggerName() {
+		return delegate.getLoggerName();
+	}
+
+	@Override
+	public LoggerContextVO getLoggerContextVO() {
+		return delegate.getLoggerContextVO();
+	}
+
+	@Override
+	public IThrowableProxy getThrowableProxy() {
+		return delegate.getThrowableProxy();
+	}
+
+	@Override
+	public StackTraceElement[] getCallerData() {
+		return callerData;
+	}
+
+	@Override
+	public boolean hasCallerData() {
+		return callerData != null;
+	}
+
+	@Override
+	public Marker getMarker() {
+		return delegate.getMarker();
+	}
+
+	@Override
+	public Map<String, String> getMDCPropertyMap() {
+		return deferred ? mdc : delegate.getMDCPropertyMap();
+	}
+
+	@Override
+	@SuppressWarnings("deprecation")
+	public Map<String, String> getMdc() {
+		return deferred ? mdc : delegate.getMdc();
+	}
+
+	@Override
+	public long getTimeStamp() {
+		return delegate.getTimeStamp();
+	}
+
+	@Override
+	public void prepareForDeferredProcessing() {
+		if (!deferred) {
+			delegate.prepareForDeferredProcessing();
+		}
+	}
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.StackTraceElementProxy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Folds repeated errors into one summary per time window.
+ *
+ * <p>
+ * Errors are fingerprinted by exception type, call site (logger and message pattern) and stack shape. The
+ * first occurrences of a fingerprint in each window are sent in full; the rest are only counted and reported
+ * in a single summary event, collected once per window length.
+ */
+class ErrorAggregator {
+
+	/**
+	 * Maximum number of occurrences sent in full per fingerprint and window
+	 */
+	private final int limit;
+
+	/**
+	 * Window length
+	 */
+	private final long windowMillis;
+
+	/**
+	 * Maximum number of fingerprints tracked at once
+	 */
+	private final int maxFingerprints;
+
+	/**
+	 * Open windows by fingerprint
+	 */
+	private final ConcurrentMap<Fingerprint, Window> windows = new ConcurrentHashMap<Fingerprint, Window>();
+
+	/**
+	 * Next time expired windows should be collected
+	 */
+	private final AtomicLong nextSweepMillis;
+
+	/**
+	 * @param limit Maximum number of occurrences sent in full per fingerprint and window
+	 * @param windowMillis Window length
+	 * @param maxFingerprints Maximum number of fingerprints tracked at once
+	 */
+	ErrorAggregator(final int limit, final long windowMillis, final int maxFingerprints) {
+		this.limit = limit;
+		this.windowMillis = windowMillis;
+		this.maxFingerprints = maxFingerprints;
+		this.nextSweepMillis = new AtomicLong(System.currentTimeMillis() + windowMillis);
+	}
+
+	/**
+	 * Decides whether an event should be sent in full
+	 * @param event The logging event
+	 * @return True if the event should be sent, false if it was folded into a summary
+	 */
+	boolean admit(final ILoggingEvent event) {
+		IThrowableProxy throwable = event.getThrowableProxy();
+
+		if ((throwable == null) && !event.getLevel().isGreaterOrEqual(Level.ERROR)) {
+			return true;
+		}
+
+		Fingerprint fingerprint = Fingerprint.of(event, throwable);
+		long timestamp = event.getTimeStamp();
+
+		Window window = windows.get(fingerprint);
+
+		if (window == null) {
+			if (maxFingerprints <= windows.size()) {
+				return true;
+			}
+
+			Window created = new Window(timestamp);
+			window = windows.putIfAbsent(fingerprint, created);
+
+			if (window == null) {
+				window = created;
+			}
+		}
+
+		return window.admit(event, timestamp, limit, windowMillis);
+	}
+
+	/**
+	 * Collects summaries for windows that have closed, at most once per window length
+	 * @param now Current time
+	 * @return Summary events (possibly empty)
+	 */
+	List<ILoggingEvent> expired(final long now) {
+		long next = nextSweepMillis.get();
+
+		if ((now < next) || !nextSweepMillis.compareAndSet(next, now + windowMillis)) {
+			return Collections.emptyList();
+		}
+
+		return collect(now, false);
+	}
+
+	/**
+	 * Collects summaries for all windows
+	 * @return Summary events (possibly empty)
+	 */
+	List<ILoggingEvent> flush() {
+		return collect(System.currentTimeMillis(), true);
+	}
+
+	/**
+	 * @return Number of fingerprints being tracked
+	 */
+	int size() {
+		return windows.size();
+	}
+
+	/**
+	 * Collects pending summaries and forgets idle fingerprints
+	 * @param now Current time
+	 * @param all True to forget every fingerprint
+	 * @return Summary events
+	 */
+	private List<ILoggingEvent> collect(final long now, final boolean all) {
+		List<ILoggingEvent> summaries = new ArrayList<ILoggingEvent>();
+
+		for (Iterator<Window> i = windows.values().iterator(); i.hasNext(); ) {
+			Window window = i.next();
+
+			synchronized (window) {
+				ILoggingEvent summary = window.takeSummary();
+
+				if (summary != null) {
+					summaries.add(summary);
+				}
+
+				if (all || ((summary == null) && (windowMillis <= now - window.start))) {
+					i.remove();
+				}
+			}
+		}
+
+		return summaries;
+	}
+
+	/**
+	 * Occurrence counts for one fingerprint
+	 */
+	private static class Window {
+
+		private long start;
+
+		private int count;
+
+		private int suppressed;
+
+		private long firstSuppressed;
+
+		private long lastSuppressed;
+
+		private CapturedLoggingEvent sample;
+
+		private Window(final long start) {
+			this.start = start;
+		}
+
+		private synchronized boolean admit(final ILoggingEvent event, final long timestamp, final int limit, final long windowMillis) {
+			if (windowMillis <= timestamp - start) {
+				start = timestamp;
+				count = 0;
+			}
+
+			if (++count <= limit) {
+				return true;
+			}
+
+			if (suppressed++ == 0) {
+				firstSuppressed = timestamp;
+				sample = (event instanceof CapturedLoggingEvent) ? (CapturedLoggingEvent) event : CapturedLoggingEvent.capture(event);
+			}
+
+			lastSuppressed = timestamp;
+			return false;
+		}
+
+		private ILoggingEvent takeSummary() {
+			if (suppressed == 0) {
+				return null;
+			}
+
+			ILoggingEvent summary = new AggregatedLoggingEvent(sample, suppressed, firstSuppressed, lastSuppressed);
+
+			suppressed = 0;
+			sample = null;
+
+			return summary;
+		}
+	}
+
+	/**
+	 * Error identity: exception types, call site and stack shape
+	 */
+	static final class Fingerprint {
+
+		private final String type;
+
+		private final String loggerName;
+
+		private final String pattern;
+
+		private final long shape;
+
+		private Fingerprint(final String type, final String loggerName, final String pattern, final long shape) {
+			this.type = type;
+			this.loggerName = loggerName;
+			this.pattern = pattern;
+			this.shape = shape;
+		}
+
+		/**
+		 * @param event The logging event
+		 * @param throwable The event's throwable (or null)
+		 * @return The fingerprint
+		 */
+		static Fingerprint of(final ILoggingEvent event, final IThrowableProxy throwable) {
+			long shape = 17;
+			String type = null;
+
+			for (IThrowableProxy t = throwable; t != null; t = t.getCause()) {
+				if (type == null) {
+					type = t.getClassName();
+				}
+
+				shape = mix(shape, t.getClassName().hashCode());
+
+				StackTraceElementProxy[] frames = t.getStackTraceElementProxyArray();
+
+				if (frames != null) {
+					shape = mix(shape, frames.length);
+
+					for (StackTraceElementProxy frame : frames) {
+						StackTraceElement element = frame.getStackTraceElement();
+						shape = mix(shape, element.getClassName().hashCode());
+						shape = mix(shape, element.getMethodName().hashCode());
+						shape = mix(shape, element.getLineNumber());
+					}
+				}
+			}
+
+			return new Fingerprint(type, event.getLoggerName(), event.getMessage(), shape);
+		}
+
+		private static long mix(final long hash, final int value) {
+			long h = (hash ^ value) * 0x9E3779B97F4A7C15L;
+			return h ^ (h >>> 32);
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (this == o) {
+				return true;
+			}
+
+			if (!(o instanceof Fingerprint)) {
+				return false;
+			}
+
+			Fingerprint other = (Fingerprint) o;
+
+			return (shape == other.shape)
+					&& equal(type, other.type)
+					&& equal(loggerName, other.loggerName)
+					&& equal(pattern, other.pattern);
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (shape ^ (shape >>> 32));
+		}
+
+		private static boolean equal(final Object a, final Object b) {
+			return (a == null) ? (b == null) : a.equals(b);
+		}
+	}
+}
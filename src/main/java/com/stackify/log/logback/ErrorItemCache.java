@@ -0,0 +1,285 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import com.stackify.api.ErrorItem;
+import com.stackify.api.TraceFrame;
+import com.stackify.api.common.lang.StackTraceElements;
+import com.stackify.api.common.lang.Throwables;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Bounded cache of the structural parts of converted exceptions.
+ *
+ * <p>
+ * Converting an exception builds a trace frame, with two concatenated strings, for every frame of every
+ * cause. Error storms repeat a few exception shapes, so the error types, source methods and trace frame
+ * lists are kept per shape (exception classes and stack frames of the whole cause chain) and shared by all
+ * errors of that shape. Only the messages are built per event. Without a StackTraceCompactor the result is
+ * equal to Throwables.toErrorItem; with one, the stack traces are compacted once per shape. Once the cache is
+ * full, new shapes are still converted but no longer retained.
+ */
+class ErrorItemCache {
+
+	/**
+	 * Default maximum number of shapes retained
+	 */
+	static final int DEFAULT_MAX_SIZE = 256;
+
+	/**
+	 * Maximum number of shapes retained
+	 */
+	private final int maxSize;
+
+	/**
+	 * Stack trace compaction applied to new shapes
+	 */
+	private final StackTraceCompactor compactor;
+
+	/**
+	 * Converted cause chains by shape
+	 */
+	private final ConcurrentMap<Shape, Cause[]> shapes = new ConcurrentHashMap<Shape, Cause[]>();
+
+	ErrorItemCache() {
+		this(DEFAULT_MAX_SIZE);
+	}
+
+	/**
+	 * @param maxSize Maximum number of shapes retained
+	 */
+	ErrorItemCache(final int maxSize) {
+		this(maxSize, StackTraceCompactor.NONE);
+	}
+
+	/**
+	 * @param maxSize Maximum number of shapes retained
+	 * @param compactor Stack trace compaction
+	 */
+	ErrorItemCache(final int maxSize, final StackTraceCompactor compactor) {
+		this.maxSize = maxSize;
+		this.compactor = compactor;
+	}
+
+	/**
+	 * Same as Throwables.toErrorItem(message, throwable), with compacted stack traces if configured
+	 * @param message The log message
+	 * @param throwable The exception
+	 * @return The error item of the exception and its causes
+	 */
+	ErrorItem toErrorItem(final String message, final Throwable throwable) {
+		List<Throwable> chain = Throwables.getCausalChain(throwable);
+		Shape shape = Shape.of(chain);
+		Cause[] causes = shapes.get(shape);
+
+		if (causes == null) {
+			causes = compactor.isEnabled() ? compact(chain, shape, compactor) : convert(chain, shape);
+
+			if (shapes.size() < maxSize) {
+				Cause[] existing = shapes.putIfAbsent(shape, causes);
+
+				if (existing != null) {
+					causes = existing;
+				}
+			}
+		}
+
+		ErrorItem item = null;
+
+		for (int i = causes.length - 1; 0 <= i; --i) {
+			Cause cause = causes[i];
+			String itemMessage = toMessage((i == 0) ? message : null, chain.get(cause.index).getMessage());
+			item = new ErrorItem(itemMessage, cause.errorType, null, null, cause.sourceMethod, cause.stackTrace, item);
+		}
+
+		return item;
+	}
+
+	/**
+	 * @return Number of shapes retained
+	 */
+	int size() {
+		return shapes.size();
+	}
+
+	/**
+	 * Converts the structural parts of a cause chain
+	 * @param chain The cause chain
+	 * @param shape Its shape
+	 * @return One entry per cause
+	 */
+	private static Cause[] convert(final List<Throwable> chain, final Shape shape) {
+		Cause[] causes = new Cause[chain.size()];
+
+		for (int i = 0; i < causes.length; ++i) {
+			StackTraceElement[] frames = shape.frames[i];
+			List<TraceFrame> stackTrace = new ArrayList<TraceFrame>(frames.length);
+
+			for (StackTraceElement frame : frames) {
+				stackTrace.add(StackTraceElements.toTraceFrame(frame));
+			}
+
+			String sourceMethod = (0 < frames.length) ? frames[0].getClassName() + "." + frames[0].getMethodName() : null;
+
+			causes[i] = new Cause(i, chain.get(i).getClass().getCanonicalName(), sourceMethod, Collections.unmodifiableList(stackTrace));
+		}
+
+		return causes;
+	}
+
+	/**
+	 * Converts the structural parts of a cause chain, compacting the stack traces
+	 * @param chain The cause chain
+	 * @param shape Its shape
+	 * @param compactor Stack trace compaction
+	 * @return One entry per cause kept
+	 */
+	private static Cause[] compact(final List<Throwable> chain, final Shape shape, final StackTraceCompactor compactor) {
+		int[] indexes = compactor.causes(chain.size());
+		Cause[] causes = new Cause[indexes.length];
+
+		for (int i = 0; i < causes.length; ++i) {
+			int index = indexes[i];
+			StackTraceElement[] frames = shape.frames[index];
+			StackTraceElement[] enclosing = (i == 0) ? null : shape.frames[indexes[i - 1]];
+			int omittedCauses = ((i + 1 < indexes.length) ? indexes[i + 1] : chain.size()) - index - 1;
+
+			List<TraceFrame> stackTrace = compactor.compact(frames, enclosing, omittedCauses);
+			String sourceMethod = (0 < frames.length) ? frames[0].getClassName() + "." + frames[0].getMethodName() : null;
+
+			causes[i] = new Cause(index, chain.get(index).getClass().getCanonicalName(), sourceMethod, Collections.unmodifiableList(stackTrace));
+		}
+
+		return causes;
+	}
+
+	/**
+	 * Message rule of Throwables.toErrorItem
+	 * @param logMessage The log message (top level only)
+	 * @param throwableMessage The exception message
+	 * @return The error item message
+	 */
+	private static String toMessage(final String logMessage, final String throwableMessage) {
+		StringBuilder sb = new StringBuilder();
+
+		if ((throwableMessage != null) && !throwableMessage.isEmpty()) {
+			sb.append(throwableMessage);
+
+			if ((logMessage != null) && !logMessage.isEmpty()) {
+				sb.append(" (").append(logMessage).append(")");
+			}
+		} else {
+			sb.append(logMessage);
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * Shared structural parts of one cause
+	 */
+	private static final class Cause {
+
+		/**
+		 * Position in the cause chain
+		 */
+		private final int index;
+
+		private final String errorType;
+
+		private final String sourceMethod;
+
+		private final List<TraceFrame> stackTrace;
+
+		private Cause(final int index, final String errorType, final String sourceMethod, final List<TraceFrame> stackTrace) {
+			this.index = index;
+			this.errorType = errorType;
+			this.sourceMethod = sourceMethod;
+			this.stackTrace = stackTrace;
+		}
+	}
+
+	/**
+	 * Exception class names and stack frames of a cause chain. Class names rather than classes are kept, so
+	 * the cache does not pin class loaders.
+	 */
+	static final class Shape {
+
+		private final String[] types;
+
+		private final StackTraceElement[][] frames;
+
+		private final int hash;
+
+		private Shape(final String[] types, final StackTraceElement[][] frames) {
+			this.types = types;
+			this.frames = frames;
+
+			int h = Arrays.hashCode(types);
+
+			for (StackTraceElement[] f : frames) {
+				h = 31 * h + Arrays.hashCode(f);
+			}
+
+			this.hash = h;
+		}
+
+		/**
+		 * @param chain The cause chain
+		 * @return Its shape
+		 */
+		static Shape of(final List<Throwable> chain) {
+			String[] types = new String[chain.size()];
+			StackTraceElement[][] frames = new StackTraceElement[chain.size()][];
+
+			for (int i = 0; i < types.length; ++i) {
+				Throwable t = chain.get(i);
+				StackTraceElement[] stackTrace = t.getStackTrace();
+
+				types[i] = t.getClass().getName();
+				frames[i] = (stackTrace == null) ? new StackTraceElement[0] : stackTrace;
+			}
+
+			return new Shape(types, frames);
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (this == o) {
+				return true;
+			}
+
+			if (!(o instanceof Shape)) {
+				return false;
+			}
+
+			Shape other = (Shape) o;
+
+			return (hash == other.hash) && Arrays.equals(types, other.types) && Arrays.deepEquals(frames, other.frames);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+}
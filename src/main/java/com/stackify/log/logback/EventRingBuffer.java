@@ -0,0 +1,150 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, lock-free, multi-producer ring buffer.
+ *
+ * <p>
+ * Each slot carries a sequence number that tells producers and consumers whether the slot is free
+ * for the current lap, so neither side ever takes a lock. Offers fail fast when the buffer is full.
+ */
+class EventRingBuffer<E> {
+
+	/**
+	 * Slot index mask (capacity - 1)
+	 */
+	private final int mask;
+
+	/**
+	 * Slot contents
+	 */
+	private final AtomicReferenceArray<E> slots;
+
+	/**
+	 * Per slot sequence numbers
+	 */
+	private final AtomicLongArray sequences;
+
+	/**
+	 * Next position to write
+	 */
+	private final AtomicLong tail = new AtomicLong();
+
+	/**
+	 * Next position to read
+	 */
+	private final AtomicLong head = new AtomicLong();
+
+	/**
+	 * @param requestedCapacity Minimum capacity, rounded up to the next power of two
+	 */
+	EventRingBuffer(final int requestedCapacity) {
+		if (requestedCapacity < 1 || requestedCapacity > (1 << 30)) {
+			throw new IllegalArgumentException("Invalid ring buffer capacity: " + requestedCapacity);
+		}
+
+		int capacity = Integer.highestOneBit(requestedCapacity);
+
+		if (capacity < requestedCapacity) {
+			capacity <<= 1;
+		}
+
+		this.mask = capacity - 1;
+		this.slots = new AtomicReferenceArray<E>(capacity);
+		this.sequences = new AtomicLongArray(capacity);
+
+		for (int i = 0; i < capacity; ++i) {
+			sequences.set(i, i);
+		}
+	}
+
+	/**
+	 * Adds an element if there is room
+	 * @param element The element
+	 * @return True if the element was added, false if the buffer is full
+	 */
+	boolean offer(final E element) {
+		if (element == null) {
+			throw new NullPointerException();
+		}
+
+		while (true) {
+			long position = tail.get();
+			int index = (int) (position & mask);
+			long diff = sequences.get(index) - position;
+
+			if (diff == 0) {
+				if (tail.compareAndSet(position, position + 1)) {
+					slots.lazySet(index, element);
+					sequences.set(index, position + 1);
+					return true;
+				}
+			} else if (diff < 0) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Removes the oldest element
+	 * @return The oldest element or null if the buffer is empty
+	 */
+	E poll() {
+		while (true) {
+			long position = head.get();
+			int index = (int) (position & mask);
+			long diff = sequences.get(index) - (position + 1);
+
+			if (diff == 0) {
+				if (head.compareAndSet(position, position + 1)) {
+					E element = slots.get(index);
+					slots.lazySet(index, null);
+					sequences.set(index, position + mask + 1);
+					return element;
+				}
+			} else if (diff < 0) {
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * @return Approximate number of elements in the buffer
+	 */
+	int size() {
+		long size = tail.get() - head.get();
+		return (int) Math.max(0, Math.min(size, capacity()));
+	}
+
+	/**
+	 * @return True if the buffer is (approximately) empty
+	 */
+	boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * @return Buffer capacity
+	 */
+	int capacity() {
+		return mask + 1;
+	}
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import lombok.Getter;
+
+import java.beans.ConstructorProperties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non-negative values with log-linear buckets.
+ *
+ * <p>
+ * Like HdrHistogram, each power of two is split into 16 linear sub-buckets, so any recorded value is
+ * reported within about 6% across the whole long range. Recording is one atomic increment on the value's
+ * bucket, a striped count and sum and, rarely, a compare-and-set of the maximum. It never allocates.
+ */
+public class Histogram {
+
+	/**
+	 * log2 of the number of sub-buckets per power of two
+	 */
+	private static final int SUB_BUCKET_BITS = 4;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * Enough buckets for every non-negative long
+	 */
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	private final LongAdder count = new LongAdder();
+
+	private final LongAdder sum = new LongAdder();
+
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records a value (negative values are recorded as zero)
+	 * @param value The value
+	 */
+	void record(final long value) {
+		long v = Math.max(0, value);
+
+		counts.incrementAndGet(index(v));
+		count.increment();
+		sum.add(v);
+
+		long current = max.get();
+
+		while ((current < v) && !max.compareAndSet(current, v)) {
+			current = max.get();
+		}
+	}
+
+	/**
+	 * @return Number of values recorded
+	 */
+	long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * Takes a snapshot; values recorded concurrently may or may not be included
+	 * @return The snapshot
+	 */
+	Snapshot snapshot() {
+		long[] copy = new long[BUCKETS];
+		long total = 0;
+
+		for (int i = 0; i < BUCKETS; ++i) {
+			copy[i] = counts.get(i);
+			total += copy[i];
+		}
+
+		long mean = (total == 0) ? 0 : sum.sum() / Math.max(1, count.sum());
+
+		return new Snapshot(total, mean, percentile(copy, total, 0.5), percentile(copy, total, 0.9), percentile(copy, total, 0.99), percentile(copy, total, 0.999), max.get());
+	}
+
+	/**
+	 * @param value Non-negative value
+	 * @return Bucket index
+	 */
+	static int index(final long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+		int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+
+		return (shift + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * @param index Bucket index
+	 * @return Smallest value in the bucket
+	 */
+	static long lowest(final int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+
+		int shift = index / SUB_BUCKETS - 1;
+		long subBucket = index % SUB_BUCKETS;
+
+		return (SUB_BUCKETS + subBucket) << shift;
+	}
+
+	/**
+	 * @param index Bucket index
+	 * @return Middle value of the bucket
+	 */
+	private static long median(final int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+
+		return lowest(index) + ((1L << (index / SUB_BUCKETS - 1)) >>> 1);
+	}
+
+	/**
+	 * @param counts Bucket counts
+	 * @param total Sum of the bucket counts
+	 * @param quantile Quantile between 0 and 1
+	 * @return Value at the quantile
+	 */
+	private static long percentile(final long[] counts, final long total, final double quantile) {
+		if (total == 0) {
+			return 0;
+		}
+
+		long rank = Math.max(1, (long) Math.ceil(quantile * total));
+		long seen = 0;
+
+		for (int i = 0; i < counts.length; ++i) {
+			seen += counts[i];
+
+			if (rank <= seen) {
+				return median(i);
+			}
+		}
+
+		return median(counts.length - 1);
+	}
+
+	/**
+	 * Point-in-time histogram summary
+	 */
+	public static class Snapshot {
+
+		@Getter
+		private final long count;
+
+		@Getter
+		private final long mean;
+
+		@Getter
+		private final long p50;
+
+		@Getter
+		private final long p90;
+
+		@Getter
+		private final long p99;
+
+		@Getter
+		private final long p999;
+
+		@Getter
+		private final long max;
+
+		@ConstructorProperties({"count", "mean", "p50", "p90", "p99", "p999", "max"})
+		public Snapshot(final long count, final long mean, final long p50, final long p90, final long p99, final long p999, final long max) {
+			this.count = count;
+			this.mean = mean;
+			this.p50 = p50;
+			this.p90 = p90;
+			this.p99 = p99;
+			this.p999 = p999;
+			this.max = max;
+		}
+
+		@Override
+		public String toString() {
+			return "count=" + count + " mean=" + mean + " p50=" + p50 + " p90=" + p90 + " p99=" + p99 + " p99.9=" + p999 + " max=" + max;
+		}
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import com.stackify.api.common.ApiConfiguration;
+import com.stackify.api.common.http.HttpException;
+import com.stackify.api.common.http.HttpProxy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.URL;
+
+/**
+ * Posts serialized batches to the Stackify API.
+ *
+ * <p>
+ * Sends the same request as the API client's HttpClient, except that the payload arrives already encoded
+ * and the Content-Encoding header follows the encoding chosen for the batch.
+ */
+class HttpPayloadTransport implements PayloadTransport {
+
+	/**
+	 * Log save endpoint
+	 */
+	static final String LOG_SAVE_PATH = "/Log/Save";
+
+	private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+
+	private static final int READ_TIMEOUT_MILLIS = 15000;
+
+	/**
+	 * Log save URL
+	 */
+	private final URL url;
+
+	private final String apiKey;
+
+	private final Proxy proxy;
+
+	/**
+	 * @param apiConfig API configuration
+	 * @throws IllegalArgumentException If the API URL is malformed
+	 */
+	HttpPayloadTransport(final ApiConfiguration apiConfig) {
+		try {
+			this.url = new URL(apiConfig.getApiUrl() + LOG_SAVE_PATH);
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Invalid Stackify API URL: " + apiConfig.getApiUrl(), e);
+		}
+
+		this.apiKey = apiConfig.getApiKey();
+
+		if ((apiConfig.getHttpProxyHost() != null) && !apiConfig.getHttpProxyHost().isEmpty()
+				&& (apiConfig.getHttpProxyPort() != null) && !apiConfig.getHttpProxyPort().isEmpty()) {
+			this.proxy = HttpProxy.build(apiConfig.getHttpProxyHost(), apiConfig.getHttpProxyPort());
+		} else {
+			this.proxy = HttpProxy.fromSystemProperties();
+		}
+	}
+
+	@Override
+	public void send(final BatchBuffer payload, final boolean gzip) throws Exception {
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection(proxy);
+
+		try {
+			connection.setDoInput(true);
+			connection.setDoOutput(true);
+			connection.setRequestProperty("Content-Type", "application/json");
+
+			if (gzip) {
+				connection.setRequestProperty("Content-Encoding", "gzip");
+			}
+
+			connection.setRequestProperty("X-Stackify-Key", apiKey);
+			connection.setRequestProperty("X-Stackify-PV", "V1");
+			connection.setRequestMethod("POST");
+			connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+			connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+			connection.setFixedLengthStreamingMode(payload.size());
+
+			OutputStream out = connection.getOutputStream();
+
+			try {
+				payload.writeTo(out);
+			} finally {
+				out.close();
+			}
+
+			int status = connection.getResponseCode();
+
+			if (status != HttpURLConnection.HTTP_OK) {
+				drain(connection.getErrorStream());
+				throw new HttpException(status);
+			}
+
+			drain(connection.getInputStream());
+		} catch (IOException e) {
+			drain(connection.getErrorStream());
+			throw e;
+		}
+	}
+
+	@Override
+	public void close() {
+		// connections are pooled by HttpURLConnection
+	}
+
+	/**
+	 * Reads and closes a response body, so the connection can be reused
+	 * @param in The response body (or null)
+	 */
+	private static void drain(final InputStream in) {
+		if (in == null) {
+			return;
+		}
+
+		byte[] buffer = new byte[1024];
+
+		try {
+			while (0 <= in.read(buffer)) {
+				// discard
+			}
+		} catch (IOException e) {
+			// the connection is not reused
+		} finally {
+			try {
+				in.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+}
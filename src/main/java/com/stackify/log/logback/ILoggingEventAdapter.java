@@ -19,7 +19,6 @@ import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.classic.spi.IThrowableProxy;
 import ch.qos.logback.classic.spi.ThrowableProxy;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.stackify.api.EnvironmentDetail;
 import com.stackify.api.LogMsg;
 import com.stackify.api.StackifyError;
@@ -29,10 +28,13 @@ import com.stackify.api.common.log.APMLogData;
 import com.stackify.api.common.log.EventAdapter;
 import com.stackify.api.common.log.ServletLogContext;
 import com.stackify.api.common.log.StackTraceUtil;
-import com.stackify.api.common.util.Maps;
 import com.stackify.api.common.util.Preconditions;
+import lombok.Getter;
+import lombok.Setter;
 
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * ILoggingEventAdapter
@@ -47,15 +49,58 @@ public class ILoggingEventAdapter implements EventAdapter<ILoggingEvent> {
     private final EnvironmentDetail envDetail;
 
     /**
-     * JSON converter
+     * MDC JSON encoder
      */
-    private final ObjectMapper json = new ObjectMapper();
+    private final MdcJsonEncoder mdcEncoder = new MdcJsonEncoder();
+
+    /**
+     * Source method and line by call site
+     */
+    private final CallSiteCache callSites = new CallSiteCache();
+
+    /**
+     * Converted exception shapes
+     */
+    private volatile ErrorItemCache errorItems = new ErrorItemCache();
+
+    /**
+     * Shared server variables snapshot
+     */
+    @Getter
+    @Setter
+    private ServerVariables serverVariables = new ServerVariables();
+
+    /**
+     * When server variables are attached to errors
+     */
+    @Getter
+    @Setter
+    private ServerVariables.Mode serverVariablesMode = ServerVariables.Mode.ERROR;
+
+    /**
+     * Last server variables version sent (session mode)
+     */
+    private final AtomicLong sentServerVariablesVersion = new AtomicLong();
+
+    /**
+     * Conversion timing (null when metrics are off)
+     */
+    @Getter
+    @Setter
+    private AppenderMetrics metrics;
 
     public ILoggingEventAdapter(final EnvironmentDetail environmentDetail) {
         Preconditions.checkNotNull(environmentDetail);
         this.envDetail = environmentDetail;
     }
 
+    /**
+     * @param compactor Stack trace compaction of converted exceptions
+     */
+    void setStackTraceCompactor(final StackTraceCompactor compactor) {
+        this.errorItems = new ErrorItemCache(ErrorItemCache.DEFAULT_MAX_SIZE, compactor);
+    }
+
     @Override
     public Throwable getThrowable(final ILoggingEvent event) {
 
@@ -73,13 +118,46 @@ public class ILoggingEventAdapter implements EventAdapter<ILoggingEvent> {
 
     @Override
     public StackifyError getStackifyError(final ILoggingEvent event, final Throwable exception) {
+        AppenderMetrics m = metrics;
+
+        if (m == null) {
+            return toStackifyError(event, exception);
+        }
+
+        long start = System.nanoTime();
+
+        try {
+            return toStackifyError(event, exception);
+        } finally {
+            m.recordAdapter(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public LogMsg getLogMsg(final ILoggingEvent event, final StackifyError error) {
+        AppenderMetrics m = metrics;
+
+        if (m == null) {
+            return toLogMsg(event, error);
+        }
+
+        long start = System.nanoTime();
+
+        try {
+            return toLogMsg(event, error);
+        } finally {
+            m.recordAdapter(System.nanoTime() - start);
+        }
+    }
+
+    private StackifyError toStackifyError(final ILoggingEvent event, final Throwable exception) {
 
         StackifyError.Builder builder = StackifyError.newBuilder();
         builder.environmentDetail(envDetail);
         builder.occurredEpochMillis(event.getTimeStamp());
 
         if (exception != null) {
-            builder.error(Throwables.toErrorItem(event.getFormattedMessage(), exception));
+            builder.error(errorItems.toErrorItem(event.getFormattedMessage(), exception));
         } else {
             String className = null;
             String methodName = null;
@@ -100,65 +178,75 @@ public class ILoggingEventAdapter implements EventAdapter<ILoggingEvent> {
             builder.error(Throwables.toErrorItem(event.getFormattedMessage(), className, methodName, lineNumber));
         }
 
-        String user = APMLogData.isLinked() ? APMLogData.getUser() : ServletLogContext.getUser();
+        String user = getUser(event);
 
         if (user != null) {
             builder.userName(user);
         }
 
-        WebRequestDetail webRequest = APMLogData.isLinked() ? APMLogData.getWebRequest() : ServletLogContext.getWebRequest();
+        WebRequestDetail webRequest = getWebRequest(event);
 
         if (webRequest != null) {
             builder.webRequestDetail(webRequest);
         }
 
-        builder.serverVariables(Maps.fromProperties(System.getProperties()));
+        Map<String, String> variables = selectServerVariables();
+
+        if (variables != null) {
+            builder.serverVariables(variables);
+        }
 
         return builder.build();
     }
 
-    @Override
-    public LogMsg getLogMsg(final ILoggingEvent event, final StackifyError error) {
-
-        LogMsg.Builder builder = LogMsg.newBuilder();
+    private LogMsg toLogMsg(final ILoggingEvent event, final StackifyError error) {
 
-        builder.msg(event.getFormattedMessage());
+        String data = null;
 
         Map<String, String> props = event.getMDCPropertyMap();
 
         if (props != null) {
             if (!props.isEmpty()) {
-                try {
-                    builder.data(json.writeValueAsString(props));
-                } catch (Exception e) {
-                    // do nothing
-                }
+                data = mdcEncoder.encode(props);
             }
         }
 
-        builder.ex(error);
-        builder.th(event.getThreadName());
-        builder.epochMs(event.getTimeStamp());
-        builder.level(event.getLevel().toString().toLowerCase());
-
-        String transactionId = APMLogData.isLinked() ? APMLogData.getTransactionId() : ServletLogContext.getTransactionId();
-
-        if (transactionId != null) {
-            builder.transId(transactionId);
-        }
+        String srcMethod = null;
+        Integer srcLine = null;
 
         StackTraceElement stackTraceElement = StackTraceUtil.getStackTraceElement(event.getCallerData());
 
         if (stackTraceElement != null) {
-            builder.srcMethod(stackTraceElement.getClassName() + "." + stackTraceElement.getMethodName());
-
-            try {
-                builder.srcLine(stackTraceElement.getLineNumber());
-            } catch (Throwable e) {
-            }
+            CallSiteCache.CallSite callSite = callSites.get(stackTraceElement);
+            srcMethod = callSite.getMethod();
+            srcLine = callSite.getLine();
         }
 
-        return builder.build();
+        return new LogMsg(event.getFormattedMessage(),
+                data,
+                error,
+                event.getThreadName(),
+                event.getTimeStamp(),
+                getLevelName(event.getLevel()),
+                getTransactionId(event),
+                srcMethod,
+                srcLine,
+                UUID.randomUUID().toString(),
+                null);
+    }
+
+    /**
+     * @return Number of MDC maps that could not be encoded as JSON
+     */
+    public long getMdcFailureCount() {
+        return mdcEncoder.getFailureCount();
+    }
+
+    /**
+     * Drops the per-thread state of the event adapter, so threads that outlive the appender do not keep it
+     */
+    void release() {
+        mdcEncoder.release();
     }
 
     @Override
@@ -168,7 +256,95 @@ public class ILoggingEventAdapter implements EventAdapter<ILoggingEvent> {
 
     @Override
     public String getClassName(final ILoggingEvent event) {
+        if ((event instanceof CapturedLoggingEvent) && !event.hasCallerData()) {
+            // caller data was skipped, the logger is usually named after the class
+            return event.getLoggerName();
+        }
+
         return StackTraceUtil.getClassName(event.getCallerData());
     }
 
+    /**
+     * Returns the lower case level name without building a new string for the standard levels
+     * @param level The level
+     * @return The lower case level name
+     */
+    static String getLevelName(final Level level) {
+        switch (level.toInt()) {
+            case Level.ERROR_INT:
+                return "error";
+            case Level.WARN_INT:
+                return "warn";
+            case Level.INFO_INT:
+                return "info";
+            case Level.DEBUG_INT:
+                return "debug";
+            case Level.TRACE_INT:
+                return "trace";
+            default:
+                return level.toString().toLowerCase();
+        }
+    }
+
+    /**
+     * Returns the server variables to attach to an error
+     * @return The server variables or null if they should not be sent with this error
+     */
+    private Map<String, String> selectServerVariables() {
+        switch (serverVariablesMode) {
+            case NONE:
+                return null;
+            case SESSION:
+                ServerVariables.Snapshot snapshot = serverVariables.get();
+                long sent = sentServerVariablesVersion.get();
+
+                if ((sent != snapshot.getVersion()) && sentServerVariablesVersion.compareAndSet(sent, snapshot.getVersion())) {
+                    return snapshot.getVariables();
+                }
+
+                return null;
+            default:
+                return serverVariables.get().getVariables();
+        }
+    }
+
+    /**
+     * Returns the user, preferring the value captured on the logging thread
+     * @param event The logging event
+     * @return The user
+     */
+    private static String getUser(final ILoggingEvent event) {
+        if (event instanceof CapturedLoggingEvent) {
+            return ((CapturedLoggingEvent) event).getUser();
+        }
+
+        return APMLogData.isLinked() ? APMLogData.getUser() : ServletLogContext.getUser();
+    }
+
+    /**
+     * Returns the web request, preferring the value captured on the logging thread
+     * @param event The logging event
+     * @return The web request
+     */
+    private static WebRequestDetail getWebRequest(final ILoggingEvent event) {
+        if (event instanceof CapturedLoggingEvent) {
+            return ((CapturedLoggingEvent) event).getWebRequest();
+        }
+
+        return APMLogData.isLinked() ? APMLogData.getWebRequest() : ServletLogContext.getWebRequest();
+    }
+
+    /**
+     * Returns the transaction id, preferring the value captured on the logging thread
+     * @param event The logging event
+     * @return The transaction id
+     */
+    private static String getTransactionId(final ILoggingEvent event) {
+        if (event instanceof CapturedLoggingEvent) {
+            return ((CapturedLoggingEvent) event).getTransactionId();
+        }
+
+        return APMLogData.isLinked() ? APMLogData.getTransactionId() : ServletLogContext.getTransactionId();
+    }
+
 }
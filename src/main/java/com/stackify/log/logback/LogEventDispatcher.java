@@ -0,0 +1,200 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.spi.ContextAware;
+import com.stackify.api.common.log.LogAppender;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands events from application threads to a single background thread through a lock-free ring buffer.
+ * The background thread feeds the events to the generic log appender.
+ */
+class LogEventDispatcher implements Runnable {
+
+	/**
+	 * How long the background thread parks when there is nothing to do
+	 */
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+	/**
+	 * Staged events
+	 */
+	private final EventRingBuffer<ILoggingEvent> buffer;
+
+	/**
+	 * Generic log appender that receives the events
+	 */
+	private final LogAppender<ILoggingEvent> logAppender;
+
+	/**
+	 * Status reporting
+	 */
+	private final ContextAware status;
+
+	/**
+	 * Events dropped because the ring buffer was full
+	 */
+	private final AtomicLong dropped = new AtomicLong();
+
+	/**
+	 * Background thread
+	 */
+	private final Thread thread;
+
+	/**
+	 * True while the background thread should keep running
+	 */
+	private volatile boolean running;
+
+	/**
+	 * True while the background thread is parked waiting for events
+	 */
+	private volatile boolean idle;
+
+	LogEventDispatcher(final String name, final int capacity, final LogAppender<ILoggingEvent> logAppender, final ContextAware status) {
+		this(capacity, logAppender, status, new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable r) {
+				Thread thread = new Thread(r, name);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * @param capacity Ring buffer capacity
+	 * @param logAppender Generic log appender that receives the events
+	 * @param status Status reporting
+	 * @param threadFactory Creates the background thread (e.g. a virtual thread)
+	 */
+	LogEventDispatcher(final int capacity, final LogAppender<ILoggingEvent> logAppender, final ContextAware status, final ThreadFactory threadFactory) {
+		this.buffer = new EventRingBuffer<ILoggingEvent>(capacity);
+		this.logAppender = logAppender;
+		this.status = status;
+		this.thread = threadFactory.newThread(this);
+	}
+
+	/**
+	 * Starts the background thread
+	 */
+	void start() {
+		running = true;
+		thread.start();
+	}
+
+	/**
+	 * Stops the background thread after it has drained the buffer
+	 * @param timeoutMillis Maximum time to wait for the buffer to drain
+	 */
+	void stop(final long timeoutMillis) {
+		running = false;
+		LockSupport.unpark(thread);
+
+		try {
+			thread.join(timeoutMillis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		if (thread.isAlive()) {
+			status.addWarn("Stackify Log Appender dispatcher did not drain within " + timeoutMillis + " ms");
+		}
+	}
+
+	/**
+	 * Stages an event for the background thread
+	 * @param event The event
+	 * @return True if the event was staged, false if it was dropped
+	 */
+	boolean offer(final ILoggingEvent event) {
+		if (!buffer.offer(event)) {
+			dropped.incrementAndGet();
+			return false;
+		}
+
+		if (idle) {
+			LockSupport.unpark(thread);
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return Number of staged events
+	 */
+	int size() {
+		return buffer.size();
+	}
+
+	/**
+	 * @return Ring buffer capacity
+	 */
+	int capacity() {
+		return buffer.capacity();
+	}
+
+	/**
+	 * @return Number of events dropped because the ring buffer was full
+	 */
+	long getDroppedCount() {
+		return dropped.get();
+	}
+
+	@Override
+	public void run() {
+		while (running) {
+			if (!drain()) {
+				idle = true;
+
+				if (running && buffer.isEmpty()) {
+					LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+				}
+
+				idle = false;
+			}
+		}
+
+		drain();
+	}
+
+	/**
+	 * Feeds all staged events to the log appender
+	 * @return True if at least one event was processed
+	 */
+	private boolean drain() {
+		boolean processed = false;
+		ILoggingEvent event;
+
+		while ((event = buffer.poll()) != null) {
+			processed = true;
+
+			try {
+				logAppender.append(event);
+			} catch (Exception e) {
+				status.addError("Exception appending event to Stackify Log Appender", e);
+			}
+		}
+
+		return processed;
+	}
+}
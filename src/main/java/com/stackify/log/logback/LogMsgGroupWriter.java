@@ -0,0 +1,364 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.stackify.api.Container;
+import com.stackify.api.EnvironmentDetail;
+import com.stackify.api.ErrorItem;
+import com.stackify.api.Kubernetes;
+import com.stackify.api.LogMsg;
+import com.stackify.api.LogMsgGroup;
+import com.stackify.api.StackifyError;
+import com.stackify.api.TraceFrame;
+import com.stackify.api.WebRequestDetail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a LogMsgGroup as JSON with the streaming generator.
+ *
+ * <p>
+ * The output matches what databind writes for the stackify-api classes (property names, property order
+ * and null properties left out), without bean introspection or an intermediate byte array. Property
+ * names are pre-encoded once.
+ */
+class LogMsgGroupWriter {
+
+	/**
+	 * Shared generator factory
+	 */
+	private static final JsonFactory FACTORY = new JsonFactory();
+
+	private static final SerializableString CDID = name("CDID");
+	private static final SerializableString CD_APP_ID = name("CDAppID");
+	private static final SerializableString APP_NAME_ID = name("AppNameID");
+	private static final SerializableString APP_ENV_ID = name("AppEnvID");
+	private static final SerializableString ENV_ID = name("EnvID");
+	private static final SerializableString ENV = name("Env");
+	private static final SerializableString SERVER_NAME = name("ServerName");
+	private static final SerializableString APP_NAME = name("AppName");
+	private static final SerializableString APP_LOC = name("AppLoc");
+	private static final SerializableString LOGGER = name("Logger");
+	private static final SerializableString PLATFORM = name("Platform");
+	private static final SerializableString MSGS = name("Msgs");
+	private static final SerializableString CONTAINER = name("Container");
+	private static final SerializableString KUBERNETES = name("Kubernetes");
+
+	private static final SerializableString MSG = name("Msg");
+	private static final SerializableString DATA = name("data");
+	private static final SerializableString EX = name("Ex");
+	private static final SerializableString TH = name("Th");
+	private static final SerializableString EPOCH_MS = name("EpochMs");
+	private static final SerializableString LEVEL = name("Level");
+	private static final SerializableString TRANS_ID = name("TransID");
+	private static final SerializableString SRC_METHOD = name("SrcMethod");
+	private static final SerializableString SRC_LINE = name("SrcLine");
+	private static final SerializableString ID = name("id");
+	private static final SerializableString TAGS = name("Tags");
+
+	private static final SerializableString ENVIRONMENT_DETAIL = name("EnvironmentDetail");
+	private static final SerializableString OCCURRED_EPOCH_MILLIS = name("OccurredEpochMillis");
+	private static final SerializableString ERROR = name("Error");
+	private static final SerializableString WEB_REQUEST_DETAIL = name("WebRequestDetail");
+	private static final SerializableString SERVER_VARIABLES = name("ServerVariables");
+	private static final SerializableString CUSTOMER_NAME = name("CustomerName");
+	private static final SerializableString USER_NAME = name("UserName");
+
+	private static final SerializableString DEVICE_NAME = name("DeviceName");
+	private static final SerializableString APP_LOCATION = name("AppLocation");
+	private static final SerializableString CONFIGURED_APP_NAME = name("ConfiguredAppName");
+	private static final SerializableString CONFIGURED_ENVIRONMENT_NAME = name("ConfiguredEnvironmentName");
+
+	private static final SerializableString MESSAGE = name("Message");
+	private static final SerializableString ERROR_TYPE = name("ErrorType");
+	private static final SerializableString ERROR_TYPE_CODE = name("ErrorTypeCode");
+	private static final SerializableString ERROR_DATA = name("Data");
+	private static final SerializableString SOURCE_METHOD = name("SourceMethod");
+	private static final SerializableString STACK_TRACE = name("StackTrace");
+	private static final SerializableString INNER_ERROR = name("InnerError");
+
+	private static final SerializableString CODE_FILE_NAME = name("CodeFileName");
+	private static final SerializableString LINE_NUM = name("LineNum");
+	private static final SerializableString METHOD = name("Method");
+
+	private static final SerializableString USER_IP_ADDRESS = name("UserIPAddress");
+	private static final SerializableString HTTP_METHOD = name("HttpMethod");
+	private static final SerializableString REQUEST_PROTOCOL = name("RequestProtocol");
+	private static final SerializableString REQUEST_URL = name("RequestUrl");
+	private static final SerializableString REQUEST_URL_ROOT = name("RequestUrlRoot");
+	private static final SerializableString REFERRAL_URL = name("ReferralUrl");
+	private static final SerializableString HEADERS = name("Headers");
+	private static final SerializableString COOKIES = name("Cookies");
+	private static final SerializableString QUERY_STRING = name("QueryString");
+	private static final SerializableString POST_DATA = name("PostData");
+	private static final SerializableString SESSION_DATA = name("SessionData");
+	private static final SerializableString POST_DATA_RAW = name("PostDataRaw");
+	private static final SerializableString MVC_ACTION = name("MVCAction");
+	private static final SerializableString MVC_CONTROLLER = name("MVCController");
+	private static final SerializableString MVC_AREA = name("MVCArea");
+
+	private static final SerializableString IMAGE_ID = name("ImageId");
+	private static final SerializableString IMAGE_REPOSITORY = name("ImageRepository");
+	private static final SerializableString IMAGE_TAG = name("ImageTag");
+	private static final SerializableString CONTAINER_ID = name("ContainerId");
+	private static final SerializableString CONTAINER_NAME = name("ContainerName");
+
+	private static final SerializableString POD_NAME = name("PodName");
+	private static final SerializableString POD_NAMESPACE = name("PodNamespace");
+	private static final SerializableString CLUSTER_NAME = name("ClusterName");
+
+	/**
+	 * Writes the group as JSON
+	 * @param group The group
+	 * @param out Target stream (left open)
+	 * @throws IOException If the stream fails
+	 */
+	void write(final LogMsgGroup group, final OutputStream out) throws IOException {
+		JsonGenerator generator = FACTORY.createGenerator(out, JsonEncoding.UTF8);
+		generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+		try {
+			writeGroup(generator, group);
+		} finally {
+			generator.close();
+		}
+	}
+
+	private static void writeGroup(final JsonGenerator g, final LogMsgGroup group) throws IOException {
+		g.writeStartObject();
+		writeNumber(g, CDID, group.getCdId());
+		writeNumber(g, CD_APP_ID, group.getCdAppId());
+		writeString(g, APP_NAME_ID, group.getAppNameId());
+		writeString(g, APP_ENV_ID, group.getAppEnvId());
+		writeNumber(g, ENV_ID, group.getEnvId());
+		writeString(g, ENV, group.getEnv());
+		writeString(g, SERVER_NAME, group.getServerName());
+		writeString(g, APP_NAME, group.getAppName());
+		writeString(g, APP_LOC, group.getAppLoc());
+		writeString(g, LOGGER, group.getLogger());
+		writeString(g, PLATFORM, group.getPlatform());
+
+		List<LogMsg> msgs = group.getMsgs();
+
+		if (msgs != null) {
+			g.writeFieldName(MSGS);
+			g.writeStartArray();
+
+			for (LogMsg msg : msgs) {
+				writeMsg(g, msg);
+			}
+
+			g.writeEndArray();
+		}
+
+		Container container = group.getContainer();
+
+		if (container != null) {
+			g.writeFieldName(CONTAINER);
+			g.writeStartObject();
+			writeString(g, IMAGE_ID, container.getImageId());
+			writeString(g, IMAGE_REPOSITORY, container.getImageRepository());
+			writeString(g, IMAGE_TAG, container.getImageTag());
+			writeString(g, CONTAINER_ID, container.getContainerId());
+			writeString(g, CONTAINER_NAME, container.getContainerName());
+			g.writeEndObject();
+		}
+
+		Kubernetes kubernetes = group.getKubernetes();
+
+		if (kubernetes != null) {
+			g.writeFieldName(KUBERNETES);
+			g.writeStartObject();
+			writeString(g, POD_NAME, kubernetes.getPodName());
+			writeString(g, POD_NAMESPACE, kubernetes.getPodNamespace());
+			writeString(g, CLUSTER_NAME, kubernetes.getClusterName());
+			g.writeEndObject();
+		}
+
+		g.writeEndObject();
+	}
+
+	private static void writeMsg(final JsonGenerator g, final LogMsg msg) throws IOException {
+		g.writeStartObject();
+		writeString(g, MSG, msg.getMsg());
+		writeString(g, DATA, msg.getData());
+
+		if (msg.getEx() != null) {
+			g.writeFieldName(EX);
+			writeError(g, msg.getEx());
+		}
+
+		writeString(g, TH, msg.getTh());
+		writeNumber(g, EPOCH_MS, msg.getEpochMs());
+		writeString(g, LEVEL, msg.getLevel());
+		writeString(g, TRANS_ID, msg.getTransId());
+		writeString(g, SRC_METHOD, msg.getSrcMethod());
+		writeNumber(g, SRC_LINE, msg.getSrcLine());
+		writeString(g, ID, msg.getId());
+
+		if (msg.getTags() != null) {
+			g.writeFieldName(TAGS);
+			g.writeStartArray();
+
+			for (String tag : msg.getTags()) {
+				g.writeString(tag);
+			}
+
+			g.writeEndArray();
+		}
+
+		g.writeEndObject();
+	}
+
+	private static void writeError(final JsonGenerator g, final StackifyError error) throws IOException {
+		g.writeStartObject();
+
+		EnvironmentDetail env = error.getEnvironmentDetail();
+
+		if (env != null) {
+			g.writeFieldName(ENVIRONMENT_DETAIL);
+			g.writeStartObject();
+			writeString(g, DEVICE_NAME, env.getDeviceName());
+			writeString(g, APP_NAME, env.getAppName());
+			writeString(g, APP_LOCATION, env.getAppLocation());
+			writeString(g, CONFIGURED_APP_NAME, env.getConfiguredAppName());
+			writeString(g, CONFIGURED_ENVIRONMENT_NAME, env.getConfiguredEnvironmentName());
+			g.writeEndObject();
+		}
+
+		writeNumber(g, OCCURRED_EPOCH_MILLIS, error.getOccurredEpochMillis());
+
+		if (error.getError() != null) {
+			g.writeFieldName(ERROR);
+			writeErrorItem(g, error.getError());
+		}
+
+		WebRequestDetail request = error.getWebRequestDetail();
+
+		if (request != null) {
+			g.writeFieldName(WEB_REQUEST_DETAIL);
+			g.writeStartObject();
+			writeString(g, USER_IP_ADDRESS, request.getUserIpAddress());
+			writeString(g, HTTP_METHOD, request.getHttpMethod());
+			writeString(g, REQUEST_PROTOCOL, request.getRequestProtocol());
+			writeString(g, REQUEST_URL, request.getRequestUrl());
+			writeString(g, REQUEST_URL_ROOT, request.getRequestUrlRoot());
+			writeString(g, REFERRAL_URL, request.getReferralUrl());
+			writeMap(g, HEADERS, request.getHeaders());
+			writeMap(g, COOKIES, request.getCookies());
+			writeMap(g, QUERY_STRING, request.getQueryString());
+			writeMap(g, POST_DATA, request.getPostData());
+			writeMap(g, SESSION_DATA, request.getSessionData());
+			writeString(g, POST_DATA_RAW, request.getPostDataRaw());
+			writeString(g, MVC_ACTION, request.getMvcAction());
+			writeString(g, MVC_CONTROLLER, request.getMvcController());
+			writeString(g, MVC_AREA, request.getMvcArea());
+			g.writeEndObject();
+		}
+
+		writeMap(g, SERVER_VARIABLES, error.getServerVariables());
+		writeString(g, CUSTOMER_NAME, error.getCustomerName());
+		writeString(g, USER_NAME, error.getUserName());
+		g.writeEndObject();
+	}
+
+	private static void writeErrorItem(final JsonGenerator g, final ErrorItem item) throws IOException {
+		g.writeStartObject();
+		writeString(g, MESSAGE, item.getMessage());
+		writeString(g, ERROR_TYPE, item.getErrorType());
+		writeString(g, ERROR_TYPE_CODE, item.getErrorTypeCode());
+		writeMap(g, ERROR_DATA, item.getData());
+		writeString(g, SOURCE_METHOD, item.getSourceMethod());
+
+		List<TraceFrame> frames = item.getStackTrace();
+
+		if (frames != null) {
+			g.writeFieldName(STACK_TRACE);
+			g.writeStartArray();
+
+			for (TraceFrame frame : frames) {
+				g.writeStartObject();
+				writeString(g, CODE_FILE_NAME, frame.getCodeFileName());
+				writeNumber(g, LINE_NUM, frame.getLineNum());
+				writeString(g, METHOD, frame.getMethod());
+				g.writeEndObject();
+			}
+
+			g.writeEndArray();
+		}
+
+		if (item.getInnerError() != null) {
+			g.writeFieldName(INNER_ERROR);
+			writeErrorItem(g, item.getInnerError());
+		}
+
+		g.writeEndObject();
+	}
+
+	private static void writeString(final JsonGenerator g, final SerializableString name, final String value) throws IOException {
+		if (value != null) {
+			g.writeFieldName(name);
+			g.writeString(value);
+		}
+	}
+
+	private static void writeNumber(final JsonGenerator g, final SerializableString name, final Integer value) throws IOException {
+		if (value != null) {
+			g.writeFieldName(name);
+			g.writeNumber(value.intValue());
+		}
+	}
+
+	private static void writeNumber(final JsonGenerator g, final SerializableString name, final Long value) throws IOException {
+		if (value != null) {
+			g.writeFieldName(name);
+			g.writeNumber(value.longValue());
+		}
+	}
+
+	private static void writeMap(final JsonGenerator g, final SerializableString name, final Map<String, String> map) throws IOException {
+		if (map == null) {
+			return;
+		}
+
+		g.writeFieldName(name);
+		g.writeStartObject();
+
+		for (Map.Entry<String, String> entry : map.entrySet()) {
+			g.writeFieldName(entry.getKey());
+
+			if (entry.getValue() == null) {
+				g.writeNull();
+			} else {
+				g.writeString(entry.getValue());
+			}
+		}
+
+		g.writeEndObject();
+	}
+
+	private static SerializableString name(final String name) {
+		return new SerializedString(name);
+	}
+}
@@ -0,0 +1,1063 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.spi.ContextAware;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stackify.api.AppIdentity;
+import com.stackify.api.EnvironmentDetail;
+import com.stackify.api.LogMsg;
+import com.stackify.api.LogMsgGroup;
+import com.stackify.api.StackifyError;
+import com.stackify.api.common.ApiConfiguration;
+import com.stackify.api.common.AppIdentityService;
+import com.stackify.api.common.error.ErrorGovernor;
+import com.stackify.api.common.http.HttpException;
+import com.stackify.api.common.log.EventAdapter;
+import com.stackify.api.common.log.LogAppender;
+import com.stackify.api.common.log.LogTransportPreProcessor;
+import com.stackify.api.common.mask.Masker;
+import com.stackify.api.common.proto.LogMsgGroupConverter;
+import com.stackify.api.common.util.Preconditions;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Log appender with its own queue, batching and send loop, used instead of the generic LogAppender when the
+ * send path needs more control than the generic appender offers.
+ *
+ * <p>
+ * Events are converted exactly like the generic appender does and queued as LogMsg, errors in a lane of
+ * their own when one is configured. The queue is bounded by a number of messages and optionally by a
+ * MemoryBudget on their estimated size; overlong messages can be truncated before they are queued. A single flush task batches, serializes and sends them, errors first,
+ * on the threads of the configured ShippingExecutor. Batch size and flush interval are fixed or adapt to the
+ * send time and queue growth (AdaptiveFlush). While the endpoint fails, the batch in hand is retried with an
+ * exponential backoff, up to maxRetries times, and the queue fills up; a batch the API rejects (4xx) is dropped
+ * without retrying. With spillover enabled, batches out of retries go to disk instead of being dropped, the flush
+ * task also writes batches beyond the spillover threshold to disk, even while backing off, and replays them,
+ * oldest first, before anything newer is sent. Logging threads never serialize or write to disk.
+ *
+ * <p>
+ * Batches are streamed into pooled buffers, as JSON by LogMsgGroupWriter or as protobuf for the agent,
+ * and compressed into pooled buffers too. The buffers go back to the pool once the batch is sent.
+ */
+class LogPipeline extends LogAppender<ILoggingEvent> {
+
+	/**
+	 * Logger classes that are never sent unless explicitly allowed
+	 */
+	private static final String COM_DOT_STACKIFY = "com.stackify.";
+
+	/**
+	 * Platform reported with each batch
+	 */
+	private static final String PLATFORM = "java";
+
+	/**
+	 * First wait after a failed send
+	 */
+	private static final long MIN_BACKOFF_MILLIS = 1000;
+
+	/**
+	 * Maximum time to wait for the flush task on close
+	 */
+	private static final long CLOSE_TIMEOUT_MILLIS = 5000;
+
+	/**
+	 * Logger (client) name reported with each batch
+	 */
+	private final String logger;
+
+	/**
+	 * Event adapter
+	 */
+	private final EventAdapter<ILoggingEvent> eventAdapter;
+
+	/**
+	 * Masking and skipJson tagging applied before serialization
+	 */
+	private final LogTransportPreProcessor preProcessor;
+
+	/**
+	 * Masker, applied before truncating so a cut does not leave part of a masked value
+	 */
+	private final Masker masker;
+
+	/**
+	 * Settings
+	 */
+	private final PipelineConfig config;
+
+	/**
+	 * Status reporting (handed on when a shared pipeline outlives its appender)
+	 */
+	private volatile ContextAware status;
+
+	/**
+	 * Duplicate error throttling
+	 */
+	private final ErrorGovernor errorGovernor = new ErrorGovernor();
+
+	/**
+	 * Identity lookups
+	 */
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	/**
+	 * Batch serialization
+	 */
+	private final LogMsgGroupWriter writer = new LogMsgGroupWriter();
+
+	/**
+	 * Buffers batches are serialized and compressed into
+	 */
+	private final BufferPool pool = new BufferPool();
+
+	/**
+	 * Messages waiting to be sent: errors first if they have a lane, then everything else
+	 */
+	private final PriorityLanes queue;
+
+	/**
+	 * Makes draining the queue and spilling to disk atomic, which keeps batches in order
+	 */
+	private final Object drainLock = new Object();
+
+	/**
+	 * Held by the flush task
+	 */
+	private final ReentrantLock flushLock = new ReentrantLock();
+
+	/**
+	 * True while an immediate flush is scheduled
+	 */
+	private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+	/**
+	 * Messages dropped because they could not be serialized or spilled
+	 */
+	private final AtomicLong dropped = new AtomicLong();
+
+	/**
+	 * Messages dropped because they are too large for a spillover segment on their own
+	 */
+	private final AtomicLong oversized = new AtomicLong();
+
+	/**
+	 * Messages dropped because the API rejected them (a spilled batch counts as one)
+	 */
+	private final AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * Messages dropped after maxRetries failed sends, without spillover
+	 */
+	private final AtomicLong abandoned = new AtomicLong();
+
+	/**
+	 * Messages truncated for exceeding the maximum length
+	 */
+	private final AtomicLong truncated = new AtomicLong();
+
+	/**
+	 * Batches written to disk
+	 */
+	private final AtomicLong spilled = new AtomicLong();
+
+	/**
+	 * Batches sent
+	 */
+	private final AtomicLong sent = new AtomicLong();
+
+	/**
+	 * Batch size and flush interval
+	 */
+	private final AdaptiveFlush flushControl;
+
+	/**
+	 * Flush task
+	 */
+	private final Runnable flushTask = new Runnable() {
+		@Override
+		public void run() {
+			flush(false);
+		}
+	};
+
+	/**
+	 * Periodic task, runs every shortest linger time and flushes once the current linger time has passed
+	 */
+	private final Runnable timerTask = new Runnable() {
+		@Override
+		public void run() {
+			long lingerMillis = flushControl.getLingerMillis();
+
+			if ((lingerMillis <= flushControl.getMinLingerMillis()) || (lingerMillis <= TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastFlushNanos))) {
+				flush(false);
+			}
+		}
+	};
+
+	/**
+	 * Start of the last flush
+	 */
+	private volatile long lastFlushNanos = System.nanoTime();
+
+	private ApiConfiguration apiConfig;
+
+	private AppIdentityService appIdentityService;
+
+	private PayloadTransport transport;
+
+	/**
+	 * Batch compression (flush task only; null for the agent socket)
+	 */
+	private PayloadCodec codec;
+
+	/**
+	 * True if batches are serialized as protobuf (agent socket) instead of JSON
+	 */
+	private boolean protobuf;
+
+	private SpilloverStore store;
+
+	private ShippingExecutor executor;
+
+	private boolean allowComDotStackify;
+
+	private volatile boolean running;
+
+	/**
+	 * Serialization and send timing (or null)
+	 */
+	private volatile AppenderMetrics metrics;
+
+	/**
+	 * Last known application identity, used when batches are serialized off the flush thread
+	 */
+	private volatile AppIdentity appIdentity;
+
+	/**
+	 * Batch being sent (flush task only)
+	 */
+	private BatchBuffer inFlight;
+
+	/**
+	 * True if the batch being sent came from the spillover store
+	 */
+	private boolean inFlightStored;
+
+	/**
+	 * Batch being sent as it goes on the wire (flush task only)
+	 */
+	private BatchBuffer inFlightBody;
+
+	/**
+	 * True if the batch being sent is gzip encoded
+	 */
+	private boolean inFlightGzip;
+
+	/**
+	 * Number of messages in the batch being sent (0 if unknown)
+	 */
+	private int inFlightMessages;
+
+	/**
+	 * Failed sends of the batch in hand
+	 */
+	private int attempts;
+
+	/**
+	 * Consecutive failed sends
+	 */
+	private int failures;
+
+	/**
+	 * Earliest time of the next send attempt
+	 */
+	private long nextAttemptMillis;
+
+	/**
+	 * @param logger Logger (client) name reported with each batch
+	 * @param eventAdapter Event adapter
+	 * @param masker Masker
+	 * @param skipJson Tag messages so their JSON is not parsed
+	 * @param config Settings
+	 * @param status Status reporting
+	 */
+	LogPipeline(final String logger, final EventAdapter<ILoggingEvent> eventAdapter, final Masker masker, final boolean skipJson, final PipelineConfig config, final ContextAware status) {
+		super(logger, eventAdapter, masker, skipJson);
+		this.logger = logger;
+		this.eventAdapter = eventAdapter;
+		this.preProcessor = new LogTransportPreProcessor(masker, skipJson);
+		this.masker = masker;
+		this.config = config;
+		this.status = status;
+
+		MemoryBudget budget = (0 < config.getQueueMaxBytes()) ? new MemoryBudget(config.getQueueMaxBytes()) : null;
+
+		this.queue = (0 < config.getErrorQueueCapacity())
+				? new PriorityLanes(new int[]{config.getErrorQueueCapacity(), config.getQueueCapacity()}, config.getMinLowPrioritySharePercent(), budget)
+				: new PriorityLanes(new int[]{config.getQueueCapacity()}, 0, budget);
+		this.flushControl = config.isAdaptiveFlush()
+				? new AdaptiveFlush(config.getMinBatch(), config.getMaxBatch(), config.getMinFlushIntervalMillis(), config.getFlushIntervalMillis(), config.getTargetSendMillis())
+				: AdaptiveFlush.fixed(config.getMaxBatch(), config.getFlushIntervalMillis());
+	}
+
+	@Override
+	public void activate(final ApiConfiguration apiConfig) {
+		Preconditions.checkNotNull(apiConfig);
+		Preconditions.checkNotNull(apiConfig.getApiUrl());
+		Preconditions.checkArgument(!apiConfig.getApiUrl().isEmpty());
+		Preconditions.checkNotNull(apiConfig.getApiKey());
+		Preconditions.checkArgument(!apiConfig.getApiKey().isEmpty());
+
+		this.apiConfig = apiConfig;
+		this.allowComDotStackify = Boolean.TRUE.equals(apiConfig.getAllowComDotStackify());
+
+		if (config.getAgentSocketPath() != null) {
+			// the agent resolves the application identity itself and takes uncompressed protobuf
+			this.transport = new AgentSocketTransport(config.getAgentSocketPath());
+			this.protobuf = true;
+		} else {
+			this.appIdentityService = new AppIdentityService(apiConfig, objectMapper);
+			this.transport = new HttpPayloadTransport(apiConfig);
+			this.codec = new PayloadCodec(config.getCompressionMinBytes(), config.getCompressionLevel());
+		}
+
+		if (config.getSpilloverDirectory() != null) {
+			try {
+				this.store = new SpilloverStore(config.getSpilloverDirectory(), config.getSpilloverSegmentBytes(), config.getSpilloverMaxBytes());
+
+				if (!store.isEmpty()) {
+					status.addInfo("Stackify Log Appender replaying " + store.size() + " batches from " + config.getSpilloverDirectory());
+				}
+			} catch (IOException e) {
+				status.addError("Stackify Log Appender cannot open spillover directory " + config.getSpilloverDirectory(), e);
+			}
+		}
+
+		this.executor = (config.getExecutor() != null) ? config.getExecutor() : ShippingExecutor.platform("Stackify_LogPipeline");
+
+		this.running = true;
+		this.executor.scheduleWithFixedDelay(timerTask, flushControl.getMinLingerMillis());
+	}
+
+	@Override
+	public void append(final ILoggingEvent event) {
+		append(event, eventAdapter);
+	}
+
+	/**
+	 * Converts and queues an event
+	 * @param event The event
+	 * @param eventAdapter Adapter of the appender the event came from
+	 */
+	void append(final ILoggingEvent event, final EventAdapter<ILoggingEvent> eventAdapter) {
+		if (!running) {
+			return;
+		}
+
+		if (!allowComDotStackify) {
+			String className = eventAdapter.getClassName(event);
+
+			if ((className != null) && className.startsWith(COM_DOT_STACKIFY)) {
+				return;
+			}
+		}
+
+		Throwable exception = eventAdapter.getThrowable(event);
+		StackifyError error = null;
+
+		if ((exception != null) || eventAdapter.isErrorLevel(event)) {
+			StackifyError stackifyError = eventAdapter.getStackifyError(event, exception);
+
+			if (errorGovernor.errorShouldBeSent(stackifyError)) {
+				error = stackifyError;
+			}
+		}
+
+		enqueue(eventAdapter.getLogMsg(event, error));
+	}
+
+	/**
+	 * Queues a message, waking up the flush task once there is a full batch or the spillover threshold is reached
+	 * @param msg The message
+	 */
+	void enqueue(final LogMsg msg) {
+		int maxLength = config.getMaxMessageLength();
+
+		if ((0 < maxLength) && (msg.getMsg() != null) && (maxLength < msg.getMsg().length())) {
+			truncate(msg, maxLength);
+		}
+
+		if (!config.getBackpressure().offer(queue.lane(lane(msg)), msg)) {
+			return;
+		}
+
+		int size = queue.size();
+
+		if (((flushControl.getBatchSize() <= size) || ((store != null) && (config.getSpilloverThreshold() <= size))) && flushRequested.compareAndSet(false, true)) {
+			try {
+				executor.execute(flushTask);
+			} catch (Exception e) {
+				flushRequested.set(false);
+			}
+		}
+	}
+
+	/**
+	 * Masks and truncates the text of a message
+	 * @param msg The message
+	 * @param maxLength Maximum number of characters kept
+	 */
+	private void truncate(final LogMsg msg, final int maxLength) {
+		String text = masker.mask(msg.getMsg());
+
+		if (maxLength < text.length()) {
+			msg.setMsg(text.substring(0, maxLength) + "... [truncated " + (text.length() - maxLength) + " characters]");
+			truncated.incrementAndGet();
+		} else {
+			msg.setMsg(text);
+		}
+	}
+
+	/**
+	 * @param msg The message
+	 * @return Index of the lane the message goes to
+	 */
+	private int lane(final LogMsg msg) {
+		if (queue.count() == 1) {
+			return 0;
+		}
+
+		return ((msg.getEx() != null) || Level.toLevel(msg.getLevel(), Level.DEBUG).isGreaterOrEqual(Level.ERROR)) ? 0 : 1;
+	}
+
+	/**
+	 * Sends (or replays) batches until there is nothing left or a send fails
+	 */
+	void flush() {
+		flush(true);
+	}
+
+	/**
+	 * Sends (or replays) a batch, and more while there is more to send, until a send fails
+	 * @param all True to send everything, false to stop at a partial batch after the first one
+	 */
+	private void flush(final boolean all) {
+		flushRequested.set(false);
+
+		if (!flushLock.tryLock()) {
+			return;
+		}
+
+		lastFlushNanos = System.nanoTime();
+
+		try {
+			for (boolean first = true; ; first = false) {
+				// spilling goes on while sends are backing off
+				if ((store != null) && (config.getSpilloverThreshold() <= queue.size())) {
+					spill(config.getSpilloverThreshold());
+				}
+
+				if (System.currentTimeMillis() < nextAttemptMillis) {
+					return;
+				}
+
+				// messages that arrived during the last send wait for a full batch or the linger time
+				if ((inFlight == null) && !first && !all && (queue.size() < flushControl.getBatchSize()) && ((store == null) || store.isEmpty())) {
+					return;
+				}
+
+				if ((inFlight == null) && !nextBatch()) {
+					return;
+				}
+
+				if (inFlightBody == null) {
+					encode();
+				}
+
+				long start = System.nanoTime();
+
+				try {
+					transport.send(inFlightBody, inFlightGzip);
+				} catch (Exception e) {
+					AppenderMetrics m = metrics;
+
+					if (m != null) {
+						m.recordSendFailure(System.nanoTime() - start);
+					}
+
+					flushControl.failed();
+					failed(e);
+					return;
+				}
+
+				long sendNanos = System.nanoTime() - start;
+				AppenderMetrics m = metrics;
+
+				if (m != null) {
+					m.recordSend(inFlight.size(), sendNanos);
+					m.recordSentMessages(inFlightMessages);
+				}
+
+				flushControl.sent(sendNanos, queue.size());
+
+				succeeded();
+			}
+		} catch (RuntimeException e) {
+			// thrown out of a periodic task, it would cancel the schedule of a platform or shared executor
+			status.addError("Exception flushing Stackify log batches", e);
+		} finally {
+			flushLock.unlock();
+		}
+	}
+
+	/**
+	 * Takes the next batch: the oldest spilled batch if any, otherwise one from the queue
+	 * @return False if there is nothing to send
+	 */
+	private boolean nextBatch() {
+		synchronized (drainLock) {
+			if (store != null) {
+				byte[] stored = store.peek();
+
+				if (stored != null) {
+					inFlight = BatchBuffer.wrap(stored);
+					inFlightStored = true;
+					inFlightMessages = 0;
+					return true;
+				}
+			}
+
+			List<LogMsg> msgs = drain();
+
+			if (msgs.isEmpty()) {
+				return false;
+			}
+
+			refreshAppIdentity();
+
+			try {
+				inFlight = serialize(msgs);
+				inFlightStored = false;
+				inFlightMessages = msgs.size();
+				return true;
+			} catch (Exception e) {
+				dropped.addAndGet(msgs.size());
+				status.addError("Exception serializing Stackify log batch", e);
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Compresses the batch in hand, if worthwhile
+	 */
+	private void encode() {
+		long start = System.nanoTime();
+
+		inFlightBody = inFlight;
+		inFlightGzip = false;
+
+		if (codec != null) {
+			BatchBuffer compressed = pool.newBuffer();
+
+			if (codec.encode(inFlight, compressed)) {
+				inFlightBody = compressed;
+				inFlightGzip = true;
+			} else {
+				compressed.release();
+			}
+		}
+
+		AppenderMetrics m = metrics;
+
+		if (m != null) {
+			m.recordEncode(inFlight.size(), inFlightBody.size(), inFlightGzip, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Records a successful send
+	 */
+	private void succeeded() {
+		if (inFlightStored) {
+			store.remove();
+		}
+
+		releaseInFlight();
+		inFlightStored = false;
+		failures = 0;
+		nextAttemptMillis = 0;
+		sent.incrementAndGet();
+	}
+
+	/**
+	 * Returns the buffers of the batch in hand to the pool
+	 */
+	private void releaseInFlight() {
+		if (inFlightBody != inFlight) {
+			inFlightBody.release();
+		}
+
+		inFlight.release();
+		inFlight = null;
+		inFlightBody = null;
+		attempts = 0;
+	}
+
+	/**
+	 * Records a failed send and backs off
+	 * @param e The failure
+	 */
+	private void failed(final Exception e) {
+		if ((e instanceof HttpException) && ((HttpException) e).isClientError()) {
+			if (rejected.get() == 0) {
+				status.addError("Stackify Log Appender dropped a batch rejected by the API, rejected batches are not retried: " + e);
+			}
+
+			discard(rejected);
+		} else {
+			if (failures == 0) {
+				status.addWarn("Stackify Log Appender cannot send logs, retrying with backoff" + ((store != null) ? " and spilling to disk" : "") + ": " + e);
+			}
+
+			// stored batches stay on disk until sent, the queue keeps spilling behind them
+			if (!inFlightStored && (config.getMaxRetries() < ++attempts)) {
+				giveUp();
+			}
+		}
+
+		long backoff = MIN_BACKOFF_MILLIS << Math.min(failures, 16);
+		nextAttemptMillis = System.currentTimeMillis() + Math.min(backoff, config.getMaxBackoffMillis());
+		++failures;
+	}
+
+	/**
+	 * Moves the batch in hand, out of retries, to disk or drops it without spillover
+	 */
+	private void giveUp() {
+		if (store != null) {
+			synchronized (drainLock) {
+				try {
+					if (store.append(inFlight.toByteArray())) {
+						spilled.incrementAndGet();
+						releaseInFlight();
+						store.sync();
+						return;
+					}
+				} catch (IOException e) {
+					status.addError("Exception spilling Stackify log batch to disk", e);
+				}
+			}
+		}
+
+		if (abandoned.get() == 0) {
+			status.addError("Stackify Log Appender dropped a batch after " + config.getMaxRetries() + " retries");
+		}
+
+		discard(abandoned);
+	}
+
+	/**
+	 * Drops the batch in hand, removing it from disk if it came from there
+	 * @param counter Counter of the reason
+	 */
+	private void discard(final AtomicLong counter) {
+		long messages = inFlightStored ? 1 : inFlightMessages;
+
+		if (inFlightStored) {
+			store.remove();
+		}
+
+		counter.addAndGet(messages);
+		dropped.addAndGet(messages);
+		releaseInFlight();
+		inFlightStored = false;
+	}
+
+	/**
+	 * Writes batches to disk until the queue is below the given size (flush task or close only)
+	 * @param limit Queue size to spill down to
+	 */
+	private void spill(final int limit) {
+		synchronized (drainLock) {
+			try {
+				// the batch in hand is older than anything in the queue
+				if ((inFlight != null) && !inFlightStored && store.append(inFlight.toByteArray())) {
+					spilled.incrementAndGet();
+					releaseInFlight();
+				}
+
+				while (limit <= queue.size()) {
+					List<LogMsg> msgs = drain();
+
+					if (msgs.isEmpty() || !spill(msgs)) {
+						return;
+					}
+				}
+			} catch (IOException e) {
+				status.addError("Exception spilling Stackify log batch to disk", e);
+			} finally {
+				store.sync();
+			}
+		}
+	}
+
+	/**
+	 * Writes messages to disk as one batch, split in halves while it is too large for a segment
+	 * @param msgs The messages
+	 * @return False if writing failed
+	 */
+	private boolean spill(final List<LogMsg> msgs) {
+		byte[] payload;
+
+		try {
+			BatchBuffer batch = serialize(msgs);
+
+			try {
+				payload = batch.toByteArray();
+			} finally {
+				batch.release();
+			}
+
+			if (store.append(payload)) {
+				spilled.incrementAndGet();
+				return true;
+			}
+		} catch (Exception e) {
+			dropped.addAndGet(msgs.size());
+			status.addError("Exception spilling Stackify log batch to disk", e);
+			return false;
+		}
+
+		if (msgs.size() == 1) {
+			oversized.incrementAndGet();
+			dropped.incrementAndGet();
+			return true;
+		}
+
+		int half = msgs.size() / 2;
+		boolean first = spill(msgs.subList(0, half));
+		boolean second = spill(msgs.subList(half, msgs.size()));
+
+		return first && second;
+	}
+
+	/**
+	 * @return Up to a batch of messages from the queue, errors first
+	 */
+	private List<LogMsg> drain() {
+		int batchSize = flushControl.getBatchSize();
+		List<LogMsg> msgs = new ArrayList<LogMsg>(Math.min(queue.size(), batchSize));
+		queue.drainTo(msgs, batchSize);
+		return msgs;
+	}
+
+	/**
+	 * Updates the application identity (may call the API)
+	 */
+	private void refreshAppIdentity() {
+		if (appIdentityService == null) {
+			return;
+		}
+
+		try {
+			AppIdentity identity = appIdentityService.getAppIdentity();
+
+			if (identity != null) {
+				appIdentity = identity;
+			}
+		} catch (Exception e) {
+			// keep the last known identity
+		}
+	}
+
+	/**
+	 * Builds, masks and serializes a batch
+	 * @param msgs The messages
+	 * @return The serialized LogMsgGroup
+	 * @throws IOException If the batch cannot be serialized
+	 */
+	private BatchBuffer serialize(final List<LogMsg> msgs) throws IOException {
+		long start = System.nanoTime();
+
+		BatchBuffer payload = toPayload(msgs);
+
+		AppenderMetrics m = metrics;
+
+		if (m != null) {
+			m.recordSerialize(msgs.size(), System.nanoTime() - start);
+		}
+
+		return payload;
+	}
+
+	/**
+	 * @param msgs The messages
+	 * @return The masked LogMsgGroup as JSON, or as protobuf for the agent socket
+	 * @throws IOException If the batch cannot be serialized
+	 */
+	private BatchBuffer toPayload(final List<LogMsg> msgs) throws IOException {
+		EnvironmentDetail envDetail = apiConfig.getEnvDetail();
+
+		LogMsgGroup.Builder builder = LogMsgGroup.newBuilder()
+				.platform(PLATFORM)
+				.logger(logger)
+				.serverName(envDetail.getDeviceName())
+				.env(envDetail.getConfiguredEnvironmentName())
+				.appName(envDetail.getConfiguredAppName())
+				.appLoc(envDetail.getAppLocation());
+
+		AppIdentity identity = appIdentity;
+
+		if (identity != null) {
+			builder.cdId(identity.getDeviceId());
+			builder.cdAppId(identity.getDeviceAppId());
+			builder.appNameId(identity.getAppNameId());
+			builder.appEnvId(identity.getAppEnvId());
+			builder.envId(identity.getEnvId());
+			builder.env(identity.getEnv());
+
+			if ((identity.getAppName() != null) && (0 < identity.getAppName().length())) {
+				builder.appName(identity.getAppName());
+			}
+		}
+
+		LogMsgGroup group = builder.msgs(msgs).build();
+		preProcessor.execute(group);
+
+		BatchBuffer payload = pool.newBuffer();
+
+		try {
+			if (protobuf) {
+				LogMsgGroupConverter.convert(group).writeTo(payload);
+			} else {
+				writer.write(group, payload);
+			}
+		} catch (IOException e) {
+			payload.release();
+			throw e;
+		} catch (RuntimeException e) {
+			payload.release();
+			throw e;
+		}
+
+		return payload;
+	}
+
+	/**
+	 * Stops the flush task, sends what can be sent and spills the rest to disk, or drops and counts it without
+	 * spillover
+	 */
+	@Override
+	public void close() {
+		if (!running) {
+			return;
+		}
+
+		running = false;
+
+		try {
+			executor.shutdown(CLOSE_TIMEOUT_MILLIS);
+
+			// a shared scheduler may still be running a flush
+			if (flushLock.tryLock(CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+				flushLock.unlock();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		flush();
+
+		if (store != null) {
+			flushLock.lock();
+
+			try {
+				synchronized (drainLock) {
+					spill(1);
+
+					// left in hand only if it could not be written
+					if ((inFlight != null) && !inFlightStored) {
+						dropped.addAndGet(inFlightMessages);
+						releaseInFlight();
+					}
+				}
+			} finally {
+				flushLock.unlock();
+				store.close();
+			}
+		} else {
+			flushLock.lock();
+
+			try {
+				// left if the endpoint failed or close came during a backoff
+				long lost = 0;
+
+				if (inFlight != null) {
+					lost += inFlightMessages;
+					releaseInFlight();
+				}
+
+				for (List<LogMsg> msgs = drain(); !msgs.isEmpty(); msgs = drain()) {
+					lost += msgs.size();
+				}
+
+				if (0 < lost) {
+					dropped.addAndGet(lost);
+					status.addWarn("Stackify Log Appender dropped " + lost + " messages that could not be sent before it was stopped");
+				}
+			} finally {
+				flushLock.unlock();
+			}
+		}
+
+		transport.close();
+
+		if (codec != null) {
+			codec.close();
+		}
+
+		BackpressurePolicy backpressure = config.getBackpressure();
+
+		if (0 < backpressure.getDroppedCount()) {
+			status.addWarn("Stackify Log Appender dropped " + backpressure.getDroppedCount() + " messages because the queue was full (" + backpressure.getMode()
+					+ ": newest " + backpressure.getDroppedNewestCount()
+					+ ", oldest " + backpressure.getDroppedOldestCount()
+					+ ", below level " + backpressure.getDroppedBelowLevelCount()
+					+ ", timed out " + backpressure.getTimedOutCount()
+					+ ", blocked " + backpressure.getBlockedCount() + " times for " + backpressure.getBlockedMillis() + " ms)");
+		}
+
+		if (0 < rejected.get()) {
+			status.addWarn("Stackify Log Appender dropped " + rejected.get() + " messages rejected by the API");
+		}
+
+		if (0 < abandoned.get()) {
+			status.addWarn("Stackify Log Appender dropped " + abandoned.get() + " messages after " + config.getMaxRetries() + " failed retries");
+		}
+
+		if (0 < oversized.get()) {
+			status.addWarn("Stackify Log Appender dropped " + oversized.get() + " messages too large for a spillover segment of " + config.getSpilloverSegmentBytes() + " bytes");
+		}
+
+		if (0 < queue.getDisplacedCount()) {
+			status.addWarn("Stackify Log Appender dropped " + queue.getDisplacedCount() + " lower priority messages to make room for errors within queueMaxBytes");
+		}
+	}
+
+	/**
+	 * @return Number of messages waiting in memory
+	 */
+	int getQueueSize() {
+		return queue.size();
+	}
+
+	/**
+	 * @return Number of error messages waiting in their own lane (0 without an error lane)
+	 */
+	int getErrorQueueSize() {
+		return (queue.count() == 1) ? 0 : queue.lane(0).size();
+	}
+
+	/**
+	 * @return Estimated size of the messages waiting in memory (0 without a byte limit)
+	 */
+	long getQueueBytes() {
+		return queue.bytes();
+	}
+
+	/**
+	 * @return Number of messages truncated for exceeding the maximum length
+	 */
+	long getTruncatedCount() {
+		return truncated.get();
+	}
+
+	/**
+	 * @return Current batch size and flush interval
+	 */
+	AdaptiveFlush getFlushControl() {
+		return flushControl;
+	}
+
+	/**
+	 * @return Number of batches waiting on disk
+	 */
+	int getStoredBatchCount() {
+		return (store == null) ? 0 : store.size();
+	}
+
+	/**
+	 * @return Number of messages dropped (a spilled batch dropped from disk counts as one)
+	 */
+	long getDroppedCount() {
+		return dropped.get() + config.getBackpressure().getDroppedCount() + queue.getDisplacedCount() + ((store == null) ? 0 : store.getDroppedCount());
+	}
+
+	/**
+	 * @return Number of batches written to disk
+	 */
+	long getSpilledCount() {
+		return spilled.get();
+	}
+
+	/**
+	 * @return Number of batches sent
+	 */
+	long getSentCount() {
+		return sent.get();
+	}
+
+	/**
+	 * @param metrics Serialization and send timing (or null)
+	 */
+	void setMetrics(final AppenderMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @return Status reporting
+	 */
+	ContextAware getStatus() {
+		return status;
+	}
+
+	/**
+	 * @param status Status reporting
+	 */
+	void setStatus(final ContextAware status) {
+		this.status = status;
+	}
+
+	/**
+	 * Replaces the transport (tests)
+	 * @param transport The transport
+	 */
+	void setTransport(final PayloadTransport transport) {
+		this.transport = transport;
+	}
+}
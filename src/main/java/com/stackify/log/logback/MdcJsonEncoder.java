@@ -0,0 +1,198 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Encodes flat MDC maps as JSON objects.
+ *
+ * <p>
+ * Each thread writes through its own reused generator and buffer. The last map encoded on a thread is
+ * remembered, so logging again with the same (copy-on-write) MDC map instance returns the cached JSON.
+ * Maps that cannot be encoded are counted instead of silently ignored.
+ *
+ * <p>
+ * In synchronous mode every application thread that logs gets such a state, so only small buffers and results
+ * are kept. Threads hold their state through a plain AtomicReference, which release() clears for all of them:
+ * pooled threads that outlive the appender (or the web application) then keep neither buffers nor classes of it.
+ */
+class MdcJsonEncoder {
+
+	/**
+	 * Buffers that grew past this size are not kept for reuse
+	 */
+	private static final int MAX_RETAINED_BUFFER = 4 * 1024;
+
+	/**
+	 * Shared generator factory
+	 */
+	private static final JsonFactory FACTORY = new JsonFactory();
+
+	/**
+	 * Thread-confined encoder state (cleared by release)
+	 */
+	private final ThreadLocal<AtomicReference<State>> state = new ThreadLocal<AtomicReference<State>>() {
+		@Override
+		protected AtomicReference<State> initialValue() {
+			return new AtomicReference<State>();
+		}
+	};
+
+	/**
+	 * States of the threads that encoded since the last release (guarded by itself)
+	 */
+	private final Map<Thread, AtomicReference<State>> states = new WeakHashMap<Thread, AtomicReference<State>>();
+
+	/**
+	 * Number of maps that could not be encoded
+	 */
+	private final AtomicLong failures = new AtomicLong();
+
+	/**
+	 * Encodes the map as a JSON object
+	 * @param map The MDC map
+	 * @return The JSON object or null if the map could not be encoded
+	 */
+	String encode(final Map<String, String> map) {
+		AtomicReference<State> ref = state.get();
+		State current = ref.get();
+
+		if (current == null) {
+			current = new State();
+			ref.set(current);
+
+			synchronized (states) {
+				states.put(Thread.currentThread(), ref);
+			}
+		}
+
+		if ((current.lastMap == map) && (current.lastHash == map.hashCode())) {
+			return current.lastJson;
+		}
+
+		try {
+			String json = current.write(map);
+
+			// large results are not worth keeping around on every thread
+			boolean retained = json.length() <= MAX_RETAINED_BUFFER;
+			current.lastMap = retained ? map : null;
+			current.lastHash = retained ? map.hashCode() : 0;
+			current.lastJson = retained ? json : null;
+
+			return json;
+		} catch (Exception e) {
+			failures.incrementAndGet();
+			ref.set(null);
+			return null;
+		}
+	}
+
+	/**
+	 * Drops the state of every thread; threads that encode again start over
+	 */
+	void release() {
+		synchronized (states) {
+			for (AtomicReference<State> ref : states.values()) {
+				ref.set(null);
+			}
+
+			states.clear();
+		}
+	}
+
+	/**
+	 * @return Number of threads holding encoder state
+	 */
+	int getThreadCount() {
+		synchronized (states) {
+			int count = 0;
+
+			for (AtomicReference<State> ref : states.values()) {
+				if (ref.get() != null) {
+					++count;
+				}
+			}
+
+			return count;
+		}
+	}
+
+	/**
+	 * @return Number of maps that could not be encoded
+	 */
+	long getFailureCount() {
+		return failures.get();
+	}
+
+	/**
+	 * Per-thread generator, buffer and last result
+	 */
+	private static class State {
+
+		private CharArrayWriter buffer;
+
+		private JsonGenerator generator;
+
+		private Map<String, String> lastMap;
+
+		private int lastHash;
+
+		private String lastJson;
+
+		private String write(final Map<String, String> map) throws IOException {
+			if (generator == null) {
+				buffer = new CharArrayWriter(256);
+				generator = FACTORY.createGenerator(buffer);
+				generator.setRootValueSeparator(null);
+			}
+
+			buffer.reset();
+
+			generator.writeStartObject();
+
+			for (Map.Entry<String, String> entry : map.entrySet()) {
+				generator.writeFieldName(entry.getKey());
+
+				if (entry.getValue() == null) {
+					generator.writeNull();
+				} else {
+					generator.writeString(entry.getValue());
+				}
+			}
+
+			generator.writeEndObject();
+			generator.flush();
+
+			String json = buffer.toString();
+
+			if (MAX_RETAINED_BUFFER < buffer.size()) {
+				generator = null;
+				buffer = null;
+			}
+
+			return json;
+		}
+	}
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import com.stackify.api.ErrorItem;
+import com.stackify.api.LogMsg;
+import com.stackify.api.StackifyError;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Byte budget shared by the lanes of a pipeline queue.
+ *
+ * <p>
+ * Counting messages does not bound memory: a few huge messages can exhaust the heap while the queue is
+ * "under the limit", and tiny ones are dropped long before memory is an issue. Each queued message reserves
+ * its estimated retained size, computed from its string lengths and the number of causes and stack frames of
+ * its error, and releases it when it leaves the queue. The estimate is cheap and deliberately conservative:
+ * it does not walk object graphs and counts the stack frames shared between errors of the same shape for
+ * every error.
+ */
+class MemoryBudget {
+
+	/**
+	 * LogMsg with its boxed fields and id
+	 */
+	static final int MSG_BYTES = 200;
+
+	/**
+	 * StackifyError, not counting the shared environment detail and server variables
+	 */
+	static final int ERROR_BYTES = 64;
+
+	/**
+	 * ErrorItem with its frame list
+	 */
+	static final int ITEM_BYTES = 96;
+
+	/**
+	 * TraceFrame with its strings
+	 */
+	static final int FRAME_BYTES = 128;
+
+	/**
+	 * String and character array headers
+	 */
+	static final int STRING_BYTES = 40;
+
+	/**
+	 * Maximum number of bytes reserved
+	 */
+	private final long maxBytes;
+
+	/**
+	 * Bytes reserved
+	 */
+	private final AtomicLong usedBytes = new AtomicLong();
+
+	/**
+	 * Number of releases, so waiters do not miss one that happens just before they wait
+	 */
+	private final AtomicLong releases = new AtomicLong();
+
+	/**
+	 * Callers waiting for room
+	 */
+	private volatile int waiting;
+
+	/**
+	 * @param maxBytes Maximum number of bytes reserved
+	 */
+	MemoryBudget(final long maxBytes) {
+		if (maxBytes <= 0) {
+			throw new IllegalArgumentException("Memory budget must be positive: " + maxBytes);
+		}
+
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Reserves bytes if they fit in the budget
+	 * @param bytes Bytes to reserve
+	 * @return True if reserved
+	 */
+	boolean tryReserve(final long bytes) {
+		for (;;) {
+			long used = usedBytes.get();
+
+			if (maxBytes - used < bytes) {
+				return false;
+			}
+
+			if (usedBytes.compareAndSet(used, used + bytes)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Returns reserved bytes and wakes up callers waiting for room
+	 * @param bytes Bytes to release
+	 */
+	void release(final long bytes) {
+		usedBytes.addAndGet(-bytes);
+		releases.incrementAndGet();
+
+		if (0 < waiting) {
+			synchronized (this) {
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * @return Number of releases so far, to pass to awaitRelease
+	 */
+	long getReleaseCount() {
+		return releases.get();
+	}
+
+	/**
+	 * Waits until bytes are released or the time is up
+	 * @param seen Release count read before the caller last found no room
+	 * @param nanos Longest wait
+	 * @throws InterruptedException If interrupted
+	 */
+	synchronized void awaitRelease(final long seen, final long nanos) throws InterruptedException {
+		++waiting;
+
+		try {
+			long deadline = System.nanoTime() + nanos;
+
+			for (long remaining = nanos; (releases.get() == seen) && (0 < remaining); remaining = deadline - System.nanoTime()) {
+				TimeUnit.NANOSECONDS.timedWait(this, remaining);
+			}
+		} finally {
+			--waiting;
+		}
+	}
+
+	/**
+	 * @return Maximum number of bytes reserved
+	 */
+	long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * @return Bytes reserved
+	 */
+	long getUsedBytes() {
+		return usedBytes.get();
+	}
+
+	/**
+	 * Estimates the heap retained by a converted message. The result only depends on the message, so the same
+	 * amount is released as was reserved as long as the message is not changed while queued.
+	 * @param msg The message
+	 * @return Estimated retained size in bytes
+	 */
+	static long estimate(final LogMsg msg) {
+		long bytes = MSG_BYTES + chars(msg.getMsg()) + chars(msg.getData()) + chars(msg.getTh()) + chars(msg.getTransId()) + chars(msg.getSrcMethod());
+		StackifyError ex = msg.getEx();
+
+		if (ex != null) {
+			bytes += ERROR_BYTES;
+
+			for (ErrorItem item = ex.getError(); item != null; item = item.getInnerError()) {
+				List<?> frames = item.getStackTrace();
+				bytes += ITEM_BYTES + chars(item.getMessage()) + ((frames == null) ? 0 : (long) FRAME_BYTES * frames.size());
+			}
+		}
+
+		return bytes;
+	}
+
+	/**
+	 * @param s A string (or null)
+	 * @return Its estimated size in bytes
+	 */
+	private static long chars(final String s) {
+		return (s == null) ? 0 : STRING_BYTES + 2L * s.length();
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzip encoding of serialized batches, skipped when it is not worthwhile.
+ *
+ * <p>
+ * Batches below the minimum size are sent as they are: gzip adds 18 bytes of framing and a small batch
+ * has little repetition to remove. Larger batches are deflated at the configured level with a reused
+ * Deflater, buffer by buffer, into another pooled batch; deflating stops, and the batch is sent as is, as
+ * soon as the output would not be smaller than the input.
+ *
+ * <p>
+ * Not thread safe; the pipeline only encodes from its flush task.
+ */
+class PayloadCodec {
+
+	/**
+	 * Default minimum batch size worth compressing
+	 */
+	static final int DEFAULT_MIN_BYTES = 1024;
+
+	/**
+	 * Gzip header: magic, deflate, no flags, no time, no extra flags, unknown OS
+	 */
+	private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+	/**
+	 * Gzip trailer: CRC32 and input size
+	 */
+	private static final int TRAILER_BYTES = 8;
+
+	/**
+	 * Size of the deflate output buffer
+	 */
+	private static final int CHUNK_BYTES = 8 * 1024;
+
+	/**
+	 * Minimum batch size worth compressing
+	 */
+	private final int minBytes;
+
+	/**
+	 * Raw deflate (the gzip framing is written here)
+	 */
+	private final Deflater deflater;
+
+	private final CRC32 crc = new CRC32();
+
+	private final byte[] chunk = new byte[CHUNK_BYTES];
+
+	/**
+	 * @param minBytes Minimum batch size worth compressing
+	 * @param level Deflate level (0-9 or -1 for the default)
+	 */
+	PayloadCodec(final int minBytes, final int level) {
+		this.minBytes = minBytes;
+		this.deflater = new Deflater(level, true);
+	}
+
+	/**
+	 * Compresses the batch if it is worthwhile
+	 * @param payload The serialized batch
+	 * @param target Empty batch the gzip encoded batch is written to
+	 * @return False to send the batch as is (the target is then incomplete)
+	 */
+	boolean encode(final BatchBuffer payload, final BatchBuffer target) {
+		int length = payload.size();
+
+		if ((length < minBytes) || (length <= HEADER.length + TRAILER_BYTES)) {
+			return false;
+		}
+
+		int limit = length - TRAILER_BYTES;
+
+		target.write(HEADER, 0, HEADER.length);
+
+		deflater.reset();
+		crc.reset();
+
+		for (ByteBuffer buffer : payload.buffers()) {
+			int offset = buffer.arrayOffset() + buffer.position();
+
+			crc.update(buffer.array(), offset, buffer.remaining());
+			deflater.setInput(buffer.array(), offset, buffer.remaining());
+
+			while (!deflater.needsInput()) {
+				if (!deflate(target, limit)) {
+					return false;
+				}
+			}
+		}
+
+		deflater.finish();
+
+		while (!deflater.finished()) {
+			if (!deflate(target, limit)) {
+				return false;
+			}
+		}
+
+		writeInt(target, (int) crc.getValue());
+		writeInt(target, length);
+
+		return true;
+	}
+
+	/**
+	 * Releases the native deflater
+	 */
+	void close() {
+		deflater.end();
+	}
+
+	/**
+	 * Deflates one chunk into the target
+	 * @param target The gzip encoded batch
+	 * @param limit Size the output must stay below
+	 * @return False if the output reached the limit
+	 */
+	private boolean deflate(final BatchBuffer target, final int limit) {
+		int n = deflater.deflate(chunk);
+		target.write(chunk, 0, n);
+
+		return target.size() < limit;
+	}
+
+	/**
+	 * Writes a little endian int
+	 * @param target The gzip encoded batch
+	 * @param value The value
+	 */
+	private static void writeInt(final BatchBuffer target, final int value) {
+		target.write(value);
+		target.write(value >>> 8);
+		target.write(value >>> 16);
+		target.write(value >>> 24);
+	}
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import ch.qos.logback.classic.Level;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.File;
+import java.util.zip.Deflater;
+
+/**
+ * Settings of a LogPipeline
+ */
+class PipelineConfig {
+
+	/**
+	 * Maximum number of messages held in memory
+	 */
+	@Getter
+	@Setter
+	private int queueCapacity = 10000;
+
+	/**
+	 * Maximum number of error messages held in memory, in a lane of their own (0 for a single lane)
+	 */
+	@Getter
+	@Setter
+	private int errorQueueCapacity = 0;
+
+	/**
+	 * Share of each batch reserved for non-error messages while errors are waiting, in percent
+	 */
+	@Getter
+	@Setter
+	private int minLowPrioritySharePercent = 10;
+
+	/**
+	 * Maximum estimated size of the messages held in memory, over all lanes (0 for no byte limit)
+	 */
+	@Getter
+	@Setter
+	private long queueMaxBytes = 0;
+
+	/**
+	 * Longer messages are truncated to this many characters (0 for no limit)
+	 */
+	@Getter
+	@Setter
+	private int maxMessageLength = 0;
+
+	/**
+	 * What happens when the queue is full (by default the oldest message is dropped, like the generic LogAppender does)
+	 */
+	@Getter
+	@Setter
+	private BackpressurePolicy backpressure = new BackpressurePolicy(BackpressurePolicy.Mode.DROP_OLDEST, 0, Level.WARN);
+
+	/**
+	 * Maximum number of messages per batch
+	 */
+	@Getter
+	@Setter
+	private int maxBatch = 100;
+
+	/**
+	 * Time between flushes (the longest with adaptive flushing)
+	 */
+	@Getter
+	@Setter
+	private long flushIntervalMillis = 1000;
+
+	/**
+	 * Adjust the batch size and flush interval to the observed send time and queue growth
+	 */
+	@Getter
+	@Setter
+	private boolean adaptiveFlush = false;
+
+	/**
+	 * Smallest batch size with adaptive flushing
+	 */
+	@Getter
+	@Setter
+	private int minBatch = 10;
+
+	/**
+	 * Shortest time between flushes with adaptive flushing
+	 */
+	@Getter
+	@Setter
+	private long minFlushIntervalMillis = 20;
+
+	/**
+	 * Sends slower than this make adaptive flushing back off
+	 */
+	@Getter
+	@Setter
+	private long targetSendMillis = 500;
+
+	/**
+	 * Longest wait between attempts while the endpoint fails
+	 */
+	@Getter
+	@Setter
+	private long maxBackoffMillis = 60000;
+
+	/**
+	 * Failed sends of a batch from the queue that are retried before it is spilled to disk, or dropped without
+	 * spillover (batches rejected by the API are never retried)
+	 */
+	@Getter
+	@Setter
+	private int maxRetries = 3;
+
+	/**
+	 * Directory of the spillover segment files (null for no spillover)
+	 */
+	@Getter
+	@Setter
+	private File spilloverDirectory;
+
+	/**
+	 * Number of messages in memory above which batches are spilled to disk
+	 */
+	@Getter
+	@Setter
+	private int spilloverThreshold = 5000;
+
+	/**
+	 * Size of a spillover segment file
+	 */
+	@Getter
+	@Setter
+	private int spilloverSegmentBytes = 8 * 1024 * 1024;
+
+	/**
+	 * Maximum disk usage of the spillover segment files
+	 */
+	@Getter
+	@Setter
+	private long spilloverMaxBytes = 256L * 1024 * 1024;
+
+	/**
+	 * Runs the flush task (null for a dedicated platform thread)
+	 */
+	@Getter
+	@Setter
+	private ShippingExecutor executor;
+
+	/**
+	 * Batches smaller than this are sent uncompressed
+	 */
+	@Getter
+	@Setter
+	private int compressionMinBytes = PayloadCodec.DEFAULT_MIN_BYTES;
+
+	/**
+	 * Deflate level of compressed batches
+	 */
+	@Getter
+	@Setter
+	private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+	/**
+	 * Local agent socket to send to over a persistent connection (null to send to the API directly)
+	 */
+	@Getter
+	@Setter
+	private String agentSocketPath;
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.spi.ContextAware;
+import com.stackify.api.common.ApiConfiguration;
+import com.stackify.api.common.log.EventAdapter;
+import com.stackify.api.common.log.LogAppender;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Reference counted pipelines shared by appenders with the same settings.
+ *
+ * <p>
+ * Appenders that acquire the same key get leases on one pipeline: one queue, one flush task and one
+ * transport, so their events go out in combined batches. Each lease converts events with its own appender's
+ * adapter. The pipeline is closed when the last lease is closed. Pipeline status and metrics go to the
+ * appender that created it, and pass on to the oldest remaining lease when that one is closed.
+ *
+ * <p>
+ * Sharing spans the class loader that loaded this class: put the library in a shared class loader to
+ * share pipelines across the webapps of a servlet container.
+ */
+class PipelineRegistry {
+
+	/**
+	 * Registry of this class loader
+	 */
+	private static final PipelineRegistry SHARED = new PipelineRegistry();
+
+	/**
+	 * Open pipelines by key
+	 */
+	private final Map<Object, Entry> entries = new HashMap<Object, Entry>();
+
+	/**
+	 * @return The registry of this class loader
+	 */
+	static PipelineRegistry shared() {
+		return SHARED;
+	}
+
+	/**
+	 * Takes a lease on the pipeline of the key, creating and activating it if there is none
+	 * @param key Settings the pipeline was built from (equals and hashCode)
+	 * @param factory Creates an activated pipeline
+	 * @param logger Logger (client) name
+	 * @param eventAdapter Adapter of the appender taking the lease
+	 * @param status Status reporting of the appender taking the lease
+	 * @param metrics Metrics of the appender taking the lease (or null)
+	 * @return The lease
+	 * @throws Exception If the pipeline cannot be created
+	 */
+	synchronized Lease acquire(final Object key, final Callable<LogPipeline> factory, final String logger, final EventAdapter<ILoggingEvent> eventAdapter,
+			final ContextAware status, final AppenderMetrics metrics) throws Exception {
+		Entry entry = entries.get(key);
+
+		if (entry == null) {
+			entry = new Entry(factory.call());
+			entries.put(key, entry);
+		}
+
+		Lease lease = new Lease(this, key, entry.pipeline, logger, eventAdapter, status, metrics);
+		entry.leases.add(lease);
+
+		return lease;
+	}
+
+	/**
+	 * @param key Pipeline key
+	 * @return Number of open leases on the pipeline of the key
+	 */
+	synchronized int getReferenceCount(final Object key) {
+		Entry entry = entries.get(key);
+		return (entry == null) ? 0 : entry.leases.size();
+	}
+
+	/**
+	 * @return Number of open pipelines
+	 */
+	synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Gives back a lease, closing the pipeline with the last one
+	 * @param key Pipeline key
+	 * @param lease The lease
+	 */
+	private synchronized void release(final Object key, final Lease lease) {
+		Entry entry = entries.get(key);
+
+		if ((entry == null) || !entry.leases.remove(lease)) {
+			return;
+		}
+
+		if (!entry.leases.isEmpty()) {
+			// the oldest remaining appender takes over status and metrics if they went to this one
+			Lease next = entry.leases.get(0);
+
+			if (entry.pipeline.getStatus() == lease.status) {
+				entry.pipeline.setStatus(next.status);
+				entry.pipeline.setMetrics(next.metrics);
+			}
+
+			return;
+		}
+
+		entries.remove(key);
+
+		// closed under the lock, so a new pipeline for the key never overlaps this one (e.g. its spillover directory)
+		entry.pipeline.close();
+	}
+
+	/**
+	 * A pipeline and its open leases, oldest first
+	 */
+	private static class Entry {
+
+		private final LogPipeline pipeline;
+
+		private final List<Lease> leases = new ArrayList<Lease>();
+
+		private Entry(final LogPipeline pipeline) {
+			this.pipeline = pipeline;
+		}
+	}
+
+	/**
+	 * One appender's use of a shared pipeline
+	 */
+	static final class Lease extends LogAppender<ILoggingEvent> {
+
+		private final PipelineRegistry registry;
+
+		private final Object key;
+
+		private final LogPipeline pipeline;
+
+		private final EventAdapter<ILoggingEvent> eventAdapter;
+
+		/**
+		 * Status reporting of the appender
+		 */
+		private final ContextAware status;
+
+		/**
+		 * Metrics of the appender (or null)
+		 */
+		private final AppenderMetrics metrics;
+
+		private boolean closed;
+
+		private Lease(final PipelineRegistry registry, final Object key, final LogPipeline pipeline, final String logger, final EventAdapter<ILoggingEvent> eventAdapter,
+				final ContextAware status, final AppenderMetrics metrics) {
+			// masking and skipJson are applied by the pipeline
+			super(logger, eventAdapter, null, false);
+			this.registry = registry;
+			this.key = key;
+			this.pipeline = pipeline;
+			this.eventAdapter = eventAdapter;
+			this.status = status;
+			this.metrics = metrics;
+		}
+
+		/**
+		 * @return The shared pipeline
+		 */
+		LogPipeline getPipeline() {
+			return pipeline;
+		}
+
+		/**
+		 * The pipeline is activated when it is created
+		 */
+		@Override
+		public void activate(final ApiConfiguration apiConfig) {
+		}
+
+		@Override
+		public void append(final ILoggingEvent event) {
+			pipeline.append(event, eventAdapter);
+		}
+
+		@Override
+		public synchronized void close() {
+			if (!closed) {
+				closed = true;
+				registry.release(key, this);
+			}
+		}
+	}
+}
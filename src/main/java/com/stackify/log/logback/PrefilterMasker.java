@@ -0,0 +1,271 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import com.stackify.api.common.mask.Masker;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Masker that skips the mask regexes for values that cannot contain a match.
+ *
+ * <p>
+ * A single pass over the value counts digits, the longest digit run, dots, dashes and at signs. Each
+ * built-in mask needs some minimum of these (a credit card number needs at least 12 consecutive digits, an
+ * IPv4 address 3 dots, an email address an at sign, ...). Values that meet none of them are returned as is.
+ * Candidates are then checked with all masks combined into one precompiled alternation, and only values
+ * with an actual match go through the regular masking, so the output is exactly the one of Masker. Custom
+ * masks have no known requirement and always pass the prefilter.
+ */
+class PrefilterMasker extends Masker {
+
+	/**
+	 * Patterns that cannot be safely embedded in an alternation: backreferences and comments mode
+	 */
+	private static final Pattern NOT_COMBINABLE = Pattern.compile("\\\\[1-9]|\\\\k<|\\(\\?[a-zA-Z-]*x");
+
+	/**
+	 * Incremented whenever the masks change
+	 */
+	private final AtomicInteger version = new AtomicInteger();
+
+	/**
+	 * Prefilter and combined pattern for the current masks
+	 */
+	private volatile Plan plan;
+
+	@Override
+	public String mask(final String value, final String maskValue) {
+		if ((value == null) || !hasMasks()) {
+			return super.mask(value, maskValue);
+		}
+
+		Plan current = plan();
+
+		if (!current.mayMatch(value)) {
+			return value;
+		}
+
+		if ((current.combined != null) && !current.combined.matcher(value).find()) {
+			return value;
+		}
+
+		return super.mask(value, maskValue);
+	}
+
+	@Override
+	public void addMask(final String mask) {
+		super.addMask(mask);
+		version.incrementAndGet();
+	}
+
+	@Override
+	public void removeMask(final String mask) {
+		super.removeMask(mask);
+		version.incrementAndGet();
+	}
+
+	@Override
+	public void clearMasks() {
+		super.clearMasks();
+		version.incrementAndGet();
+	}
+
+	/**
+	 * @return The plan for the current masks, rebuilt if they changed
+	 */
+	private Plan plan() {
+		Plan current = plan;
+		int v = version.get();
+
+		if ((current == null) || (current.version != v)) {
+			current = new Plan(v, getMaskPatterns().keySet());
+			plan = current;
+		}
+
+		return current;
+	}
+
+	/**
+	 * Character requirements of one mask regex
+	 */
+	static final class Requirement {
+
+		/**
+		 * Unknown regex: any value may match
+		 */
+		static final Requirement NONE = new Requirement(0, 0, 0, 0, 0);
+
+		private final int digitRun;
+
+		private final int digits;
+
+		private final int dots;
+
+		private final int dashes;
+
+		private final int ats;
+
+		private Requirement(final int digitRun, final int digits, final int dots, final int dashes, final int ats) {
+			this.digitRun = digitRun;
+			this.digits = digits;
+			this.dots = dots;
+			this.dashes = dashes;
+			this.ats = ats;
+		}
+
+		/**
+		 * @param regex Mask regex
+		 * @return What a value needs to possibly match the regex
+		 */
+		static Requirement of(final String regex) {
+			if (MASK_CC_VISA_REGEX.equals(regex) || MASK_CC_DISCOVER_REGEX.equals(regex) || MASK_CC_MASTERCARD_REGEX.equals(regex)) {
+				return new Requirement(16, 16, 0, 0, 0);
+			}
+
+			if (MASK_CC_AMEX_REGEX.equals(regex)) {
+				return new Requirement(15, 15, 0, 0, 0);
+			}
+
+			if (MASK_CC_DINERS_REGEX.equals(regex)) {
+				return new Requirement(12, 12, 0, 0, 0);
+			}
+
+			if (MASK_SSN_REGEX.equals(regex)) {
+				return new Requirement(4, 9, 0, 2, 0);
+			}
+
+			if (MASK_IPV4_REGEX.equals(regex)) {
+				return new Requirement(1, 4, 3, 0, 0);
+			}
+
+			if (MASK_NUMERIC_REGEX.equals(regex)) {
+				return new Requirement(1, 1, 0, 0, 0);
+			}
+
+			if (MASK_UUID_REGEX.equals(regex)) {
+				return new Requirement(0, 0, 0, 4, 0);
+			}
+
+			if (MASK_EMAIL_REGEX.equals(regex)) {
+				return new Requirement(0, 0, 1, 0, 1);
+			}
+
+			return NONE;
+		}
+
+		private boolean isMetBy(final int digitRun, final int digits, final int dots, final int dashes, final int ats) {
+			return (this.digitRun <= digitRun) && (this.digits <= digits) && (this.dots <= dots) && (this.dashes <= dashes) && (this.ats <= ats);
+		}
+	}
+
+	/**
+	 * Prefilter requirements and combined pattern for a set of mask regexes
+	 */
+	private static final class Plan {
+
+		private final int version;
+
+		private final Requirement[] requirements;
+
+		/**
+		 * All masks as one alternation (null if they cannot be combined)
+		 */
+		private final Pattern combined;
+
+		private Plan(final int version, final Collection<String> regexes) {
+			List<Requirement> list = new ArrayList<Requirement>(regexes.size());
+			StringBuilder alternation = new StringBuilder();
+			boolean combinable = true;
+
+			for (String regex : regexes) {
+				list.add(Requirement.of(regex));
+
+				if (NOT_COMBINABLE.matcher(regex).find()) {
+					combinable = false;
+				}
+
+				if (0 < alternation.length()) {
+					alternation.append('|');
+				}
+
+				alternation.append("(?:").append(regex).append(')');
+			}
+
+			this.version = version;
+			this.requirements = list.toArray(new Requirement[list.size()]);
+			this.combined = combinable ? compile(alternation.toString()) : null;
+		}
+
+		private static Pattern compile(final String regex) {
+			try {
+				return Pattern.compile(regex);
+			} catch (PatternSyntaxException e) {
+				return null;
+			}
+		}
+
+		/**
+		 * @param value The value
+		 * @return False if no mask can match the value
+		 */
+		private boolean mayMatch(final String value) {
+			int digits = 0;
+			int run = 0;
+			int digitRun = 0;
+			int dots = 0;
+			int dashes = 0;
+			int ats = 0;
+
+			for (int i = 0, length = value.length(); i < length; ++i) {
+				char c = value.charAt(i);
+
+				if ((c >= '0') && (c <= '9')) {
+					++digits;
+
+					if (digitRun < ++run) {
+						digitRun = run;
+					}
+
+					continue;
+				}
+
+				run = 0;
+
+				if (c == '.') {
+					++dots;
+				} else if (c == '-') {
+					++dashes;
+				} else if (c == '@') {
+					++ats;
+				}
+			}
+
+			for (Requirement requirement : requirements) {
+				if (requirement.isMetBy(digitRun, digits, dots, dashes, ats)) {
+					return true;
+				}
+			}
+
+			return false;
+		}
+	}
+}
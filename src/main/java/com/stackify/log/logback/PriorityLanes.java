@@ -0,0 +1,166 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import com.stackify.api.LogMsg;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pipeline queue split into lanes of decreasing priority, each with its own capacity.
+ *
+ * <p>
+ * Batches are filled from the highest priority lane first, so errors are not stuck behind (or dropped
+ * for) a flood of lower level messages. Each lower lane with messages waiting is guaranteed a minimum share
+ * of every batch, so it is never starved. Messages keep their order within a lane. With a MemoryBudget, the
+ * lanes are also bounded by the estimated size of the messages they hold together, and a message that does not
+ * fit evicts the oldest messages of the lower lanes.
+ */
+class PriorityLanes {
+
+	/**
+	 * Lanes, highest priority first
+	 */
+	private final BlockingQueue<LogMsg>[] lanes;
+
+	/**
+	 * Share of a batch reserved for each lower lane, in percent
+	 */
+	private final int minSharePercent;
+
+	/**
+	 * Byte budget of all lanes (or null)
+	 */
+	private final MemoryBudget budget;
+
+	/**
+	 * Messages evicted from a lower lane to make room in the budget for a higher priority one
+	 */
+	private final AtomicLong displaced = new AtomicLong();
+
+	/**
+	 * @param capacities Capacity of each lane, highest priority first
+	 * @param minSharePercent Share of a batch reserved for each lower lane, in percent
+	 */
+	PriorityLanes(final int[] capacities, final int minSharePercent) {
+		this(capacities, minSharePercent, null);
+	}
+
+	/**
+	 * @param capacities Capacity of each lane, highest priority first
+	 * @param minSharePercent Share of a batch reserved for each lower lane, in percent
+	 * @param budget Byte budget shared by the lanes (null for count bounded lanes only)
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	PriorityLanes(final int[] capacities, final int minSharePercent, final MemoryBudget budget) {
+		if ((capacities.length == 0) || (minSharePercent < 0) || (100 < minSharePercent)) {
+			throw new IllegalArgumentException("Invalid priority lanes: " + capacities.length + " lanes, " + minSharePercent + "% minimum share");
+		}
+
+		this.lanes = new BlockingQueue[capacities.length];
+		this.minSharePercent = minSharePercent;
+		this.budget = budget;
+
+		if (budget == null) {
+			for (int i = 0; i < capacities.length; ++i) {
+				lanes[i] = new ArrayBlockingQueue<LogMsg>(capacities[i]);
+			}
+		} else {
+			BudgetedQueue[] budgeted = new BudgetedQueue[capacities.length];
+
+			for (int i = capacities.length - 1; 0 <= i; --i) {
+				budgeted[i] = new BudgetedQueue(capacities[i], budget, Arrays.copyOfRange(budgeted, i + 1, capacities.length), displaced);
+				lanes[i] = budgeted[i];
+			}
+		}
+	}
+
+	/**
+	 * @param priority Lane index, 0 being the highest priority
+	 * @return The lane
+	 */
+	BlockingQueue<LogMsg> lane(final int priority) {
+		return lanes[priority];
+	}
+
+	/**
+	 * @return Number of lanes
+	 */
+	int count() {
+		return lanes.length;
+	}
+
+	/**
+	 * @return Number of messages in all lanes
+	 */
+	int size() {
+		int size = 0;
+
+		for (BlockingQueue<LogMsg> lane : lanes) {
+			size += lane.size();
+		}
+
+		return size;
+	}
+
+	/**
+	 * @return Estimated size of the messages in all lanes (0 without a byte budget)
+	 */
+	long bytes() {
+		return (budget == null) ? 0 : budget.getUsedBytes();
+	}
+
+	/**
+	 * @return Number of messages evicted from a lower lane to make room in the budget for a higher priority one
+	 */
+	long getDisplacedCount() {
+		return displaced.get();
+	}
+
+	/**
+	 * Moves up to max messages into the batch, highest priority first but with each lower lane's share reserved
+	 * @param msgs The batch
+	 * @param max Maximum number of messages
+	 * @return Number of messages moved
+	 */
+	int drainTo(final List<LogMsg> msgs, final int max) {
+		int[] reserved = new int[lanes.length];
+		int quota = (max * minSharePercent + 99) / 100;
+		int free = max;
+
+		for (int i = lanes.length - 1; 0 < i; --i) {
+			reserved[i] = Math.min(Math.min(lanes[i].size(), quota), free);
+			free -= reserved[i];
+		}
+
+		int moved = 0;
+
+		for (int i = 0; i < lanes.length; ++i) {
+			int limit = free + reserved[i];
+			int n = lanes[i].drainTo(msgs, limit);
+
+			// whatever a lane leaves of its share goes to the lanes below
+			free = limit - n;
+			moved += n;
+		}
+
+		return moved;
+	}
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the rate of events per logger prefix and per level, and samples non-error events once the
+ * dispatcher's ring buffer fills up.
+ *
+ * <p>
+ * The check runs first in append, so a rejected event costs a map lookup and a compare-and-set. Rejected
+ * events are only counted; the counts are reported in one summary event per limit and summary interval.
+ */
+class RateLimiter {
+
+	/**
+	 * Maximum number of logger names whose limit is remembered
+	 */
+	private static final int MAX_RESOLVED_LOGGERS = 4096;
+
+	/**
+	 * Marks logger names without a limit
+	 */
+	private static final Limit NO_LIMIT = new Limit("", 1);
+
+	/**
+	 * Limits by logger prefix
+	 */
+	private final Map<String, Limit> loggerLimits;
+
+	/**
+	 * Limits by level
+	 */
+	private final Map<Level, Limit> levelLimits;
+
+	/**
+	 * Resolved logger limits by logger name
+	 */
+	private final ConcurrentMap<String, Limit> resolved = new ConcurrentHashMap<String, Limit>();
+
+	/**
+	 * Dispatcher whose fill level drives the sampling (or null)
+	 */
+	private final LogEventDispatcher dispatcher;
+
+	/**
+	 * Fill ratio above which non-error events are sampled
+	 */
+	private final double samplingThreshold;
+
+	/**
+	 * Events dropped by sampling since the last summary
+	 */
+	private final AtomicLong sampled = new AtomicLong();
+
+	/**
+	 * Summary interval
+	 */
+	private final long summaryMillis;
+
+	/**
+	 * Next time summaries should be collected
+	 */
+	private final AtomicLong nextSummaryMillis;
+
+	/**
+	 * @param loggerRates Events per second by logger prefix
+	 * @param levelRates Events per second by level
+	 * @param dispatcher Dispatcher whose fill level drives the sampling (or null for no sampling)
+	 * @param samplingThreshold Fill ratio above which non-error events are sampled
+	 * @param summaryMillis Summary interval
+	 */
+	RateLimiter(final Map<String, Long> loggerRates, final Map<Level, Long> levelRates, final LogEventDispatcher dispatcher, final double samplingThreshold, final long summaryMillis) {
+		this.loggerLimits = new HashMap<String, Limit>();
+
+		for (Map.Entry<String, Long> entry : loggerRates.entrySet()) {
+			loggerLimits.put(entry.getKey(), new Limit(entry.getKey(), entry.getValue()));
+		}
+
+		this.levelLimits = new HashMap<Level, Limit>();
+
+		for (Map.Entry<Level, Long> entry : levelRates.entrySet()) {
+			levelLimits.put(entry.getKey(), new Limit(entry.getKey().toString(), entry.getValue()));
+		}
+
+		this.dispatcher = dispatcher;
+		this.samplingThreshold = samplingThreshold;
+		this.summaryMillis = summaryMillis;
+		this.nextSummaryMillis = new AtomicLong(System.currentTimeMillis() + summaryMillis);
+	}
+
+	/**
+	 * Decides whether an event should be sent
+	 * @param event The logging event
+	 * @return True if the event should be sent, false if it was rejected
+	 */
+	boolean admit(final ILoggingEvent event) {
+		Limit loggerLimit = resolve(event.getLoggerName());
+
+		if ((loggerLimit != NO_LIMIT) && !loggerLimit.tryAcquire()) {
+			return false;
+		}
+
+		Level level = event.getLevel();
+		Limit levelLimit = levelLimits.get(level);
+
+		if ((levelLimit != null) && !levelLimit.tryAcquire()) {
+			// a rejected event does not use up the logger's quota
+			release(loggerLimit);
+			return false;
+		}
+
+		if ((dispatcher != null) && !level.isGreaterOrEqual(Level.ERROR)) {
+			double fill = (double) dispatcher.size() / dispatcher.capacity();
+
+			if (samplingThreshold < fill) {
+				// keep fewer events the fuller the buffer gets, none when it is full
+				double keep = (1.0 - fill) / (1.0 - samplingThreshold);
+
+				if (keep <= ThreadLocalRandom.current().nextDouble()) {
+					sampled.incrementAndGet();
+					release(loggerLimit);
+					release(levelLimit);
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Gives back the token an event took from a limit
+	 * @param limit The limit (NO_LIMIT or null for none)
+	 */
+	private static void release(final Limit limit) {
+		if ((limit != null) && (limit != NO_LIMIT)) {
+			limit.bucket.release();
+		}
+	}
+
+	/**
+	 * Collects summaries of rejected events, at most once per summary interval
+	 * @param now Current time
+	 * @return Summary events (possibly empty)
+	 */
+	List<ILoggingEvent> expired(final long now) {
+		long next = nextSummaryMillis.get();
+
+		if ((now < next) || !nextSummaryMillis.compareAndSet(next, now + summaryMillis)) {
+			return Collections.emptyList();
+		}
+
+		return collect(now);
+	}
+
+	/**
+	 * Collects summaries of all rejected events
+	 * @return Summary events (possibly empty)
+	 */
+	List<ILoggingEvent> flush() {
+		return collect(System.currentTimeMillis());
+	}
+
+	/**
+	 * Returns the limit of the longest configured prefix of the logger name
+	 * @param loggerName The logger name
+	 * @return The limit or NO_LIMIT
+	 */
+	private Limit resolve(final String loggerName) {
+		if (loggerLimits.isEmpty() || (loggerName == null)) {
+			return NO_LIMIT;
+		}
+
+		Limit limit = resolved.get(loggerName);
+
+		if (limit == null) {
+			limit = NO_LIMIT;
+
+			for (String prefix = loggerName; prefix != null; prefix = parent(prefix)) {
+				Limit candidate = loggerLimits.get(prefix);
+
+				if (candidate != null) {
+					limit = candidate;
+					break;
+				}
+			}
+
+			if (resolved.size() < MAX_RESOLVED_LOGGERS) {
+				resolved.put(loggerName, limit);
+			}
+		}
+
+		return limit;
+	}
+
+	/**
+	 * @param name Logger name
+	 * @return The parent logger name or null
+	 */
+	private static String parent(final String name) {
+		int dot = name.lastIndexOf('.');
+		return (0 < dot) ? name.substring(0, dot) : null;
+	}
+
+	/**
+	 * Builds summary events for the rejected event counts
+	 * @param now Current time
+	 * @return Summary events
+	 */
+	private List<ILoggingEvent> collect(final long now) {
+		List<ILoggingEvent> summaries = new ArrayList<ILoggingEvent>();
+
+		for (Limit limit : loggerLimits.values()) {
+			long count = limit.rejected.getAndSet(0);
+
+			if (0 < count) {
+				summaries.add(summary(limit.name, "Rate limit suppressed " + count + " events from logger " + limit.name, now));
+			}
+		}
+
+		for (Limit limit : levelLimits.values()) {
+			long count = limit.rejected.getAndSet(0);
+
+			if (0 < count) {
+				summaries.add(summary(Logger.ROOT_LOGGER_NAME, "Rate limit suppressed " + count + " " + limit.name + " events", now));
+			}
+		}
+
+		long count = sampled.getAndSet(0);
+
+		if (0 < count) {
+			summaries.add(summary(Logger.ROOT_LOGGER_NAME, "Adaptive sampling suppressed " + count + " events while the ring buffer was more than " + Math.round(samplingThreshold * 100) + "% full", now));
+		}
+
+		return summaries;
+	}
+
+	/**
+	 * @param loggerName Logger name
+	 * @param message Summary message
+	 * @param now Current time
+	 * @return Summary event
+	 */
+	private static ILoggingEvent summary(final String loggerName, final String message, final long now) {
+		LoggingEvent event = new LoggingEvent();
+		event.setLoggerName(loggerName);
+		event.setLevel(Level.WARN);
+		event.setMessage(message);
+		event.setTimeStamp(now);
+		event.setThreadName(Thread.currentThread().getName());
+		event.setCallerData(new StackTraceElement[0]);
+		event.setMDCPropertyMap(new LinkedHashMap<String, String>());
+		return event;
+	}
+
+	/**
+	 * Parses a rate list such as "com.acme=100, org.hibernate.SQL=10"
+	 * @param value Configuration value (or null)
+	 * @return Events per second by key
+	 */
+	static Map<String, Long> parseRates(final String value) {
+		Map<String, Long> rates = new LinkedHashMap<String, Long>();
+
+		if (value == null) {
+			return rates;
+		}
+
+		for (String entry : value.split(",")) {
+			if (entry.trim().isEmpty()) {
+				continue;
+			}
+
+			int eq = entry.indexOf('=');
+
+			if (eq < 0) {
+				throw new IllegalArgumentException("Invalid rate limit (expected name=eventsPerSecond): " + entry.trim());
+			}
+
+			rates.put(entry.substring(0, eq).trim(), Long.valueOf(entry.substring(eq + 1).trim()));
+		}
+
+		return rates;
+	}
+
+	/**
+	 * Parses a level rate list such as "debug=100, info=1000"
+	 * @param value Configuration value (or null)
+	 * @return Events per second by level
+	 */
+	static Map<Level, Long> parseLevelRates(final String value) {
+		Map<Level, Long> rates = new LinkedHashMap<Level, Long>();
+
+		for (Map.Entry<String, Long> entry : parseRates(value).entrySet()) {
+			Level level = Level.toLevel(entry.getKey(), null);
+
+			if (level == null) {
+				throw new IllegalArgumentException("Invalid rate limit level: " + entry.getKey());
+			}
+
+			rates.put(level, entry.getValue());
+		}
+
+		return rates;
+	}
+
+	/**
+	 * Token bucket and rejected event count of one configured limit
+	 */
+	private static class Limit {
+
+		private final String name;
+
+		private final TokenBucket bucket;
+
+		private final AtomicLong rejected = new AtomicLong();
+
+		private Limit(final String name, final long ratePerSecond) {
+			this.name = name;
+			this.bucket = new TokenBucket(ratePerSecond, ratePerSecond);
+		}
+
+		private boolean tryAcquire() {
+			if (bucket.tryAcquire()) {
+				return true;
+			}
+
+			rejected.incrementAndGet();
+			return false;
+		}
+	}
+}
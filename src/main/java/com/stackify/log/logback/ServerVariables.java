@@ -0,0 +1,189 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import com.stackify.api.common.util.Maps;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Versioned, immutable snapshot of the system properties sent as server variables with errors.
+ *
+ * <p>
+ * The snapshot is shared by all errors and only rebuilt when the refresh interval has elapsed or a cheap
+ * change check (a different properties instance or size) fails. The version only changes when the
+ * rebuilt variables differ from the previous snapshot.
+ */
+public class ServerVariables {
+
+	/**
+	 * Default refresh interval
+	 */
+	public static final long DEFAULT_REFRESH_MILLIS = 60000;
+
+	/**
+	 * Refresh interval
+	 */
+	@Getter
+	private final long refreshMillis;
+
+	/**
+	 * Current snapshot
+	 */
+	private volatile Snapshot snapshot;
+
+	public ServerVariables() {
+		this(DEFAULT_REFRESH_MILLIS);
+	}
+
+	/**
+	 * @param refreshMillis Refresh interval
+	 */
+	public ServerVariables(final long refreshMillis) {
+		this.refreshMillis = refreshMillis;
+		this.snapshot = newSnapshot(null, System.getProperties(), System.currentTimeMillis());
+	}
+
+	/**
+	 * @return The current snapshot, refreshed if it is stale
+	 */
+	public Snapshot get() {
+		Snapshot current = snapshot;
+		Properties properties = System.getProperties();
+		long now = System.currentTimeMillis();
+
+		if (current.isStale(properties, now, refreshMillis)) {
+			current = refresh(properties, now);
+		}
+
+		return current;
+	}
+
+	/**
+	 * Rebuilds the snapshot if no other thread has done so already
+	 * @param properties System properties
+	 * @param now Current time
+	 * @return The current snapshot
+	 */
+	private synchronized Snapshot refresh(final Properties properties, final long now) {
+		Snapshot current = snapshot;
+
+		if (current.isStale(properties, now, refreshMillis)) {
+			current = newSnapshot(current, properties, now);
+			snapshot = current;
+		}
+
+		return current;
+	}
+
+	/**
+	 * Builds a snapshot, keeping the previous version if nothing changed
+	 * @param previous Previous snapshot (or null)
+	 * @param properties System properties
+	 * @param now Current time
+	 * @return The new snapshot
+	 */
+	private static Snapshot newSnapshot(final Snapshot previous, final Properties properties, final long now) {
+		Map<String, String> variables = Collections.unmodifiableMap(Maps.fromProperties(properties));
+
+		if (previous == null) {
+			return new Snapshot(1, variables, properties, properties.size(), now);
+		}
+
+		if (previous.getVariables().equals(variables)) {
+			return new Snapshot(previous.getVersion(), previous.getVariables(), properties, properties.size(), now);
+		}
+
+		return new Snapshot(previous.getVersion() + 1, variables, properties, properties.size(), now);
+	}
+
+	/**
+	 * When server variables are attached to errors
+	 */
+	public enum Mode {
+
+		/**
+		 * With every error
+		 */
+		ERROR,
+
+		/**
+		 * With the first error of the session and again whenever the variables change
+		 */
+		SESSION,
+
+		/**
+		 * Never
+		 */
+		NONE;
+
+		/**
+		 * @param value Configuration value (case insensitive)
+		 * @return The mode
+		 */
+		public static Mode fromString(final String value) {
+			return Mode.valueOf(value.trim().toUpperCase());
+		}
+	}
+
+	/**
+	 * Immutable server variables snapshot
+	 */
+	public static class Snapshot {
+
+		/**
+		 * Version, incremented whenever the variables change
+		 */
+		@Getter
+		private final long version;
+
+		/**
+		 * Unmodifiable server variables
+		 */
+		@Getter
+		private final Map<String, String> variables;
+
+		/**
+		 * Properties instance the snapshot was taken from
+		 */
+		private final Properties source;
+
+		/**
+		 * Number of properties when the snapshot was taken
+		 */
+		private final int sourceSize;
+
+		/**
+		 * When the snapshot was taken
+		 */
+		private final long takenMillis;
+
+		private Snapshot(final long version, final Map<String, String> variables, final Properties source, final int sourceSize, final long takenMillis) {
+			this.version = version;
+			this.variables = variables;
+			this.source = source;
+			this.sourceSize = sourceSize;
+			this.takenMillis = takenMillis;
+		}
+
+		private boolean isStale(final Properties properties, final long now, final long refreshMillis) {
+			return (properties != source) || (properties.size() != sourceSize) || (refreshMillis <= now - takenMillis);
+		}
+	}
+}
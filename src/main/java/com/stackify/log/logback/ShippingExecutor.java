@@ -0,0 +1,286 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the periodic and on-demand flushes of a LogPipeline.
+ *
+ * <p>
+ * Three execution models are supported:
+ * <ul>
+ * <li>platform: a dedicated daemon thread per pipeline (the default)</li>
+ * <li>virtual: one virtual thread per flush, ticked by the timer (Java 21+)</li>
+ * <li>shared: a scheduler supplied by the host application, which is never shut down by the pipeline</li>
+ * </ul>
+ *
+ * <p>
+ * The timer is a single platform thread shared by all users in the JVM, virtual thread pipelines and light
+ * periodic work that runs on the timer thread itself. It is stopped when the last of them shuts down.
+ *
+ * <p>
+ * Virtual threads are looked up reflectively, so the library still builds and runs on Java 8.
+ */
+class ShippingExecutor {
+
+	/**
+	 * Execution model
+	 */
+	enum Mode {
+
+		/**
+		 * A dedicated platform thread
+		 */
+		PLATFORM,
+
+		/**
+		 * Virtual threads (Java 21+)
+		 */
+		VIRTUAL,
+
+		/**
+		 * A scheduler supplied by the host application
+		 */
+		SHARED;
+
+		/**
+		 * @param value Configuration value (case insensitive)
+		 * @return The mode
+		 */
+		static Mode fromString(final String value) {
+			return Mode.valueOf(value.trim().toUpperCase());
+		}
+	}
+
+	/**
+	 * Timer shared by virtual thread pipelines and timer executors (created on first use, null when unused)
+	 */
+	private static ScheduledExecutorService sharedTimer;
+
+	/**
+	 * Number of executors holding the timer
+	 */
+	private static int sharedTimerUsers;
+
+	/**
+	 * Runs the periodic task
+	 */
+	private final ScheduledExecutorService scheduler;
+
+	/**
+	 * Runs the flushes
+	 */
+	private final ExecutorService runner;
+
+	/**
+	 * True if the scheduler belongs to this executor
+	 */
+	private final boolean ownsScheduler;
+
+	/**
+	 * True while this executor holds a reference to the timer
+	 */
+	private boolean holdsTimer;
+
+	/**
+	 * The periodic task (once scheduled)
+	 */
+	private ScheduledFuture<?> periodic;
+
+	private ShippingExecutor(final ScheduledExecutorService scheduler, final ExecutorService runner, final boolean ownsScheduler) {
+		this.scheduler = scheduler;
+		this.runner = runner;
+		this.ownsScheduler = ownsScheduler;
+	}
+
+	/**
+	 * @param name Thread name
+	 * @return Executor with its own platform thread
+	 */
+	static ShippingExecutor platform(final String name) {
+		ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory(name));
+		return new ShippingExecutor(scheduler, scheduler, true);
+	}
+
+	/**
+	 * @param name Thread name prefix
+	 * @return Executor running flushes on virtual threads
+	 * @throws UnsupportedOperationException If the JVM has no virtual threads
+	 */
+	static ShippingExecutor virtual(final String name) {
+		ThreadFactory factory = virtualThreadFactory(name);
+
+		if (factory == null) {
+			throw new UnsupportedOperationException("Virtual threads require Java 21 or later");
+		}
+
+		try {
+			ExecutorService runner = (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, factory);
+			ShippingExecutor executor = new ShippingExecutor(acquireTimer(), runner, false);
+			executor.holdsTimer = true;
+			return executor;
+		} catch (Exception e) {
+			throw new UnsupportedOperationException("Virtual threads require Java 21 or later", e);
+		}
+	}
+
+	/**
+	 * @return Executor running short periodic tasks on the timer thread, without a thread of its own
+	 */
+	static ShippingExecutor timer() {
+		ScheduledExecutorService timer = acquireTimer();
+		ShippingExecutor executor = new ShippingExecutor(timer, timer, false);
+		executor.holdsTimer = true;
+		return executor;
+	}
+
+	/**
+	 * @param scheduler Scheduler supplied by the host application
+	 * @return Executor running flushes on the host scheduler
+	 */
+	static ShippingExecutor shared(final ScheduledExecutorService scheduler) {
+		return new ShippingExecutor(scheduler, scheduler, false);
+	}
+
+	/**
+	 * @param name Thread name prefix
+	 * @return Factory of named virtual threads or null if the JVM has no virtual threads
+	 */
+	static ThreadFactory virtualThreadFactory(final String name) {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "-", 0L);
+			return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return True if the JVM has virtual threads
+	 */
+	static boolean isVirtualAvailable() {
+		return virtualThreadFactory("probe") != null;
+	}
+
+	/**
+	 * Runs the task periodically, waiting the delay between the end of a run and the start of the next. The task
+	 * handles its own exceptions: on a platform or shared scheduler, an exception ends the schedule.
+	 * @param task The task
+	 * @param delayMillis Delay between runs
+	 */
+	synchronized void scheduleWithFixedDelay(final Runnable task, final long delayMillis) {
+		Runnable tick = (runner == scheduler) ? task : new Runnable() {
+			@Override
+			public void run() {
+				execute(task);
+			}
+		};
+
+		periodic = scheduler.scheduleWithFixedDelay(tick, delayMillis, delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Runs the task once, as soon as possible
+	 * @param task The task
+	 */
+	void execute(final Runnable task) {
+		runner.execute(task);
+	}
+
+	/**
+	 * Stops the periodic task and releases the threads owned by this executor
+	 * @param timeoutMillis Maximum time to wait for a running task
+	 * @throws InterruptedException If interrupted while waiting
+	 */
+	void shutdown(final long timeoutMillis) throws InterruptedException {
+		boolean release;
+
+		synchronized (this) {
+			if (periodic != null) {
+				periodic.cancel(false);
+			}
+
+			release = holdsTimer;
+			holdsTimer = false;
+		}
+
+		try {
+			if (ownsScheduler) {
+				scheduler.shutdown();
+				scheduler.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+			} else if (runner != scheduler) {
+				runner.shutdown();
+				runner.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+			}
+		} finally {
+			if (release) {
+				releaseTimer();
+			}
+		}
+	}
+
+	/**
+	 * Takes a reference to the shared timer, starting it if needed
+	 * @return The timer
+	 */
+	static synchronized ScheduledExecutorService acquireTimer() {
+		if (sharedTimer == null) {
+			ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, daemonThreadFactory("Stackify_LogPipelineTimer"));
+			timer.setRemoveOnCancelPolicy(true);
+			sharedTimer = timer;
+		}
+
+		sharedTimerUsers++;
+		return sharedTimer;
+	}
+
+	/**
+	 * Drops a reference to the shared timer, stopping it with the last one so
+	 * that no thread (or class loader) outlives the appenders
+	 */
+	static synchronized void releaseTimer() {
+		if ((sharedTimerUsers == 0) || (--sharedTimerUsers != 0)) {
+			return;
+		}
+
+		sharedTimer.shutdown();
+		sharedTimer = null;
+	}
+
+	/**
+	 * @param name Thread name
+	 * @return Factory of daemon platform threads
+	 */
+	private static ThreadFactory daemonThreadFactory(final String name) {
+		return new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable r) {
+				Thread thread = new Thread(r, name);
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+}
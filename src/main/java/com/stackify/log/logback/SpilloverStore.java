@@ -0,0 +1,472 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Durable FIFO of serialized batches in append-only, memory-mapped segment files.
+ *
+ * <p>
+ * Each record is a length, a CRC32 of the payload and the payload. The length is written last, after a zero
+ * terminator behind the record, so a record torn by a crash reads as the end of the segment. Replayed
+ * records are marked consumed by negating their length in place; a segment file is deleted once all of its
+ * records are consumed. On open, existing segments are scanned and replay resumes with the first record that
+ * is not consumed. Records sent but not yet marked when the process dies are replayed again.
+ *
+ * <p>
+ * Disk usage is bounded by dropping the oldest segment when a new one would exceed the maximum.
+ */
+class SpilloverStore implements Closeable {
+
+	/**
+	 * Record header: length and CRC32
+	 */
+	private static final int HEADER_BYTES = 8;
+
+	/**
+	 * Segment file names
+	 */
+	private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d{20})\\.spill");
+
+	/**
+	 * Directory of the segment files
+	 */
+	private final File directory;
+
+	/**
+	 * Size of a segment file
+	 */
+	private final int segmentBytes;
+
+	/**
+	 * Maximum number of segment files
+	 */
+	private final int maxSegments;
+
+	/**
+	 * Segments, oldest first; the last one is written to
+	 */
+	private final Deque<Segment> segments = new ArrayDeque<Segment>();
+
+	/**
+	 * Sequence number of the next segment
+	 */
+	private long nextSequence;
+
+	/**
+	 * Segment and position of the record returned by the last peek
+	 */
+	private Segment peekedSegment;
+
+	private int peekedPosition;
+
+	/**
+	 * Number of records not consumed yet
+	 */
+	private int size;
+
+	/**
+	 * Number of records dropped to stay within the disk bound
+	 */
+	private long dropped;
+
+	/**
+	 * Opens the store, recovering the segments found in the directory
+	 * @param directory Directory of the segment files
+	 * @param segmentBytes Size of a segment file
+	 * @param maxBytes Maximum disk usage
+	 * @throws IOException If the directory or a segment cannot be opened
+	 */
+	SpilloverStore(final File directory, final int segmentBytes, final long maxBytes) throws IOException {
+		if (segmentBytes < HEADER_BYTES * 2) {
+			throw new IllegalArgumentException("Invalid spillover segment size: " + segmentBytes);
+		}
+
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create spillover directory " + directory);
+		}
+
+		this.directory = directory;
+		this.segmentBytes = segmentBytes;
+		this.maxSegments = (int) Math.max(2, Math.min(Integer.MAX_VALUE, maxBytes / segmentBytes));
+
+		recover();
+	}
+
+	/**
+	 * Appends a record
+	 * @param payload The payload
+	 * @return False if the payload is too large for a segment
+	 * @throws IOException If a new segment cannot be created
+	 */
+	synchronized boolean append(final byte[] payload) throws IOException {
+		if ((payload.length == 0) || (segmentBytes - HEADER_BYTES < payload.length)) {
+			return false;
+		}
+
+		Segment tail = segments.peekLast();
+
+		if ((tail == null) || !tail.fits(payload.length)) {
+			tail = roll();
+		}
+
+		tail.append(payload);
+		++size;
+
+		return true;
+	}
+
+	/**
+	 * @return The oldest record that is not consumed or null if there is none
+	 */
+	synchronized byte[] peek() {
+		Segment head = segments.peekFirst();
+
+		if ((head == null) || (head.pending == 0)) {
+			return null;
+		}
+
+		peekedSegment = head;
+		peekedPosition = head.readPosition;
+
+		return head.read();
+	}
+
+	/**
+	 * Marks the record returned by the last peek consumed, unless it was dropped in the meantime
+	 */
+	synchronized void remove() {
+		Segment head = segments.peekFirst();
+
+		if ((head == null) || (head != peekedSegment) || (head.readPosition != peekedPosition) || (head.pending == 0)) {
+			return;
+		}
+
+		peekedSegment = null;
+
+		head.consume();
+		--size;
+
+		if ((head.pending == 0) && (1 < segments.size())) {
+			segments.removeFirst().delete();
+		}
+	}
+
+	/**
+	 * @return True if all records are consumed
+	 */
+	synchronized boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return Number of records not consumed yet
+	 */
+	synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * @return Number of records dropped to stay within the disk bound
+	 */
+	synchronized long getDroppedCount() {
+		return dropped;
+	}
+
+	/**
+	 * Flushes the records appended so far to disk
+	 */
+	synchronized void sync() {
+		Segment tail = segments.peekLast();
+
+		if (tail != null) {
+			tail.force();
+		}
+	}
+
+	/**
+	 * Flushes the segments to disk
+	 */
+	@Override
+	public synchronized void close() {
+		for (Segment segment : segments) {
+			segment.force();
+		}
+	}
+
+	/**
+	 * Seals the tail segment and starts a new one, dropping the oldest segment if needed
+	 * @return The new tail segment
+	 * @throws IOException If the segment cannot be created
+	 */
+	private Segment roll() throws IOException {
+		Segment tail = segments.peekLast();
+
+		if (tail != null) {
+			tail.force();
+
+			if (tail.pending == 0) {
+				segments.removeLast().delete();
+			}
+		}
+
+		while (maxSegments <= segments.size()) {
+			Segment oldest = segments.removeFirst();
+			dropped += oldest.pending;
+			size -= oldest.pending;
+			oldest.delete();
+		}
+
+		Segment segment = Segment.create(new File(directory, name(nextSequence)), nextSequence, segmentBytes);
+		++nextSequence;
+		segments.addLast(segment);
+
+		return segment;
+	}
+
+	/**
+	 * Scans the segment files in the directory
+	 * @throws IOException If a segment cannot be opened
+	 */
+	private void recover() throws IOException {
+		File[] files = directory.listFiles();
+		List<Segment> found = new ArrayList<Segment>();
+
+		if (files != null) {
+			for (File file : files) {
+				Matcher matcher = SEGMENT_NAME.matcher(file.getName());
+
+				if (matcher.matches()) {
+					long sequence = Long.parseLong(matcher.group(1));
+					nextSequence = Math.max(nextSequence, sequence + 1);
+					found.add(Segment.open(file, sequence));
+				}
+			}
+		}
+
+		Collections.sort(found);
+
+		for (Segment segment : found) {
+			if (segment.pending == 0) {
+				segment.delete();
+			} else {
+				segments.addLast(segment);
+				size += segment.pending;
+			}
+		}
+	}
+
+	/**
+	 * @param sequence Segment sequence number
+	 * @return Segment file name
+	 */
+	private static String name(final long sequence) {
+		return String.format("segment-%020d.spill", sequence);
+	}
+
+	/**
+	 * @param buffer Segment buffer
+	 * @param position Payload position
+	 * @param length Payload length
+	 * @return CRC32 of the payload
+	 */
+	private static int crc(final MappedByteBuffer buffer, final int position, final int length) {
+		ByteBuffer payload = buffer.duplicate();
+		payload.limit(position + length);
+		payload.position(position);
+
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * One memory-mapped segment file
+	 */
+	private static final class Segment implements Comparable<Segment> {
+
+		private final File file;
+
+		private final long sequence;
+
+		private final MappedByteBuffer buffer;
+
+		/**
+		 * Position of the next record written
+		 */
+		private int writePosition;
+
+		/**
+		 * Position of the oldest record not consumed
+		 */
+		private int readPosition;
+
+		/**
+		 * Number of records not consumed
+		 */
+		private int pending;
+
+		private Segment(final File file, final long sequence, final MappedByteBuffer buffer) {
+			this.file = file;
+			this.sequence = sequence;
+			this.buffer = buffer;
+		}
+
+		private static Segment create(final File file, final long sequence, final int segmentBytes) throws IOException {
+			return new Segment(file, sequence, map(file, segmentBytes));
+		}
+
+		private static Segment open(final File file, final long sequence) throws IOException {
+			Segment segment = new Segment(file, sequence, map(file, (int) Math.min(Integer.MAX_VALUE, file.length())));
+			segment.scan();
+			return segment;
+		}
+
+		private static MappedByteBuffer map(final File file, final int length) throws IOException {
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+
+			try {
+				raf.setLength(length);
+				return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+			} finally {
+				raf.close();
+			}
+		}
+
+		/**
+		 * Finds the valid records, stopping at the terminator or the first torn record
+		 */
+		private void scan() {
+			int position = 0;
+			readPosition = -1;
+
+			while (position + HEADER_BYTES <= buffer.capacity()) {
+				int length = buffer.getInt(position);
+				int payloadLength = Math.abs(length);
+
+				if ((length == 0) || (length == Integer.MIN_VALUE) || (buffer.capacity() - position - HEADER_BYTES < payloadLength)) {
+					break;
+				}
+
+				if (buffer.getInt(position + 4) != crc(buffer, position + HEADER_BYTES, payloadLength)) {
+					break;
+				}
+
+				if (0 < length) {
+					++pending;
+
+					if (readPosition < 0) {
+						readPosition = position;
+					}
+				}
+
+				position += HEADER_BYTES + payloadLength;
+			}
+
+			writePosition = position;
+
+			if (readPosition < 0) {
+				readPosition = position;
+			}
+
+			terminate(position);
+		}
+
+		private boolean fits(final int length) {
+			return HEADER_BYTES + length <= buffer.capacity() - writePosition;
+		}
+
+		private void append(final byte[] payload) {
+			int position = writePosition;
+			int next = position + HEADER_BYTES + payload.length;
+
+			ByteBuffer target = buffer.duplicate();
+			target.position(position + HEADER_BYTES);
+			target.put(payload);
+
+			buffer.putInt(position + 4, crc(buffer, position + HEADER_BYTES, payload.length));
+			terminate(next);
+
+			// publish the record last
+			buffer.putInt(position, payload.length);
+
+			writePosition = next;
+			++pending;
+		}
+
+		private byte[] read() {
+			int length = buffer.getInt(readPosition);
+			byte[] payload = new byte[length];
+
+			ByteBuffer source = buffer.duplicate();
+			source.position(readPosition + HEADER_BYTES);
+			source.get(payload);
+
+			return payload;
+		}
+
+		private void consume() {
+			int length = buffer.getInt(readPosition);
+			buffer.putInt(readPosition, -length);
+
+			readPosition += HEADER_BYTES + length;
+			--pending;
+
+			// skip records consumed before a restart
+			while ((0 < pending) && (buffer.getInt(readPosition) < 0)) {
+				readPosition += HEADER_BYTES - buffer.getInt(readPosition);
+			}
+		}
+
+		private void terminate(final int position) {
+			if (position + 4 <= buffer.capacity()) {
+				buffer.putInt(position, 0);
+			}
+		}
+
+		private void force() {
+			buffer.force();
+		}
+
+		private void delete() {
+			if (!file.delete()) {
+				// still mapped on some platforms; every record is consumed, so recovery deletes it later
+				file.deleteOnExit();
+			}
+		}
+
+		@Override
+		public int compareTo(final Segment other) {
+			return (sequence < other.sequence) ? -1 : ((sequence == other.sequence) ? 0 : 1);
+		}
+	}
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import com.stackify.api.TraceFrame;
+import com.stackify.api.common.lang.StackTraceElements;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shortens the stack traces of converted exceptions.
+ *
+ * <p>
+ * Framework exceptions carry hundreds of frames, most of them repeated in every cause. The compactor
+ * replaces the frames a cause shares with its enclosing exception with a single "... N more" frame (as
+ * Throwable.printStackTrace does), collapses runs of frames in configured packages into one frame, drops
+ * frames of other configured packages entirely and caps the number of frames per cause and the number of
+ * causes. Omitted frames and causes are counted in marker frames that have only a method.
+ */
+class StackTraceCompactor {
+
+	/**
+	 * Compactor that keeps every frame and cause
+	 */
+	static final StackTraceCompactor NONE = new StackTraceCompactor(false, null, null, 0, 0);
+
+	/**
+	 * Replace the frames a cause shares with its enclosing exception
+	 */
+	private final boolean elideCommonFrames;
+
+	/**
+	 * Packages whose consecutive frames are collapsed, with a trailing dot
+	 */
+	private final String[] collapsePackages;
+
+	/**
+	 * Packages whose frames are dropped, with a trailing dot
+	 */
+	private final String[] dropPackages;
+
+	/**
+	 * Maximum number of frames kept per cause, a collapsed run counting as one (0 for no limit)
+	 */
+	private final int maxFrames;
+
+	/**
+	 * Maximum number of causes kept, the outermost ones and the root cause (0 for no limit)
+	 */
+	private final int maxCauses;
+
+	/**
+	 * @param elideCommonFrames Replace the frames a cause shares with its enclosing exception
+	 * @param collapsePackages Packages whose consecutive frames are collapsed (or null)
+	 * @param dropPackages Packages whose frames are dropped (or null)
+	 * @param maxFrames Maximum number of frames per cause (0 for no limit)
+	 * @param maxCauses Maximum number of causes (0 for no limit)
+	 */
+	StackTraceCompactor(final boolean elideCommonFrames, final String[] collapsePackages, final String[] dropPackages, final int maxFrames, final int maxCauses) {
+		if ((maxFrames < 0) || (maxCauses < 0)) {
+			throw new IllegalArgumentException("Stack trace limits must not be negative");
+		}
+
+		this.elideCommonFrames = elideCommonFrames;
+		this.collapsePackages = normalize(collapsePackages);
+		this.dropPackages = normalize(dropPackages);
+		this.maxFrames = maxFrames;
+		this.maxCauses = maxCauses;
+	}
+
+	/**
+	 * @return False if every frame and cause is kept
+	 */
+	boolean isEnabled() {
+		return elideCommonFrames || (0 < collapsePackages.length) || (0 < dropPackages.length) || (0 < maxFrames) || (0 < maxCauses);
+	}
+
+	/**
+	 * Selects the causes kept: the outermost ones and, if more than one is kept, the root cause
+	 * @param count Number of causes in the chain
+	 * @return Indexes of the causes kept, in chain order
+	 */
+	int[] causes(final int count) {
+		int kept = ((maxCauses == 0) || (count <= maxCauses)) ? count : maxCauses;
+		int[] indexes = new int[kept];
+
+		for (int i = 0; i < kept; ++i) {
+			indexes[i] = i;
+		}
+
+		if ((kept < count) && (1 < kept)) {
+			indexes[kept - 1] = count - 1;
+		}
+
+		return indexes;
+	}
+
+	/**
+	 * Converts and compacts the frames of one cause
+	 * @param frames Frames of the cause
+	 * @param enclosing Frames of the enclosing cause kept (null for the outermost)
+	 * @param omittedCauses Causes omitted between this one and the next one kept
+	 * @return Trace frames, marker frames included
+	 */
+	List<TraceFrame> compact(final StackTraceElement[] frames, final StackTraceElement[] enclosing, final int omittedCauses) {
+		int common = (elideCommonFrames && (enclosing != null)) ? commonFrames(frames, enclosing) : 0;
+		int end = frames.length - common;
+
+		int limit = (maxFrames == 0) ? end : Math.min(end, maxFrames);
+		List<TraceFrame> stackTrace = new ArrayList<TraceFrame>(limit + 3);
+		int omitted = 0;
+
+		for (int i = 0; i < end; ) {
+			String className = frames[i].getClassName();
+
+			if (matches(className, dropPackages) != null) {
+				++i;
+				continue;
+			}
+
+			String collapse = matches(className, collapsePackages);
+			int run = 1;
+
+			if (collapse != null) {
+				while ((i + run < end) && frames[i + run].getClassName().startsWith(collapse)) {
+					++run;
+				}
+			}
+
+			if (limit <= stackTrace.size()) {
+				omitted += run;
+			} else if (1 < run) {
+				stackTrace.add(marker("... " + run + " frames in " + collapse.substring(0, collapse.length() - 1)));
+			} else {
+				stackTrace.add(StackTraceElements.toTraceFrame(frames[i]));
+			}
+
+			i += run;
+		}
+
+		if (0 < omitted) {
+			stackTrace.add(marker("... " + omitted + " frames omitted"));
+		}
+
+		if (0 < common) {
+			stackTrace.add(marker("... " + common + " more"));
+		}
+
+		if (0 < omittedCauses) {
+			stackTrace.add(marker("... " + omittedCauses + " causes omitted"));
+		}
+
+		return stackTrace;
+	}
+
+	/**
+	 * Parses a package list such as "org.springframework, sun.reflect"
+	 * @param value Configuration value (or null)
+	 * @return The packages
+	 */
+	static String[] parsePackages(final String value) {
+		List<String> packages = new ArrayList<String>();
+
+		if (value != null) {
+			for (String entry : value.split(",")) {
+				if (!entry.trim().isEmpty()) {
+					packages.add(entry.trim());
+				}
+			}
+		}
+
+		return packages.toArray(new String[packages.size()]);
+	}
+
+	/**
+	 * @param frames Frames of a cause
+	 * @param enclosing Frames of its enclosing exception
+	 * @return Number of frames at the bottom of both traces that are the same, as counted by Throwable
+	 */
+	private static int commonFrames(final StackTraceElement[] frames, final StackTraceElement[] enclosing) {
+		int m = frames.length - 1;
+		int n = enclosing.length - 1;
+
+		while ((0 <= m) && (0 <= n) && frames[m].equals(enclosing[n])) {
+			--m;
+			--n;
+		}
+
+		return frames.length - 1 - m;
+	}
+
+	/**
+	 * @param className Class of a frame
+	 * @param packages Packages with a trailing dot
+	 * @return The first package the class is in (or null)
+	 */
+	private static String matches(final String className, final String[] packages) {
+		for (String p : packages) {
+			if (className.startsWith(p)) {
+				return p;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * @param method Text of the marker
+	 * @return Frame standing for omitted frames or causes
+	 */
+	private static TraceFrame marker(final String method) {
+		return TraceFrame.newBuilder().method(method).build();
+	}
+
+	/**
+	 * @param packages Package names (or null)
+	 * @return The package names with a trailing dot
+	 */
+	private static String[] normalize(final String[] packages) {
+		if (packages == null) {
+			return new String[0];
+		}
+
+		String[] normalized = new String[packages.length];
+
+		for (int i = 0; i < packages.length; ++i) {
+			normalized[i] = packages[i].endsWith(".") ? packages[i] : packages[i] + ".";
+		}
+
+		return normalized;
+	}
+}
@@ -15,8 +15,9 @@
  */
 package com.stackify.log.logback;
 
+import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.spi.ILoggingEvent;
-import ch.qos.logback.core.AppenderBase;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
 
 import com.stackify.api.common.ApiClients;
 import com.stackify.api.common.ApiConfiguration;
@@ -26,6 +27,19 @@ import com.stackify.api.common.mask.Masker;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
+
 /**
  * Logback logger appender for sending logs to Stackify.
  *
@@ -50,7 +64,28 @@ import lombok.Setter;
  *
  * @author Eric Martin
  */
-public class StackifyLogAppender extends AppenderBase<ILoggingEvent> {
+public class StackifyLogAppender extends UnsynchronizedAppenderBase<ILoggingEvent> {
+
+	/**
+	 * Logger context object key under which the host application can register the scheduler of the
+	 * shared executor
+	 */
+	public static final String EXECUTOR_SERVICE_KEY = "com.stackify.log.logback.executorService";
+
+	/**
+	 * Maximum time to wait for the dispatcher to drain on stop
+	 */
+	private static final long DISPATCHER_STOP_TIMEOUT_MILLIS = 5000;
+
+	/**
+	 * Maximum time stop() waits for an async start to finish
+	 */
+	private static final long START_TIMEOUT_MILLIS = 10000;
+
+	/**
+	 * Maximum number of distinct errors tracked by the error aggregation
+	 */
+	private static final int MAX_AGGREGATED_ERRORS = 1000;
 
 	/**
 	 * API URL (Appender configuration parameter)
@@ -115,19 +150,483 @@ public class StackifyLogAppender extends AppenderBase<ILoggingEvent> {
 	@Getter
 	private String allowComDotStackify = "false";
 
+	/**
+	 * Hand events to a background thread through a lock-free ring buffer instead of
+	 * serializing application threads (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String unsynchronized = "false";
+
+	/**
+	 * Ring buffer capacity when unsynchronized (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String ringBufferSize = "8192";
+
+	/**
+	 * Return from start() immediately and set up the appender on a background thread (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String asyncStart = "false";
+
+	/**
+	 * Events buffered while an async start is in progress (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String asyncStartBufferSize = "1024";
+
+	/**
+	 * Longest time a logging thread waits for room in a full start buffer (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String asyncStartBufferTimeoutMillis = "1000";
+
+	/**
+	 * Threads that send logs: platform, virtual (Java 21+) or shared (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String executor = "platform";
+
+	/**
+	 * Scheduler supplied by the host application for the shared executor
+	 */
+	@Setter
+	@Getter
+	private ScheduledExecutorService executorService;
+
+	/**
+	 * Format and convert messages on the background thread instead of the logging thread, when
+	 * unsynchronized (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String deferredFormatting = "false";
+
+	/**
+	 * When server variables are sent with errors: error, session or none (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String serverVariables = "error";
+
+	/**
+	 * How often the server variables snapshot is refreshed (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String serverVariablesRefreshMillis = String.valueOf(ServerVariables.DEFAULT_REFRESH_MILLIS);
+
+	/**
+	 * Fold repeated errors into periodic summaries (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String errorAggregation = "false";
+
+	/**
+	 * Occurrences of the same error sent in full per window (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String errorAggregationLimit = "10";
+
+	/**
+	 * Error aggregation window length (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String errorAggregationWindowMillis = "60000";
+
+	/**
+	 * Which events get caller data: always, errors, never or sampled (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String callerData = "always";
+
+	/**
+	 * One in this many non-error events get caller data when sampled (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String callerDataSampleRate = "100";
+
+	/**
+	 * Replace the frames a cause shares with its enclosing exception with "... N more" (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String stackTraceElideCommonFrames = "false";
+
+	/**
+	 * Packages whose consecutive stack frames are collapsed into one, e.g. "org.springframework, sun.reflect"
+	 * (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String stackTraceCollapsePackages = null;
+
+	/**
+	 * Packages whose stack frames are dropped (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String stackTraceDropPackages = null;
+
+	/**
+	 * Maximum number of stack frames per cause, 0 for no limit (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String stackTraceMaxFrames = "0";
+
+	/**
+	 * Maximum number of causes per exception, 0 for no limit (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String stackTraceMaxCauses = "0";
+
+	/**
+	 * Events per second by logger prefix, e.g. "com.acme=100, org.hibernate.SQL=10" (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String rateLimitLoggers = null;
+
+	/**
+	 * Events per second by level, e.g. "debug=100, info=1000" (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String rateLimitLevels = null;
+
+	/**
+	 * Sample non-error events as the ring buffer fills up, when unsynchronized (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String adaptiveSampling = "false";
+
+	/**
+	 * Ring buffer fill ratio above which adaptive sampling starts (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String adaptiveSamplingThreshold = "0.5";
+
+	/**
+	 * How often counts of rate limited events are reported (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String rateLimitSummaryMillis = "60000";
+
+	/**
+	 * Collect metrics and publish them as a JMX MBean (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String metrics = "false";
+
+	/**
+	 * Maximum number of messages queued in memory when the pipeline is used (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String queueSize = "10000";
+
+	/**
+	 * Maximum estimated size in bytes of the messages queued in memory when the pipeline is used
+	 * (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String queueMaxBytes = null;
+
+	/**
+	 * Longer messages are truncated to this many characters when the pipeline is used (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String maxMessageLength = null;
+
+	/**
+	 * Maximum number of error messages queued in a lane of their own, sent ahead of other messages (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String errorQueueSize = null;
+
+	/**
+	 * Percentage of each batch reserved for non-error messages while errors are waiting (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String lowPriorityMinShare = "10";
+
+	/**
+	 * Maximum number of messages per request when the pipeline is used (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String batchSize = "100";
+
+	/**
+	 * Time between flushes when the pipeline is used, the longest with adaptive flushing (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String flushIntervalMillis = "1000";
+
+	/**
+	 * Adjust the batch size and flush interval to the observed send time and queue growth (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String adaptiveFlush = "false";
+
+	/**
+	 * Smallest batch size with adaptive flushing (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String minBatchSize = "10";
+
+	/**
+	 * Shortest time between flushes with adaptive flushing (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String minFlushIntervalMillis = "20";
+
+	/**
+	 * Sends slower than this make adaptive flushing send smaller batches less often (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String targetSendMillis = "500";
+
+	/**
+	 * What happens when the queue is full: block, drop_newest, drop_oldest or drop_below_level (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String backpressure = null;
+
+	/**
+	 * Longest time a caller waits for room in the queue when blocking (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String backpressureTimeoutMillis = "100";
+
+	/**
+	 * Messages below this level are dropped first with drop_below_level (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String backpressureLevel = "warn";
+
+	/**
+	 * Directory where batches are spilled while the API is unreachable (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String spilloverDirectory = null;
+
+	/**
+	 * Number of queued messages above which batches are spilled to disk (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String spilloverThreshold = "5000";
+
+	/**
+	 * Size of each spillover segment file (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String spilloverSegmentBytes = "8388608";
+
+	/**
+	 * Maximum disk space used by spillover segment files (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String spilloverMaxBytes = "268435456";
+
+	/**
+	 * Keep one connection to the local agent socket open instead of one per batch, when the transport
+	 * is agent_socket (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String persistentAgentSocket = "false";
+
+	/**
+	 * Share one pipeline with the other appenders of the same API URL, API key and settings (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String sharedPipeline = "false";
+
+	/**
+	 * Batches smaller than this many bytes are sent uncompressed, default 1024 (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String compressionMinBytes = null;
+
+	/**
+	 * Deflate level of compressed batches, 1 (fastest) to 9 (smallest), default 6 (Appender configuration parameter)
+	 */
+	@Setter
+	@Getter
+	private String compressionLevel = null;
+
 	/**
 	 * Generic log appender
 	 */
 	private LogAppender<ILoggingEvent> logAppender;
 
+	/**
+	 * Event adapter, whose per-thread state is dropped on stop
+	 */
+	private ILoggingEventAdapter eventAdapter;
+
+	/**
+	 * Background dispatcher (only when unsynchronized)
+	 */
+	private LogEventDispatcher dispatcher;
+
+	/**
+	 * True if messages are formatted on the dispatcher thread
+	 */
+	private boolean deferFormatting;
+
+	/**
+	 * Rate limiting and adaptive sampling (only when configured)
+	 */
+	private RateLimiter rateLimiter;
+
+	/**
+	 * Repeated error aggregation (only when enabled)
+	 */
+	private ErrorAggregator errorAggregator;
+
+	/**
+	 * Collects the summaries of closed aggregation windows while no new events arrive (only with aggregation)
+	 */
+	private ShippingExecutor summaryTimer;
+
+	/**
+	 * Caller data extraction policy
+	 */
+	private CallerDataPolicy callerDataPolicy;
+
+	/**
+	 * Appender metrics (only when enabled)
+	 */
+	@Getter
+	private AppenderMetrics appenderMetrics;
+
+	/**
+	 * JMX name the metrics are registered under (only when registered)
+	 */
+	private ObjectName metricsName;
+
+	/**
+	 * Serializes calls to the generic log appender when not unsynchronized
+	 */
+	private final Object appendLock = new Object();
+
+	/**
+	 * Guards the start buffer; notified when an async start is done
+	 */
+	private final Object startLock = new Object();
+
+	/**
+	 * Events logged during an async start, in order (guarded by startLock)
+	 */
+	private final Deque<ILoggingEvent> startBuffer = new ArrayDeque<ILoggingEvent>();
+
+	/**
+	 * Capacity of the start buffer
+	 */
+	private int startBufferCapacity;
+
+	/**
+	 * Longest time a logging thread waits for room in the start buffer
+	 */
+	private long startBufferTimeoutMillis;
+
+	/**
+	 * True once a wait for room timed out; events are then dropped without waiting (guarded by startLock)
+	 */
+	private boolean startStalled;
+
+	/**
+	 * Events dropped because the start buffer stayed full (guarded by startLock)
+	 */
+	private long startDropped;
+
+	/**
+	 * True from an async start until the appender is initialized and the start buffer is drained
+	 */
+	private volatile boolean starting;
+
+	/**
+	 * Thread running an async start (or null)
+	 */
+	private Thread startThread;
 
 	/**
-	 * @see ch.qos.logback.core.AppenderBase#start()
+	 * @see ch.qos.logback.core.UnsynchronizedAppenderBase#start()
 	 */
 	@Override
 	public void start() {
 		super.start();
 
+		if (!Boolean.parseBoolean(asyncStart)) {
+			initialize();
+			return;
+		}
+
+		// buffer events until the background thread is done
+
+		this.startBufferCapacity = Integer.parseInt(asyncStartBufferSize);
+		this.startBufferTimeoutMillis = Long.parseLong(asyncStartBufferTimeoutMillis);
+		this.starting = true;
+
+		this.startThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					initialize();
+				} catch (Exception e) {
+					addError("Exception starting the Stackify_LogBackgroundService", e);
+				} finally {
+					drainStartBuffer();
+				}
+			}
+		}, "Stackify_LogAppenderStart");
+
+		this.startThread.setDaemon(true);
+		this.startThread.start();
+	}
+
+	/**
+	 * Builds the appender's services
+	 */
+	private void initialize() {
+
 		// build the api config
 
 		ApiConfiguration apiConfig = ApiConfigurations.fromPropertiesWithOverrides(apiUrl, apiKey, application, environment, transport, allowComDotStackify);
@@ -142,7 +641,7 @@ public class StackifyLogAppender extends AppenderBase<ILoggingEvent> {
 
 			// setup masker
 
-			Masker masker = new Masker();
+			Masker masker = new PrefilterMasker();
 			if (Boolean.parseBoolean(maskEnabled)) {
 
 				// set default masks
@@ -169,40 +668,531 @@ public class StackifyLogAppender extends AppenderBase<ILoggingEvent> {
 				masker.clearMasks();
 			}
 
-			this.logAppender = new LogAppender<ILoggingEvent>(
-					clientName,
-					new ILoggingEventAdapter(apiConfig.getEnvDetail()),
-					masker,
-					Boolean.parseBoolean(skipJson));
+			// setup metrics
+
+			if (Boolean.parseBoolean(metrics)) {
+				this.appenderMetrics = new AppenderMetrics();
+			}
+
+			// setup caller data policy
+
+			this.callerDataPolicy = new CallerDataPolicy(CallerDataPolicy.Mode.fromString(callerData), Integer.parseInt(callerDataSampleRate));
+
+			// setup event adapter
+
+			ILoggingEventAdapter eventAdapter = new ILoggingEventAdapter(apiConfig.getEnvDetail());
+			eventAdapter.setServerVariables(new ServerVariables(Long.parseLong(serverVariablesRefreshMillis)));
+			eventAdapter.setServerVariablesMode(ServerVariables.Mode.fromString(serverVariables));
+			eventAdapter.setStackTraceCompactor(new StackTraceCompactor(
+					Boolean.parseBoolean(stackTraceElideCommonFrames),
+					StackTraceCompactor.parsePackages(stackTraceCollapsePackages),
+					StackTraceCompactor.parsePackages(stackTraceDropPackages),
+					Integer.parseInt(stackTraceMaxFrames),
+					Integer.parseInt(stackTraceMaxCauses)));
+			eventAdapter.setMetrics(appenderMetrics);
+			this.eventAdapter = eventAdapter;
+
+			ShippingExecutor.Mode executorMode = executorMode();
+			PipelineConfig pipelineConfig = newPipelineConfig(apiConfig, executorMode);
+
+			if ((pipelineConfig != null) && Boolean.parseBoolean(sharedPipeline)) {
+				PipelineRegistry.Lease lease = PipelineRegistry.shared().acquire(sharedPipelineKey(apiConfig, executorMode), new Callable<LogPipeline>() {
+					@Override
+					public LogPipeline call() {
+						LogPipeline pipeline = newPipeline(clientName, eventAdapter, masker, pipelineConfig);
+						pipeline.activate(apiConfig);
+						return pipeline;
+					}
+				}, clientName, eventAdapter, this, appenderMetrics);
+
+				if (appenderMetrics != null) {
+					appenderMetrics.setPipeline(lease.getPipeline());
+				}
+
+				this.logAppender = lease;
+			} else if (pipelineConfig != null) {
+				this.logAppender = newPipeline(clientName, eventAdapter, masker, pipelineConfig);
+			} else {
+				this.logAppender = new LogAppender<ILoggingEvent>(
+						clientName,
+						eventAdapter,
+						masker,
+						Boolean.parseBoolean(skipJson));
+			}
+
 			this.logAppender.activate(apiConfig);
+
+			// hand events off through a ring buffer instead of serializing callers
+
+			if (Boolean.parseBoolean(unsynchronized)) {
+				if (executorMode == ShippingExecutor.Mode.VIRTUAL) {
+					this.dispatcher = new LogEventDispatcher(Integer.parseInt(ringBufferSize), logAppender, this, ShippingExecutor.virtualThreadFactory("Stackify_LogEventDispatcher"));
+				} else {
+					this.dispatcher = new LogEventDispatcher("Stackify_LogEventDispatcher", Integer.parseInt(ringBufferSize), logAppender, this);
+				}
+
+				this.dispatcher.start();
+
+				if (appenderMetrics != null) {
+					appenderMetrics.setDispatcher(dispatcher);
+				}
+			}
+
+			// leave formatting to the dispatcher thread
+
+			this.deferFormatting = Boolean.parseBoolean(deferredFormatting);
+
+			if (deferFormatting && (dispatcher == null)) {
+				addWarn("Stackify Log Appender deferred formatting requires unsynchronized mode and is disabled");
+				this.deferFormatting = false;
+			}
+
+			// rate limit and sample events before any conversion work
+
+			Map<String, Long> loggerRates = RateLimiter.parseRates(rateLimitLoggers);
+			Map<Level, Long> levelRates = RateLimiter.parseLevelRates(rateLimitLevels);
+			boolean sampling = Boolean.parseBoolean(adaptiveSampling);
+
+			if (sampling && (dispatcher == null)) {
+				addWarn("Stackify Log Appender adaptive sampling requires unsynchronized mode and is disabled");
+				sampling = false;
+			}
+
+			if (!loggerRates.isEmpty() || !levelRates.isEmpty() || sampling) {
+				this.rateLimiter = new RateLimiter(loggerRates, levelRates, sampling ? dispatcher : null, Double.parseDouble(adaptiveSamplingThreshold), Long.parseLong(rateLimitSummaryMillis));
+			}
+
+			// fold repeated errors into summaries
+
+			if (Boolean.parseBoolean(errorAggregation)) {
+				final ErrorAggregator aggregator = new ErrorAggregator(Integer.parseInt(errorAggregationLimit), Long.parseLong(errorAggregationWindowMillis), MAX_AGGREGATED_ERRORS);
+				this.errorAggregator = aggregator;
+
+				// without it, the summary of an error storm would wait for the next event
+				this.summaryTimer = ShippingExecutor.timer();
+				this.summaryTimer.scheduleWithFixedDelay(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							dispatchAll(aggregator.expired(System.currentTimeMillis()));
+						} catch (Exception e) {
+							addError("Exception flushing Stackify error summaries", e);
+						}
+					}
+				}, Long.parseLong(errorAggregationWindowMillis));
+			}
+
+			// publish metrics
+
+			if (appenderMetrics != null) {
+				registerMetrics();
+			}
 		} catch (Exception e) {
 			addError("Exception starting the Stackify_LogBackgroundService", e);
 		}
 	}
 
 	/**
-	 * @see ch.qos.logback.core.AppenderBase#append(java.lang.Object)
+	 * Holds an event back until an async start is done
+	 * @param event The event
+	 * @return False if the start is done and the event should be processed now
+	 */
+	private boolean buffer(final ILoggingEvent event) {
+		synchronized (startLock) {
+			boolean interrupted = false;
+			long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(startBufferTimeoutMillis);
+
+			try {
+				// when the buffer is full, wait a while for the start, but do not hang the application if it stalls
+				while (starting && (startBufferCapacity <= startBuffer.size())) {
+					long remaining = deadline - System.nanoTime();
+
+					if (startStalled || (remaining <= 0)) {
+						startStalled = true;
+						++startDropped;
+						return true;
+					}
+
+					try {
+						startLock.wait(Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+			} finally {
+				if (interrupted) {
+					Thread.currentThread().interrupt();
+				}
+			}
+
+			if (!starting) {
+				return false;
+			}
+
+			startBuffer.addLast((event instanceof CapturedLoggingEvent) ? event : CapturedLoggingEvent.capture(event, true, false));
+			return true;
+		}
+	}
+
+	/**
+	 * Processes the events logged during an async start and lets events through
+	 */
+	private void drainStartBuffer() {
+		synchronized (startLock) {
+			for (ILoggingEvent event = startBuffer.pollFirst(); event != null; event = startBuffer.pollFirst()) {
+				process(event);
+			}
+
+			if (0 < startDropped) {
+				addWarn("Stackify Log Appender dropped " + startDropped + " events logged while it was starting because the start buffer was full");
+			}
+
+			this.starting = false;
+			startLock.notifyAll();
+		}
+	}
+
+	/**
+	 * Builds a pipeline reporting to this appender
+	 * @param clientName Logger (client) name
+	 * @param eventAdapter Event adapter
+	 * @param masker Masker
+	 * @param pipelineConfig Pipeline settings
+	 * @return The pipeline, not activated yet
+	 */
+	private LogPipeline newPipeline(final String clientName, final ILoggingEventAdapter eventAdapter, final Masker masker, final PipelineConfig pipelineConfig) {
+		LogPipeline pipeline = new LogPipeline(
+				clientName,
+				eventAdapter,
+				masker,
+				Boolean.parseBoolean(skipJson),
+				pipelineConfig,
+				this);
+
+		if (appenderMetrics != null) {
+			pipeline.setMetrics(appenderMetrics);
+			appenderMetrics.setPipeline(pipeline);
+		}
+
+		return pipeline;
+	}
+
+	/**
+	 * @param apiConfig API configuration
+	 * @param executorMode Execution model of the send path
+	 * @return Everything a shared pipeline is built from: appenders with equal keys share one
+	 */
+	private List<Object> sharedPipelineKey(final ApiConfiguration apiConfig, final ShippingExecutor.Mode executorMode) {
+		return Arrays.<Object>asList(
+				apiConfig.getApiUrl(),
+				apiConfig.getApiKey(),
+				apiConfig.getEnvDetail().getConfiguredAppName(),
+				apiConfig.getEnvDetail().getConfiguredEnvironmentName(),
+				apiConfig.getTransport(),
+				apiConfig.getAllowComDotStackify(),
+				skipJson, maskEnabled, maskCreditCard, maskSSN, maskIP, maskCustom,
+				queueSize, queueMaxBytes, maxMessageLength, errorQueueSize, lowPriorityMinShare, backpressure, backpressureTimeoutMillis, backpressureLevel,
+				batchSize, flushIntervalMillis, adaptiveFlush, minBatchSize, minFlushIntervalMillis, targetSendMillis,
+				spilloverDirectory, spilloverThreshold, spilloverSegmentBytes, spilloverMaxBytes,
+				compressionMinBytes, compressionLevel, persistentAgentSocket,
+				executorMode, (executorMode == ShippingExecutor.Mode.SHARED) ? sharedExecutorService() : null);
+	}
+
+	/**
+	 * Checks the executor setting against the JVM and the host application
+	 * @return The execution model to use
+	 */
+	private ShippingExecutor.Mode executorMode() {
+		ShippingExecutor.Mode mode = ShippingExecutor.Mode.fromString(executor);
+
+		if ((mode == ShippingExecutor.Mode.VIRTUAL) && !ShippingExecutor.isVirtualAvailable()) {
+			addWarn("Stackify Log Appender virtual threads require Java 21 or later, using a platform thread");
+			return ShippingExecutor.Mode.PLATFORM;
+		}
+
+		if ((mode == ShippingExecutor.Mode.SHARED) && (sharedExecutorService() == null)) {
+			addWarn("Stackify Log Appender shared executor has no executorService, using a platform thread");
+			return ShippingExecutor.Mode.PLATFORM;
+		}
+
+		return mode;
+	}
+
+	/**
+	 * @return The scheduler supplied by the host application, directly or through the logger context (or null)
+	 */
+	private ScheduledExecutorService sharedExecutorService() {
+		if (executorService != null) {
+			return executorService;
+		}
+
+		Object registered = (getContext() == null) ? null : getContext().getObject(EXECUTOR_SERVICE_KEY);
+		return (registered instanceof ScheduledExecutorService) ? (ScheduledExecutorService) registered : null;
+	}
+
+	/**
+	 * Builds the pipeline settings when a feature that needs the pipeline is configured
+	 * @param apiConfig API configuration
+	 * @param executorMode Execution model of the send path
+	 * @return Pipeline settings or null to use the generic log appender
+	 */
+	private PipelineConfig newPipelineConfig(final ApiConfiguration apiConfig, final ShippingExecutor.Mode executorMode) {
+		boolean persistentAgent = "agent_socket".equalsIgnoreCase(apiConfig.getTransport()) && Boolean.parseBoolean(persistentAgentSocket);
+
+		if (persistentAgent && !AgentSocketTransport.isAvailable()) {
+			addWarn("Stackify Log Appender persistent agent socket requires Java 16 or later and is disabled");
+			persistentAgent = false;
+		}
+
+		if ((spilloverDirectory == null) && (backpressure == null) && (errorQueueSize == null) && (queueMaxBytes == null) && (maxMessageLength == null) && !Boolean.parseBoolean(adaptiveFlush)
+				&& (compressionMinBytes == null) && (compressionLevel == null)
+				&& (executorMode == ShippingExecutor.Mode.PLATFORM) && !persistentAgent && !Boolean.parseBoolean(sharedPipeline)) {
+			return null;
+		}
+
+		if (!"direct".equalsIgnoreCase(apiConfig.getTransport()) && !persistentAgent) {
+			addWarn("Stackify Log Appender spillover, backpressure, priority lanes, queue byte limits, message truncation, adaptive flushing, compression, executor and shared pipelines require the direct transport or the persistent agent socket and are disabled");
+			return null;
+		}
+
+		PipelineConfig config = new PipelineConfig();
+
+		if (persistentAgent) {
+			config.setAgentSocketPath(apiConfig.getAgentSocketPath());
+		}
+
+		config.setQueueCapacity(Integer.parseInt(queueSize));
+
+		if (queueMaxBytes != null) {
+			config.setQueueMaxBytes(Long.parseLong(queueMaxBytes));
+		}
+
+		if (maxMessageLength != null) {
+			config.setMaxMessageLength(Integer.parseInt(maxMessageLength));
+		}
+
+		if (errorQueueSize != null) {
+			config.setErrorQueueCapacity(Integer.parseInt(errorQueueSize));
+			config.setMinLowPrioritySharePercent(Integer.parseInt(lowPriorityMinShare));
+		}
+
+		config.setMaxBatch(Integer.parseInt(batchSize));
+		config.setFlushIntervalMillis(Long.parseLong(flushIntervalMillis));
+		config.setAdaptiveFlush(Boolean.parseBoolean(adaptiveFlush));
+		config.setMinBatch(Integer.parseInt(minBatchSize));
+		config.setMinFlushIntervalMillis(Long.parseLong(minFlushIntervalMillis));
+		config.setTargetSendMillis(Long.parseLong(targetSendMillis));
+
+		if (executorMode == ShippingExecutor.Mode.VIRTUAL) {
+			config.setExecutor(ShippingExecutor.virtual("Stackify_LogPipeline"));
+		} else if (executorMode == ShippingExecutor.Mode.SHARED) {
+			config.setExecutor(ShippingExecutor.shared(sharedExecutorService()));
+		}
+
+		if (backpressure != null) {
+			config.setBackpressure(new BackpressurePolicy(BackpressurePolicy.Mode.fromString(backpressure), Long.parseLong(backpressureTimeoutMillis), Level.toLevel(backpressureLevel, Level.WARN)));
+		}
+
+		if (spilloverDirectory != null) {
+			config.setSpilloverDirectory(new File(spilloverDirectory));
+		}
+
+		config.setSpilloverThreshold(Integer.parseInt(spilloverThreshold));
+		config.setSpilloverSegmentBytes(Integer.parseInt(spilloverSegmentBytes));
+		config.setSpilloverMaxBytes(Long.parseLong(spilloverMaxBytes));
+
+		if (compressionMinBytes != null) {
+			config.setCompressionMinBytes(Integer.parseInt(compressionMinBytes));
+		}
+
+		if (compressionLevel != null) {
+			config.setCompressionLevel(Integer.parseInt(compressionLevel));
+		}
+		return config;
+	}
+
+	/**
+	 * @see ch.qos.logback.core.UnsynchronizedAppenderBase#append(java.lang.Object)
 	 */
 	@Override
-	protected void append(final ILoggingEvent event) {
+	protected void append(final ILoggingEvent loggingEvent) {
+		if (starting && buffer(loggingEvent)) {
+			return;
+		}
+
+		process(loggingEvent);
+	}
+
+	/**
+	 * Rate limits, aggregates and dispatches an event
+	 * @param loggingEvent The event
+	 */
+	private void process(final ILoggingEvent loggingEvent) {
+		AppenderMetrics m = appenderMetrics;
+		long start = (m == null) ? 0 : System.nanoTime();
+
 		try {
-			this.logAppender.append(event);
+			if (rateLimiter != null) {
+				dispatchAll(rateLimiter.expired(loggingEvent.getTimeStamp()));
+
+				if (!rateLimiter.admit(loggingEvent)) {
+					if (m != null) {
+						m.recordRateLimited();
+					}
+
+					return;
+				}
+			}
+
+			ILoggingEvent event = loggingEvent;
+
+			if (!callerDataPolicy.capture(event)) {
+				event = CapturedLoggingEvent.capture(event, false, deferFormatting);
+			}
+
+			if (errorAggregator != null) {
+				dispatchAll(errorAggregator.expired(event.getTimeStamp()));
+
+				if (!errorAggregator.admit(event)) {
+					if (m != null) {
+						m.recordAggregated();
+					}
+
+					return;
+				}
+			}
+
+			dispatch(event);
 		} catch (Exception e) {
 			addError("Exception appending event to Stackify Log Appender", e);
+		} finally {
+			if (m != null) {
+				m.recordAppend(System.nanoTime() - start);
+			}
+		}
+	}
+
+	/**
+	 * Passes the event to the generic log appender, directly or through the dispatcher
+	 * @param event The event
+	 */
+	private void dispatch(final ILoggingEvent event) {
+		if (dispatcher != null) {
+			dispatcher.offer((event instanceof CapturedLoggingEvent) ? event : CapturedLoggingEvent.capture(event, true, deferFormatting));
+		} else {
+			synchronized (appendLock) {
+				this.logAppender.append(event);
+			}
+		}
+	}
+
+	/**
+	 * Passes the events to the generic log appender
+	 * @param events The events
+	 */
+	private void dispatchAll(final List<ILoggingEvent> events) {
+		for (ILoggingEvent event : events) {
+			dispatch(event);
 		}
 	}
 
 	/**
-	 * @see ch.qos.logback.core.AppenderBase#stop()
+	 * Registers the metrics MBean under the appender name
+	 */
+	private void registerMetrics() {
+		try {
+			ObjectName name = new ObjectName("com.stackify.log.logback:type=StackifyLogAppender,name=" + ObjectName.quote(String.valueOf(getName())));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(appenderMetrics, name);
+			this.metricsName = name;
+		} catch (Exception e) {
+			addWarn("Stackify Log Appender cannot register metrics MBean", e);
+		}
+	}
+
+	/**
+	 * Reports the metrics to the logback status and unregisters the MBean
+	 */
+	private void unregisterMetrics() {
+		addInfo("Stackify Log Appender metrics: " + appenderMetrics);
+
+		if (metricsName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(metricsName);
+			} catch (Exception e) {
+				addWarn("Stackify Log Appender cannot unregister metrics MBean", e);
+			}
+
+			this.metricsName = null;
+		}
+	}
+
+	/**
+	 * @see ch.qos.logback.core.UnsynchronizedAppenderBase#stop()
 	 */
 	@Override
 	public void stop() {
+		if (startThread != null) {
+			try {
+				startThread.join(START_TIMEOUT_MILLIS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+
+			if (startThread.isAlive()) {
+				addWarn("Stackify Log Appender is still starting and cannot be stopped cleanly");
+			}
+
+			this.startThread = null;
+		}
+
+		if (summaryTimer != null) {
+			try {
+				summaryTimer.shutdown(0);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+
+			this.summaryTimer = null;
+		}
+
+		if (errorAggregator != null) {
+			try {
+				dispatchAll(errorAggregator.flush());
+			} catch (Exception e) {
+				addError("Exception flushing Stackify error summaries", e);
+			}
+		}
+
+		if (rateLimiter != null) {
+			try {
+				dispatchAll(rateLimiter.flush());
+			} catch (Exception e) {
+				addError("Exception flushing Stackify rate limit summaries", e);
+			}
+		}
+
+		if (dispatcher != null) {
+			dispatcher.stop(DISPATCHER_STOP_TIMEOUT_MILLIS);
+
+			if (0 < dispatcher.getDroppedCount()) {
+				addWarn("Stackify Log Appender dropped " + dispatcher.getDroppedCount() + " events because the ring buffer was full");
+			}
+		}
+
 		try {
 			this.logAppender.close();
 		} catch (Exception e) {
 			addError("Exception closing Stackify Log Appender", e);
 		}
 
+		if (eventAdapter != null) {
+			eventAdapter.release();
+		}
+
+		if (appenderMetrics != null) {
+			unregisterMetrics();
+		}
+
 		super.stop();
 	}
 }
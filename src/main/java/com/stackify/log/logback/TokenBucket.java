@@ -0,0 +1,90 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket.
+ *
+ * <p>
+ * Implemented as a generic cell rate algorithm: instead of a token count, the bucket keeps the theoretical
+ * arrival time of the next event and a single compare-and-set admits or rejects an event.
+ */
+class TokenBucket {
+
+	/**
+	 * Time one token takes to refill
+	 */
+	private final long intervalNanos;
+
+	/**
+	 * How far the theoretical arrival time may run ahead of now (the burst)
+	 */
+	private final long toleranceNanos;
+
+	/**
+	 * Theoretical arrival time of the next event
+	 */
+	private final AtomicLong nextNanos;
+
+	/**
+	 * @param ratePerSecond Sustained events per second
+	 * @param burst Events admitted at once when the bucket is full
+	 */
+	TokenBucket(final long ratePerSecond, final long burst) {
+		if ((ratePerSecond < 1) || (burst < 1)) {
+			throw new IllegalArgumentException("Invalid token bucket rate " + ratePerSecond + " or burst " + burst);
+		}
+
+		this.intervalNanos = Math.max(1, TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+		this.toleranceNanos = (burst - 1) * intervalNanos;
+		this.nextNanos = new AtomicLong(System.nanoTime());
+	}
+
+	/**
+	 * @return True if a token was taken, false if the bucket is empty
+	 */
+	boolean tryAcquire() {
+		return tryAcquire(System.nanoTime());
+	}
+
+	/**
+	 * @param nowNanos Current nano time
+	 * @return True if a token was taken, false if the bucket is empty
+	 */
+	boolean tryAcquire(final long nowNanos) {
+		while (true) {
+			long next = nextNanos.get();
+
+			if (toleranceNanos < next - nowNanos) {
+				return false;
+			}
+
+			if (nextNanos.compareAndSet(next, Math.max(next, nowNanos) + intervalNanos)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Gives back a token taken by an event that was rejected afterwards
+	 */
+	void release() {
+		nextNanos.addAndGet(-intervalNanos);
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * AdaptiveFlush JUnit Test
+ */
+public class AdaptiveFlushTest {
+
+	private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+
+	private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(600);
+
+	/**
+	 * testStartsCautiously
+	 */
+	@Test
+	public void testStartsCautiously() {
+		AdaptiveFlush flush = new AdaptiveFlush(10, 100, 20, 1000, 500);
+
+		Assert.assertEquals(10, flush.getBatchSize());
+		Assert.assertEquals(1000, flush.getLingerMillis());
+		Assert.assertEquals(20, flush.getMinLingerMillis());
+	}
+
+	/**
+	 * testAdditiveIncrease
+	 */
+	@Test
+	public void testAdditiveIncrease() {
+		AdaptiveFlush flush = new AdaptiveFlush(10, 100, 20, 1000, 500);
+
+		flush.sent(FAST, 1000);
+		Assert.assertEquals(19, flush.getBatchSize());
+		Assert.assertEquals(902, flush.getLingerMillis());
+
+		// no backlog: the linger time keeps shrinking, the batch size stays
+		flush.sent(FAST, 0);
+		Assert.assertEquals(19, flush.getBatchSize());
+		Assert.assertEquals(804, flush.getLingerMillis());
+
+		for (int i = 0; i < 20; ++i) {
+			flush.sent(FAST, 1000);
+		}
+
+		Assert.assertEquals(100, flush.getBatchSize());
+		Assert.assertEquals(20, flush.getLingerMillis());
+	}
+
+	/**
+	 * testMultiplicativeDecrease
+	 */
+	@Test
+	public void testMultiplicativeDecrease() {
+		AdaptiveFlush flush = new AdaptiveFlush(10, 100, 20, 1000, 500);
+
+		for (int i = 0; i < 20; ++i) {
+			flush.sent(FAST, 1000);
+		}
+
+		flush.sent(SLOW, 1000);
+		Assert.assertEquals(50, flush.getBatchSize());
+		Assert.assertEquals(40, flush.getLingerMillis());
+
+		flush.failed();
+		Assert.assertEquals(25, flush.getBatchSize());
+		Assert.assertEquals(80, flush.getLingerMillis());
+
+		for (int i = 0; i < 10; ++i) {
+			flush.failed();
+		}
+
+		Assert.assertEquals(10, flush.getBatchSize());
+		Assert.assertEquals(1000, flush.getLingerMillis());
+	}
+
+	/**
+	 * testFixed
+	 */
+	@Test
+	public void testFixed() {
+		AdaptiveFlush flush = AdaptiveFlush.fixed(100, 1000);
+
+		flush.sent(FAST, 1000);
+		flush.sent(SLOW, 1000);
+		flush.failed();
+
+		Assert.assertEquals(100, flush.getBatchSize());
+		Assert.assertEquals(1000, flush.getLingerMillis());
+		Assert.assertEquals(1000, flush.getMinLingerMillis());
+	}
+
+	/**
+	 * testInvalid
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalid() {
+		new AdaptiveFlush(100, 10, 20, 1000, 500);
+	}
+}
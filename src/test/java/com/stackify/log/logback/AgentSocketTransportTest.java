@@ -0,0 +1,173 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.core.spi.ContextAwareBase;
+
+import com.stackify.api.EnvironmentDetail;
+import com.stackify.api.LogMsg;
+import com.stackify.api.LogMsgGroup;
+import com.stackify.api.common.ApiConfiguration;
+import com.stackify.api.common.http.HttpException;
+import com.stackify.api.common.mask.Masker;
+import com.stackify.api.common.proto.LogMsgGroupConverter;
+
+/**
+ * AgentSocketTransport JUnit Test
+ */
+public class AgentSocketTransportTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private StubAgent agent;
+
+	@Before
+	public void setUp() throws Exception {
+		Assume.assumeTrue(AgentSocketTransport.isAvailable());
+
+		agent = new StubAgent(new File(folder.getRoot(), "agent.sock"));
+	}
+
+	@After
+	public void tearDown() {
+		if (agent != null) {
+			agent.stop();
+		}
+	}
+
+	/**
+	 * testPersistentConnection
+	 */
+	@Test
+	public void testPersistentConnection() throws Exception {
+		AgentSocketTransport transport = new AgentSocketTransport(agent.getPath());
+
+		for (int i = 0; i < 3; ++i) {
+			transport.send(batch("msg-" + i), false);
+		}
+
+		transport.close();
+
+		Assert.assertEquals(Arrays.asList("msg-0", "msg-1", "msg-2"), agent.getReceived());
+		Assert.assertEquals(1, agent.getConnectionCount());
+	}
+
+	/**
+	 * testReconnect
+	 */
+	@Test
+	public void testReconnect() throws Exception {
+		AgentSocketTransport transport = new AgentSocketTransport(agent.getPath());
+
+		transport.send(batch("before"), false);
+		agent.dropConnections();
+		Thread.sleep(50);
+		transport.send(batch("after"), false);
+
+		transport.close();
+
+		Assert.assertEquals(Arrays.asList("before", "after"), agent.getReceived());
+		Assert.assertEquals(2, agent.getConnectionCount());
+		Assert.assertEquals(1, transport.getSentOnConnection());
+	}
+
+	/**
+	 * testRejected
+	 */
+	@Test
+	public void testRejected() throws Exception {
+		AgentSocketTransport transport = new AgentSocketTransport(agent.getPath());
+		agent.setStatus(500);
+
+		try {
+			transport.send(batch("rejected"), false);
+			Assert.fail();
+		} catch (HttpException e) {
+			Assert.assertEquals(500, e.getStatusCode());
+		}
+
+		agent.setStatus(200);
+		transport.send(batch("accepted"), false);
+		transport.close();
+
+		Assert.assertEquals(1, agent.getConnectionCount());
+	}
+
+	/**
+	 * testAgentDown
+	 */
+	@Test
+	public void testAgentDown() throws Exception {
+		AgentSocketTransport transport = new AgentSocketTransport(new File(folder.getRoot(), "missing.sock").getPath());
+
+		try {
+			transport.send(batch("lost"), false);
+			Assert.fail();
+		} catch (IOException e) {
+			// expected
+		}
+
+		transport.close();
+	}
+
+	/**
+	 * testPipeline
+	 */
+	@Test
+	public void testPipeline() throws Exception {
+		EnvironmentDetail envDetail = EnvironmentDetail.newBuilder().deviceName("host").appName("app").configuredAppName("app").configuredEnvironmentName("test").build();
+		ApiConfiguration apiConfig = ApiConfiguration.newBuilder().apiUrl("http://127.0.0.1:1").apiKey("key").envDetail(envDetail).build();
+
+		PipelineConfig config = new PipelineConfig();
+		config.setAgentSocketPath(agent.getPath());
+		config.setMaxBatch(2);
+		config.setFlushIntervalMillis(20);
+
+		ContextAwareBase status = new ContextAwareBase();
+		status.setContext(new LoggerContext());
+
+		LogPipeline pipeline = new LogPipeline("test", new ILoggingEventAdapter(envDetail), new Masker(), false, config, status);
+		pipeline.activate(apiConfig);
+
+		for (int i = 0; i < 5; ++i) {
+			pipeline.enqueue(new LogMsg("msg-" + i, null, null, "main", System.currentTimeMillis(), "INFO", null, null, null, null, null));
+		}
+
+		pipeline.close();
+
+		Assert.assertEquals(Arrays.asList("msg-0", "msg-1", "msg-2", "msg-3", "msg-4"), agent.getReceived());
+		Assert.assertEquals(1, agent.getConnectionCount());
+	}
+
+	private static BatchBuffer batch(final String message) {
+		LogMsg msg = new LogMsg(message, null, null, "main", System.currentTimeMillis(), "INFO", null, null, null, null, null);
+		return BatchBuffer.wrap(LogMsgGroupConverter.convert(LogMsgGroup.newBuilder().env("test").serverName("host").msgs(Arrays.asList(msg)).build()).toByteArray());
+	}
+}
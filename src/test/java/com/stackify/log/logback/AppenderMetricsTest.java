@@ -0,0 +1,180 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * AppenderMetrics JUnit Test
+ */
+public class AppenderMetricsTest {
+
+	/**
+	 * testCounters
+	 */
+	@Test
+	public void testCounters() {
+		AppenderMetrics metrics = new AppenderMetrics();
+
+		metrics.recordAppend(100);
+		metrics.recordAppend(200);
+		metrics.recordRateLimited();
+		metrics.recordAggregated();
+		metrics.recordAdapter(50);
+		metrics.recordSerialize(10, 1000);
+		metrics.recordSend(512, 5000);
+		metrics.recordSentMessages(10);
+		metrics.recordSendFailure(7000);
+
+		Assert.assertEquals(2, metrics.getEventCount());
+		Assert.assertEquals(1, metrics.getRateLimitedCount());
+		Assert.assertEquals(1, metrics.getAggregatedCount());
+		Assert.assertEquals(1, metrics.getAdapterLatency().getCount());
+		Assert.assertEquals(10, metrics.getBatchSize().getMax());
+		Assert.assertEquals(1, metrics.getSentBatchCount());
+		Assert.assertEquals(10, metrics.getSentMessageCount());
+		Assert.assertEquals(512, metrics.getSentBytes());
+		Assert.assertEquals(1, metrics.getSendFailureCount());
+		Assert.assertEquals(2, metrics.getSendLatency().getCount());
+	}
+
+	/**
+	 * testCompression
+	 */
+	@Test
+	public void testCompression() {
+		AppenderMetrics metrics = new AppenderMetrics();
+		Assert.assertEquals(0, metrics.getCompressionRatio(), 0);
+
+		metrics.recordEncode(1000, 100, true, 2000);
+		metrics.recordEncode(3000, 500, true, 4000);
+		metrics.recordEncode(200, 200, false, 10);
+
+		Assert.assertEquals(2, metrics.getCompressedBatchCount());
+		Assert.assertEquals(1, metrics.getUncompressedBatchCount());
+		Assert.assertEquals(0.15, metrics.getCompressionRatio(), 0.0001);
+		Assert.assertEquals(3, metrics.getCompressionLatency().getCount());
+	}
+
+	/**
+	 * testQueueDepthAndDrops
+	 */
+	@Test
+	public void testQueueDepthAndDrops() {
+		AppenderMetrics metrics = new AppenderMetrics();
+
+		Assert.assertEquals(0, metrics.getQueueDepth());
+		Assert.assertEquals(0, metrics.getDroppedCount());
+		Assert.assertEquals(0, metrics.getQueueBytes());
+		Assert.assertEquals(0, metrics.getTruncatedCount());
+
+		LogEventDispatcher dispatcher = Mockito.mock(LogEventDispatcher.class);
+		Mockito.when(dispatcher.size()).thenReturn(3);
+		Mockito.when(dispatcher.getDroppedCount()).thenReturn(4L);
+
+		LogPipeline pipeline = Mockito.mock(LogPipeline.class);
+		Mockito.when(pipeline.getQueueSize()).thenReturn(5);
+		Mockito.when(pipeline.getDroppedCount()).thenReturn(6L);
+		Mockito.when(pipeline.getQueueBytes()).thenReturn(7L);
+		Mockito.when(pipeline.getTruncatedCount()).thenReturn(8L);
+
+		metrics.setDispatcher(dispatcher);
+		metrics.setPipeline(pipeline);
+
+		Assert.assertEquals(8, metrics.getQueueDepth());
+		Assert.assertEquals(10, metrics.getDroppedCount());
+		Assert.assertEquals(7, metrics.getQueueBytes());
+		Assert.assertEquals(8, metrics.getTruncatedCount());
+	}
+
+	/**
+	 * testMBean
+	 */
+	@Test
+	public void testMBean() throws Exception {
+		AppenderMetrics metrics = new AppenderMetrics();
+		metrics.recordAppend(1000);
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName("com.stackify.log.logback:type=StackifyLogAppender,name=" + ObjectName.quote("test"));
+
+		server.registerMBean(metrics, name);
+
+		try {
+			Assert.assertEquals(1L, server.getAttribute(name, "EventCount"));
+
+			CompositeData latency = (CompositeData) server.getAttribute(name, "AppendLatency");
+			Assert.assertEquals(1L, latency.get("count"));
+			Assert.assertEquals(1000L, latency.get("max"));
+		} finally {
+			server.unregisterMBean(name);
+		}
+	}
+
+	/**
+	 * testInstrumentationAllocationFree (the time per event is measured by MetricsOverheadBenchmark)
+	 */
+	@Test
+	public void testInstrumentationAllocationFree() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+		Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+
+		com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+
+		Assume.assumeTrue(allocations.isThreadAllocatedMemorySupported());
+		allocations.setThreadAllocatedMemoryEnabled(true);
+
+		AppenderMetrics metrics = new AppenderMetrics();
+		int iterations = 200000;
+
+		// warm up
+		instrument(metrics, iterations);
+
+		long threadId = Thread.currentThread().getId();
+		long before = allocations.getThreadAllocatedBytes(threadId);
+
+		instrument(metrics, iterations);
+
+		long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+
+		Assert.assertTrue(allocated + " bytes allocated", allocated < 1024);
+		Assert.assertEquals(2L * iterations, metrics.getAppendLatency().getCount());
+	}
+
+	/**
+	 * Times an empty append and adapter section the way the appender does
+	 * @param metrics The metrics
+	 * @param iterations Number of events
+	 */
+	private static void instrument(final AppenderMetrics metrics, final int iterations) {
+		for (int i = 0; i < iterations; ++i) {
+			long start = System.nanoTime();
+			long adapterStart = System.nanoTime();
+			metrics.recordAdapter(System.nanoTime() - adapterStart);
+			metrics.recordAppend(System.nanoTime() - start);
+		}
+	}
+}
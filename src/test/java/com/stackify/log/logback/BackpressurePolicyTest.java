@@ -0,0 +1,176 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ch.qos.logback.classic.Level;
+
+import com.stackify.api.LogMsg;
+
+/**
+ * BackpressurePolicy JUnit Test
+ */
+public class BackpressurePolicyTest {
+
+	/**
+	 * testDropNewest
+	 */
+	@Test
+	public void testDropNewest() {
+		BackpressurePolicy policy = new BackpressurePolicy(BackpressurePolicy.Mode.DROP_NEWEST, 0, Level.WARN);
+		BlockingQueue<LogMsg> queue = new ArrayBlockingQueue<LogMsg>(2);
+
+		Assert.assertTrue(policy.offer(queue, msg("1", "INFO")));
+		Assert.assertTrue(policy.offer(queue, msg("2", "INFO")));
+		Assert.assertFalse(policy.offer(queue, msg("3", "ERROR")));
+
+		Assert.assertEquals("1", queue.peek().getMsg());
+		Assert.assertEquals(1, policy.getDroppedNewestCount());
+		Assert.assertEquals(1, policy.getDroppedCount());
+		Assert.assertEquals(0, policy.getBlockedCount());
+	}
+
+	/**
+	 * testDropOldest
+	 */
+	@Test
+	public void testDropOldest() {
+		BackpressurePolicy policy = new BackpressurePolicy(BackpressurePolicy.Mode.DROP_OLDEST, 0, Level.WARN);
+		BlockingQueue<LogMsg> queue = new ArrayBlockingQueue<LogMsg>(2);
+
+		for (int i = 1; i <= 5; ++i) {
+			Assert.assertTrue(policy.offer(queue, msg(String.valueOf(i), "INFO")));
+		}
+
+		Assert.assertEquals("4", queue.poll().getMsg());
+		Assert.assertEquals("5", queue.poll().getMsg());
+		Assert.assertEquals(3, policy.getDroppedOldestCount());
+		Assert.assertEquals(3, policy.getDroppedCount());
+	}
+
+	/**
+	 * testDropOldestSharedBudget
+	 */
+	@Test
+	public void testDropOldestSharedBudget() {
+		BackpressurePolicy policy = new BackpressurePolicy(BackpressurePolicy.Mode.DROP_OLDEST, 0, Level.WARN);
+		MemoryBudget budget = new MemoryBudget(MemoryBudget.estimate(msg("1", "INFO")));
+		BudgetedQueue other = new BudgetedQueue(2, budget);
+		BudgetedQueue queue = new BudgetedQueue(2, budget);
+
+		Assert.assertTrue(policy.offer(other, msg("1", "ERROR")));
+
+		// nothing to evict here while the other lane holds the budget
+		Assert.assertFalse(policy.offer(queue, msg("2", "INFO")));
+
+		Assert.assertEquals(1, other.size());
+		Assert.assertEquals(0, queue.size());
+		Assert.assertEquals(1, policy.getDroppedNewestCount());
+		Assert.assertEquals(0, policy.getDroppedOldestCount());
+	}
+
+	/**
+	 * testBlockTimeout
+	 */
+	@Test
+	public void testBlockTimeout() {
+		BackpressurePolicy policy = new BackpressurePolicy(BackpressurePolicy.Mode.BLOCK, 20, Level.WARN);
+		BlockingQueue<LogMsg> queue = new ArrayBlockingQueue<LogMsg>(1);
+
+		Assert.assertTrue(policy.offer(queue, msg("1", "INFO")));
+		Assert.assertFalse(policy.offer(queue, msg("2", "INFO")));
+
+		Assert.assertEquals(1, policy.getBlockedCount());
+		Assert.assertEquals(1, policy.getTimedOutCount());
+		Assert.assertEquals(1, policy.getDroppedCount());
+		Assert.assertTrue(10 <= policy.getBlockedMillis());
+	}
+
+	/**
+	 * testBlockUntilRoom
+	 */
+	@Test
+	public void testBlockUntilRoom() throws Exception {
+		BackpressurePolicy policy = new BackpressurePolicy(BackpressurePolicy.Mode.BLOCK, 10000, Level.WARN);
+		final BlockingQueue<LogMsg> queue = new ArrayBlockingQueue<LogMsg>(1);
+
+		Assert.assertTrue(policy.offer(queue, msg("1", "INFO")));
+
+		Thread consumer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(20);
+					queue.take();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		consumer.start();
+
+		Assert.assertTrue(policy.offer(queue, msg("2", "INFO")));
+		consumer.join();
+
+		Assert.assertEquals("2", queue.peek().getMsg());
+		Assert.assertEquals(1, policy.getBlockedCount());
+		Assert.assertEquals(0, policy.getDroppedCount());
+	}
+
+	/**
+	 * testDropBelowLevel
+	 */
+	@Test
+	public void testDropBelowLevel() {
+		BackpressurePolicy policy = new BackpressurePolicy(BackpressurePolicy.Mode.DROP_BELOW_LEVEL, 10, Level.WARN);
+		BlockingQueue<LogMsg> queue = new ArrayBlockingQueue<LogMsg>(1);
+
+		Assert.assertTrue(policy.offer(queue, msg("1", "DEBUG")));
+		Assert.assertFalse(policy.offer(queue, msg("2", "INFO")));
+		Assert.assertFalse(policy.offer(queue, msg("3", "ERROR")));
+
+		Assert.assertEquals(1, policy.getDroppedBelowLevelCount());
+		Assert.assertEquals(1, policy.getBlockedCount());
+		Assert.assertEquals(1, policy.getTimedOutCount());
+		Assert.assertEquals(2, policy.getDroppedCount());
+	}
+
+	/**
+	 * testModeFromString
+	 */
+	@Test
+	public void testModeFromString() {
+		Assert.assertEquals(BackpressurePolicy.Mode.BLOCK, BackpressurePolicy.Mode.fromString(" block "));
+		Assert.assertEquals(BackpressurePolicy.Mode.DROP_BELOW_LEVEL, BackpressurePolicy.Mode.fromString("Drop_Below_Level"));
+	}
+
+	/**
+	 * testNegativeTimeout
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeTimeout() {
+		new BackpressurePolicy(BackpressurePolicy.Mode.BLOCK, -1, Level.WARN);
+	}
+
+	private static LogMsg msg(final String msg, final String level) {
+		return new LogMsg(msg, null, null, "main", System.currentTimeMillis(), level, null, null, null, null, null);
+	}
+}
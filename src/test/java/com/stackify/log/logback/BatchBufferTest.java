@@ -0,0 +1,121 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * BatchBuffer JUnit Test
+ */
+public class BatchBufferTest {
+
+	/**
+	 * testWriteAcrossBuffers
+	 */
+	@Test
+	public void testWriteAcrossBuffers() throws IOException {
+		BufferPool pool = new BufferPool(16, 8);
+		BatchBuffer batch = pool.newBuffer();
+
+		byte[] bytes = new byte[100];
+		new Random(7).nextBytes(bytes);
+
+		batch.write(bytes[0]);
+		batch.write(bytes, 1, 40);
+		batch.write(bytes, 41, 59);
+
+		Assert.assertEquals(100, batch.size());
+		Assert.assertArrayEquals(bytes, batch.toByteArray());
+
+		ByteBuffer[] buffers = batch.buffers();
+		Assert.assertEquals(7, buffers.length);
+
+		ByteBuffer joined = ByteBuffer.allocate(100);
+
+		for (ByteBuffer buffer : buffers) {
+			joined.put(buffer);
+		}
+
+		Assert.assertArrayEquals(bytes, joined.array());
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		batch.writeTo(out);
+		Assert.assertArrayEquals(bytes, out.toByteArray());
+	}
+
+	/**
+	 * testReleaseRecyclesBuffers
+	 */
+	@Test
+	public void testReleaseRecyclesBuffers() {
+		BufferPool pool = new BufferPool(16, 8);
+		byte[] bytes = new byte[64];
+
+		for (int i = 0; i < 10; ++i) {
+			BatchBuffer batch = pool.newBuffer();
+			batch.write(bytes, 0, bytes.length);
+			batch.release();
+
+			Assert.assertEquals(0, batch.size());
+		}
+
+		Assert.assertEquals(4, pool.getAllocatedCount());
+		Assert.assertEquals(4, pool.getIdleCount());
+	}
+
+	/**
+	 * testPoolBounded
+	 */
+	@Test
+	public void testPoolBounded() {
+		BufferPool pool = new BufferPool(16, 2);
+
+		BatchBuffer batch = pool.newBuffer();
+		batch.write(new byte[100], 0, 100);
+		batch.release();
+
+		Assert.assertEquals(7, pool.getAllocatedCount());
+		Assert.assertEquals(2, pool.getIdleCount());
+	}
+
+	/**
+	 * testWrap
+	 */
+	@Test
+	public void testWrap() {
+		byte[] bytes = {1, 2, 3};
+		BatchBuffer batch = BatchBuffer.wrap(bytes);
+
+		Assert.assertEquals(3, batch.size());
+		Assert.assertArrayEquals(bytes, batch.toByteArray());
+		Assert.assertEquals(1, batch.buffers().length);
+
+		try {
+			batch.write(4);
+			Assert.fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		batch.release();
+	}
+}
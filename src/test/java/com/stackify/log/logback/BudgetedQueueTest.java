@@ -0,0 +1,140 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.stackify.api.LogMsg;
+
+/**
+ * BudgetedQueue JUnit Test
+ */
+public class BudgetedQueueTest {
+
+	/**
+	 * testBoundedByBytes
+	 */
+	@Test
+	public void testBoundedByBytes() {
+		LogMsg small = msg(100);
+		LogMsg large = msg(1000);
+
+		MemoryBudget budget = new MemoryBudget(2 * MemoryBudget.estimate(large));
+		BudgetedQueue queue = new BudgetedQueue(100, budget);
+
+		Assert.assertTrue(queue.offer(large));
+		Assert.assertTrue(queue.offer(large));
+		Assert.assertFalse(queue.offer(small));
+		Assert.assertEquals(2, queue.size());
+
+		Assert.assertSame(large, queue.poll());
+		Assert.assertTrue(queue.offer(small));
+		Assert.assertEquals(MemoryBudget.estimate(large) + MemoryBudget.estimate(small), budget.getUsedBytes());
+
+		List<LogMsg> drained = new ArrayList<LogMsg>();
+		Assert.assertEquals(2, queue.drainTo(drained));
+		Assert.assertEquals(0, budget.getUsedBytes());
+		Assert.assertNull(queue.poll());
+	}
+
+	/**
+	 * testBoundedByCount
+	 */
+	@Test
+	public void testBoundedByCount() {
+		MemoryBudget budget = new MemoryBudget(1000000);
+		BudgetedQueue queue = new BudgetedQueue(2, budget);
+
+		Assert.assertTrue(queue.offer(msg(10)));
+		Assert.assertTrue(queue.offer(msg(10)));
+		Assert.assertFalse(queue.offer(msg(10)));
+		Assert.assertEquals(2 * MemoryBudget.estimate(msg(10)), budget.getUsedBytes());
+		Assert.assertEquals(0, queue.remainingCapacity());
+	}
+
+	/**
+	 * testSharedBudget
+	 */
+	@Test
+	public void testSharedBudget() {
+		MemoryBudget budget = new MemoryBudget(2 * MemoryBudget.estimate(msg(1000)));
+		BudgetedQueue first = new BudgetedQueue(100, budget);
+		BudgetedQueue second = new BudgetedQueue(100, budget);
+
+		Assert.assertTrue(first.offer(msg(1000)));
+		Assert.assertTrue(second.offer(msg(1000)));
+		Assert.assertFalse(first.offer(msg(1000)));
+
+		second.clear();
+
+		Assert.assertTrue(first.offer(msg(1000)));
+	}
+
+	/**
+	 * testBlockingOffer
+	 */
+	@Test
+	public void testBlockingOffer() throws Exception {
+		MemoryBudget budget = new MemoryBudget(MemoryBudget.estimate(msg(1000)));
+		final BudgetedQueue queue = new BudgetedQueue(100, budget);
+
+		Assert.assertTrue(queue.offer(msg(1000)));
+		Assert.assertFalse(queue.offer(msg(1000), 20, TimeUnit.MILLISECONDS));
+
+		Thread consumer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(50);
+					queue.take();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		consumer.start();
+
+		Assert.assertTrue(queue.offer(msg(1000), 10, TimeUnit.SECONDS));
+		consumer.join();
+
+		Assert.assertEquals(1, queue.size());
+	}
+
+	/**
+	 * testReadOnlyIterator
+	 */
+	@Test(expected = UnsupportedOperationException.class)
+	public void testReadOnlyIterator() {
+		BudgetedQueue queue = new BudgetedQueue(10, new MemoryBudget(100000));
+		queue.offer(msg(10));
+		queue.remove(queue.peek());
+	}
+
+	private static LogMsg msg(final int length) {
+		StringBuilder sb = new StringBuilder(length);
+
+		for (int i = 0; i < length; ++i) {
+			sb.append('x');
+		}
+
+		return new LogMsg(sb.toString(), null, null, "main", System.currentTimeMillis(), "INFO", null, null, null, null, null);
+	}
+}
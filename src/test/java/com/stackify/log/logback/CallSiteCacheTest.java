@@ -0,0 +1,69 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * CallSiteCache JUnit Test
+ */
+public class CallSiteCacheTest {
+
+	/**
+	 * testGet
+	 */
+	@Test
+	public void testGet() {
+		CallSiteCache cache = new CallSiteCache();
+
+		CallSiteCache.CallSite site = cache.get(new StackTraceElement("com.acme.Service", "handle", "Service.java", 1234));
+
+		Assert.assertEquals("com.acme.Service.handle", site.getMethod());
+		Assert.assertEquals(Integer.valueOf(1234), site.getLine());
+	}
+
+	/**
+	 * testReused
+	 */
+	@Test
+	public void testReused() {
+		CallSiteCache cache = new CallSiteCache();
+
+		CallSiteCache.CallSite first = cache.get(new StackTraceElement("com.acme.Service", "handle", "Service.java", 1234));
+		CallSiteCache.CallSite second = cache.get(new StackTraceElement("com.acme.Service", "handle", "Service.java", 1234));
+		CallSiteCache.CallSite other = cache.get(new StackTraceElement("com.acme.Service", "handle", "Service.java", 1235));
+
+		Assert.assertSame(first, second);
+		Assert.assertNotSame(first, other);
+		Assert.assertEquals(2, cache.size());
+	}
+
+	/**
+	 * testBounded
+	 */
+	@Test
+	public void testBounded() {
+		CallSiteCache cache = new CallSiteCache(2);
+
+		for (int i = 0; i < 10; ++i) {
+			CallSiteCache.CallSite site = cache.get(new StackTraceElement("com.acme.Service", "handle", "Service.java", i));
+			Assert.assertEquals(Integer.valueOf(i), site.getLine());
+		}
+
+		Assert.assertEquals(2, cache.size());
+	}
+}
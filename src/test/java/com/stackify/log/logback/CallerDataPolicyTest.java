@@ -0,0 +1,104 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ * CallerDataPolicy JUnit Test
+ */
+public class CallerDataPolicyTest {
+
+	/**
+	 * testAlways
+	 */
+	@Test
+	public void testAlways() {
+		CallerDataPolicy policy = new CallerDataPolicy(CallerDataPolicy.Mode.ALWAYS, 1);
+		Assert.assertTrue(policy.capture(event(Level.DEBUG)));
+		Assert.assertTrue(policy.capture(event(Level.ERROR)));
+	}
+
+	/**
+	 * testErrors
+	 */
+	@Test
+	public void testErrors() {
+		CallerDataPolicy policy = new CallerDataPolicy(CallerDataPolicy.Mode.ERRORS, 1);
+		Assert.assertFalse(policy.capture(event(Level.INFO)));
+		Assert.assertFalse(policy.capture(event(Level.WARN)));
+		Assert.assertTrue(policy.capture(event(Level.ERROR)));
+	}
+
+	/**
+	 * testNever
+	 */
+	@Test
+	public void testNever() {
+		CallerDataPolicy policy = new CallerDataPolicy(CallerDataPolicy.Mode.NEVER, 1);
+		Assert.assertFalse(policy.capture(event(Level.INFO)));
+		Assert.assertFalse(policy.capture(event(Level.ERROR)));
+	}
+
+	/**
+	 * testSampled
+	 */
+	@Test
+	public void testSampled() {
+		CallerDataPolicy policy = new CallerDataPolicy(CallerDataPolicy.Mode.SAMPLED, 10);
+
+		ILoggingEvent info = event(Level.INFO);
+		int captured = 0;
+
+		for (int i = 0; i < 10000; ++i) {
+			if (policy.capture(info)) {
+				++captured;
+			}
+		}
+
+		Assert.assertTrue(String.valueOf(captured), (500 < captured) && (captured < 1500));
+		Assert.assertTrue(policy.capture(event(Level.ERROR)));
+
+		Assert.assertTrue(new CallerDataPolicy(CallerDataPolicy.Mode.SAMPLED, 1).capture(info));
+	}
+
+	/**
+	 * testFromString
+	 */
+	@Test
+	public void testFromString() {
+		Assert.assertEquals(CallerDataPolicy.Mode.ERRORS, CallerDataPolicy.Mode.fromString(" Errors "));
+	}
+
+	/**
+	 * testInvalidSampleRate
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidSampleRate() {
+		new CallerDataPolicy(CallerDataPolicy.Mode.SAMPLED, 0);
+	}
+
+	private static ILoggingEvent event(final Level level) {
+		ILoggingEvent event = Mockito.mock(ILoggingEvent.class);
+		Mockito.when(event.getLevel()).thenReturn(level);
+		return event;
+	}
+}
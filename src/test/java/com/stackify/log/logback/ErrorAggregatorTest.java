@@ -0,0 +1,180 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+
+/**
+ * ErrorAggregator JUnit Test
+ */
+public class ErrorAggregatorTest {
+
+	private final Logger logger = new LoggerContext().getLogger("test");
+
+	private LoggingEvent event(final Level level, final String message, final Throwable t, final long timestamp) {
+		LoggingEvent event = new LoggingEvent(Logger.class.getName(), logger, level, message, t, new Object[] {"arg"});
+		event.setTimeStamp(timestamp);
+		return event;
+	}
+
+	private static Throwable failure() {
+		return new IllegalStateException("failed", new RuntimeException("cause"));
+	}
+
+	private static Throwable otherFailure() {
+		return new IllegalStateException("failed");
+	}
+
+	private static Throwable[] failures(final int count) {
+		Throwable[] failures = new Throwable[count];
+
+		for (int i = 0; i < count; ++i) {
+			// same call site and stack for every instance
+			failures[i] = failure();
+		}
+
+		return failures;
+	}
+
+	/**
+	 * testNonErrorsAlwaysAdmitted
+	 */
+	@Test
+	public void testNonErrorsAlwaysAdmitted() {
+		ErrorAggregator aggregator = new ErrorAggregator(1, 60000, 100);
+
+		for (int i = 0; i < 10; ++i) {
+			Assert.assertTrue(aggregator.admit(event(Level.INFO, "info {}", null, 1000)));
+		}
+
+		Assert.assertEquals(0, aggregator.size());
+	}
+
+	/**
+	 * testRepeatedErrorsSummarized
+	 */
+	@Test
+	public void testRepeatedErrorsSummarized() {
+		ErrorAggregator aggregator = new ErrorAggregator(2, 60000, 100);
+
+		int admitted = 0;
+
+		for (int i = 0; i < 10; ++i) {
+			if (aggregator.admit(event(Level.ERROR, "call {} failed", failure(), 1000 + i))) {
+				++admitted;
+			}
+		}
+
+		Assert.assertEquals(2, admitted);
+		Assert.assertEquals(1, aggregator.size());
+
+		List<ILoggingEvent> summaries = aggregator.flush();
+		Assert.assertEquals(1, summaries.size());
+
+		AggregatedLoggingEvent summary = (AggregatedLoggingEvent) summaries.get(0);
+		Assert.assertEquals(8, summary.getCount());
+		Assert.assertEquals(1002, summary.getFirstTimeStamp());
+		Assert.assertEquals(1009, summary.getLastTimeStamp());
+		Assert.assertEquals(1009, summary.getTimeStamp());
+		Assert.assertEquals(Level.ERROR, summary.getLevel());
+		Assert.assertNotNull(summary.getThrowableProxy());
+		Assert.assertTrue(summary.getFormattedMessage().startsWith("call arg failed [repeated 8 more times between "));
+
+		Assert.assertEquals(0, aggregator.size());
+	}
+
+	/**
+	 * testDistinctFingerprints
+	 */
+	@Test
+	public void testDistinctFingerprints() {
+		ErrorAggregator aggregator = new ErrorAggregator(1, 60000, 100);
+		Throwable[] failures = failures(3);
+
+		Assert.assertTrue(aggregator.admit(event(Level.ERROR, "call {} failed", failures[0], 1000)));
+		Assert.assertTrue(aggregator.admit(event(Level.ERROR, "call {} failed", otherFailure(), 1000)));
+		Assert.assertTrue(aggregator.admit(event(Level.ERROR, "other {} failed", failures[1], 1000)));
+		Assert.assertTrue(aggregator.admit(event(Level.ERROR, "no exception", null, 1000)));
+
+		Assert.assertFalse(aggregator.admit(event(Level.ERROR, "call {} failed", failures[2], 1000)));
+		Assert.assertFalse(aggregator.admit(event(Level.ERROR, "no exception", null, 1000)));
+
+		Assert.assertEquals(4, aggregator.size());
+	}
+
+	/**
+	 * testWindowRollover
+	 */
+	@Test
+	public void testWindowRollover() {
+		ErrorAggregator aggregator = new ErrorAggregator(1, 1000, 100);
+		Throwable[] failures = failures(4);
+
+		Assert.assertTrue(aggregator.admit(event(Level.ERROR, "call {} failed", failures[0], 1000)));
+		Assert.assertFalse(aggregator.admit(event(Level.ERROR, "call {} failed", failures[1], 1500)));
+		Assert.assertTrue(aggregator.admit(event(Level.ERROR, "call {} failed", failures[2], 2000)));
+		Assert.assertFalse(aggregator.admit(event(Level.ERROR, "call {} failed", failures[3], 2500)));
+
+		List<ILoggingEvent> summaries = aggregator.flush();
+		Assert.assertEquals(1, summaries.size());
+		Assert.assertEquals(2, ((AggregatedLoggingEvent) summaries.get(0)).getCount());
+	}
+
+	/**
+	 * testExpiredCollectedOncePerWindow
+	 */
+	@Test
+	public void testExpiredCollectedOncePerWindow() {
+		long now = System.currentTimeMillis();
+
+		ErrorAggregator aggregator = new ErrorAggregator(1, 1000, 100);
+		Throwable[] failures = failures(2);
+
+		aggregator.admit(event(Level.ERROR, "call {} failed", failures[0], now));
+		aggregator.admit(event(Level.ERROR, "call {} failed", failures[1], now));
+
+		Assert.assertTrue(aggregator.expired(now).isEmpty());
+		Assert.assertEquals(1, aggregator.expired(now + 2000).size());
+		Assert.assertTrue(aggregator.expired(now + 2000).isEmpty());
+
+		// idle fingerprints are forgotten on the next sweep
+		Assert.assertTrue(aggregator.expired(now + 4000).isEmpty());
+		Assert.assertEquals(0, aggregator.size());
+	}
+
+	/**
+	 * testMaxFingerprints
+	 */
+	@Test
+	public void testMaxFingerprints() {
+		ErrorAggregator aggregator = new ErrorAggregator(1, 60000, 1);
+
+		Assert.assertTrue(aggregator.admit(event(Level.ERROR, "first", null, 1000)));
+		Assert.assertTrue(aggregator.admit(event(Level.ERROR, "second", null, 1000)));
+		Assert.assertTrue(aggregator.admit(event(Level.ERROR, "second", null, 1000)));
+
+		Assert.assertEquals(1, aggregator.size());
+	}
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.stackify.api.ErrorItem;
+import com.stackify.api.TraceFrame;
+import com.stackify.api.common.lang.Throwables;
+
+/**
+ * ErrorItemCache JUnit Test
+ */
+public class ErrorItemCacheTest {
+
+	/**
+	 * testSameAsThrowables
+	 */
+	@Test
+	public void testSameAsThrowables() {
+		ErrorItemCache cache = new ErrorItemCache();
+
+		List<Throwable> throwables = new ArrayList<Throwable>();
+		throwables.add(new RuntimeException("plain"));
+		throwables.add(new RuntimeException());
+		throwables.add(new RuntimeException(""));
+		throwables.add(new IllegalStateException("outer", new IllegalArgumentException("middle", new NullPointerException())));
+		throwables.add(nested(5, 40));
+
+		Throwable noStack = new UnsupportedOperationException("no stack");
+		noStack.setStackTrace(new StackTraceElement[0]);
+		throwables.add(noStack);
+
+		Throwable anonymous = new RuntimeException("anonymous") {
+			private static final long serialVersionUID = 1L;
+		};
+		throwables.add(anonymous);
+
+		String[] messages = {"request failed", "", null};
+
+		for (int round = 0; round < 2; ++round) {
+			for (Throwable throwable : throwables) {
+				for (String message : messages) {
+					Assert.assertEquals(Throwables.toErrorItem(message, throwable), cache.toErrorItem(message, throwable));
+				}
+			}
+		}
+
+		Assert.assertEquals(throwables.size(), cache.size());
+	}
+
+	/**
+	 * testSharedStructure
+	 */
+	@Test
+	public void testSharedStructure() {
+		ErrorItemCache cache = new ErrorItemCache();
+
+		List<Throwable> failures = new ArrayList<Throwable>();
+
+		for (int i = 0; i < 2; ++i) {
+			failures.add(new IllegalStateException("failure " + i, new IllegalArgumentException("cause " + i)));
+		}
+
+		ErrorItem first = cache.toErrorItem("first", failures.get(0));
+		ErrorItem second = cache.toErrorItem("second", failures.get(1));
+
+		Assert.assertEquals(1, cache.size());
+		Assert.assertSame(first.getStackTrace(), second.getStackTrace());
+		Assert.assertSame(first.getInnerError().getStackTrace(), second.getInnerError().getStackTrace());
+		Assert.assertEquals("failure 0 (first)", first.getMessage());
+		Assert.assertEquals("failure 1 (second)", second.getMessage());
+		Assert.assertEquals("cause 1", second.getInnerError().getMessage());
+	}
+
+	/**
+	 * testDifferentShapes
+	 */
+	@Test
+	public void testDifferentShapes() {
+		ErrorItemCache cache = new ErrorItemCache();
+
+		cache.toErrorItem("a", new IllegalStateException("a"));
+		cache.toErrorItem("b", new IllegalStateException("b"));
+		cache.toErrorItem("c", new IllegalArgumentException("c"));
+
+		Assert.assertEquals(3, cache.size());
+	}
+
+	/**
+	 * testBounded
+	 */
+	@Test
+	public void testBounded() {
+		ErrorItemCache cache = new ErrorItemCache(2);
+
+		for (int i = 0; i < 5; ++i) {
+			Throwable throwable = new IllegalStateException("failure " + i);
+			throwable.setStackTrace(new StackTraceElement[]{new StackTraceElement("com.acme.Service", "handle", "Service.java", i)});
+
+			Assert.assertEquals(Throwables.toErrorItem("msg", throwable), cache.toErrorItem("msg", throwable));
+		}
+
+		Assert.assertEquals(2, cache.size());
+	}
+
+	/**
+	 * testCompacted
+	 */
+	@Test
+	public void testCompacted() {
+		ErrorItemCache cache = new ErrorItemCache(ErrorItemCache.DEFAULT_MAX_SIZE, new StackTraceCompactor(true, null, null, 0, 3));
+
+		Throwable throwable = deeperCauses(5);
+		ErrorItem full = Throwables.toErrorItem("request failed", throwable);
+		ErrorItem compacted = cache.toErrorItem("request failed", throwable);
+
+		// outermost, next and root cause
+		Assert.assertEquals(full.getMessage(), compacted.getMessage());
+		Assert.assertEquals(full.getStackTrace(), compacted.getStackTrace());
+		Assert.assertEquals(full.getInnerError().getMessage(), compacted.getInnerError().getMessage());
+		Assert.assertEquals("failure 0", compacted.getInnerError().getInnerError().getMessage());
+		Assert.assertNull(compacted.getInnerError().getInnerError().getInnerError());
+
+		// the inner causes keep only the frames above the ones they share with the enclosing exception
+		List<TraceFrame> fullInner = full.getInnerError().getStackTrace();
+		List<TraceFrame> inner = compacted.getInnerError().getStackTrace();
+		Assert.assertEquals(fullInner.subList(0, 6), inner.subList(0, 6));
+		Assert.assertEquals("... " + (fullInner.size() - 6) + " more", inner.get(6).getMethod());
+		Assert.assertEquals("... 2 causes omitted", inner.get(inner.size() - 1).getMethod());
+
+		List<ErrorItem> items = new ArrayList<ErrorItem>();
+
+		for (int i = 0; i < 2; ++i) {
+			items.add(cache.toErrorItem("again", deeperCauses(5)));
+		}
+
+		Assert.assertSame(items.get(0).getInnerError().getStackTrace(), items.get(1).getInnerError().getStackTrace());
+	}
+
+	private static Throwable nested(final int causes, final int depth) {
+		Throwable cause = null;
+
+		for (int i = 0; i < causes; ++i) {
+			cause = throwAt(depth, "failure " + i, cause);
+		}
+
+		return cause;
+	}
+
+	private static Throwable deeperCauses(final int causes) {
+		Throwable cause = null;
+
+		for (int i = 0; i < causes; ++i) {
+			cause = throwAt(40 + 5 * (causes - i), "failure " + i, cause);
+		}
+
+		return cause;
+	}
+
+	private static Throwable throwAt(final int depth, final String message, final Throwable cause) {
+		if (0 < depth) {
+			return throwAt(depth - 1, message, cause);
+		}
+
+		return new IllegalStateException(message, cause);
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * EventRingBuffer JUnit Test
+ */
+public class EventRingBufferTest {
+
+	/**
+	 * testCapacityRoundedUp
+	 */
+	@Test
+	public void testCapacityRoundedUp() {
+		Assert.assertEquals(8, new EventRingBuffer<String>(5).capacity());
+		Assert.assertEquals(8, new EventRingBuffer<String>(8).capacity());
+		Assert.assertEquals(1, new EventRingBuffer<String>(1).capacity());
+	}
+
+	/**
+	 * testInvalidCapacity
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidCapacity() {
+		new EventRingBuffer<String>(0);
+	}
+
+	/**
+	 * testOfferPollFifo
+	 */
+	@Test
+	public void testOfferPollFifo() {
+		EventRingBuffer<String> buffer = new EventRingBuffer<String>(4);
+
+		Assert.assertNull(buffer.poll());
+		Assert.assertTrue(buffer.isEmpty());
+
+		for (int lap = 0; lap < 3; ++lap) {
+			Assert.assertTrue(buffer.offer("a"));
+			Assert.assertTrue(buffer.offer("b"));
+			Assert.assertTrue(buffer.offer("c"));
+			Assert.assertTrue(buffer.offer("d"));
+			Assert.assertFalse(buffer.offer("e"));
+			Assert.assertEquals(4, buffer.size());
+
+			Assert.assertEquals("a", buffer.poll());
+			Assert.assertEquals("b", buffer.poll());
+			Assert.assertEquals("c", buffer.poll());
+			Assert.assertEquals("d", buffer.poll());
+			Assert.assertNull(buffer.poll());
+		}
+	}
+
+	/**
+	 * testConcurrentProducers
+	 * @throws Exception
+	 */
+	@Test
+	public void testConcurrentProducers() throws Exception {
+		final int producers = 8;
+		final int perProducer = 10000;
+		final EventRingBuffer<Integer> buffer = new EventRingBuffer<Integer>(1024);
+		final CountDownLatch start = new CountDownLatch(1);
+
+		List<Thread> threads = new ArrayList<Thread>();
+
+		for (int p = 0; p < producers; ++p) {
+			final int base = p * perProducer;
+
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+
+					for (int i = 0; i < perProducer; ++i) {
+						while (!buffer.offer(base + i)) {
+							Thread.yield();
+						}
+					}
+				}
+			});
+
+			thread.start();
+			threads.add(thread);
+		}
+
+		start.countDown();
+
+		Set<Integer> seen = new HashSet<Integer>();
+		int[] lastPerProducer = new int[producers];
+		Arrays.fill(lastPerProducer, -1);
+
+		while (seen.size() < producers * perProducer) {
+			Integer value = buffer.poll();
+
+			if (value == null) {
+				Thread.yield();
+				continue;
+			}
+
+			Assert.assertTrue(seen.add(value));
+
+			int producer = value / perProducer;
+			Assert.assertTrue(lastPerProducer[producer] < value);
+			lastPerProducer[producer] = value;
+		}
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		Assert.assertTrue(buffer.isEmpty());
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Histogram JUnit Test
+ */
+public class HistogramTest {
+
+	/**
+	 * testIndex
+	 */
+	@Test
+	public void testIndex() {
+		long[] values = {0, 1, 15, 16, 17, 31, 32, 33, 1000, 123456789, Long.MAX_VALUE};
+
+		for (long value : values) {
+			int index = Histogram.index(value);
+			Assert.assertTrue(String.valueOf(value), Histogram.lowest(index) <= value);
+			Assert.assertTrue(String.valueOf(value), (index + 1 == 960) || (value < Histogram.lowest(index + 1)));
+		}
+
+		Assert.assertEquals(959, Histogram.index(Long.MAX_VALUE));
+	}
+
+	/**
+	 * testPercentiles
+	 */
+	@Test
+	public void testPercentiles() {
+		Histogram histogram = new Histogram();
+
+		for (int i = 1; i <= 10000; ++i) {
+			histogram.record(i * 1000L);
+		}
+
+		Histogram.Snapshot snapshot = histogram.snapshot();
+
+		Assert.assertEquals(10000, snapshot.getCount());
+		Assert.assertEquals(5000500, snapshot.getMean());
+		Assert.assertEquals(10000000, snapshot.getMax());
+		assertWithin(5000000, snapshot.getP50());
+		assertWithin(9000000, snapshot.getP90());
+		assertWithin(9900000, snapshot.getP99());
+		assertWithin(9990000, snapshot.getP999());
+	}
+
+	/**
+	 * testEmpty
+	 */
+	@Test
+	public void testEmpty() {
+		Histogram.Snapshot snapshot = new Histogram().snapshot();
+
+		Assert.assertEquals(0, snapshot.getCount());
+		Assert.assertEquals(0, snapshot.getMean());
+		Assert.assertEquals(0, snapshot.getP99());
+		Assert.assertEquals(0, snapshot.getMax());
+	}
+
+	/**
+	 * testNegative
+	 */
+	@Test
+	public void testNegative() {
+		Histogram histogram = new Histogram();
+		histogram.record(-5);
+
+		Assert.assertEquals(1, histogram.getCount());
+		Assert.assertEquals(0, histogram.snapshot().getMax());
+	}
+
+	private static void assertWithin(final long expected, final long actual) {
+		Assert.assertTrue(expected + " ~ " + actual, Math.abs(expected - actual) <= expected / 16);
+	}
+}
@@ -15,16 +15,22 @@
  */
 package com.stackify.log.logback;
 
+import java.lang.management.ManagementFactory;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 import org.mockito.Mockito;
 
 import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
 import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
 import ch.qos.logback.classic.spi.ThrowableProxy;
 
 import com.stackify.api.EnvironmentDetail;
@@ -39,6 +45,13 @@ import com.stackify.api.common.log.ServletLogContext;
  */
 public class ILoggingEventAdapterTest {
 
+	/**
+	 * Bytes getLogMsg may allocate per event, in steady state, for an event from a known call site whose message
+	 * is already formatted: the LogMsg itself, the boxed timestamp and the random UUID id (its SecureRandom draw
+	 * and string form, about 1.2 KB on Java 8)
+	 */
+	private static final long LOG_MSG_ALLOCATION_BUDGET = 1536;
+
 	/**
 	 * testGetThrowable
 	 */
@@ -107,6 +120,27 @@ public class ILoggingEventAdapterTest {
 		Assert.assertEquals(srcLine, logMsg.getSrcLine());		
 	}
 	
+	/**
+	 * testGetLogMsgMdcFailure
+	 */
+	@Test
+	public void testGetLogMsgMdcFailure() {
+		Map<String, String> properties = new HashMap<String, String>();
+		properties.put(null, "value");
+
+		ILoggingEvent event = Mockito.mock(ILoggingEvent.class);
+		Mockito.when(event.getFormattedMessage()).thenReturn("msg");
+		Mockito.when(event.getLevel()).thenReturn(Level.DEBUG);
+		Mockito.when(event.getMDCPropertyMap()).thenReturn(properties);
+
+		ILoggingEventAdapter adapter = new ILoggingEventAdapter(Mockito.mock(EnvironmentDetail.class));
+		LogMsg logMsg = adapter.getLogMsg(event, null);
+
+		Assert.assertEquals("msg", logMsg.getMsg());
+		Assert.assertNull(logMsg.getData());
+		Assert.assertEquals(1, adapter.getMdcFailureCount());
+	}
+	
 	/**
 	 * testGetStackifyError
 	 */
@@ -123,6 +157,63 @@ public class ILoggingEventAdapterTest {
 		Assert.assertNotNull(error);
 	}
 	
+	/**
+	 * testGetStackifyErrorServerVariables
+	 */
+	@Test
+	public void testGetStackifyErrorServerVariables() {
+		ILoggingEvent event = Mockito.mock(ILoggingEvent.class);
+		Mockito.when(event.getFormattedMessage()).thenReturn("Exception message");
+
+		ILoggingEventAdapter adapter = new ILoggingEventAdapter(Mockito.mock(EnvironmentDetail.class));
+
+		StackifyError first = adapter.getStackifyError(event, new NullPointerException());
+		StackifyError second = adapter.getStackifyError(event, new NullPointerException());
+
+		Assert.assertNotNull(first.getServerVariables());
+		Assert.assertSame(first.getServerVariables(), second.getServerVariables());
+	}
+
+	/**
+	 * testGetStackifyErrorServerVariablesSession
+	 */
+	@Test
+	public void testGetStackifyErrorServerVariablesSession() {
+		ILoggingEvent event = Mockito.mock(ILoggingEvent.class);
+		Mockito.when(event.getFormattedMessage()).thenReturn("Exception message");
+
+		ILoggingEventAdapter adapter = new ILoggingEventAdapter(Mockito.mock(EnvironmentDetail.class));
+		adapter.setServerVariablesMode(ServerVariables.Mode.SESSION);
+
+		Assert.assertNotNull(adapter.getStackifyError(event, new NullPointerException()).getServerVariables());
+		Assert.assertNull(adapter.getStackifyError(event, new NullPointerException()).getServerVariables());
+
+		String key = "stackify.test." + System.nanoTime();
+		System.setProperty(key, "value");
+
+		try {
+			Map<String, String> changed = adapter.getStackifyError(event, new NullPointerException()).getServerVariables();
+			Assert.assertNotNull(changed);
+			Assert.assertEquals("value", changed.get(key));
+		} finally {
+			System.clearProperty(key);
+		}
+	}
+
+	/**
+	 * testGetStackifyErrorServerVariablesNone
+	 */
+	@Test
+	public void testGetStackifyErrorServerVariablesNone() {
+		ILoggingEvent event = Mockito.mock(ILoggingEvent.class);
+		Mockito.when(event.getFormattedMessage()).thenReturn("Exception message");
+
+		ILoggingEventAdapter adapter = new ILoggingEventAdapter(Mockito.mock(EnvironmentDetail.class));
+		adapter.setServerVariablesMode(ServerVariables.Mode.NONE);
+
+		Assert.assertNull(adapter.getStackifyError(event, new NullPointerException()).getServerVariables());
+	}
+	
 	/**
 	 * testGetStackifyErrorServletContext
 	 */
@@ -166,6 +257,168 @@ public class ILoggingEventAdapterTest {
 		Assert.assertEquals(transactionId, logMsg.getTransId());
 	}
 	
+	/**
+	 * testCapturedContext
+	 */
+	@Test
+	public void testCapturedContext() {
+		ServletLogContext.putTransactionId("thread");
+		ServletLogContext.putUser("thread");
+
+		StackTraceElement ste = new StackTraceElement("class", "method", "file", 123);
+		WebRequestDetail webRequest = WebRequestDetail.newBuilder().build();
+
+		ILoggingEvent event = Mockito.mock(ILoggingEvent.class);
+		Mockito.when(event.getLevel()).thenReturn(Level.ERROR);
+		Mockito.when(event.getFormattedMessage()).thenReturn("msg");
+
+		CapturedLoggingEvent captured = new CapturedLoggingEvent(event, new StackTraceElement[]{ste}, "captured", "user", webRequest);
+
+		ILoggingEventAdapter adapter = new ILoggingEventAdapter(Mockito.mock(EnvironmentDetail.class));
+
+		LogMsg logMsg = adapter.getLogMsg(captured, null);
+		Assert.assertEquals("captured", logMsg.getTransId());
+		Assert.assertEquals("class.method", logMsg.getSrcMethod());
+
+		StackifyError error = adapter.getStackifyError(captured, null);
+		Assert.assertEquals("user", error.getUserName());
+		Assert.assertSame(webRequest, error.getWebRequestDetail());
+
+		ServletLogContext.clear();
+	}
+	
+	/**
+	 * testSkippedCallerData
+	 */
+	@Test
+	public void testSkippedCallerData() {
+		ILoggingEvent event = Mockito.mock(ILoggingEvent.class);
+		Mockito.when(event.getLevel()).thenReturn(Level.INFO);
+		Mockito.when(event.getFormattedMessage()).thenReturn("msg");
+		Mockito.when(event.getLoggerName()).thenReturn("com.acme.Service");
+
+		CapturedLoggingEvent captured = CapturedLoggingEvent.capture(event, false);
+
+		ILoggingEventAdapter adapter = new ILoggingEventAdapter(Mockito.mock(EnvironmentDetail.class));
+
+		LogMsg logMsg = adapter.getLogMsg(captured, null);
+		Assert.assertNull(logMsg.getSrcMethod());
+		Assert.assertNull(logMsg.getSrcLine());
+
+		Assert.assertEquals("com.acme.Service", adapter.getClassName(captured));
+
+		Mockito.verify(event, Mockito.never()).getCallerData();
+	}
+	
+	/**
+	 * testDeferredFormatting
+	 */
+	@Test
+	public void testDeferredFormatting() {
+		Logger logger = new LoggerContext().getLogger("com.acme.Service");
+		StringBuilder mutable = new StringBuilder("before");
+		int[] array = {1, 2};
+
+		LoggingEvent event = new LoggingEvent(Logger.class.getName(), logger, Level.INFO, "{} {} {} {}", null, new Object[]{mutable, 42, array, TimeUnit.SECONDS});
+		Map<String, String> mdc = new HashMap<String, String>();
+		mdc.put("key", "value");
+		event.setMDCPropertyMap(mdc);
+
+		CapturedLoggingEvent captured = CapturedLoggingEvent.capture(event, false, true);
+
+		mutable.setLength(0);
+		mutable.append("after");
+		array[0] = 3;
+
+		ILoggingEventAdapter adapter = new ILoggingEventAdapter(Mockito.mock(EnvironmentDetail.class));
+
+		LogMsg logMsg = adapter.getLogMsg(captured, null);
+		Assert.assertEquals("before 42 [1, 2] SECONDS", logMsg.getMsg());
+		Assert.assertEquals(Thread.currentThread().getName(), logMsg.getTh());
+		Assert.assertEquals("{\"key\":\"value\"}", logMsg.getData());
+
+		Assert.assertSame(captured.getFormattedMessage(), captured.getFormattedMessage());
+		Assert.assertEquals("{} {} {} {}", captured.getMessage());
+		Assert.assertSame(TimeUnit.SECONDS, captured.getArgumentArray()[3]);
+		Assert.assertEquals("before", captured.getArgumentArray()[0]);
+	}
+
+	/**
+	 * testDeferredFormattingWithException
+	 */
+	@Test
+	public void testDeferredFormattingWithException() {
+		Logger logger = new LoggerContext().getLogger("com.acme.Service");
+		Throwable exception = new RuntimeException("boom");
+
+		LoggingEvent event = new LoggingEvent(Logger.class.getName(), logger, Level.ERROR, "failed {}", null, new Object[]{"abc", exception});
+		String expected = new LoggingEvent(Logger.class.getName(), logger, Level.ERROR, "failed {}", null, new Object[]{"abc", exception}).getFormattedMessage();
+
+		CapturedLoggingEvent captured = CapturedLoggingEvent.capture(event, false, true);
+
+		Assert.assertEquals(expected, captured.getFormattedMessage());
+		Assert.assertNotNull(captured.getThrowableProxy());
+	}
+
+	/**
+	 * testGetLevelName
+	 */
+	@Test
+	public void testGetLevelName() {
+		Assert.assertEquals("error", ILoggingEventAdapter.getLevelName(Level.ERROR));
+		Assert.assertEquals("warn", ILoggingEventAdapter.getLevelName(Level.WARN));
+		Assert.assertEquals("info", ILoggingEventAdapter.getLevelName(Level.INFO));
+		Assert.assertEquals("debug", ILoggingEventAdapter.getLevelName(Level.DEBUG));
+		Assert.assertEquals("trace", ILoggingEventAdapter.getLevelName(Level.TRACE));
+		Assert.assertEquals("off", ILoggingEventAdapter.getLevelName(Level.OFF));
+		Assert.assertSame(ILoggingEventAdapter.getLevelName(Level.INFO), ILoggingEventAdapter.getLevelName(Level.INFO));
+	}
+
+	/**
+	 * testGetLogMsgAllocationBudget
+	 */
+	@Test
+	public void testGetLogMsgAllocationBudget() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+		Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+
+		com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+
+		Assume.assumeTrue(allocations.isThreadAllocatedMemorySupported());
+		allocations.setThreadAllocatedMemoryEnabled(true);
+
+		Logger logger = new LoggerContext().getLogger("com.acme.Service");
+
+		LoggingEvent event = new LoggingEvent(Logger.class.getName(), logger, Level.INFO, "request {} took {} ms", null, new Object[]{"abc", 42});
+		event.setCallerData(new StackTraceElement[]{new StackTraceElement("com.acme.Service", "handle", "Service.java", 1234)});
+		event.prepareForDeferredProcessing();
+
+		ILoggingEventAdapter adapter = new ILoggingEventAdapter(Mockito.mock(EnvironmentDetail.class));
+
+		int iterations = 10000;
+		long threadId = Thread.currentThread().getId();
+
+		for (int i = 0; i < iterations; ++i) {
+			adapter.getLogMsg(event, null);
+		}
+
+		LogMsg first = adapter.getLogMsg(event, null);
+		LogMsg second = adapter.getLogMsg(event, null);
+		Assert.assertNotNull(first.getId());
+		Assert.assertNotEquals(first.getId(), second.getId());
+
+		long before = allocations.getThreadAllocatedBytes(threadId);
+
+		for (int i = 0; i < iterations; ++i) {
+			adapter.getLogMsg(event, null);
+		}
+
+		long perEvent = (allocations.getThreadAllocatedBytes(threadId) - before) / iterations;
+
+		Assert.assertTrue(perEvent + " bytes per event", perEvent <= LOG_MSG_ALLOCATION_BUDGET);
+	}
+	
 	/**
 	 * testIsErrorLevel
 	 */
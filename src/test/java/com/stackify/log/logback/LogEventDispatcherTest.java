@@ -0,0 +1,106 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.spi.ContextAware;
+
+import com.stackify.api.common.log.LogAppender;
+
+/**
+ * LogEventDispatcher JUnit Test
+ */
+public class LogEventDispatcherTest {
+
+	/**
+	 * testOfferDeliversOnBackgroundThread
+	 */
+	@Test
+	public void testOfferDeliversOnBackgroundThread() {
+		LogAppender<ILoggingEvent> logAppender = Mockito.mock(LogAppender.class);
+		ContextAware status = Mockito.mock(ContextAware.class);
+
+		LogEventDispatcher dispatcher = new LogEventDispatcher("test", 16, logAppender, status);
+		dispatcher.start();
+
+		ILoggingEvent event = Mockito.mock(ILoggingEvent.class);
+		Assert.assertTrue(dispatcher.offer(event));
+
+		Mockito.verify(logAppender, Mockito.timeout(5000)).append(event);
+
+		dispatcher.stop(5000);
+	}
+
+	/**
+	 * testStopDrainsBuffer
+	 */
+	@Test
+	public void testStopDrainsBuffer() {
+		LogAppender<ILoggingEvent> logAppender = Mockito.mock(LogAppender.class);
+		ContextAware status = Mockito.mock(ContextAware.class);
+
+		LogEventDispatcher dispatcher = new LogEventDispatcher("test", 16, logAppender, status);
+
+		for (int i = 0; i < 10; ++i) {
+			Assert.assertTrue(dispatcher.offer(Mockito.mock(ILoggingEvent.class)));
+		}
+
+		dispatcher.start();
+		dispatcher.stop(5000);
+
+		Mockito.verify(logAppender, Mockito.times(10)).append(Mockito.any(ILoggingEvent.class));
+		Assert.assertEquals(0, dispatcher.size());
+	}
+
+	/**
+	 * testOfferWhenFull
+	 */
+	@Test
+	public void testOfferWhenFull() {
+		LogAppender<ILoggingEvent> logAppender = Mockito.mock(LogAppender.class);
+		ContextAware status = Mockito.mock(ContextAware.class);
+
+		LogEventDispatcher dispatcher = new LogEventDispatcher("test", 2, logAppender, status);
+
+		Assert.assertTrue(dispatcher.offer(Mockito.mock(ILoggingEvent.class)));
+		Assert.assertTrue(dispatcher.offer(Mockito.mock(ILoggingEvent.class)));
+		Assert.assertFalse(dispatcher.offer(Mockito.mock(ILoggingEvent.class)));
+
+		Assert.assertEquals(1, dispatcher.getDroppedCount());
+	}
+
+	/**
+	 * testAppendException
+	 */
+	@Test
+	public void testAppendException() {
+		LogAppender<ILoggingEvent> logAppender = Mockito.mock(LogAppender.class);
+		Mockito.doThrow(new RuntimeException()).when(logAppender).append(Mockito.any(ILoggingEvent.class));
+
+		ContextAware status = Mockito.mock(ContextAware.class);
+
+		LogEventDispatcher dispatcher = new LogEventDispatcher("test", 16, logAppender, status);
+		dispatcher.offer(Mockito.mock(ILoggingEvent.class));
+		dispatcher.start();
+		dispatcher.stop(5000);
+
+		Mockito.verify(status).addError(Mockito.anyString(), Mockito.any(Exception.class));
+	}
+}
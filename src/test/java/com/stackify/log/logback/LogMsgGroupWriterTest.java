@@ -0,0 +1,134 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stackify.api.Container;
+import com.stackify.api.EnvironmentDetail;
+import com.stackify.api.ErrorItem;
+import com.stackify.api.Kubernetes;
+import com.stackify.api.LogMsg;
+import com.stackify.api.LogMsgGroup;
+import com.stackify.api.StackifyError;
+import com.stackify.api.TraceFrame;
+import com.stackify.api.WebRequestDetail;
+
+/**
+ * LogMsgGroupWriter JUnit Test
+ */
+public class LogMsgGroupWriterTest {
+
+	/**
+	 * testMatchesDatabind
+	 */
+	@Test
+	public void testMatchesDatabind() throws IOException {
+		Map<String, String> map = new LinkedHashMap<String, String>();
+		map.put("key", "value");
+		map.put("empty", null);
+
+		TraceFrame frame = TraceFrame.newBuilder().codeFileName("Service.java").lineNum(42).method("com.acme.Service.handle").build();
+		ErrorItem inner = ErrorItem.newBuilder().message("inner").errorType("java.io.IOException").build();
+		ErrorItem item = ErrorItem.newBuilder().message("outer").errorType("java.lang.RuntimeException").errorTypeCode("1")
+				.data(map).sourceMethod("com.acme.Service.handle").stackTrace(Arrays.asList(frame, frame)).innerError(inner).build();
+
+		EnvironmentDetail env = EnvironmentDetail.newBuilder().deviceName("host").appName("app").appLocation("/opt/app")
+				.configuredAppName("configured").configuredEnvironmentName("prod").build();
+
+		WebRequestDetail request = WebRequestDetail.newBuilder().userIpAddress("10.0.0.1").httpMethod("POST").requestProtocol("HTTP/1.1")
+				.requestUrl("http://acme/orders").requestUrlRoot("http://acme").referralUrl("http://acme/cart")
+				.headers(map).cookies(map).queryString(map).postData(map).sessionData(map).postDataRaw("raw")
+				.mvcAction("create").mvcController("orders").mvcArea("shop").build();
+
+		StackifyError error = StackifyError.newBuilder().environmentDetail(env).occurredEpochMillis(1500000000000L).error(item)
+				.webRequestDetail(request).serverVariables(map).customerName("customer").userName("user").build();
+
+		LogMsg full = LogMsg.newBuilder().msg("failed \"order\" \u00e9\u4e2d\n\ttab").data("{\"id\":1}").ex(error).th("main").epochMs(1500000000001L)
+				.level("ERROR").transId("trans").srcMethod("com.acme.Service.handle").srcLine(42).id("id").tags(Arrays.asList("a", "b")).build();
+		LogMsg minimal = LogMsg.newBuilder().msg("minimal").build();
+
+		// as converted by the appender, with its generated id
+		LoggingEvent event = new LoggingEvent(Logger.class.getName(), new LoggerContext().getLogger("com.acme.Service"), Level.INFO, "converted", null, null);
+		LogMsg converted = new ILoggingEventAdapter(env).getLogMsg(event, null);
+		Assert.assertNotNull(converted.getId());
+
+		LogMsgGroup group = LogMsgGroup.newBuilder().cdId(1).cdAppId(2).appNameId("appNameId").appEnvId("appEnvId").envId(3)
+				.env("prod").serverName("host").appName("app").appLoc("/opt/app").logger("logger").platform("java")
+				.msgs(Arrays.asList(full, minimal, converted))
+				.container(Container.newBuilder().imageId("image").imageRepository("repo").imageTag("tag").containerId("id").containerName("name").build())
+				.kubernetes(Kubernetes.newBuilder().podName("pod").podNamespace("ns").clusterName("cluster").build())
+				.build();
+
+		String json = write(group);
+
+		Assert.assertEquals(new ObjectMapper().writeValueAsString(group), json);
+		Assert.assertTrue(json, json.contains("\"" + converted.getId() + "\""));
+	}
+
+	/**
+	 * testEmptyGroup
+	 */
+	@Test
+	public void testEmptyGroup() throws IOException {
+		LogMsgGroup group = LogMsgGroup.newBuilder().build();
+
+		Assert.assertEquals(new ObjectMapper().writeValueAsString(group), write(group));
+	}
+
+	/**
+	 * testPooledBuffers
+	 */
+	@Test
+	public void testPooledBuffers() throws IOException {
+		LogMsg[] msgs = new LogMsg[200];
+
+		for (int i = 0; i < msgs.length; ++i) {
+			msgs[i] = LogMsg.newBuilder().msg("message " + i).th("main").epochMs((long) i).level("INFO").build();
+		}
+
+		LogMsgGroup group = LogMsgGroup.newBuilder().env("prod").msgs(Arrays.asList(msgs)).build();
+
+		BufferPool pool = new BufferPool(512, 64);
+		BatchBuffer batch = pool.newBuffer();
+
+		new LogMsgGroupWriter().write(group, batch);
+
+		Assert.assertTrue(1 < batch.buffers().length);
+		Assert.assertEquals(new ObjectMapper().writeValueAsString(group), new String(batch.toByteArray(), "UTF-8"));
+
+		batch.release();
+	}
+
+	private static String write(final LogMsgGroup group) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new LogMsgGroupWriter().write(group, out);
+		return out.toString("UTF-8");
+	}
+}
@@ -0,0 +1,726 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.spi.ContextAware;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stackify.api.EnvironmentDetail;
+import com.stackify.api.LogMsg;
+import com.stackify.api.StackifyError;
+import com.stackify.api.common.ApiConfiguration;
+import com.stackify.api.common.mask.Masker;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * LogPipeline JUnit Test
+ */
+public class LogPipelineTest {
+
+	private static final long TIMEOUT_MILLIS = 10000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private StubApi api;
+
+	private EnvironmentDetail envDetail;
+
+	private ApiConfiguration apiConfig;
+
+	@Before
+	public void setUp() throws Exception {
+		api = new StubApi();
+		envDetail = EnvironmentDetail.newBuilder().deviceName("host").appName("app").appLocation("/opt/app").configuredAppName("app").configuredEnvironmentName("test").build();
+		apiConfig = ApiConfiguration.newBuilder().apiUrl(api.getUrl()).apiKey("key").envDetail(envDetail).build();
+	}
+
+	@After
+	public void tearDown() {
+		api.stop();
+	}
+
+	/**
+	 * testSend
+	 */
+	@Test
+	public void testSend() throws Exception {
+		LogPipeline pipeline = pipeline(config(null));
+
+		enqueue(pipeline, 0, 5);
+		pipeline.close();
+
+		Assert.assertEquals(messages(0, 5), api.getReceived());
+		Assert.assertEquals(0, pipeline.getDroppedCount());
+	}
+
+	/**
+	 * testDefaultDropsOldest
+	 */
+	@Test
+	public void testDefaultDropsOldest() throws Exception {
+		PipelineConfig config = new PipelineConfig();
+		config.setQueueCapacity(3);
+
+		Assert.assertEquals(BackpressurePolicy.Mode.DROP_OLDEST, config.getBackpressure().getMode());
+
+		// not activated yet, so nothing is sent while the queue overflows
+		LogPipeline pipeline = new LogPipeline("test", new ILoggingEventAdapter(envDetail), new Masker(), false, config, Mockito.mock(ContextAware.class));
+		enqueue(pipeline, 0, 5);
+
+		pipeline.activate(apiConfig);
+		pipeline.close();
+
+		Assert.assertEquals(messages(2, 3), api.getReceived());
+		Assert.assertEquals(2, pipeline.getDroppedCount());
+	}
+
+	/**
+	 * testSpillAndReplay
+	 */
+	@Test
+	public void testSpillAndReplay() throws Exception {
+		api.setUp(false);
+
+		LogPipeline pipeline = pipeline(config(folder.getRoot()));
+
+		enqueue(pipeline, 0, 20);
+		awaitSpilled(pipeline, 4, 1);
+
+		Assert.assertTrue(0 < pipeline.getSpilledCount());
+		Assert.assertTrue(pipeline.getQueueSize() < 4);
+
+		api.setUp(true);
+		await(api, 20);
+
+		pipeline.close();
+
+		Assert.assertEquals(messages(0, 20), api.getReceived());
+		Assert.assertEquals(0, pipeline.getStoredBatchCount());
+		Assert.assertEquals(0, pipeline.getDroppedCount());
+	}
+
+	/**
+	 * testSpillOversizeBatch
+	 */
+	@Test
+	public void testSpillOversizeBatch() throws Exception {
+		api.setUp(false);
+
+		PipelineConfig config = config(folder.getRoot());
+		config.setMaxBatch(100);
+		config.setFlushIntervalMillis(60000);
+
+		LogPipeline pipeline = pipeline(config);
+
+		// one message too large for a 4 KB segment, then three that only fit one or two at a time
+		List<String> expected = new ArrayList<String>();
+		pipeline.enqueue(new LogMsg(text('x', 5000), null, null, "main", System.currentTimeMillis(), "info", null, null, null, null, null));
+
+		for (int i = 0; i < 3; ++i) {
+			expected.add(text((char) ('a' + i), 1500));
+			pipeline.enqueue(new LogMsg(expected.get(i), null, null, "main", System.currentTimeMillis(), "info", null, null, null, null, null));
+		}
+
+		awaitSpilled(pipeline, 1, 2);
+
+		Assert.assertEquals(0, pipeline.getQueueSize());
+		Assert.assertEquals(1, pipeline.getDroppedCount());
+		Assert.assertTrue(2 <= pipeline.getSpilledCount());
+
+		api.setUp(true);
+		await(api, 3);
+		pipeline.close();
+
+		Assert.assertEquals(expected, api.getReceived());
+		Assert.assertEquals(1, pipeline.getDroppedCount());
+	}
+
+	/**
+	 * testRestartRecovery
+	 */
+	@Test
+	public void testRestartRecovery() throws Exception {
+		api.setUp(false);
+
+		LogPipeline first = pipeline(config(folder.getRoot()));
+		enqueue(first, 0, 7);
+		first.close();
+
+		Assert.assertTrue(api.getReceived().isEmpty());
+
+		api.setUp(true);
+
+		LogPipeline second = pipeline(config(folder.getRoot()));
+		enqueue(second, 7, 3);
+		await(api, 10);
+		second.close();
+
+		Assert.assertEquals(messages(0, 10), api.getReceived());
+	}
+
+	/**
+	 * testSharedExecutor
+	 */
+	@Test
+	public void testSharedExecutor() throws Exception {
+		ScheduledExecutorService host = Executors.newSingleThreadScheduledExecutor();
+
+		try {
+			PipelineConfig config = config(null);
+			config.setExecutor(ShippingExecutor.shared(host));
+
+			LogPipeline pipeline = pipeline(config);
+
+			enqueue(pipeline, 0, 5);
+			await(api, 5);
+			pipeline.close();
+
+			Assert.assertEquals(messages(0, 5), api.getReceived());
+			Assert.assertFalse(host.isShutdown());
+		} finally {
+			host.shutdownNow();
+		}
+	}
+
+	/**
+	 * testCompression
+	 */
+	@Test
+	public void testCompression() throws Exception {
+		PipelineConfig config = config(null);
+		config.setMaxBatch(100);
+		config.setFlushIntervalMillis(60000);
+
+		LogPipeline pipeline = pipeline(config);
+		AppenderMetrics metrics = new AppenderMetrics();
+		pipeline.setMetrics(metrics);
+
+		enqueue(pipeline, 0, 1);
+		pipeline.flush();
+		enqueue(pipeline, 1, 50);
+		pipeline.close();
+
+		Assert.assertEquals(messages(0, 51), api.getReceived());
+		Assert.assertEquals(Arrays.asList(null, "gzip"), api.getEncodings());
+		Assert.assertEquals(1, metrics.getCompressedBatchCount());
+		Assert.assertEquals(1, metrics.getUncompressedBatchCount());
+		Assert.assertTrue(metrics.getCompressionRatio() < 0.5);
+	}
+
+	/**
+	 * testQueueFull
+	 */
+	@Test
+	public void testQueueFull() throws Exception {
+		api.setUp(false);
+
+		PipelineConfig config = config(null);
+		config.setQueueCapacity(3);
+		config.setMaxBatch(100);
+		config.setFlushIntervalMillis(60000);
+
+		LogPipeline pipeline = pipeline(config);
+		enqueue(pipeline, 0, 5);
+
+		Assert.assertEquals(3, pipeline.getQueueSize());
+		Assert.assertEquals(2, pipeline.getDroppedCount());
+
+		pipeline.close();
+	}
+
+	/**
+	 * testErrorLane
+	 */
+	@Test
+	public void testErrorLane() throws Exception {
+		PipelineConfig config = config(null);
+		config.setQueueCapacity(3);
+		config.setErrorQueueCapacity(2);
+		config.setMaxBatch(100);
+		config.setFlushIntervalMillis(60000);
+
+		LogPipeline pipeline = pipeline(config);
+
+		enqueue(pipeline, 0, 5);
+
+		ILoggingEventAdapter adapter = new ILoggingEventAdapter(envDetail);
+		Logger logger = new LoggerContext().getLogger("test");
+
+		for (int i = 0; i < 3; ++i) {
+			LoggingEvent event = new LoggingEvent(Logger.class.getName(), logger, Level.ERROR, "error-" + i, null, null);
+
+			// the first one with its error, the others as if the error governor suppressed it
+			StackifyError error = (i == 0) ? adapter.getStackifyError(event, new IllegalStateException("failed")) : null;
+			pipeline.enqueue(adapter.getLogMsg(event, error));
+		}
+
+		Assert.assertEquals(5, pipeline.getQueueSize());
+		Assert.assertEquals(2, pipeline.getErrorQueueSize());
+		Assert.assertEquals(3, pipeline.getDroppedCount());
+
+		pipeline.close();
+
+		// each full lane drops its oldest
+		Assert.assertEquals(Arrays.asList("error-1", "error-2", "msg-2", "msg-3", "msg-4"), api.getReceived());
+	}
+
+	/**
+	 * testAdaptiveFlush
+	 */
+	@Test
+	public void testAdaptiveFlush() throws Exception {
+		PipelineConfig config = config(null);
+		config.setAdaptiveFlush(true);
+		config.setMinBatch(2);
+		config.setMaxBatch(20);
+		config.setMinFlushIntervalMillis(5);
+		config.setFlushIntervalMillis(50);
+
+		LogPipeline pipeline = pipeline(config);
+
+		enqueue(pipeline, 0, 100);
+		await(api, 100);
+
+		Assert.assertEquals(messages(0, 100), api.getReceived());
+		Assert.assertTrue(2 < pipeline.getFlushControl().getBatchSize());
+		Assert.assertTrue(pipeline.getFlushControl().getLingerMillis() < 50);
+
+		pipeline.close();
+	}
+
+	/**
+	 * testQueueMaxBytes
+	 */
+	@Test
+	public void testQueueMaxBytes() throws Exception {
+		api.setUp(false);
+
+		PipelineConfig config = config(null);
+		config.setQueueCapacity(100000);
+		config.setQueueMaxBytes(1024 * 1024);
+		config.setMaxBatch(100);
+		config.setFlushIntervalMillis(60000);
+
+		LogPipeline pipeline = pipeline(config);
+
+		Runtime runtime = Runtime.getRuntime();
+		long before = usedHeap(runtime);
+
+		// 200 distinct messages of 512 KB each, 100 MB in total
+		for (int i = 0; i < 200; ++i) {
+			char[] text = new char[256 * 1024];
+			Arrays.fill(text, (char) ('a' + (i % 26)));
+			pipeline.enqueue(new LogMsg(new String(text), null, null, "main", System.currentTimeMillis(), "info", null, null, null, null, null));
+
+			Assert.assertTrue(pipeline.getQueueBytes() <= config.getQueueMaxBytes());
+		}
+
+		long retained = usedHeap(runtime) - before;
+
+		Assert.assertTrue(0 < pipeline.getQueueSize());
+		Assert.assertTrue(pipeline.getQueueSize() <= 2);
+		Assert.assertEquals(200 - pipeline.getQueueSize(), pipeline.getDroppedCount());
+		Assert.assertTrue("retained " + retained + " bytes", retained < 16 * 1024 * 1024);
+
+		// small messages still fit next to the large ones
+		long dropped = pipeline.getDroppedCount();
+		enqueue(pipeline, 0, 1);
+
+		Assert.assertEquals(dropped, pipeline.getDroppedCount());
+
+		pipeline.close();
+	}
+
+	/**
+	 * testTruncation
+	 */
+	@Test
+	public void testTruncation() throws Exception {
+		PipelineConfig config = config(null);
+		config.setMaxMessageLength(20);
+
+		Masker masker = new Masker();
+		masker.addMask(Masker.MASK_SSN);
+
+		LogPipeline pipeline = new LogPipeline("test", new ILoggingEventAdapter(envDetail), masker, false, config, Mockito.mock(ContextAware.class));
+		pipeline.activate(apiConfig);
+
+		pipeline.enqueue(new LogMsg("short", null, null, "main", System.currentTimeMillis(), "info", null, null, null, null, null));
+		pipeline.enqueue(new LogMsg("ssn is 123-45-6789 and then some", null, null, "main", System.currentTimeMillis(), "info", null, null, null, null, null));
+		await(api, 2);
+		pipeline.close();
+
+		List<String> received = api.getReceived();
+
+		Assert.assertEquals(2, received.size());
+		Assert.assertEquals("short", received.get(0));
+		Assert.assertTrue(received.get(1), received.get(1).startsWith("ssn is "));
+		Assert.assertTrue(received.get(1), received.get(1).contains("... [truncated "));
+		Assert.assertFalse(received.get(1), received.get(1).contains("123-45"));
+		Assert.assertEquals(1, pipeline.getTruncatedCount());
+	}
+
+	/**
+	 * testRejectedBatchDropped
+	 */
+	@Test
+	public void testRejectedBatchDropped() throws Exception {
+		api.setStatus(400);
+
+		ContextAware status = Mockito.mock(ContextAware.class);
+		LogPipeline pipeline = pipeline(config(null), status);
+
+		enqueue(pipeline, 0, 2);
+		awaitDropped(pipeline, 2);
+
+		api.setStatus(200);
+		enqueue(pipeline, 2, 2);
+		await(api, 2);
+
+		pipeline.close();
+
+		Assert.assertEquals(messages(2, 2), api.getReceived());
+		Assert.assertEquals(2, pipeline.getDroppedCount());
+		Assert.assertEquals(2, api.getRequests());
+		Mockito.verify(status).addError(Mockito.contains("rejected by the API"));
+		Mockito.verify(status).addWarn("Stackify Log Appender dropped 2 messages rejected by the API");
+	}
+
+	/**
+	 * testRetriesCapped
+	 */
+	@Test
+	public void testRetriesCapped() throws Exception {
+		api.setUp(false);
+
+		PipelineConfig config = config(null);
+		config.setMaxRetries(1);
+
+		ContextAware status = Mockito.mock(ContextAware.class);
+		LogPipeline pipeline = pipeline(config, status);
+
+		enqueue(pipeline, 0, 2);
+		awaitDropped(pipeline, 2);
+
+		Assert.assertEquals(2, api.getRequests());
+
+		api.setUp(true);
+		enqueue(pipeline, 2, 2);
+		await(api, 2);
+
+		pipeline.close();
+
+		Assert.assertEquals(messages(2, 2), api.getReceived());
+		Assert.assertEquals(2, pipeline.getDroppedCount());
+		Mockito.verify(status).addError("Stackify Log Appender dropped a batch after 1 retries");
+	}
+
+	/**
+	 * testRetriesCappedWithSpillover
+	 */
+	@Test
+	public void testRetriesCappedWithSpillover() throws Exception {
+		api.setUp(false);
+
+		PipelineConfig config = config(folder.getRoot());
+		config.setMaxRetries(1);
+
+		LogPipeline pipeline = pipeline(config);
+
+		enqueue(pipeline, 0, 2);
+		awaitSpilled(pipeline, 4, 1);
+
+		Assert.assertEquals(1, pipeline.getSpilledCount());
+		Assert.assertEquals(0, pipeline.getDroppedCount());
+
+		api.setUp(true);
+		await(api, 2);
+
+		pipeline.close();
+
+		Assert.assertEquals(messages(0, 2), api.getReceived());
+		Assert.assertEquals(0, pipeline.getStoredBatchCount());
+		Assert.assertEquals(0, pipeline.getDroppedCount());
+	}
+
+	/**
+	 * testFlushSurvivesException
+	 */
+	@Test
+	public void testFlushSurvivesException() throws Exception {
+		ContextAware status = Mockito.mock(ContextAware.class);
+		LogPipeline pipeline = pipeline(config(null), status);
+
+		AppenderMetrics metrics = Mockito.mock(AppenderMetrics.class);
+		Mockito.doThrow(new IllegalStateException("encode")).doNothing().when(metrics).recordEncode(Mockito.anyInt(), Mockito.anyInt(), Mockito.anyBoolean(), Mockito.anyLong());
+		pipeline.setMetrics(metrics);
+
+		// less than a batch, only the periodic task sends it
+		enqueue(pipeline, 0, 1);
+		await(api, 1);
+
+		Assert.assertEquals(messages(0, 1), api.getReceived());
+		Mockito.verify(status).addError(Mockito.eq("Exception flushing Stackify log batches"), Mockito.any(IllegalStateException.class));
+
+		pipeline.close();
+	}
+
+		/**
+	 * testCloseDuringBackoff
+	 */
+	@Test
+	public void testCloseDuringBackoff() throws Exception {
+		api.setUp(false);
+
+		PipelineConfig config = config(null);
+		config.setMaxBackoffMillis(60000);
+
+		ContextAware status = Mockito.mock(ContextAware.class);
+		LogPipeline pipeline = pipeline(config, status);
+
+		enqueue(pipeline, 0, 2);
+
+		long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+
+		while ((api.getRequests() == 0) && (System.currentTimeMillis() < deadline)) {
+			Thread.sleep(10);
+		}
+
+		enqueue(pipeline, 2, 3);
+		pipeline.close();
+
+		Assert.assertEquals(1, api.getRequests());
+		Assert.assertEquals(0, pipeline.getQueueSize());
+		Assert.assertEquals(5, pipeline.getDroppedCount());
+		Mockito.verify(status).addWarn("Stackify Log Appender dropped 5 messages that could not be sent before it was stopped");
+	}
+
+	private PipelineConfig config(final File directory) {
+		PipelineConfig config = new PipelineConfig();
+		config.setQueueCapacity(100);
+		config.setMaxBatch(2);
+		config.setFlushIntervalMillis(20);
+		config.setMaxBackoffMillis(50);
+		config.setSpilloverDirectory(directory);
+		config.setSpilloverThreshold(4);
+		config.setSpilloverSegmentBytes(4096);
+		config.setSpilloverMaxBytes(65536);
+		return config;
+	}
+
+	private LogPipeline pipeline(final PipelineConfig config) {
+		return pipeline(config, Mockito.mock(ContextAware.class));
+	}
+
+	private LogPipeline pipeline(final PipelineConfig config, final ContextAware status) {
+		LogPipeline pipeline = new LogPipeline("test", new ILoggingEventAdapter(envDetail), new Masker(), false, config, status);
+		pipeline.activate(apiConfig);
+		return pipeline;
+	}
+
+	private static void enqueue(final LogPipeline pipeline, final int first, final int count) {
+		for (int i = first; i < first + count; ++i) {
+			pipeline.enqueue(new LogMsg("msg-" + i, null, null, "main", System.currentTimeMillis(), "info", null, null, null, null, null));
+		}
+	}
+
+	private static List<String> messages(final int first, final int count) {
+		List<String> messages = new ArrayList<String>();
+
+		for (int i = first; i < first + count; ++i) {
+			messages.add("msg-" + i);
+		}
+
+		return messages;
+	}
+
+	private static void awaitSpilled(final LogPipeline pipeline, final int limit, final int batches) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+
+		while (((limit <= pipeline.getQueueSize()) || (pipeline.getSpilledCount() < batches)) && (System.currentTimeMillis() < deadline)) {
+			Thread.sleep(10);
+		}
+	}
+
+	private static void awaitDropped(final LogPipeline pipeline, final long count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+
+		while ((pipeline.getDroppedCount() < count) && (System.currentTimeMillis() < deadline)) {
+			Thread.sleep(10);
+		}
+	}
+
+	private static String text(final char c, final int length) {
+		char[] text = new char[length];
+		Arrays.fill(text, c);
+		return new String(text);
+	}
+
+	private static long usedHeap(final Runtime runtime) throws InterruptedException {
+		for (int i = 0; i < 3; ++i) {
+			System.gc();
+			Thread.sleep(20);
+		}
+
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static void await(final StubApi api, final int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+
+		while ((api.getReceived().size() < count) && (System.currentTimeMillis() < deadline)) {
+			Thread.sleep(10);
+		}
+	}
+
+	/**
+	 * Stackify API stub that can be switched off
+	 */
+	private static class StubApi implements HttpHandler {
+
+		private final HttpServer server;
+
+		private final ObjectMapper objectMapper = new ObjectMapper();
+
+		private final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+
+		private final List<String> encodings = Collections.synchronizedList(new ArrayList<String>());
+
+		private final AtomicInteger requests = new AtomicInteger();
+
+		private volatile int status = 200;
+
+		private StubApi() throws IOException {
+			server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+			server.createContext("/", this);
+			server.start();
+		}
+
+		private String getUrl() {
+			return "http://127.0.0.1:" + server.getAddress().getPort();
+		}
+
+		private void setUp(final boolean up) {
+			setStatus(up ? 200 : 503);
+		}
+
+		private void setStatus(final int status) {
+			this.status = status;
+		}
+
+		private int getRequests() {
+			return requests.get();
+		}
+
+		private List<String> getReceived() {
+			synchronized (received) {
+				return new ArrayList<String>(received);
+			}
+		}
+
+		private List<String> getEncodings() {
+			synchronized (encodings) {
+				return new ArrayList<String>(encodings);
+			}
+		}
+
+		private void stop() {
+			server.stop(0);
+		}
+
+		@Override
+		public void handle(final HttpExchange exchange) throws IOException {
+			byte[] body = read(exchange.getRequestBody());
+
+			if (exchange.getRequestURI().getPath().equals("/Log/Save")) {
+				requests.incrementAndGet();
+
+				if (status != 200) {
+					respond(exchange, status);
+					return;
+				}
+
+				String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+				encodings.add(encoding);
+
+				InputStream in = new ByteArrayInputStream(body);
+				JsonNode group = objectMapper.readTree("gzip".equals(encoding) ? new GZIPInputStream(in) : in);
+
+				for (JsonNode msg : group.get("Msgs")) {
+					received.add(msg.get("Msg").asText());
+				}
+			}
+
+			respond(exchange, 200);
+		}
+
+		private static byte[] read(final InputStream in) throws IOException {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+
+			for (int n = in.read(buffer); 0 <= n; n = in.read(buffer)) {
+				out.write(buffer, 0, n);
+			}
+
+			return out.toByteArray();
+		}
+
+		private static void respond(final HttpExchange exchange, final int status) throws IOException {
+			byte[] response = "{}".getBytes("UTF-8");
+			exchange.sendResponseHeaders(status, response.length);
+
+			OutputStream out = exchange.getResponseBody();
+
+			try {
+				out.write(response);
+			} finally {
+				out.close();
+			}
+		}
+	}
+}
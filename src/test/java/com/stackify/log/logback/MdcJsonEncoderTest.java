@@ -0,0 +1,228 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * MdcJsonEncoder JUnit Test
+ */
+public class MdcJsonEncoderTest {
+
+	/**
+	 * testMatchesObjectMapper
+	 * @throws Exception
+	 */
+	@Test
+	public void testMatchesObjectMapper() throws Exception {
+		Map<String, String> map = new LinkedHashMap<String, String>();
+		map.put("key", "value");
+		map.put("quote", "a \"quoted\" value");
+		map.put("control", "tab\tnewline\n");
+		map.put("unicode", "caf\u00e9 \u2603");
+		map.put("null", null);
+		map.put("", "empty key");
+
+		MdcJsonEncoder encoder = new MdcJsonEncoder();
+
+		Assert.assertEquals(new ObjectMapper().writeValueAsString(map), encoder.encode(map));
+		Assert.assertEquals(0, encoder.getFailureCount());
+	}
+
+	/**
+	 * testSequentialMaps
+	 * @throws Exception
+	 */
+	@Test
+	public void testSequentialMaps() throws Exception {
+		MdcJsonEncoder encoder = new MdcJsonEncoder();
+		ObjectMapper json = new ObjectMapper();
+
+		for (int i = 0; i < 5; ++i) {
+			Map<String, String> map = new HashMap<String, String>();
+			map.put("i", Integer.toString(i));
+			Assert.assertEquals(json.writeValueAsString(map), encoder.encode(map));
+		}
+	}
+
+	/**
+	 * testSameInstanceCached
+	 */
+	@Test
+	public void testSameInstanceCached() {
+		Map<String, String> map = new HashMap<String, String>();
+		map.put("key", "value");
+
+		MdcJsonEncoder encoder = new MdcJsonEncoder();
+
+		String first = encoder.encode(map);
+		String second = encoder.encode(map);
+
+		Assert.assertSame(first, second);
+	}
+
+	/**
+	 * testMutatedInstanceReencoded
+	 */
+	@Test
+	public void testMutatedInstanceReencoded() {
+		Map<String, String> map = new HashMap<String, String>();
+		map.put("key", "value");
+
+		MdcJsonEncoder encoder = new MdcJsonEncoder();
+		Assert.assertEquals("{\"key\":\"value\"}", encoder.encode(map));
+
+		map.put("key", "other");
+		Assert.assertEquals("{\"key\":\"other\"}", encoder.encode(map));
+	}
+
+	/**
+	 * testFailureCounted
+	 */
+	@Test
+	public void testFailureCounted() {
+		Map<String, String> bad = new HashMap<String, String>();
+		bad.put(null, "value");
+
+		MdcJsonEncoder encoder = new MdcJsonEncoder();
+
+		Assert.assertNull(encoder.encode(bad));
+		Assert.assertEquals(1, encoder.getFailureCount());
+
+		Map<String, String> good = new HashMap<String, String>();
+		good.put("key", "value");
+
+		Assert.assertEquals("{\"key\":\"value\"}", encoder.encode(good));
+		Assert.assertEquals(1, encoder.getFailureCount());
+	}
+
+	/**
+	 * testLargeResultNotRetained
+	 */
+	@Test
+	public void testLargeResultNotRetained() {
+		char[] value = new char[8 * 1024];
+		Arrays.fill(value, 'x');
+
+		Map<String, String> map = new HashMap<String, String>();
+		map.put("key", new String(value));
+
+		MdcJsonEncoder encoder = new MdcJsonEncoder();
+
+		String first = encoder.encode(map);
+		String second = encoder.encode(map);
+
+		Assert.assertEquals(first, second);
+		Assert.assertNotSame(first, second);
+	}
+
+	/**
+	 * testRelease
+	 * @throws Exception
+	 */
+	@Test
+	public void testRelease() throws Exception {
+		final MdcJsonEncoder encoder = new MdcJsonEncoder();
+		final Map<String, String> map = new HashMap<String, String>();
+		map.put("key", "value");
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+
+		try {
+			for (int t = 0; t < 2; ++t) {
+				executor.submit(new Callable<String>() {
+					@Override
+					public String call() {
+						return encoder.encode(map);
+					}
+				}).get();
+			}
+
+			String cached = encoder.encode(map);
+
+			Assert.assertTrue(1 < encoder.getThreadCount());
+
+			// the pool threads live on but no longer hold any state
+			encoder.release();
+
+			Assert.assertEquals(0, encoder.getThreadCount());
+
+			String encoded = encoder.encode(map);
+
+			Assert.assertEquals(cached, encoded);
+			Assert.assertNotSame(cached, encoded);
+			Assert.assertEquals(1, encoder.getThreadCount());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * testConcurrentThreads
+	 * @throws Exception
+	 */
+	@Test
+	public void testConcurrentThreads() throws Exception {
+		final MdcJsonEncoder encoder = new MdcJsonEncoder();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+
+		try {
+			List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+
+			for (int t = 0; t < 4; ++t) {
+				final String id = Integer.toString(t);
+
+				results.add(executor.submit(new Callable<Boolean>() {
+					@Override
+					public Boolean call() {
+						for (int i = 0; i < 1000; ++i) {
+							Map<String, String> map = new LinkedHashMap<String, String>();
+							map.put("thread", id);
+							map.put("i", Integer.toString(i));
+
+							String expected = "{\"thread\":\"" + id + "\",\"i\":\"" + i + "\"}";
+
+							if (!expected.equals(encoder.encode(map))) {
+								return false;
+							}
+						}
+						return true;
+					}
+				}));
+			}
+
+			for (Future<Boolean> result : results) {
+				Assert.assertTrue(result.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
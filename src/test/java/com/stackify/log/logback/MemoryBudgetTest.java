@@ -0,0 +1,134 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.stackify.api.ErrorItem;
+import com.stackify.api.LogMsg;
+import com.stackify.api.StackifyError;
+import com.stackify.api.TraceFrame;
+
+/**
+ * MemoryBudget JUnit Test
+ */
+public class MemoryBudgetTest {
+
+	/**
+	 * testReserveAndRelease
+	 */
+	@Test
+	public void testReserveAndRelease() {
+		MemoryBudget budget = new MemoryBudget(100);
+
+		Assert.assertTrue(budget.tryReserve(60));
+		Assert.assertFalse(budget.tryReserve(41));
+		Assert.assertTrue(budget.tryReserve(40));
+		Assert.assertEquals(100, budget.getUsedBytes());
+
+		budget.release(60);
+
+		Assert.assertEquals(40, budget.getUsedBytes());
+		Assert.assertFalse(budget.tryReserve(101));
+		Assert.assertEquals(100, budget.getMaxBytes());
+	}
+
+	/**
+	 * testAwaitRelease
+	 */
+	@Test
+	public void testAwaitRelease() throws Exception {
+		final MemoryBudget budget = new MemoryBudget(100);
+		budget.tryReserve(100);
+
+		long seen = budget.getReleaseCount();
+
+		Thread releaser = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+
+				budget.release(100);
+			}
+		});
+		releaser.start();
+
+		long start = System.nanoTime();
+		budget.awaitRelease(seen, TimeUnit.SECONDS.toNanos(10));
+
+		Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+		Assert.assertEquals(0, budget.getUsedBytes());
+
+		// a release that already happened does not wait
+		start = System.nanoTime();
+		budget.awaitRelease(seen, TimeUnit.SECONDS.toNanos(10));
+		Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+
+		releaser.join();
+	}
+
+	/**
+	 * testEstimate
+	 */
+	@Test
+	public void testEstimate() {
+		LogMsg empty = new LogMsg(null, null, null, null, 0L, "INFO", null, null, null, null, null);
+		Assert.assertEquals(MemoryBudget.MSG_BYTES, MemoryBudget.estimate(empty));
+
+		LogMsg text = new LogMsg(chars(1000), chars(500), null, "main", 0L, "INFO", null, null, null, null, null);
+		Assert.assertEquals(MemoryBudget.MSG_BYTES + 3 * MemoryBudget.STRING_BYTES + 2 * (1000 + 500 + 4), MemoryBudget.estimate(text));
+
+		List<TraceFrame> frames = new ArrayList<TraceFrame>();
+
+		for (int i = 0; i < 30; ++i) {
+			frames.add(new TraceFrame("A.java", i, "A.run"));
+		}
+
+		ErrorItem cause = ErrorItem.newBuilder().message("cause").stackTrace(frames).build();
+		ErrorItem error = ErrorItem.newBuilder().message("error").stackTrace(frames.subList(0, 10)).innerError(cause).build();
+		LogMsg withError = new LogMsg(null, null, StackifyError.newBuilder().error(error).build(), null, 0L, "ERROR", null, null, null, null, null);
+
+		Assert.assertEquals(MemoryBudget.MSG_BYTES + MemoryBudget.ERROR_BYTES + 2 * (MemoryBudget.ITEM_BYTES + MemoryBudget.STRING_BYTES + 10) + 40 * MemoryBudget.FRAME_BYTES,
+				MemoryBudget.estimate(withError));
+	}
+
+	/**
+	 * testInvalid
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalid() {
+		new MemoryBudget(0);
+	}
+
+	private static String chars(final int length) {
+		StringBuilder sb = new StringBuilder(length);
+
+		for (int i = 0; i < length; ++i) {
+			sb.append('x');
+		}
+
+		return sb.toString();
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * PayloadCodec JUnit Test
+ */
+public class PayloadCodecTest {
+
+	/**
+	 * Small buffers, so batches span several of them
+	 */
+	private final BufferPool pool = new BufferPool(256, 1024);
+
+	/**
+	 * testSmallBatchNotCompressed
+	 */
+	@Test
+	public void testSmallBatchNotCompressed() {
+		PayloadCodec codec = new PayloadCodec(1024, 6);
+
+		Assert.assertNull(encode(codec, json(10)));
+
+		codec.close();
+	}
+
+	/**
+	 * testRoundTrip
+	 */
+	@Test
+	public void testRoundTrip() throws IOException {
+		PayloadCodec codec = new PayloadCodec(1024, 6);
+
+		for (int messages : new int[]{50, 20, 500}) {
+			byte[] payload = json(messages);
+			byte[] encoded = encode(codec, payload);
+
+			Assert.assertNotNull(encoded);
+			Assert.assertTrue(encoded.length * 3 < payload.length);
+			Assert.assertArrayEquals(payload, gunzip(encoded));
+		}
+
+		codec.close();
+	}
+
+	/**
+	 * testIncompressibleNotCompressed
+	 */
+	@Test
+	public void testIncompressibleNotCompressed() {
+		PayloadCodec codec = new PayloadCodec(16, 9);
+
+		byte[] payload = new byte[4096];
+		new Random(42).nextBytes(payload);
+
+		Assert.assertNull(encode(codec, payload));
+
+		codec.close();
+	}
+
+	/**
+	 * testMinBytesZero
+	 */
+	@Test
+	public void testMinBytesZero() throws IOException {
+		PayloadCodec codec = new PayloadCodec(0, 1);
+
+		byte[] payload = "{\"Msgs\":[{\"Msg\":\"aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa\"}]}".getBytes("UTF-8");
+		byte[] encoded = encode(codec, payload);
+
+		Assert.assertNotNull(encoded);
+		Assert.assertArrayEquals(payload, gunzip(encoded));
+
+		codec.close();
+	}
+
+	/**
+	 * testReusesBuffers
+	 */
+	@Test
+	public void testReusesBuffers() throws IOException {
+		PayloadCodec codec = new PayloadCodec(1024, 6);
+
+		encode(codec, json(500));
+		long allocated = pool.getAllocatedCount();
+
+		for (int i = 0; i < 10; ++i) {
+			Assert.assertArrayEquals(json(500), gunzip(encode(codec, json(500))));
+		}
+
+		Assert.assertEquals(allocated, pool.getAllocatedCount());
+
+		codec.close();
+	}
+
+	/**
+	 * Encodes the payload through pooled batches
+	 * @param codec The codec
+	 * @param payload The serialized batch
+	 * @return The gzip encoded batch or null if it was not compressed
+	 */
+	private byte[] encode(final PayloadCodec codec, final byte[] payload) {
+		BatchBuffer batch = pool.newBuffer();
+		batch.write(payload, 0, payload.length);
+
+		BatchBuffer target = pool.newBuffer();
+
+		try {
+			return codec.encode(batch, target) ? target.toByteArray() : null;
+		} finally {
+			batch.release();
+			target.release();
+		}
+	}
+
+	private static byte[] json(final int messages) {
+		StringBuilder json = new StringBuilder("{\"Env\":\"test\",\"ServerName\":\"host\",\"Msgs\":[");
+
+		for (int i = 0; i < messages; ++i) {
+			if (0 < i) {
+				json.append(',');
+			}
+
+			json.append("{\"Msg\":\"request ").append(i).append(" took ").append(i % 97).append(" ms\",\"Th\":\"main\",\"Level\":\"INFO\",\"SrcMethod\":\"com.acme.Service.handle\"}");
+		}
+
+		return json.append("]}").toString().getBytes();
+	}
+
+	private static byte[] gunzip(final byte[] encoded) throws IOException {
+		InputStream in = new GZIPInputStream(new ByteArrayInputStream(encoded));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+
+		for (int n = in.read(buffer); 0 <= n; n = in.read(buffer)) {
+			out.write(buffer, 0, n);
+		}
+
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.spi.ContextAware;
+import ch.qos.logback.core.spi.ContextAwareBase;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stackify.api.EnvironmentDetail;
+import com.stackify.api.common.ApiConfiguration;
+import com.stackify.api.common.mask.Masker;
+
+/**
+ * PipelineRegistry JUnit Test
+ */
+public class PipelineRegistryTest {
+
+	private EnvironmentDetail envDetail;
+
+	private ApiConfiguration apiConfig;
+
+	private RecordingTransport transport;
+
+	private int created;
+
+	@Before
+	public void setUp() {
+		envDetail = EnvironmentDetail.newBuilder().deviceName("host").appName("app").configuredAppName("app").configuredEnvironmentName("test").build();
+		apiConfig = ApiConfiguration.newBuilder().apiUrl("http://127.0.0.1:9").apiKey("key").envDetail(envDetail).build();
+		transport = new RecordingTransport();
+	}
+
+	/**
+	 * testSharedPipeline
+	 */
+	@Test
+	public void testSharedPipeline() throws Exception {
+		PipelineRegistry registry = new PipelineRegistry();
+
+		PipelineRegistry.Lease audit = registry.acquire("key", factory(), "test", new ILoggingEventAdapter(envDetail), status(), null);
+		PipelineRegistry.Lease access = registry.acquire("key", factory(), "test", new ILoggingEventAdapter(envDetail), status(), null);
+
+		Assert.assertEquals(1, created);
+		Assert.assertSame(audit.getPipeline(), access.getPipeline());
+		Assert.assertEquals(2, registry.getReferenceCount("key"));
+
+		audit.append(event("audit"));
+		access.append(event("access"));
+
+		audit.close();
+		audit.close();
+
+		Assert.assertEquals(1, registry.getReferenceCount("key"));
+		Assert.assertTrue(transport.getBatches().isEmpty());
+
+		access.close();
+
+		Assert.assertEquals(0, registry.getReferenceCount("key"));
+		Assert.assertEquals(0, registry.size());
+		Assert.assertEquals(Collections.singletonList(2), transport.getBatches());
+	}
+
+	/**
+	 * testReportingHandedOn
+	 */
+	@Test
+	public void testReportingHandedOn() throws Exception {
+		PipelineRegistry registry = new PipelineRegistry();
+
+		ContextAware auditStatus = status();
+		AppenderMetrics auditMetrics = new AppenderMetrics();
+		ContextAware accessStatus = status();
+		AppenderMetrics accessMetrics = new AppenderMetrics();
+
+		PipelineRegistry.Lease audit = registry.acquire("key", factory(auditStatus, auditMetrics), "test", new ILoggingEventAdapter(envDetail), auditStatus, auditMetrics);
+		PipelineRegistry.Lease access = registry.acquire("key", factory(), "test", new ILoggingEventAdapter(envDetail), accessStatus, accessMetrics);
+
+		Assert.assertSame(auditStatus, audit.getPipeline().getStatus());
+
+		// the appender that created the pipeline stops first
+		audit.close();
+
+		Assert.assertSame(accessStatus, access.getPipeline().getStatus());
+
+		access.append(event("access"));
+		access.close();
+
+		Assert.assertEquals(Collections.singletonList(1), transport.getBatches());
+		Assert.assertEquals(0, auditMetrics.getSentBatchCount());
+		Assert.assertEquals(1, accessMetrics.getSentBatchCount());
+	}
+
+	/**
+	 * testDifferentKeys
+	 */
+	@Test
+	public void testDifferentKeys() throws Exception {
+		PipelineRegistry registry = new PipelineRegistry();
+
+		PipelineRegistry.Lease first = registry.acquire("first", factory(), "test", new ILoggingEventAdapter(envDetail), status(), null);
+		PipelineRegistry.Lease second = registry.acquire("second", factory(), "test", new ILoggingEventAdapter(envDetail), status(), null);
+
+		Assert.assertEquals(2, created);
+		Assert.assertNotSame(first.getPipeline(), second.getPipeline());
+		Assert.assertEquals(2, registry.size());
+
+		first.close();
+		second.close();
+
+		Assert.assertEquals(0, registry.size());
+	}
+
+	/**
+	 * testReacquireAfterClose
+	 */
+	@Test
+	public void testReacquireAfterClose() throws Exception {
+		PipelineRegistry registry = new PipelineRegistry();
+
+		PipelineRegistry.Lease first = registry.acquire("key", factory(), "test", new ILoggingEventAdapter(envDetail), status(), null);
+		first.close();
+
+		PipelineRegistry.Lease second = registry.acquire("key", factory(), "test", new ILoggingEventAdapter(envDetail), status(), null);
+
+		Assert.assertEquals(2, created);
+		Assert.assertNotSame(first.getPipeline(), second.getPipeline());
+
+		// a stale lease does not release the new pipeline
+		first.close();
+		Assert.assertEquals(1, registry.getReferenceCount("key"));
+
+		second.close();
+	}
+
+	private Callable<LogPipeline> factory() {
+		return factory(status(), null);
+	}
+
+	private Callable<LogPipeline> factory(final ContextAware status, final AppenderMetrics metrics) {
+		return new Callable<LogPipeline>() {
+			@Override
+			public LogPipeline call() {
+				PipelineConfig config = new PipelineConfig();
+				config.setFlushIntervalMillis(60000);
+
+				LogPipeline pipeline = new LogPipeline("test", new ILoggingEventAdapter(envDetail), new Masker(), false, config, status);
+				pipeline.activate(apiConfig);
+				pipeline.setTransport(transport);
+				pipeline.setMetrics(metrics);
+
+				++created;
+				return pipeline;
+			}
+		};
+	}
+
+	private static ContextAware status() {
+		ContextAwareBase status = new ContextAwareBase();
+		status.setContext(new LoggerContext());
+		return status;
+	}
+
+	private static LoggingEvent event(final String message) {
+		Logger logger = new LoggerContext().getLogger("com.acme.Service");
+		return new LoggingEvent(Logger.class.getName(), logger, Level.INFO, message, null, null);
+	}
+
+	/**
+	 * Records the number of messages in each batch
+	 */
+	private static class RecordingTransport implements PayloadTransport {
+
+		private final ObjectMapper objectMapper = new ObjectMapper();
+
+		private final List<Integer> batches = Collections.synchronizedList(new ArrayList<Integer>());
+
+		private List<Integer> getBatches() {
+			synchronized (batches) {
+				return new ArrayList<Integer>(batches);
+			}
+		}
+
+		@Override
+		public void send(final BatchBuffer payload, final boolean gzip) throws Exception {
+			JsonNode group = objectMapper.readTree(payload.toByteArray());
+			batches.add(group.get("Msgs").size());
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.stackify.api.common.mask.Masker;
+
+/**
+ * PrefilterMasker JUnit Test
+ */
+public class PrefilterMaskerTest {
+
+	/**
+	 * Building blocks of the generated values
+	 */
+	private static final String[] FRAGMENTS = {
+		"payment accepted", "user", "id=", " ", " ", ", ", ".", "-", "@", ":", "/", "\"",
+		"4111111111111111", "4111 1111 1111 1111", "6011000990139424", "5500005555555559", "371449635398431",
+		"30569309025904", "36700102000000", "3056930902590", "123-45-6789", "123-456-789", "12-345-6789",
+		"192.168.0.1", "10.0.0.256", "256.1.1.1", "1.2.3", "v1.2.3.4", "john.doe@example.com", "a@b", "x@y.z",
+		"123e4567-e89b-12d3-a456-426614174000", "123E4567-E89B-12D3-A456-426614174000", "deadbeef-dead",
+		"0", "7", "42", "2024-01-31", "12:30:45.123", "\u00e9\u00e8\u00e0", "\u0663\u0664\u0665", "order-1234567890123"
+	};
+
+	/**
+	 * Mask combinations to compare
+	 */
+	private static final String[][] MASKS = {
+		{Masker.MASK_CREDITCARD},
+		{Masker.MASK_SSN},
+		{Masker.MASK_IP},
+		{Masker.MASK_EMAIL},
+		{Masker.MASK_UUID},
+		{Masker.MASK_NUMERIC},
+		{Masker.MASK_CREDITCARD, Masker.MASK_SSN},
+		{Masker.MASK_CREDITCARD, Masker.MASK_SSN, Masker.MASK_IP},
+		{Masker.MASK_CREDITCARD, Masker.MASK_SSN, Masker.MASK_IP, Masker.MASK_EMAIL, Masker.MASK_UUID},
+		{Masker.MASK_CREDITCARD, "order-[0-9]+"},
+		{Masker.MASK_SSN, "(?i)PAYMENT"},
+		{"([0-9])\\1"},
+		{"(?x) user  # comment"}
+	};
+
+	/**
+	 * testDifferential
+	 */
+	@Test
+	public void testDifferential() {
+		Random random = new Random(42);
+		List<String> values = new ArrayList<String>();
+
+		for (String fragment : FRAGMENTS) {
+			values.add(fragment);
+		}
+
+		for (int i = 0; i < 3000; ++i) {
+			StringBuilder value = new StringBuilder();
+			int fragments = random.nextInt(6);
+
+			for (int j = 0; j < fragments; ++j) {
+				value.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+			}
+
+			values.add(value.toString());
+		}
+
+		for (String[] masks : MASKS) {
+			Masker expected = new Masker();
+			PrefilterMasker actual = new PrefilterMasker();
+
+			for (String mask : masks) {
+				expected.addMask(mask);
+				actual.addMask(mask);
+			}
+
+			for (String value : values) {
+				Assert.assertEquals(value, expected.mask(value), actual.mask(value));
+				Assert.assertEquals(value, expected.mask(value, "#"), actual.mask(value, "#"));
+				Assert.assertEquals(value, expected.mask(value, "[masked]"), actual.mask(value, "[masked]"));
+			}
+		}
+	}
+
+	/**
+	 * testNoMasks
+	 */
+	@Test
+	public void testNoMasks() {
+		PrefilterMasker masker = new PrefilterMasker();
+		masker.clearMasks();
+
+		Assert.assertEquals("4111111111111111", masker.mask("4111111111111111"));
+		Assert.assertNull(masker.mask(null));
+	}
+
+	/**
+	 * testMasksChanged
+	 */
+	@Test
+	public void testMasksChanged() {
+		PrefilterMasker masker = new PrefilterMasker();
+		masker.addMask(Masker.MASK_SSN);
+
+		Assert.assertEquals("ip 10.0.0.1", masker.mask("ip 10.0.0.1"));
+
+		masker.addMask(Masker.MASK_IP);
+		Assert.assertEquals("ip ********", masker.mask("ip 10.0.0.1"));
+
+		masker.removeMask(Masker.MASK_IP);
+		Assert.assertEquals("ip 10.0.0.1", masker.mask("ip 10.0.0.1"));
+	}
+
+	/**
+	 * testRequirement
+	 */
+	@Test
+	public void testRequirement() {
+		Assert.assertSame(PrefilterMasker.Requirement.NONE, PrefilterMasker.Requirement.of("secret-[a-z]+"));
+		Assert.assertNotSame(PrefilterMasker.Requirement.NONE, PrefilterMasker.Requirement.of("[0-9]{3}-[0-9]{2}-[0-9]{4}"));
+	}
+}
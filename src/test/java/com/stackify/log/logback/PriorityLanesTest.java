@@ -0,0 +1,180 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ch.qos.logback.classic.Level;
+
+import com.stackify.api.LogMsg;
+
+/**
+ * PriorityLanes JUnit Test
+ */
+public class PriorityLanesTest {
+
+	/**
+	 * testSingleLane
+	 */
+	@Test
+	public void testSingleLane() {
+		PriorityLanes lanes = new PriorityLanes(new int[]{3}, 0);
+
+		Assert.assertTrue(lanes.lane(0).offer(msg("a")));
+		Assert.assertTrue(lanes.lane(0).offer(msg("b")));
+		Assert.assertTrue(lanes.lane(0).offer(msg("c")));
+		Assert.assertFalse(lanes.lane(0).offer(msg("d")));
+
+		Assert.assertEquals(Arrays.asList("a", "b"), drain(lanes, 2));
+		Assert.assertEquals(Arrays.asList("c"), drain(lanes, 2));
+		Assert.assertEquals(0, lanes.size());
+	}
+
+	/**
+	 * testSharedBudget
+	 */
+	@Test
+	public void testSharedBudget() {
+		long size = MemoryBudget.estimate(msg("a"));
+		PriorityLanes lanes = new PriorityLanes(new int[]{10, 10}, 0, new MemoryBudget(2 * size));
+
+		Assert.assertTrue(lanes.lane(0).offer(msg("a")));
+		Assert.assertTrue(lanes.lane(1).offer(msg("b")));
+		Assert.assertFalse(lanes.lane(1).offer(msg("c")));
+		Assert.assertEquals(2 * size, lanes.bytes());
+
+		// a higher lane takes its room from the lower ones, not the other way round
+		Assert.assertTrue(lanes.lane(0).offer(msg("d")));
+		Assert.assertEquals(2 * size, lanes.bytes());
+		Assert.assertEquals(1, lanes.getDisplacedCount());
+
+		Assert.assertEquals(Arrays.asList("a"), drain(lanes, 1));
+		Assert.assertEquals(size, lanes.bytes());
+		Assert.assertTrue(lanes.lane(1).offer(msg("e")));
+		Assert.assertEquals(Arrays.asList("d", "e"), drain(lanes, 10));
+	}
+
+	/**
+	 * testErrorDuringFlood
+	 */
+	@Test
+	public void testErrorDuringFlood() {
+		BackpressurePolicy[] policies = {
+			new BackpressurePolicy(BackpressurePolicy.Mode.DROP_NEWEST, 0, Level.WARN),
+			new BackpressurePolicy(BackpressurePolicy.Mode.DROP_OLDEST, 0, Level.WARN),
+			new BackpressurePolicy(BackpressurePolicy.Mode.BLOCK, 10, Level.WARN),
+			new BackpressurePolicy(BackpressurePolicy.Mode.DROP_BELOW_LEVEL, 10, Level.WARN)
+		};
+
+		for (BackpressurePolicy policy : policies) {
+			PriorityLanes lanes = new PriorityLanes(new int[]{10, 100}, 10, new MemoryBudget(5 * MemoryBudget.estimate(msg("flood-0"))));
+
+			// the flood holds the whole budget
+			for (int i = 0; i < 5; ++i) {
+				Assert.assertTrue(lanes.lane(1).offer(msg("flood-" + i)));
+			}
+
+			Assert.assertFalse(lanes.lane(1).offer(msg("flood-5")));
+
+			Assert.assertTrue(policy.getMode().toString(), policy.offer(lanes.lane(0), msg("error-0")));
+			Assert.assertEquals(0, policy.getDroppedCount());
+			Assert.assertEquals(1, lanes.getDisplacedCount());
+			Assert.assertEquals(Arrays.asList("error-0", "flood-1", "flood-2", "flood-3", "flood-4"), drain(lanes, 10));
+		}
+	}
+
+	/**
+	 * testHighestPriorityFirst
+	 */
+	@Test
+	public void testHighestPriorityFirst() {
+		PriorityLanes lanes = new PriorityLanes(new int[]{10, 10}, 0);
+
+		lanes.lane(1).offer(msg("info-1"));
+		lanes.lane(1).offer(msg("info-2"));
+		lanes.lane(0).offer(msg("error-1"));
+
+		Assert.assertEquals(3, lanes.size());
+		Assert.assertEquals(Arrays.asList("error-1", "info-1"), drain(lanes, 2));
+		Assert.assertEquals(Arrays.asList("info-2"), drain(lanes, 2));
+	}
+
+	/**
+	 * testMinimumShare
+	 */
+	@Test
+	public void testMinimumShare() {
+		PriorityLanes lanes = new PriorityLanes(new int[]{100, 100}, 25);
+
+		for (int i = 0; i < 20; ++i) {
+			lanes.lane(0).offer(msg("error-" + i));
+			lanes.lane(1).offer(msg("info-" + i));
+		}
+
+		List<String> batch = drain(lanes, 8);
+
+		Assert.assertEquals(Arrays.asList("error-0", "error-1", "error-2", "error-3", "error-4", "error-5", "info-0", "info-1"), batch);
+	}
+
+	/**
+	 * testUnusedShare
+	 */
+	@Test
+	public void testUnusedShare() {
+		PriorityLanes lanes = new PriorityLanes(new int[]{100, 100}, 50);
+
+		for (int i = 0; i < 5; ++i) {
+			lanes.lane(0).offer(msg("error-" + i));
+		}
+
+		lanes.lane(1).offer(msg("info-0"));
+
+		// the lower lane's share it cannot use goes to the errors, and the other way round
+		Assert.assertEquals(Arrays.asList("error-0", "error-1", "error-2", "info-0"), drain(lanes, 4));
+		Assert.assertEquals(Arrays.asList("error-3", "error-4"), drain(lanes, 4));
+	}
+
+	/**
+	 * testInvalid
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalid() {
+		new PriorityLanes(new int[]{10, 10}, 101);
+	}
+
+	private static List<String> drain(final PriorityLanes lanes, final int max) {
+		List<LogMsg> msgs = new ArrayList<LogMsg>();
+		int moved = lanes.drainTo(msgs, max);
+		Assert.assertEquals(moved, msgs.size());
+
+		List<String> texts = new ArrayList<String>();
+
+		for (LogMsg msg : msgs) {
+			texts.add(msg.getMsg());
+		}
+
+		return texts;
+	}
+
+	private static LogMsg msg(final String text) {
+		return new LogMsg(text, null, null, "main", System.currentTimeMillis(), "INFO", null, null, null, null, null);
+	}
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.spi.ContextAware;
+
+import com.stackify.api.common.log.LogAppender;
+
+/**
+ * RateLimiter JUnit Test
+ */
+public class RateLimiterTest {
+
+	/**
+	 * testLoggerPrefix
+	 */
+	@Test
+	public void testLoggerPrefix() {
+		RateLimiter limiter = new RateLimiter(RateLimiter.parseRates("com.acme=2, com.acme.quiet=1000"), Collections.<Level, Long>emptyMap(), null, 0.5, 60000);
+
+		Assert.assertTrue(limiter.admit(event("com.acme.Chatty", Level.INFO)));
+		Assert.assertTrue(limiter.admit(event("com.acme.Other", Level.INFO)));
+		Assert.assertFalse(limiter.admit(event("com.acme.Chatty", Level.INFO)));
+
+		Assert.assertTrue(limiter.admit(event("com.acme.quiet.Service", Level.INFO)));
+		Assert.assertTrue(limiter.admit(event("com.acmeish.Service", Level.INFO)));
+		Assert.assertTrue(limiter.admit(event("org.example.Service", Level.INFO)));
+	}
+
+	/**
+	 * testLevel
+	 */
+	@Test
+	public void testLevel() {
+		RateLimiter limiter = new RateLimiter(Collections.<String, Long>emptyMap(), RateLimiter.parseLevelRates("debug=1"), null, 0.5, 60000);
+
+		Assert.assertTrue(limiter.admit(event("com.acme.Service", Level.DEBUG)));
+		Assert.assertFalse(limiter.admit(event("com.acme.Service", Level.DEBUG)));
+		Assert.assertTrue(limiter.admit(event("com.acme.Service", Level.INFO)));
+	}
+
+	/**
+	 * testLevelRejectionKeepsLoggerQuota
+	 */
+	@Test
+	public void testLevelRejectionKeepsLoggerQuota() {
+		RateLimiter limiter = new RateLimiter(RateLimiter.parseRates("com.acme=2"), RateLimiter.parseLevelRates("debug=1"), null, 0.5, 60000);
+
+		Assert.assertTrue(limiter.admit(event("com.acme.Service", Level.DEBUG)));
+
+		// rejected by the level limit only
+		for (int i = 0; i < 10; ++i) {
+			Assert.assertFalse(limiter.admit(event("com.acme.Service", Level.DEBUG)));
+		}
+
+		Assert.assertTrue(limiter.admit(event("com.acme.Service", Level.INFO)));
+		Assert.assertFalse(limiter.admit(event("com.acme.Service", Level.INFO)));
+	}
+
+	/**
+	 * testSummaries
+	 */
+	@Test
+	public void testSummaries() {
+		RateLimiter limiter = new RateLimiter(RateLimiter.parseRates("com.acme=1"), RateLimiter.parseLevelRates("debug=1"), null, 0.5, 1000);
+
+		for (int i = 0; i < 4; ++i) {
+			limiter.admit(event("com.acme.Service", Level.INFO));
+			limiter.admit(event("org.example.Service", Level.DEBUG));
+		}
+
+		long now = System.currentTimeMillis();
+
+		Assert.assertTrue(limiter.expired(now).isEmpty());
+
+		List<ILoggingEvent> summaries = limiter.expired(now + 2000);
+		Assert.assertEquals(2, summaries.size());
+		Assert.assertEquals("Rate limit suppressed 3 events from logger com.acme", summaries.get(0).getFormattedMessage());
+		Assert.assertEquals("com.acme", summaries.get(0).getLoggerName());
+		Assert.assertEquals(Level.WARN, summaries.get(0).getLevel());
+		Assert.assertEquals("Rate limit suppressed 3 DEBUG events", summaries.get(1).getFormattedMessage());
+
+		Assert.assertTrue(limiter.expired(now + 2000).isEmpty());
+		Assert.assertTrue(limiter.flush().isEmpty());
+	}
+
+	/**
+	 * testAdaptiveSampling
+	 */
+	@Test
+	public void testAdaptiveSampling() {
+		LogEventDispatcher dispatcher = new LogEventDispatcher("test", 8, Mockito.mock(LogAppender.class), Mockito.mock(ContextAware.class));
+		RateLimiter limiter = new RateLimiter(Collections.<String, Long>emptyMap(), Collections.<Level, Long>emptyMap(), dispatcher, 0.5, 60000);
+
+		for (int i = 0; i < 4; ++i) {
+			Assert.assertTrue(limiter.admit(event("com.acme.Service", Level.INFO)));
+			dispatcher.offer(event("com.acme.Service", Level.INFO));
+		}
+
+		// 5/8 full: some events are kept
+		dispatcher.offer(event("com.acme.Service", Level.INFO));
+
+		int admitted = 0;
+
+		for (int i = 0; i < 1000; ++i) {
+			if (limiter.admit(event("com.acme.Service", Level.INFO))) {
+				++admitted;
+			}
+		}
+
+		Assert.assertTrue(String.valueOf(admitted), (500 < admitted) && (admitted < 1000));
+
+		// full: only errors are kept
+		for (int i = 0; i < 3; ++i) {
+			dispatcher.offer(event("com.acme.Service", Level.INFO));
+		}
+
+		Assert.assertFalse(limiter.admit(event("com.acme.Service", Level.WARN)));
+		Assert.assertTrue(limiter.admit(event("com.acme.Service", Level.ERROR)));
+
+		List<ILoggingEvent> summaries = limiter.flush();
+		Assert.assertEquals(1, summaries.size());
+		Assert.assertTrue(summaries.get(0).getFormattedMessage().startsWith("Adaptive sampling suppressed " + (1000 - admitted + 1) + " events"));
+	}
+
+	/**
+	 * testParseRates
+	 */
+	@Test
+	public void testParseRates() {
+		Map<String, Long> rates = RateLimiter.parseRates(" com.acme = 10 ,, org.hibernate.SQL=5 ");
+		Assert.assertEquals(2, rates.size());
+		Assert.assertEquals(Long.valueOf(10), rates.get("com.acme"));
+		Assert.assertEquals(Long.valueOf(5), rates.get("org.hibernate.SQL"));
+
+		Assert.assertTrue(RateLimiter.parseRates(null).isEmpty());
+		Assert.assertEquals(Long.valueOf(7), RateLimiter.parseLevelRates("Info=7").get(Level.INFO));
+	}
+
+	/**
+	 * testParseInvalidRate
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseInvalidRate() {
+		RateLimiter.parseRates("com.acme");
+	}
+
+	/**
+	 * testParseInvalidLevel
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseInvalidLevel() {
+		RateLimiter.parseLevelRates("verbose=1");
+	}
+
+	private static ILoggingEvent event(final String loggerName, final Level level) {
+		ILoggingEvent event = Mockito.mock(ILoggingEvent.class);
+		Mockito.when(event.getLoggerName()).thenReturn(loggerName);
+		Mockito.when(event.getLevel()).thenReturn(level);
+		return event;
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * ServerVariables JUnit Test
+ */
+public class ServerVariablesTest {
+
+	/**
+	 * testSnapshotShared
+	 */
+	@Test
+	public void testSnapshotShared() {
+		ServerVariables serverVariables = new ServerVariables();
+
+		ServerVariables.Snapshot first = serverVariables.get();
+		ServerVariables.Snapshot second = serverVariables.get();
+
+		Assert.assertSame(first, second);
+		Assert.assertEquals(System.getProperty("java.version"), first.getVariables().get("java.version"));
+	}
+
+	/**
+	 * testSnapshotImmutable
+	 */
+	@Test(expected = UnsupportedOperationException.class)
+	public void testSnapshotImmutable() {
+		new ServerVariables().get().getVariables().put("key", "value");
+	}
+
+	/**
+	 * testChangeDetected
+	 */
+	@Test
+	public void testChangeDetected() {
+		String key = "stackify.test." + System.nanoTime();
+
+		ServerVariables serverVariables = new ServerVariables();
+		ServerVariables.Snapshot before = serverVariables.get();
+
+		System.setProperty(key, "value");
+
+		try {
+			ServerVariables.Snapshot after = serverVariables.get();
+
+			Assert.assertEquals(before.getVersion() + 1, after.getVersion());
+			Assert.assertEquals("value", after.getVariables().get(key));
+			Assert.assertNull(before.getVariables().get(key));
+		} finally {
+			System.clearProperty(key);
+		}
+	}
+
+	/**
+	 * testRefreshKeepsVersionWhenUnchanged
+	 */
+	@Test
+	public void testRefreshKeepsVersionWhenUnchanged() {
+		ServerVariables serverVariables = new ServerVariables(0);
+
+		ServerVariables.Snapshot first = serverVariables.get();
+		ServerVariables.Snapshot second = serverVariables.get();
+
+		Assert.assertEquals(first.getVersion(), second.getVersion());
+		Assert.assertSame(first.getVariables(), second.getVariables());
+	}
+
+	/**
+	 * testModeFromString
+	 */
+	@Test
+	public void testModeFromString() {
+		Assert.assertEquals(ServerVariables.Mode.ERROR, ServerVariables.Mode.fromString("error"));
+		Assert.assertEquals(ServerVariables.Mode.SESSION, ServerVariables.Mode.fromString(" Session "));
+		Assert.assertEquals(ServerVariables.Mode.NONE, ServerVariables.Mode.fromString("NONE"));
+	}
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * ShippingExecutor JUnit Test
+ */
+public class ShippingExecutorTest {
+
+	/**
+	 * testPlatform
+	 */
+	@Test
+	public void testPlatform() throws Exception {
+		ShippingExecutor executor = ShippingExecutor.platform("test");
+
+		AtomicReference<Thread> thread = new AtomicReference<Thread>();
+		CountDownLatch ticks = new CountDownLatch(3);
+		executor.scheduleWithFixedDelay(task(thread, ticks), 5);
+
+		Assert.assertTrue(ticks.await(5, TimeUnit.SECONDS));
+		Assert.assertEquals("test", thread.get().getName());
+		Assert.assertTrue(thread.get().isDaemon());
+
+		executor.shutdown(1000);
+
+		CountDownLatch executed = new CountDownLatch(1);
+
+		try {
+			executor.execute(task(thread, executed));
+			Assert.fail();
+		} catch (Exception e) {
+			Assert.assertEquals(1, executed.getCount());
+		}
+	}
+
+	/**
+	 * testShared
+	 */
+	@Test
+	public void testShared() throws Exception {
+		ScheduledExecutorService host = Executors.newSingleThreadScheduledExecutor();
+
+		try {
+			ShippingExecutor executor = ShippingExecutor.shared(host);
+
+			final AtomicInteger runs = new AtomicInteger();
+			final CountDownLatch ticks = new CountDownLatch(2);
+
+			executor.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					runs.incrementAndGet();
+					ticks.countDown();
+				}
+			}, 5);
+
+			Assert.assertTrue(ticks.await(5, TimeUnit.SECONDS));
+
+			executor.shutdown(1000);
+			int stopped = runs.get();
+			Thread.sleep(50);
+
+			Assert.assertFalse(host.isShutdown());
+			Assert.assertTrue(runs.get() <= stopped + 1);
+
+			CountDownLatch executed = new CountDownLatch(1);
+			executor.execute(task(new AtomicReference<Thread>(), executed));
+			Assert.assertTrue(executed.await(5, TimeUnit.SECONDS));
+		} finally {
+			host.shutdownNow();
+		}
+	}
+
+	/**
+	 * testVirtual
+	 */
+	@Test
+	public void testVirtual() throws Exception {
+		Assume.assumeTrue(ShippingExecutor.isVirtualAvailable());
+
+		ShippingExecutor executor = ShippingExecutor.virtual("test");
+
+		AtomicReference<Thread> thread = new AtomicReference<Thread>();
+		CountDownLatch ticks = new CountDownLatch(2);
+		executor.scheduleWithFixedDelay(task(thread, ticks), 5);
+
+		Assert.assertTrue(ticks.await(5, TimeUnit.SECONDS));
+		Assert.assertTrue(thread.get().getName().startsWith("test-"));
+		Assert.assertEquals(Boolean.TRUE, Thread.class.getMethod("isVirtual").invoke(thread.get()));
+
+		ScheduledExecutorService timer = ShippingExecutor.acquireTimer();
+		ShippingExecutor.releaseTimer();
+
+		executor.shutdown(1000);
+		executor.shutdown(1000);
+
+		Assert.assertTrue(timer.isShutdown());
+	}
+
+	/**
+	 * testTimer
+	 */
+	@Test
+	public void testTimer() throws Exception {
+		ShippingExecutor executor = ShippingExecutor.timer();
+
+		AtomicReference<Thread> thread = new AtomicReference<Thread>();
+		CountDownLatch ticks = new CountDownLatch(2);
+		executor.scheduleWithFixedDelay(task(thread, ticks), 5);
+
+		Assert.assertTrue(ticks.await(5, TimeUnit.SECONDS));
+		Assert.assertEquals("Stackify_LogPipelineTimer", thread.get().getName());
+
+		ScheduledExecutorService timer = ShippingExecutor.acquireTimer();
+		ShippingExecutor.releaseTimer();
+
+		executor.shutdown(1000);
+
+		Assert.assertTrue(timer.isShutdown());
+	}
+
+	/**
+	 * testTimerReleased
+	 */
+	@Test
+	public void testTimerReleased() throws Exception {
+		ScheduledExecutorService first = ShippingExecutor.acquireTimer();
+		ScheduledExecutorService second = ShippingExecutor.acquireTimer();
+		Assert.assertSame(first, second);
+
+		ShippingExecutor.releaseTimer();
+		Assert.assertFalse(first.isShutdown());
+
+		ShippingExecutor.releaseTimer();
+		Assert.assertTrue(first.awaitTermination(5, TimeUnit.SECONDS));
+
+		ScheduledExecutorService restarted = ShippingExecutor.acquireTimer();
+
+		try {
+			Assert.assertNotSame(first, restarted);
+			Assert.assertFalse(restarted.isShutdown());
+		} finally {
+			ShippingExecutor.releaseTimer();
+		}
+
+		Assert.assertTrue(restarted.isShutdown());
+	}
+
+	/**
+	 * testVirtualUnavailable
+	 */
+	@Test
+	public void testVirtualUnavailable() {
+		Assume.assumeFalse(ShippingExecutor.isVirtualAvailable());
+
+		Assert.assertNull(ShippingExecutor.virtualThreadFactory("test"));
+
+		try {
+			ShippingExecutor.virtual("test");
+			Assert.fail();
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * testModeFromString
+	 */
+	@Test
+	public void testModeFromString() {
+		Assert.assertEquals(ShippingExecutor.Mode.PLATFORM, ShippingExecutor.Mode.fromString("platform"));
+		Assert.assertEquals(ShippingExecutor.Mode.VIRTUAL, ShippingExecutor.Mode.fromString(" Virtual "));
+		Assert.assertEquals(ShippingExecutor.Mode.SHARED, ShippingExecutor.Mode.fromString("SHARED"));
+	}
+
+	private static Runnable task(final AtomicReference<Thread> thread, final CountDownLatch latch) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				thread.set(Thread.currentThread());
+				latch.countDown();
+			}
+		};
+	}
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * SpilloverStore JUnit Test
+ */
+public class SpilloverStoreTest {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * testFifo
+	 */
+	@Test
+	public void testFifo() throws Exception {
+		SpilloverStore store = new SpilloverStore(folder.getRoot(), 64, 1024);
+
+		Assert.assertTrue(store.isEmpty());
+		Assert.assertNull(store.peek());
+
+		for (int i = 0; i < 10; ++i) {
+			Assert.assertTrue(store.append(bytes("batch-" + i)));
+		}
+
+		Assert.assertEquals(10, store.size());
+
+		for (int i = 0; i < 10; ++i) {
+			Assert.assertEquals("batch-" + i, string(store.peek()));
+			Assert.assertEquals("batch-" + i, string(store.peek()));
+			store.remove();
+		}
+
+		Assert.assertTrue(store.isEmpty());
+		Assert.assertNull(store.peek());
+		Assert.assertEquals(1, folder.getRoot().listFiles().length);
+
+		store.close();
+	}
+
+	/**
+	 * testRecovery
+	 */
+	@Test
+	public void testRecovery() throws Exception {
+		SpilloverStore store = new SpilloverStore(folder.getRoot(), 64, 1024);
+
+		for (int i = 0; i < 10; ++i) {
+			store.append(bytes("batch-" + i));
+		}
+
+		for (int i = 0; i < 3; ++i) {
+			store.peek();
+			store.remove();
+		}
+
+		store.close();
+
+		SpilloverStore reopened = new SpilloverStore(folder.getRoot(), 64, 1024);
+
+		Assert.assertEquals(7, reopened.size());
+		reopened.append(bytes("batch-10"));
+
+		for (int i = 3; i <= 10; ++i) {
+			Assert.assertEquals("batch-" + i, string(reopened.peek()));
+			reopened.remove();
+		}
+
+		Assert.assertTrue(reopened.isEmpty());
+		reopened.close();
+	}
+
+	/**
+	 * testTornRecord
+	 */
+	@Test
+	public void testTornRecord() throws Exception {
+		SpilloverStore store = new SpilloverStore(folder.getRoot(), 1024, 4096);
+		store.append(bytes("first"));
+		store.append(bytes("second"));
+		store.append(bytes("third"));
+		store.close();
+
+		// corrupt the payload of the second record
+		File segment = folder.getRoot().listFiles()[0];
+		RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+
+		try {
+			raf.seek(8 + 5 + 8);
+			raf.write('X');
+		} finally {
+			raf.close();
+		}
+
+		SpilloverStore reopened = new SpilloverStore(folder.getRoot(), 1024, 4096);
+
+		Assert.assertEquals(1, reopened.size());
+		Assert.assertEquals("first", string(reopened.peek()));
+		reopened.remove();
+
+		reopened.append(bytes("fourth"));
+		Assert.assertEquals("fourth", string(reopened.peek()));
+
+		reopened.close();
+	}
+
+	/**
+	 * testDiskBound
+	 */
+	@Test
+	public void testDiskBound() throws Exception {
+		SpilloverStore store = new SpilloverStore(folder.getRoot(), 32, 64);
+
+		// one 16 byte record per 32 byte segment, at most two segments
+		for (int i = 0; i < 5; ++i) {
+			Assert.assertTrue(store.append(bytes("batch-" + i + "-abcdefg")));
+		}
+
+		Assert.assertEquals(2, store.size());
+		Assert.assertEquals(3, store.getDroppedCount());
+		Assert.assertEquals(2, folder.getRoot().listFiles().length);
+		Assert.assertEquals("batch-3-abcdefg", string(store.peek()));
+
+		store.close();
+	}
+
+	/**
+	 * testDroppedWhilePeeked
+	 */
+	@Test
+	public void testDroppedWhilePeeked() throws Exception {
+		SpilloverStore store = new SpilloverStore(folder.getRoot(), 32, 64);
+
+		store.append(bytes("batch-0-abcdefg"));
+		Assert.assertEquals("batch-0-abcdefg", string(store.peek()));
+
+		store.append(bytes("batch-1-abcdefg"));
+		store.append(bytes("batch-2-abcdefg"));
+
+		// the peeked record was dropped, so removing must not consume its successor
+		store.remove();
+
+		Assert.assertEquals(2, store.size());
+		Assert.assertEquals("batch-1-abcdefg", string(store.peek()));
+
+		store.close();
+	}
+
+	/**
+	 * testOversize
+	 */
+	@Test
+	public void testOversize() throws Exception {
+		SpilloverStore store = new SpilloverStore(folder.getRoot(), 32, 64);
+
+		Assert.assertFalse(store.append(new byte[25]));
+		Assert.assertFalse(store.append(new byte[0]));
+		Assert.assertTrue(store.append(new byte[24]));
+
+		store.close();
+	}
+
+	private static byte[] bytes(final String value) {
+		return value.getBytes(UTF_8);
+	}
+
+	private static String string(final byte[] value) {
+		return new String(value, UTF_8);
+	}
+}
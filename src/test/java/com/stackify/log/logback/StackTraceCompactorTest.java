@@ -0,0 +1,121 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.stackify.api.TraceFrame;
+
+/**
+ * StackTraceCompactor JUnit Test
+ */
+public class StackTraceCompactorTest {
+
+	/**
+	 * testNone
+	 */
+	@Test
+	public void testNone() {
+		StackTraceElement[] frames = frames("com.acme.A", "org.springframework.B", "org.springframework.C");
+
+		Assert.assertFalse(StackTraceCompactor.NONE.isEnabled());
+		Assert.assertEquals(Arrays.asList("com.acme.A.run", "org.springframework.B.run", "org.springframework.C.run"), methods(StackTraceCompactor.NONE.compact(frames, frames, 0)));
+		Assert.assertArrayEquals(new int[]{0, 1, 2}, StackTraceCompactor.NONE.causes(3));
+	}
+
+	/**
+	 * testElideCommonFrames
+	 */
+	@Test
+	public void testElideCommonFrames() {
+		StackTraceCompactor compactor = new StackTraceCompactor(true, null, null, 0, 0);
+		StackTraceElement[] enclosing = frames("com.acme.Outer", "com.acme.Service", "com.acme.Main");
+		StackTraceElement[] cause = frames("com.acme.Dao", "com.acme.Inner", "com.acme.Service", "com.acme.Main");
+
+		Assert.assertEquals(Arrays.asList("com.acme.Dao.run", "com.acme.Inner.run", "... 2 more"), methods(compactor.compact(cause, enclosing, 0)));
+		Assert.assertEquals(Arrays.asList("com.acme.Outer.run", "com.acme.Service.run", "com.acme.Main.run"), methods(compactor.compact(enclosing, null, 0)));
+	}
+
+	/**
+	 * testCollapseAndDrop
+	 */
+	@Test
+	public void testCollapseAndDrop() {
+		StackTraceCompactor compactor = new StackTraceCompactor(false, StackTraceCompactor.parsePackages("org.springframework, org.hibernate."), StackTraceCompactor.parsePackages("sun.reflect"), 0, 0);
+		StackTraceElement[] frames = frames("com.acme.Dao", "org.hibernate.A", "org.hibernate.B", "sun.reflect.C", "org.springframework.D", "org.springframework.E", "org.springframework.F", "com.acme.Controller", "org.springframework.G", "org.springframeworkx.H");
+
+		Assert.assertEquals(Arrays.asList("com.acme.Dao.run", "... 2 frames in org.hibernate", "... 3 frames in org.springframework", "com.acme.Controller.run", "org.springframework.G.run", "org.springframeworkx.H.run"), methods(compactor.compact(frames, null, 0)));
+	}
+
+	/**
+	 * testMaxFrames
+	 */
+	@Test
+	public void testMaxFrames() {
+		StackTraceCompactor compactor = new StackTraceCompactor(true, new String[]{"org.springframework"}, null, 2, 0);
+		StackTraceElement[] enclosing = frames("com.acme.Main");
+		StackTraceElement[] frames = frames("com.acme.A", "org.springframework.B", "org.springframework.C", "com.acme.D", "org.springframework.E", "org.springframework.F", "com.acme.Main");
+
+		Assert.assertEquals(Arrays.asList("com.acme.A.run", "... 2 frames in org.springframework", "... 3 frames omitted", "... 1 more"), methods(compactor.compact(frames, enclosing, 0)));
+	}
+
+	/**
+	 * testMaxCauses
+	 */
+	@Test
+	public void testMaxCauses() {
+		StackTraceCompactor compactor = new StackTraceCompactor(false, null, null, 0, 3);
+
+		Assert.assertArrayEquals(new int[]{0, 1}, compactor.causes(2));
+		Assert.assertArrayEquals(new int[]{0, 1, 2}, compactor.causes(3));
+		Assert.assertArrayEquals(new int[]{0, 1, 5}, compactor.causes(6));
+		Assert.assertArrayEquals(new int[]{0}, new StackTraceCompactor(false, null, null, 0, 1).causes(6));
+		Assert.assertEquals(Arrays.asList("com.acme.A.run", "... 3 causes omitted"), methods(compactor.compact(frames("com.acme.A"), null, 3)));
+	}
+
+	/**
+	 * testInvalidLimits
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidLimits() {
+		new StackTraceCompactor(false, null, null, -1, 0);
+	}
+
+	private static StackTraceElement[] frames(final String... classNames) {
+		StackTraceElement[] frames = new StackTraceElement[classNames.length];
+
+		for (int i = 0; i < frames.length; ++i) {
+			frames[i] = new StackTraceElement(classNames[i], "run", null, -1);
+		}
+
+		return frames;
+	}
+
+	private static List<String> methods(final List<TraceFrame> stackTrace) {
+		List<String> methods = new ArrayList<String>();
+
+		for (TraceFrame frame : stackTrace) {
+			methods.add(frame.getMethod());
+		}
+
+		return methods;
+	}
+}
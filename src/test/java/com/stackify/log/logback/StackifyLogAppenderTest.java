@@ -15,15 +15,27 @@
  */
 package com.stackify.log.logback;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
 import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
 
 import com.stackify.api.common.ApiConfiguration;
 import com.stackify.api.common.log.LogAppender;
@@ -96,6 +108,204 @@ public class StackifyLogAppenderTest {
 		Assert.assertEquals(environment, appender.getEnvironment());
 	}
 		
+	/**
+	 * testGetSetServerVariables
+	 */
+	@Test
+	public void testGetSetServerVariables() {
+		StackifyLogAppender appender = new StackifyLogAppender();
+		Assert.assertEquals("error", appender.getServerVariables());
+		Assert.assertEquals("60000", appender.getServerVariablesRefreshMillis());
+		appender.setServerVariables("session");
+		appender.setServerVariablesRefreshMillis("1000");
+		Assert.assertEquals("session", appender.getServerVariables());
+		Assert.assertEquals("1000", appender.getServerVariablesRefreshMillis());
+	}
+		
+	/**
+	 * testGetSetCallerData
+	 */
+	@Test
+	public void testGetSetCallerData() {
+		StackifyLogAppender appender = new StackifyLogAppender();
+		Assert.assertEquals("always", appender.getCallerData());
+		Assert.assertEquals("100", appender.getCallerDataSampleRate());
+		appender.setCallerData("sampled");
+		appender.setCallerDataSampleRate("10");
+		Assert.assertEquals("sampled", appender.getCallerData());
+		Assert.assertEquals("10", appender.getCallerDataSampleRate());
+	}
+
+	/**
+	 * testGetSetMetrics
+	 */
+	@Test
+	public void testGetSetMetrics() {
+		StackifyLogAppender appender = new StackifyLogAppender();
+		Assert.assertEquals("false", appender.getMetrics());
+		Assert.assertNull(appender.getAppenderMetrics());
+		appender.setMetrics("true");
+		Assert.assertEquals("true", appender.getMetrics());
+	}
+
+	/**
+	 * testGetSetBackpressure
+	 */
+	@Test
+	public void testGetSetBackpressure() {
+		StackifyLogAppender appender = new StackifyLogAppender();
+		Assert.assertEquals("10000", appender.getQueueSize());
+		Assert.assertNull(appender.getBackpressure());
+		Assert.assertEquals("100", appender.getBackpressureTimeoutMillis());
+		Assert.assertEquals("warn", appender.getBackpressureLevel());
+		appender.setQueueSize("500");
+		appender.setBackpressure("drop_below_level");
+		appender.setBackpressureTimeoutMillis("5");
+		appender.setBackpressureLevel("error");
+		Assert.assertEquals("500", appender.getQueueSize());
+		Assert.assertEquals("drop_below_level", appender.getBackpressure());
+		Assert.assertEquals("5", appender.getBackpressureTimeoutMillis());
+		Assert.assertEquals("error", appender.getBackpressureLevel());
+	}
+
+	/**
+	 * testGetSetPriorityLanes
+	 */
+	@Test
+	public void testGetSetPriorityLanes() {
+		StackifyLogAppender appender = new StackifyLogAppender();
+		Assert.assertNull(appender.getErrorQueueSize());
+		Assert.assertEquals("10", appender.getLowPriorityMinShare());
+		appender.setErrorQueueSize("1000");
+		appender.setLowPriorityMinShare("20");
+		Assert.assertEquals("1000", appender.getErrorQueueSize());
+		Assert.assertEquals("20", appender.getLowPriorityMinShare());
+	}
+
+	/**
+	 * testGetSetQueueMemoryLimit
+	 */
+	@Test
+	public void testGetSetQueueMemoryLimit() {
+		StackifyLogAppender appender = new StackifyLogAppender();
+		Assert.assertNull(appender.getQueueMaxBytes());
+		Assert.assertNull(appender.getMaxMessageLength());
+		appender.setQueueMaxBytes("67108864");
+		appender.setMaxMessageLength("32768");
+		Assert.assertEquals("67108864", appender.getQueueMaxBytes());
+		Assert.assertEquals("32768", appender.getMaxMessageLength());
+	}
+
+	/**
+	 * testGetSetAdaptiveFlush
+	 */
+	@Test
+	public void testGetSetAdaptiveFlush() {
+		StackifyLogAppender appender = new StackifyLogAppender();
+		Assert.assertEquals("100", appender.getBatchSize());
+		Assert.assertEquals("1000", appender.getFlushIntervalMillis());
+		Assert.assertEquals("false", appender.getAdaptiveFlush());
+		Assert.assertEquals("10", appender.getMinBatchSize());
+		Assert.assertEquals("20", appender.getMinFlushIntervalMillis());
+		Assert.assertEquals("500", appender.getTargetSendMillis());
+		appender.setBatchSize("200");
+		appender.setFlushIntervalMillis("2000");
+		appender.setAdaptiveFlush("true");
+		appender.setMinBatchSize("5");
+		appender.setMinFlushIntervalMillis("10");
+		appender.setTargetSendMillis("250");
+		Assert.assertEquals("200", appender.getBatchSize());
+		Assert.assertEquals("2000", appender.getFlushIntervalMillis());
+		Assert.assertEquals("true", appender.getAdaptiveFlush());
+		Assert.assertEquals("5", appender.getMinBatchSize());
+		Assert.assertEquals("10", appender.getMinFlushIntervalMillis());
+		Assert.assertEquals("250", appender.getTargetSendMillis());
+	}
+
+	/**
+	 * testGetSetStackTraceCompaction
+	 */
+	@Test
+	public void testGetSetStackTraceCompaction() {
+		StackifyLogAppender appender = new StackifyLogAppender();
+		Assert.assertEquals("false", appender.getStackTraceElideCommonFrames());
+		Assert.assertNull(appender.getStackTraceCollapsePackages());
+		Assert.assertNull(appender.getStackTraceDropPackages());
+		Assert.assertEquals("0", appender.getStackTraceMaxFrames());
+		Assert.assertEquals("0", appender.getStackTraceMaxCauses());
+		appender.setStackTraceElideCommonFrames("true");
+		appender.setStackTraceCollapsePackages("org.springframework");
+		appender.setStackTraceDropPackages("sun.reflect");
+		appender.setStackTraceMaxFrames("50");
+		appender.setStackTraceMaxCauses("4");
+		Assert.assertEquals("true", appender.getStackTraceElideCommonFrames());
+		Assert.assertEquals("org.springframework", appender.getStackTraceCollapsePackages());
+		Assert.assertEquals("sun.reflect", appender.getStackTraceDropPackages());
+		Assert.assertEquals("50", appender.getStackTraceMaxFrames());
+		Assert.assertEquals("4", appender.getStackTraceMaxCauses());
+	}
+
+	/**
+	 * testGetSetSpillover
+	 */
+	@Test
+	public void testGetSetSpillover() {
+		StackifyLogAppender appender = new StackifyLogAppender();
+		Assert.assertNull(appender.getSpilloverDirectory());
+		Assert.assertEquals("5000", appender.getSpilloverThreshold());
+		Assert.assertEquals("8388608", appender.getSpilloverSegmentBytes());
+		Assert.assertEquals("268435456", appender.getSpilloverMaxBytes());
+		appender.setSpilloverDirectory("/tmp/stackify");
+		appender.setSpilloverThreshold("100");
+		appender.setSpilloverSegmentBytes("65536");
+		appender.setSpilloverMaxBytes("1048576");
+		Assert.assertEquals("/tmp/stackify", appender.getSpilloverDirectory());
+		Assert.assertEquals("100", appender.getSpilloverThreshold());
+		Assert.assertEquals("65536", appender.getSpilloverSegmentBytes());
+		Assert.assertEquals("1048576", appender.getSpilloverMaxBytes());
+	}
+		
+	/**
+	 * testGetSetCompression
+	 */
+	@Test
+	public void testGetSetCompression() {
+		StackifyLogAppender appender = new StackifyLogAppender();
+		Assert.assertNull(appender.getCompressionMinBytes());
+		Assert.assertNull(appender.getCompressionLevel());
+		appender.setCompressionMinBytes("4096");
+		appender.setCompressionLevel("1");
+		Assert.assertEquals("4096", appender.getCompressionMinBytes());
+		Assert.assertEquals("1", appender.getCompressionLevel());
+	}
+
+	/**
+	 * testGetSetPersistentAgentSocket
+	 */
+	@Test
+	public void testGetSetPersistentAgentSocket() {
+		StackifyLogAppender appender = new StackifyLogAppender();
+		Assert.assertEquals("false", appender.getPersistentAgentSocket());
+		appender.setPersistentAgentSocket("true");
+		Assert.assertEquals("true", appender.getPersistentAgentSocket());
+	}
+
+	/**
+	 * testGetSetExecutor
+	 */
+	@Test
+	public void testGetSetExecutor() {
+		StackifyLogAppender appender = new StackifyLogAppender();
+		Assert.assertEquals("platform", appender.getExecutor());
+		Assert.assertNull(appender.getExecutorService());
+
+		ScheduledExecutorService executorService = Mockito.mock(ScheduledExecutorService.class);
+		appender.setExecutor("shared");
+		appender.setExecutorService(executorService);
+		Assert.assertEquals("shared", appender.getExecutor());
+		Assert.assertSame(executorService, appender.getExecutorService());
+	}
+
 	/**
 	 * testStartAppendStop
 	 * @throws Exception 
@@ -128,6 +338,426 @@ public class StackifyLogAppenderTest {
 		Mockito.verify(logAppender).close();
 	}
 	
+	/**
+	 * testStartStopSharedPipeline
+	 */
+	@Test
+	public void testStartStopSharedPipeline() {
+		int open = PipelineRegistry.shared().size();
+
+		StackifyLogAppender audit = sharedAppender("application");
+		StackifyLogAppender access = sharedAppender("application");
+		StackifyLogAppender other = sharedAppender("other");
+		Assert.assertEquals("false", new StackifyLogAppender().getSharedPipeline());
+
+		audit.start();
+		access.start();
+		Assert.assertEquals(open + 1, PipelineRegistry.shared().size());
+
+		other.start();
+		Assert.assertEquals(open + 2, PipelineRegistry.shared().size());
+
+		audit.stop();
+		Assert.assertEquals(open + 2, PipelineRegistry.shared().size());
+
+		access.stop();
+		other.stop();
+		Assert.assertEquals(open, PipelineRegistry.shared().size());
+	}
+
+	/**
+	 * testSharedPipelinePerHostScheduler
+	 */
+	@Test
+	public void testSharedPipelinePerHostScheduler() {
+		int open = PipelineRegistry.shared().size();
+
+		ScheduledExecutorService first = Executors.newSingleThreadScheduledExecutor();
+		ScheduledExecutorService second = Executors.newSingleThreadScheduledExecutor();
+
+		try {
+			StackifyLogAppender audit = sharedAppender("application", first);
+			StackifyLogAppender access = sharedAppender("application", first);
+			StackifyLogAppender other = sharedAppender("application", second);
+
+			audit.start();
+			access.start();
+			Assert.assertEquals(open + 1, PipelineRegistry.shared().size());
+
+			other.start();
+			Assert.assertEquals(open + 2, PipelineRegistry.shared().size());
+
+			audit.stop();
+			access.stop();
+			other.stop();
+			Assert.assertEquals(open, PipelineRegistry.shared().size());
+		} finally {
+			first.shutdownNow();
+			second.shutdownNow();
+		}
+	}
+
+	private static StackifyLogAppender sharedAppender(final String application, final ScheduledExecutorService executorService) {
+		StackifyLogAppender appender = sharedAppender(application);
+		appender.setExecutor("shared");
+		appender.setExecutorService(executorService);
+		return appender;
+	}
+
+	private static StackifyLogAppender sharedAppender(final String application) {
+		StackifyLogAppender appender = new StackifyLogAppender();
+		appender.setContext(new LoggerContext());
+		appender.setApiUrl("http://127.0.0.1:9");
+		appender.setApiKey("key");
+		appender.setApplication(application);
+		appender.setEnvironment("environment");
+		appender.setSharedPipeline("true");
+		return appender;
+	}
+
+	/**
+	 * testGetSetAsyncStart
+	 */
+	@Test
+	public void testGetSetAsyncStart() {
+		StackifyLogAppender appender = new StackifyLogAppender();
+		Assert.assertEquals("false", appender.getAsyncStart());
+		Assert.assertEquals("1024", appender.getAsyncStartBufferSize());
+		Assert.assertEquals("1000", appender.getAsyncStartBufferTimeoutMillis());
+		appender.setAsyncStart("true");
+		appender.setAsyncStartBufferSize("16");
+		appender.setAsyncStartBufferTimeoutMillis("50");
+		Assert.assertEquals("true", appender.getAsyncStart());
+		Assert.assertEquals("16", appender.getAsyncStartBufferSize());
+		Assert.assertEquals("50", appender.getAsyncStartBufferTimeoutMillis());
+	}
+
+	/**
+	 * testStartAppendStopAsync
+	 * @throws Exception
+	 */
+	@Test
+	public void testStartAppendStopAsync() throws Exception {
+		StackifyLogAppender appender = new StackifyLogAppender();
+		appender.setApiKey("key");
+		appender.setAsyncStart("true");
+		appender.setAsyncStartBufferSize("2");
+
+		LogAppender<ILoggingEvent> logAppender = Mockito.mock(LogAppender.class);
+
+		PowerMockito.whenNew(LogAppender.class).withAnyArguments().thenReturn(logAppender);
+
+		appender.start();
+
+		Logger logger = new LoggerContext().getLogger("com.acme.Service");
+		LoggingEvent[] events = new LoggingEvent[5];
+
+		for (int i = 0; i < events.length; ++i) {
+			events[i] = new LoggingEvent(Logger.class.getName(), logger, Level.INFO, "event " + i, null, null);
+			appender.doAppend(events[i]);
+		}
+
+		appender.stop();
+
+		ArgumentCaptor<ILoggingEvent> appended = ArgumentCaptor.forClass(ILoggingEvent.class);
+
+		Mockito.verify(logAppender).activate(Mockito.any(ApiConfiguration.class));
+		Mockito.verify(logAppender, Mockito.times(events.length)).append(appended.capture());
+		Mockito.verify(logAppender).close();
+
+		for (int i = 0; i < events.length; ++i) {
+			Assert.assertEquals("event " + i, appended.getAllValues().get(i).getFormattedMessage());
+		}
+	}
+
+	/**
+	 * testAsyncStartStalled
+	 * @throws Exception
+	 */
+	@Test
+	public void testAsyncStartStalled() throws Exception {
+		StackifyLogAppender appender = new StackifyLogAppender();
+		appender.setApiKey("key");
+		appender.setAsyncStart("true");
+		appender.setAsyncStartBufferSize("1");
+		appender.setAsyncStartBufferTimeoutMillis("50");
+
+		final LogAppender<ILoggingEvent> logAppender = Mockito.mock(LogAppender.class);
+		final CountDownLatch stalled = new CountDownLatch(1);
+
+		// a start that hangs until the events are logged
+		PowerMockito.whenNew(LogAppender.class).withAnyArguments().thenAnswer(new Answer<LogAppender<ILoggingEvent>>() {
+			@Override
+			public LogAppender<ILoggingEvent> answer(final InvocationOnMock invocation) throws Throwable {
+				stalled.await(10, TimeUnit.SECONDS);
+				return logAppender;
+			}
+		});
+
+		appender.start();
+
+		Logger logger = new LoggerContext().getLogger("com.acme.Service");
+		long start = System.nanoTime();
+
+		for (int i = 0; i < 5; ++i) {
+			appender.doAppend(new LoggingEvent(Logger.class.getName(), logger, Level.INFO, "event " + i, null, null));
+		}
+
+		long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+		stalled.countDown();
+		appender.stop();
+
+		// one wait for room, then the other events are dropped right away
+		Assert.assertTrue(elapsedMillis + " ms", elapsedMillis < 5000);
+
+		ArgumentCaptor<ILoggingEvent> appended = ArgumentCaptor.forClass(ILoggingEvent.class);
+		Mockito.verify(logAppender).append(appended.capture());
+		Assert.assertEquals("event 0", appended.getValue().getFormattedMessage());
+	}
+
+	/**
+	 * testGetSetUnsynchronized
+	 */
+	@Test
+	public void testGetSetUnsynchronized() {
+		StackifyLogAppender appender = new StackifyLogAppender();
+		Assert.assertEquals("false", appender.getUnsynchronized());
+		Assert.assertEquals("8192", appender.getRingBufferSize());
+		appender.setUnsynchronized("true");
+		appender.setRingBufferSize("1024");
+		Assert.assertEquals("true", appender.getUnsynchronized());
+		Assert.assertEquals("1024", appender.getRingBufferSize());
+	}
+
+	/**
+	 * testStartAppendStopUnsynchronized
+	 * @throws Exception 
+	 */
+	@Test
+	public void testStartAppendStopUnsynchronized() throws Exception {
+		StackifyLogAppender appender = new StackifyLogAppender();
+		appender.setApiKey("key");
+		appender.setApplication("application");
+		appender.setEnvironment("environment");
+		appender.setUnsynchronized("true");
+
+		LogAppender<ILoggingEvent> logAppender = Mockito.mock(LogAppender.class);
+
+		PowerMockito.whenNew(LogAppender.class).withAnyArguments().thenReturn(logAppender);
+
+		appender.start();
+
+		ILoggingEvent event = Mockito.mock(ILoggingEvent.class);
+		appender.doAppend(event);
+
+		appender.stop();
+
+		ArgumentCaptor<ILoggingEvent> captor = ArgumentCaptor.forClass(ILoggingEvent.class);
+		Mockito.verify(logAppender).append(captor.capture());
+		Mockito.verify(event).prepareForDeferredProcessing();
+
+		Assert.assertTrue(captor.getValue() instanceof CapturedLoggingEvent);
+		Assert.assertSame(event, ((CapturedLoggingEvent) captor.getValue()).getDelegate());
+
+		Mockito.verify(logAppender).close();
+	}
+	
+	/**
+	 * testStartAppendStopDeferredFormatting
+	 * @throws Exception 
+	 */
+	@Test
+	public void testStartAppendStopDeferredFormatting() throws Exception {
+		StackifyLogAppender appender = new StackifyLogAppender();
+		Assert.assertEquals("false", appender.getDeferredFormatting());
+		appender.setApiKey("key");
+		appender.setApplication("application");
+		appender.setEnvironment("environment");
+		appender.setUnsynchronized("true");
+		appender.setDeferredFormatting("true");
+		Assert.assertEquals("true", appender.getDeferredFormatting());
+
+		LogAppender<ILoggingEvent> logAppender = Mockito.mock(LogAppender.class);
+
+		PowerMockito.whenNew(LogAppender.class).withAnyArguments().thenReturn(logAppender);
+
+		appender.start();
+
+		Logger logger = new LoggerContext().getLogger("com.acme.Service");
+		StringBuilder argument = new StringBuilder("before");
+		LoggingEvent event = new LoggingEvent(Logger.class.getName(), logger, Level.INFO, "value {}", null, new Object[]{argument});
+		appender.doAppend(event);
+		argument.append(" and after");
+
+		appender.stop();
+
+		ArgumentCaptor<ILoggingEvent> captor = ArgumentCaptor.forClass(ILoggingEvent.class);
+		Mockito.verify(logAppender).append(captor.capture());
+
+		Assert.assertTrue(captor.getValue() instanceof CapturedLoggingEvent);
+		Assert.assertEquals("value before", captor.getValue().getFormattedMessage());
+
+		Mockito.verify(logAppender).close();
+	}
+
+	/**
+	 * testErrorAggregation
+	 * @throws Exception 
+	 */
+	@Test
+	public void testErrorAggregation() throws Exception {
+		StackifyLogAppender appender = new StackifyLogAppender();
+		appender.setApiKey("key");
+		appender.setApplication("application");
+		appender.setEnvironment("environment");
+		appender.setErrorAggregation("true");
+		appender.setErrorAggregationLimit("2");
+
+		LogAppender<ILoggingEvent> logAppender = Mockito.mock(LogAppender.class);
+
+		PowerMockito.whenNew(LogAppender.class).withAnyArguments().thenReturn(logAppender);
+
+		appender.start();
+
+		for (int i = 0; i < 5; ++i) {
+			ILoggingEvent event = Mockito.mock(ILoggingEvent.class);
+			Mockito.when(event.getLevel()).thenReturn(Level.ERROR);
+			Mockito.when(event.getLoggerName()).thenReturn("logger");
+			Mockito.when(event.getMessage()).thenReturn("failed");
+			Mockito.when(event.getFormattedMessage()).thenReturn("failed");
+			Mockito.when(event.getTimeStamp()).thenReturn(System.currentTimeMillis());
+			appender.doAppend(event);
+		}
+
+		Mockito.verify(logAppender, Mockito.times(2)).append(Mockito.any(ILoggingEvent.class));
+
+		appender.stop();
+
+		ArgumentCaptor<ILoggingEvent> captor = ArgumentCaptor.forClass(ILoggingEvent.class);
+		Mockito.verify(logAppender, Mockito.times(3)).append(captor.capture());
+
+		AggregatedLoggingEvent summary = (AggregatedLoggingEvent) captor.getAllValues().get(2);
+		Assert.assertEquals(3, summary.getCount());
+	}
+	
+	/**
+	 * testErrorAggregationSummaryWithoutNewEvents
+	 * @throws Exception 
+	 */
+	@Test
+	public void testErrorAggregationSummaryWithoutNewEvents() throws Exception {
+		StackifyLogAppender appender = new StackifyLogAppender();
+		appender.setApiKey("key");
+		appender.setApplication("application");
+		appender.setEnvironment("environment");
+		appender.setErrorAggregation("true");
+		appender.setErrorAggregationLimit("1");
+		appender.setErrorAggregationWindowMillis("50");
+
+		LogAppender<ILoggingEvent> logAppender = Mockito.mock(LogAppender.class);
+
+		PowerMockito.whenNew(LogAppender.class).withAnyArguments().thenReturn(logAppender);
+
+		appender.start();
+
+		for (int i = 0; i < 3; ++i) {
+			ILoggingEvent event = Mockito.mock(ILoggingEvent.class);
+			Mockito.when(event.getLevel()).thenReturn(Level.ERROR);
+			Mockito.when(event.getLoggerName()).thenReturn("logger");
+			Mockito.when(event.getMessage()).thenReturn("failed");
+			Mockito.when(event.getFormattedMessage()).thenReturn("failed");
+			Mockito.when(event.getTimeStamp()).thenReturn(System.currentTimeMillis());
+			appender.doAppend(event);
+		}
+
+		// no more events: the timer emits the summary once the window has closed
+		ArgumentCaptor<ILoggingEvent> captor = ArgumentCaptor.forClass(ILoggingEvent.class);
+		Mockito.verify(logAppender, Mockito.timeout(5000).times(2)).append(captor.capture());
+
+		AggregatedLoggingEvent summary = (AggregatedLoggingEvent) captor.getAllValues().get(1);
+		Assert.assertEquals(2, summary.getCount());
+
+		appender.stop();
+
+		Mockito.verify(logAppender, Mockito.times(2)).append(Mockito.any(ILoggingEvent.class));
+	}
+
+	/**
+	 * testCallerDataErrorsOnly
+	 * @throws Exception 
+	 */
+	@Test
+	public void testCallerDataErrorsOnly() throws Exception {
+		StackifyLogAppender appender = new StackifyLogAppender();
+		appender.setApiKey("key");
+		appender.setApplication("application");
+		appender.setEnvironment("environment");
+		appender.setCallerData("errors");
+
+		LogAppender<ILoggingEvent> logAppender = Mockito.mock(LogAppender.class);
+
+		PowerMockito.whenNew(LogAppender.class).withAnyArguments().thenReturn(logAppender);
+
+		appender.start();
+
+		ILoggingEvent info = Mockito.mock(ILoggingEvent.class);
+		Mockito.when(info.getLevel()).thenReturn(Level.INFO);
+		appender.doAppend(info);
+
+		ILoggingEvent error = Mockito.mock(ILoggingEvent.class);
+		Mockito.when(error.getLevel()).thenReturn(Level.ERROR);
+		appender.doAppend(error);
+
+		ArgumentCaptor<ILoggingEvent> captor = ArgumentCaptor.forClass(ILoggingEvent.class);
+		Mockito.verify(logAppender, Mockito.times(2)).append(captor.capture());
+
+		CapturedLoggingEvent skipped = (CapturedLoggingEvent) captor.getAllValues().get(0);
+		Assert.assertSame(info, skipped.getDelegate());
+		Assert.assertFalse(skipped.hasCallerData());
+		Mockito.verify(info, Mockito.never()).getCallerData();
+
+		Assert.assertSame(error, captor.getAllValues().get(1));
+
+		appender.stop();
+	}
+	
+	/**
+	 * testRateLimit
+	 * @throws Exception 
+	 */
+	@Test
+	public void testRateLimit() throws Exception {
+		StackifyLogAppender appender = new StackifyLogAppender();
+		appender.setApiKey("key");
+		appender.setApplication("application");
+		appender.setEnvironment("environment");
+		appender.setRateLimitLoggers("com.acme=2");
+
+		LogAppender<ILoggingEvent> logAppender = Mockito.mock(LogAppender.class);
+
+		PowerMockito.whenNew(LogAppender.class).withAnyArguments().thenReturn(logAppender);
+
+		appender.start();
+
+		ILoggingEvent event = Mockito.mock(ILoggingEvent.class);
+		Mockito.when(event.getLoggerName()).thenReturn("com.acme.Service");
+		Mockito.when(event.getLevel()).thenReturn(Level.INFO);
+		Mockito.when(event.getTimeStamp()).thenReturn(System.currentTimeMillis());
+
+		for (int i = 0; i < 5; ++i) {
+			appender.doAppend(event);
+		}
+
+		Mockito.verify(logAppender, Mockito.times(2)).append(event);
+
+		appender.stop();
+
+		ArgumentCaptor<ILoggingEvent> captor = ArgumentCaptor.forClass(ILoggingEvent.class);
+		Mockito.verify(logAppender, Mockito.times(3)).append(captor.capture());
+		Assert.assertEquals("Rate limit suppressed 3 events from logger com.acme", captor.getAllValues().get(2).getFormattedMessage());
+	}
+	
 	/**
 	 * testStartException
 	 * @throws Exception 
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.stackify.api.common.proto.StackifyProto;
+
+/**
+ * Stand-in for the local Stackify agent: an HTTP/1.1 server on a Unix domain socket that accepts protobuf
+ * log batches on /log and records their messages. Needs Java 16 or later.
+ */
+class StubAgent {
+
+	private final File socket;
+
+	private final ServerSocketChannel server;
+
+	private final Thread acceptor;
+
+	private final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+
+	private final List<SocketChannel> connections = Collections.synchronizedList(new ArrayList<SocketChannel>());
+
+	private final AtomicInteger connectionCount = new AtomicInteger();
+
+	private final AtomicInteger requestCount = new AtomicInteger();
+
+	/**
+	 * Status returned for each batch
+	 */
+	private volatile int status = 200;
+
+	/**
+	 * True to record the messages of each batch (off for benchmarks)
+	 */
+	private volatile boolean recording = true;
+
+	/**
+	 * @param socket Socket file (deleted first if it exists)
+	 * @throws IOException If the socket cannot be bound
+	 */
+	StubAgent(final File socket) throws IOException {
+		this.socket = socket;
+		socket.delete();
+
+		try {
+			server = (ServerSocketChannel) ServerSocketChannel.class.getMethod("open", ProtocolFamily.class).invoke(null, AgentSocketTransport.unix());
+		} catch (Exception e) {
+			throw new IOException("Cannot open a Unix domain server socket", e);
+		}
+
+		SocketAddress address = AgentSocketTransport.address(socket.getPath());
+		server.bind(address);
+
+		acceptor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				accept();
+			}
+		}, "StubAgent");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	String getPath() {
+		return socket.getPath();
+	}
+
+	void setStatus(final int status) {
+		this.status = status;
+	}
+
+	void setRecording(final boolean recording) {
+		this.recording = recording;
+	}
+
+	List<String> getReceived() {
+		synchronized (received) {
+			return new ArrayList<String>(received);
+		}
+	}
+
+	int getConnectionCount() {
+		return connectionCount.get();
+	}
+
+	int getRequestCount() {
+		return requestCount.get();
+	}
+
+	/**
+	 * Closes the open connections, as an agent restart would
+	 */
+	void dropConnections() {
+		synchronized (connections) {
+			for (SocketChannel connection : connections) {
+				try {
+					connection.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+
+			connections.clear();
+		}
+	}
+
+	void stop() {
+		try {
+			server.close();
+		} catch (IOException e) {
+			// ignore
+		}
+
+		dropConnections();
+		socket.delete();
+	}
+
+	private void accept() {
+		while (server.isOpen()) {
+			try {
+				final SocketChannel connection = server.accept();
+				connectionCount.incrementAndGet();
+				connections.add(connection);
+
+				Thread handler = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						serve(connection);
+					}
+				}, "StubAgent-connection");
+				handler.setDaemon(true);
+				handler.start();
+			} catch (IOException e) {
+				return;
+			}
+		}
+	}
+
+	private void serve(final SocketChannel connection) {
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(connection)));
+			OutputStream out = Channels.newOutputStream(connection);
+
+			while (true) {
+				String requestLine = readLine(in);
+
+				if (requestLine == null) {
+					return;
+				}
+
+				int contentLength = 0;
+
+				for (String line = readLine(in); (line != null) && !line.isEmpty(); line = readLine(in)) {
+					if (line.toLowerCase(Locale.ROOT).startsWith("content-length:")) {
+						contentLength = Integer.parseInt(line.substring(15).trim());
+					}
+				}
+
+				byte[] body = new byte[contentLength];
+				in.readFully(body);
+				requestCount.incrementAndGet();
+
+				if (recording && requestLine.startsWith("POST " + AgentSocketTransport.LOG_PATH + " ")) {
+					for (StackifyProto.LogGroup.Log log : StackifyProto.LogGroup.parseFrom(body).getLogsList()) {
+						received.add(log.getMessage());
+					}
+				}
+
+				byte[] response = ("HTTP/1.1 " + status + " OK\r\nContent-Length: 2\r\n\r\n{}").getBytes("US-ASCII");
+				out.write(response);
+				out.flush();
+			}
+		} catch (IOException e) {
+			// connection closed
+		} finally {
+			connections.remove(connection);
+
+			try {
+				connection.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+
+	private static String readLine(final InputStream in) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+		for (int b = in.read(); b != '\n'; b = in.read()) {
+			if (b < 0) {
+				return (line.size() == 0) ? null : line.toString("US-ASCII");
+			}
+
+			if (b != '\r') {
+				line.write(b);
+			}
+		}
+
+		return line.toString("US-ASCII");
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2014 Stackify
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stackify.log.logback;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * TokenBucket JUnit Test
+ */
+public class TokenBucketTest {
+
+	/**
+	 * testBurstThenRefill
+	 */
+	@Test
+	public void testBurstThenRefill() {
+		TokenBucket bucket = new TokenBucket(10, 5);
+		long now = System.nanoTime();
+
+		for (int i = 0; i < 5; ++i) {
+			Assert.assertTrue(bucket.tryAcquire(now));
+		}
+
+		Assert.assertFalse(bucket.tryAcquire(now));
+
+		long later = now + TimeUnit.MILLISECONDS.toNanos(100);
+
+		Assert.assertTrue(bucket.tryAcquire(later));
+		Assert.assertFalse(bucket.tryAcquire(later));
+	}
+
+	/**
+	 * testRelease
+	 */
+	@Test
+	public void testRelease() {
+		TokenBucket bucket = new TokenBucket(1, 2);
+		long now = System.nanoTime();
+
+		Assert.assertTrue(bucket.tryAcquire(now));
+		Assert.assertTrue(bucket.tryAcquire(now));
+		Assert.assertFalse(bucket.tryAcquire(now));
+
+		bucket.release();
+
+		Assert.assertTrue(bucket.tryAcquire(now));
+		Assert.assertFalse(bucket.tryAcquire(now));
+	}
+
+	/**
+	 * testSustainedRate
+	 */
+	@Test
+	public void testSustainedRate() {
+		TokenBucket bucket = new TokenBucket(100, 1);
+		long now = System.nanoTime();
+		int admitted = 0;
+
+		// one attempt per millisecond for a second
+		for (int i = 0; i < 1000; ++i) {
+			if (bucket.tryAcquire(now + TimeUnit.MILLISECONDS.toNanos(i))) {
+				++admitted;
+			}
+		}
+
+		Assert.assertEquals(100, admitted);
+	}
+
+	/**
+	 * testInvalidRate
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidRate() {
+		new TokenBucket(0, 1);
+	}
+}